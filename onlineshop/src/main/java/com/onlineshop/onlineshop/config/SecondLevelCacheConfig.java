@@ -0,0 +1,61 @@
+package com.onlineshop.onlineshop.config;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+//Hibernate二级缓存配置：Goods和User实体缓存在进程内（Ehcache，通过JCache接入），每个区域限制条数和存活时间
+//缓存管理器由这里创建后交给Hibernate，没有配置的区域启动时直接报错，不会创建无上限的缓存
+@Configuration
+public class SecondLevelCacheConfig {
+    //区域名，与实体上@Cache的region一致
+    public static final String GOODS_REGION = "goods";
+    public static final String USER_REGION = "user";
+
+    @Value("${cache.l2.goods.max-entries:10000}")
+    private long goodsMaxEntries;
+    @Value("${cache.l2.goods.ttl-seconds:600}")
+    private long goodsTtlSeconds;
+    @Value("${cache.l2.user.max-entries:5000}")
+    private long userMaxEntries;
+    @Value("${cache.l2.user.ttl-seconds:600}")
+    private long userTtlSeconds;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        org.ehcache.config.Configuration configuration = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(GOODS_REGION, region(goodsMaxEntries, goodsTtlSeconds))
+                .withCache(USER_REGION, region(userMaxEntries, userTtlSeconds))
+                .build();
+        //每个应用上下文使用单独的缓存管理器（同一进程中的多个测试上下文连接不同的数据库）
+        return provider.getCacheManager(URI.create("urn:onlineshop:l2:" + UUID.randomUUID()), configuration);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private CacheConfigurationBuilder<Object, Object> region(long maxEntries, long ttlSeconds) {
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                        ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttlSeconds)));
+    }
+}
@@ -2,12 +2,13 @@ package com.onlineshop.onlineshop.controller;
 
 import com.onlineshop.onlineshop.entity.User;
 import com.onlineshop.onlineshop.service.CartItem;
+import com.onlineshop.onlineshop.service.CartService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +18,9 @@ import java.util.Map;
 @CrossOrigin(origins = "http://localhost:8081", allowCredentials = "true")
 public class CartController {
 
+    @Autowired
+    private CartService cartService;
+
     //统一Session验证方法
     private User validateSession(HttpServletRequest request) {
         HttpSession session = request.getSession(false);
@@ -36,10 +40,20 @@ public class CartController {
         return currentUser;
     }
 
-    //获取用户特定的购物车键，与Session结构匹配
-    private String getCartKey(HttpServletRequest request) {
-        User currentUser = validateSession(request);
-        return "user_cart_" + currentUser.getUid();
+    //旧版本保存在Session中的购物车，首次访问时合并到购物车服务
+    @SuppressWarnings("unchecked")
+    private void migrateSessionCart(HttpServletRequest request, User currentUser) {
+        HttpSession session = request.getSession();
+        String cartKey = "user_cart_" + currentUser.getUid();
+        Object legacy = session.getAttribute(cartKey);
+        if (legacy instanceof List) {
+            for (CartItem item : (List<CartItem>) legacy) {
+                if (item.getGid() != null && item.getQuantity() != null && item.getQuantity() > 0) {
+                    cartService.add(currentUser.getUid(), item.getGid(), item.getQuantity());
+                }
+            }
+            session.removeAttribute(cartKey);
+        }
     }
 
     //统一错误响应格式
@@ -56,29 +70,15 @@ public class CartController {
     public ResponseEntity<?> addToCart(@RequestBody CartItem cartItem, HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
-            @SuppressWarnings("unchecked")
-            List<CartItem> cart = (List<CartItem>) session.getAttribute(cartKey);
-            if (cart == null) {
-                cart = new ArrayList<>();
-            }
-            boolean exists = false;
-            for (CartItem item : cart) {
-                if (item.getGid().equals(cartItem.getGid())) {
-                    item.setQuantity(item.getQuantity() + cartItem.getQuantity());
-                    exists = true;
-                    break;
-                }
-            }
-            if (!exists) {
-                cart.add(cartItem);
+            migrateSessionCart(request, currentUser);
+            if (cartItem.getGid() == null || cartItem.getQuantity() == null || cartItem.getQuantity() <= 0) {
+                return ResponseEntity.badRequest().body(createErrorResponse("数量无效", "VALIDATION_ERROR"));
             }
-            session.setAttribute(cartKey, cart);
+            cartService.add(currentUser.getUid(), cartItem.getGid(), cartItem.getQuantity());
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "商品已添加到购物车");
-            response.put("cart", cart);
+            response.put("cart", cartService.getItems(currentUser.getUid()));
             response.put("userId", currentUser.getUid());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
@@ -93,16 +93,28 @@ public class CartController {
     public ResponseEntity<?> getCart(HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
-            @SuppressWarnings("unchecked")
-            List<CartItem> cart = (List<CartItem>) session.getAttribute(cartKey);
-            if (cart == null) {
-                cart = new ArrayList<>();
-            }
+            migrateSessionCart(request, currentUser);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("cart", cart);
+            response.put("cart", cartService.getItems(currentUser.getUid()));
+            response.put("userId", currentUser.getUid());
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(401).body(createErrorResponse(e.getMessage(), "SESSION_INVALID"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(createErrorResponse("获取购物车失败: " + e.getMessage(), "CART_ERROR"));
+        }
+    }
+
+    //获取带价格和库存的购物车（一次批量查询所有商品，前端不需要逐个请求商品详情）
+    @GetMapping("/priced")
+    public ResponseEntity<?> getPricedCart(HttpServletRequest request) {
+        try {
+            User currentUser = validateSession(request);
+            migrateSessionCart(request, currentUser);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("cart", cartService.getPricedCart(currentUser.getUid()));
             response.put("userId", currentUser.getUid());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
@@ -117,41 +129,21 @@ public class CartController {
     public ResponseEntity<?> updateCartItem(@PathVariable Long goodsId, @RequestBody Map<String, Integer> requestBody, HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
+            migrateSessionCart(request, currentUser);
             Integer quantity = requestBody.get("quantity");
             if (quantity == null || quantity < 0) {
                 return ResponseEntity.badRequest().body(createErrorResponse("数量无效", "VALIDATION_ERROR"));
             }
-            @SuppressWarnings("unchecked")
-            List<CartItem> cart = (List<CartItem>) session.getAttribute(cartKey);
-            if (cart == null) {
+            if (cartService.count(currentUser.getUid()) == 0) {
                 return ResponseEntity.badRequest().body(createErrorResponse("购物车为空", "CART_EMPTY"));
             }
-            boolean itemFound = false;
-            for (CartItem item : cart) {
-                if (item.getGid().equals(goodsId)) {
-                    if (quantity == 0) {
-                        cart.remove(item);
-                    } else {
-                        item.setQuantity(quantity);
-                    }
-                    itemFound = true;
-                    break;
-                }
-            }
-            if (!itemFound) {
+            if (!cartService.update(currentUser.getUid(), goodsId, quantity)) {
                 return ResponseEntity.badRequest().body(createErrorResponse("未找到指定的商品", "ITEM_NOT_FOUND"));
             }
-            if (cart.isEmpty()) {
-                session.removeAttribute(cartKey);
-            } else {
-                session.setAttribute(cartKey, cart);
-            }
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "购物车更新成功");
-            response.put("cart", cart);
+            response.put("cart", cartService.getItems(currentUser.getUid()));
             response.put("userId", currentUser.getUid());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
@@ -166,26 +158,17 @@ public class CartController {
     public ResponseEntity<?> removeFromCart(@PathVariable Long goodsId, HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
-            @SuppressWarnings("unchecked")
-            List<CartItem> cart = (List<CartItem>) session.getAttribute(cartKey);
-            if (cart == null || cart.isEmpty()) {
+            migrateSessionCart(request, currentUser);
+            if (cartService.count(currentUser.getUid()) == 0) {
                 return ResponseEntity.badRequest().body(createErrorResponse("购物车为空", "CART_EMPTY"));
             }
-            boolean removed = cart.removeIf(item -> item.getGid().equals(goodsId));
-            if (!removed) {
+            if (!cartService.remove(currentUser.getUid(), goodsId)) {
                 return ResponseEntity.badRequest().body(createErrorResponse("未找到指定的商品", "ITEM_NOT_FOUND"));
             }
-            if (cart.isEmpty()) {
-                session.removeAttribute(cartKey);
-            } else {
-                session.setAttribute(cartKey, cart);
-            }
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "商品已从购物车移除");
-            response.put("cart", cart);
+            response.put("cart", cartService.getItems(currentUser.getUid()));
             response.put("userId", currentUser.getUid());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
@@ -200,9 +183,8 @@ public class CartController {
     public ResponseEntity<?> clearCart(HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
-            session.removeAttribute(cartKey);
+            request.getSession().removeAttribute("user_cart_" + currentUser.getUid());
+            cartService.clear(currentUser.getUid());
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "购物车已清空");
@@ -215,21 +197,15 @@ public class CartController {
         }
     }
 
-    //获取购物车商品数量
+    //获取购物车商品数量（购物车服务维护的总件数，不遍历商品）
     @GetMapping("/count")
     public ResponseEntity<?> getCartCount(HttpServletRequest request) {
         try {
             User currentUser = validateSession(request);
-            String cartKey = getCartKey(request);
-            HttpSession session = request.getSession();
-            List<CartItem> cart = (List<CartItem>) session.getAttribute(cartKey);
-            int totalItems = 0;
-            if (cart != null) {
-                totalItems = cart.stream().mapToInt(CartItem::getQuantity).sum();
-            }
+            migrateSessionCart(request, currentUser);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("count", totalItems);
+            response.put("count", cartService.count(currentUser.getUid()));
             response.put("userId", currentUser.getUid());
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
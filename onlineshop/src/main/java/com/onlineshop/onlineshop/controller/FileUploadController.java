@@ -1,6 +1,8 @@
 package com.onlineshop.onlineshop.controller;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.File;
@@ -19,6 +21,9 @@ public class FileUploadController {
     //使用相对路径，基于项目根目录
     private final String AVATARS_DIR = "uploads/avatars/";
     private final String PRODUCTS_DIR = "uploads/products/";
+    //图片大小上限；全局的multipart上限按商品导入文件设置，图片在这里单独限制
+    @Value("${file.upload.max-size:10MB}")
+    private DataSize maxSize;
     @PostMapping("/avatar")
     public ResponseEntity<?> uploadAvatar(@RequestParam("file") MultipartFile file) {
         System.out.println("=== 头像上传开始 ===");
@@ -74,6 +79,11 @@ public class FileUploadController {
             response.put("message", "文件不能为空");
             return ResponseEntity.badRequest().body(response);
         }
+        if (file.getSize() > maxSize.toBytes()) {
+            response.put("success", false);
+            response.put("message", "文件大小不能超过" + maxSize.toMegabytes() + "MB");
+            return ResponseEntity.badRequest().body(response);
+        }
         if (!isImageFile(file.getOriginalFilename())) {
             response.put("success", false);
             response.put("message", "只支持图片文件格式");
@@ -2,17 +2,20 @@ package com.onlineshop.onlineshop.controller;
 
 import com.onlineshop.onlineshop.entity.Goods;
 import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.service.CursorPage;
+import com.onlineshop.onlineshop.service.GoodsImportService;
 import com.onlineshop.onlineshop.service.GoodsService;
 import com.onlineshop.onlineshop.service.UserService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.ArrayList;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/goods")
@@ -24,15 +27,18 @@ public class GoodsController {
 
     @Autowired
     private UserService userService;
+    @Autowired
+    private GoodsImportService goodsImportService;
 
     //获取所有商品，顾客和商家都可以访问
     @GetMapping
-    public ResponseEntity<?> getAllGoods() {
+    public ResponseEntity<?> getAllGoods(@RequestParam(required = false) Long cursor,
+                                         @RequestParam(required = false) Integer size) {
         try {
-            List<Goods> goodsList = goodsService.getAvailableGoods();
+            CursorPage<Goods> page = goodsService.getAvailableGoodsPage(cursor, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            putPage(response, page);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -46,7 +52,7 @@ public class GoodsController {
     @GetMapping("/{gid}")
     public ResponseEntity<?> getGoodsById(@PathVariable Long gid) {
         try {
-            Goods goods = goodsService.getGoodsById(gid);
+            Goods goods = goodsService.getGoodsDetail(gid);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("goods", goods);
@@ -63,7 +69,7 @@ public class GoodsController {
     @GetMapping("/{gid}/merchant")
     public ResponseEntity<?> getMerchantByGoodsId(@PathVariable Long gid) {
         try {
-            Goods goods = goodsService.getGoodsById(gid);
+            Goods goods = goodsService.getGoodsDetail(gid);
             User merchant = goods.getMerchant();
             if (merchant == null) {
                 throw new RuntimeException("该商品没有对应的商家信息");
@@ -89,12 +95,17 @@ public class GoodsController {
 
     //按名称搜索商品
     @GetMapping("/search/name")
-    public ResponseEntity<?> searchGoodsByName(@RequestParam String name) {
+    public ResponseEntity<?> searchGoodsByName(@RequestParam String name,
+                                               @RequestParam(required = false) Integer page,
+                                               @RequestParam(required = false) Integer size) {
         try {
-            List<Goods> goodsList = goodsService.searchGoodsByName(name);
+            GoodsService.GoodsSearchPage result = goodsService.searchGoodsByName(name, page, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            response.put("goods", result.getGoods());
+            response.put("total", result.getTotal());
+            response.put("page", result.getPage());
+            response.put("size", result.getSize());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -106,12 +117,18 @@ public class GoodsController {
 
     //按价格范围搜索商品
     @GetMapping("/search/price")
-    public ResponseEntity<?> searchGoodsByPriceRange(@RequestParam Double minPrice, @RequestParam Double maxPrice) {
+    public ResponseEntity<?> searchGoodsByPriceRange(@RequestParam Double minPrice, @RequestParam Double maxPrice,
+                                                     @RequestParam(defaultValue = "false") boolean inStock,
+                                                     @RequestParam(required = false) Integer page,
+                                                     @RequestParam(required = false) Integer size) {
         try {
-            List<Goods> goodsList = goodsService.searchGoodsByPriceRange(minPrice, maxPrice);
+            GoodsService.GoodsSearchPage result = goodsService.searchGoodsByPriceRange(minPrice, maxPrice, inStock, page, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            response.put("goods", result.getGoods());
+            response.put("total", result.getTotal());
+            response.put("page", result.getPage());
+            response.put("size", result.getSize());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -123,12 +140,13 @@ public class GoodsController {
 
     //获取有库存的商品
     @GetMapping("/available")
-    public ResponseEntity<?> getAvailableGoods() {
+    public ResponseEntity<?> getAvailableGoods(@RequestParam(required = false) Long cursor,
+                                               @RequestParam(required = false) Integer size) {
         try {
-            List<Goods> goodsList = goodsService.getAvailableGoods();
+            CursorPage<Goods> page = goodsService.getAvailableGoodsPage(cursor, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            putPage(response, page);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -138,6 +156,24 @@ public class GoodsController {
         }
     }
 
+    //获取商品目录缓存统计（命中、未命中、重建耗时）和Hibernate二级缓存各区域的命中统计（仅商家可见）
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> getCatalogCacheStats(HttpSession session) {
+        User currentUser = (User) session.getAttribute("currentUser");
+        if (currentUser == null || currentUser.getRole() != User.UserRole.MERCHANT) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "无权限操作");
+            return ResponseEntity.status(403).body(response);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("stats", goodsService.getCatalogCacheStats());
+        response.put("secondLevelCache", goodsService.getSecondLevelCacheStats());
+        response.put("detailCache", goodsService.getDetailCacheStats());
+        return ResponseEntity.ok(response);
+    }
+
     //添加商品
     @PostMapping
     public ResponseEntity<?> addGoods(@RequestBody Goods goods, HttpSession session) {
@@ -216,7 +252,9 @@ public class GoodsController {
 
     //获取当前商家的商品
     @GetMapping("/my-goods")
-    public ResponseEntity<?> getMyGoods(HttpSession session) {
+    public ResponseEntity<?> getMyGoods(@RequestParam(required = false) Long cursor,
+                                        @RequestParam(required = false) Integer size,
+                                        HttpSession session) {
         try {
             User currentUser = (User) session.getAttribute("currentUser");
             if (currentUser == null || currentUser.getRole() != User.UserRole.MERCHANT) {
@@ -225,10 +263,10 @@ public class GoodsController {
                 response.put("message", "无权限访问");
                 return ResponseEntity.status(403).body(response);
             }
-            List<Goods> goodsList = goodsService.getGoodsByMerchant(currentUser.getUid());
+            CursorPage<Goods> page = goodsService.getGoodsByMerchantPage(currentUser.getUid(), cursor, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            putPage(response, page);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -288,12 +326,14 @@ public class GoodsController {
 
     //根据商家ID获取商品列表
     @GetMapping("/merchant/{merchantId}")
-    public ResponseEntity<?> getGoodsByMerchant(@PathVariable Long merchantId) {
+    public ResponseEntity<?> getGoodsByMerchant(@PathVariable Long merchantId,
+                                                @RequestParam(required = false) Long cursor,
+                                                @RequestParam(required = false) Integer size) {
         try {
-            List<Goods> goodsList = goodsService.getGoodsByMerchant(merchantId);
+            CursorPage<Goods> page = goodsService.getGoodsByMerchantPage(merchantId, cursor, size);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("goods", goodsList);
+            putPage(response, page);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -353,9 +393,33 @@ public class GoodsController {
         }
     }
 
-    //批量下架商品
+    //批量上架商品：请求体为商品ID列表，返回每个商品的处理结果
+    @PostMapping("/batch-activate")
+    public ResponseEntity<?> batchActivateGoods(@RequestBody List<Long> goodsIds, HttpSession session) {
+        return batchOperation(session, "批量上架完成", merchant -> goodsService.activateGoodsBatch(merchant, goodsIds));
+    }
+
+    //批量下架商品：请求体为商品ID列表，返回每个商品的处理结果
     @PostMapping("/batch-deactivate")
     public ResponseEntity<?> batchDeactivateGoods(@RequestBody List<Long> goodsIds, HttpSession session) {
+        return batchOperation(session, "批量下架完成", merchant -> goodsService.deactivateGoodsBatch(merchant, goodsIds));
+    }
+
+    //批量修改价格：请求体为[{gid, price}]
+    @PostMapping("/batch-price")
+    public ResponseEntity<?> batchUpdatePrices(@RequestBody List<GoodsService.PriceUpdate> updates, HttpSession session) {
+        return batchOperation(session, "批量改价完成", merchant -> goodsService.updatePricesBatch(merchant, updates));
+    }
+
+    //批量设置库存：请求体为[{gid, remaining}]
+    @PostMapping("/batch-stock")
+    public ResponseEntity<?> batchUpdateStock(@RequestBody List<GoodsService.StockUpdate> updates, HttpSession session) {
+        return batchOperation(session, "批量设置库存完成", merchant -> goodsService.updateStockBatch(merchant, updates));
+    }
+
+    //批量导入商品：上传CSV或JSONL文件（按文件名后缀判断格式），逐行校验并按批写入，返回导入结果和错误行
+    @PostMapping("/import")
+    public ResponseEntity<?> importGoods(@RequestParam("file") MultipartFile file, HttpSession session) {
         try {
             User currentUser = (User) session.getAttribute("currentUser");
             if (currentUser == null || currentUser.getRole() != User.UserRole.MERCHANT) {
@@ -364,20 +428,66 @@ public class GoodsController {
                 response.put("message", "无权限操作");
                 return ResponseEntity.status(403).body(response);
             }
-            List<Goods> deactivatedGoods = new ArrayList<>();
-            for (Long gid : goodsIds) {
-                try {
-                    Goods goods = goodsService.deactivateGoods(gid, currentUser);
-                    deactivatedGoods.add(goods);
-                } catch (RuntimeException e) {
-                    //单个商品操作失败，继续处理其他商品
-                    System.err.println("下架商品失败: " + gid + ", 错误: " + e.getMessage());
-                }
+            if (file.isEmpty()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("message", "文件不能为空");
+                return ResponseEntity.badRequest().body(response);
             }
+            GoodsImportService.ImportFormat format = GoodsImportService.ImportFormat.fromFileName(file.getOriginalFilename());
+            GoodsImportService.ImportProgress result = goodsImportService.importGoods(currentUser, file.getInputStream(), format);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("message", "批量下架完成，成功下架 " + deactivatedGoods.size() + " 个商品");
-            response.put("goods", deactivatedGoods);
+            response.put("message", "导入完成，成功 " + result.getImported() + " 行，失败 " + result.getFailed() + " 行");
+            response.put("result", result);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "导入失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    //查询当前商家最近一次导入的进度
+    @GetMapping("/import/progress")
+    public ResponseEntity<?> getImportProgress(HttpSession session) {
+        User currentUser = (User) session.getAttribute("currentUser");
+        Map<String, Object> response = new HashMap<>();
+        if (currentUser == null || currentUser.getRole() != User.UserRole.MERCHANT) {
+            response.put("success", false);
+            response.put("message", "无权限访问");
+            return ResponseEntity.status(403).body(response);
+        }
+        GoodsImportService.ImportProgress progress = goodsImportService.getProgress(currentUser.getUid());
+        if (progress == null) {
+            response.put("success", false);
+            response.put("message", "没有导入记录");
+            return ResponseEntity.ok(response);
+        }
+        response.put("success", true);
+        response.put("progress", progress);
+        return ResponseEntity.ok(response);
+    }
+
+    //批量操作的公共处理：校验商家身份，返回成功数量和每个商品的结果
+    private ResponseEntity<?> batchOperation(HttpSession session, String message,
+                                             Function<User, List<GoodsService.BatchResult>> operation) {
+        try {
+            User currentUser = (User) session.getAttribute("currentUser");
+            if (currentUser == null || currentUser.getRole() != User.UserRole.MERCHANT) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("message", "无权限操作");
+                return ResponseEntity.status(403).body(response);
+            }
+            List<GoodsService.BatchResult> results = operation.apply(currentUser);
+            long updated = results.stream().filter(GoodsService.BatchResult::getSuccess).count();
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", message + "，成功处理 " + updated + " 个商品");
+            response.put("updated", updated);
+            response.put("results", results);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
@@ -434,4 +544,11 @@ public class GoodsController {
             return ResponseEntity.badRequest().body(response);
         }
     }
+
+    //将分页结果写入响应，nextCursor用于请求下一页
+    private void putPage(Map<String, Object> response, CursorPage<Goods> page) {
+        response.put("goods", page.getItems());
+        response.put("nextCursor", page.getNextCursor());
+        response.put("hasMore", page.isHasMore());
+    }
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.onlineshop.onlineshop.controller;
 
 import com.onlineshop.onlineshop.entity.*;
 import com.onlineshop.onlineshop.service.CartItem;
+import com.onlineshop.onlineshop.service.CursorPage;
+import com.onlineshop.onlineshop.service.OrderIdempotencyService;
 import com.onlineshop.onlineshop.service.OrderService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,10 +20,13 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private OrderIdempotencyService orderIdempotencyService;
 
-    //创建订单
+    //创建订单（携带Idempotency-Key请求头时，重试请求返回第一次创建的订单）
     @PostMapping("/create")
     public ResponseEntity<?> createOrder(@RequestBody List<CartItem> cartItems,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                          HttpSession session) {
         try {
             User currentUser = (User) session.getAttribute("currentUser");
@@ -31,7 +36,9 @@ public class OrderController {
                         "message", "请先登录"
                 ));
             }
-            UserOrder order = orderService.createOrder(currentUser, cartItems);
+            UserOrder order = idempotencyKey != null
+                    ? orderIdempotencyService.createOrder(currentUser, idempotencyKey, cartItems)
+                    : orderService.createOrder(currentUser, cartItems);
             return ResponseEntity.ok(Map.of(
                     "success", true,
                     "message", "订单创建成功",
@@ -72,7 +79,9 @@ public class OrderController {
 
     //获取用户订单历史
     @GetMapping("/my-orders")
-    public ResponseEntity<?> getMyOrders(HttpSession session) {
+    public ResponseEntity<?> getMyOrders(@RequestParam(required = false) Long cursor,
+                                         @RequestParam(required = false) Integer size,
+                                         HttpSession session) {
         try {
             User currentUser = (User) session.getAttribute("currentUser");
             if (currentUser == null) {
@@ -81,11 +90,13 @@ public class OrderController {
                         "message", "请先登录"
                 ));
             }
-            List<UserOrder> orders = orderService.getUserOrderHistory(currentUser.getUid());
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "orders", orders
-            ));
+            CursorPage<UserOrder> page = orderService.getUserOrderHistory(currentUser.getUid(), cursor, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("orders", page.getItems());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
@@ -105,9 +116,9 @@ public class OrderController {
                         "message", "请先登录"
                 ));
             }
-            //获取订单和订单项
-            UserOrder order = orderService.getOrderById(orderId);
-            List<OrderGoods> orderGoods = orderService.getOrderDetails(orderId);
+            //获取订单和订单项（订单、订单项、商品一次加载）
+            UserOrder order = orderService.getOrderWithItems(orderId);
+            List<OrderGoods> orderGoods = order.getOrderItems();
             //构建包含完整订单信息的响应
             Map<String, Object> orderResponse = new HashMap<>();
             orderResponse.put("oid", order.getOid());
@@ -117,7 +128,16 @@ public class OrderController {
             orderResponse.put("completeTime", order.getCompleteTime());
             orderResponse.put("status", order.getStatus());
             orderResponse.put("totalAmount", order.getTotalAmount());
-            orderResponse.put("user", order.getUser()); // 如果需要用户信息
+            //只返回收货需要的用户信息，不序列化用户实体（会加载用户的全部订单）
+            User buyer = order.getUser();
+            if (buyer != null) {
+                Map<String, Object> user = new HashMap<>();
+                user.put("uid", buyer.getUid());
+                user.put("nickname", buyer.getNickname());
+                user.put("email", buyer.getEmail());
+                user.put("address", buyer.getAddress());
+                orderResponse.put("user", user);
+            }
             //构建订单项详情
             List<Map<String, Object>> orderDetails = orderGoods.stream().map(og -> {
                 Map<String, Object> detail = new HashMap<>();
@@ -2,6 +2,8 @@ package com.onlineshop.onlineshop.controller;
 
 import com.onlineshop.onlineshop.entity.User;
 import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.service.CursorPage;
+import com.onlineshop.onlineshop.service.DashboardService;
 import com.onlineshop.onlineshop.service.OrderService;
 import com.onlineshop.onlineshop.service.SalesService;
 import jakarta.servlet.http.HttpSession;
@@ -11,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +28,9 @@ public class SellController {
     @Autowired
     private SalesService salesService;
 
+    @Autowired
+    private DashboardService dashboardService;
+
     //权限检查方法
     private boolean checkMerchantPermission(HttpSession session) {
         User currentUser = (User) session.getAttribute("currentUser");
@@ -43,20 +49,18 @@ public class SellController {
     //获取当前商家的订单
     @GetMapping("/orders")
     public ResponseEntity<?> getMerchantOrders(@RequestParam(required = false) String status,
+                                               @RequestParam(required = false) Long cursor,
+                                               @RequestParam(required = false) Integer size,
                                                HttpSession session) {
         try {
             User merchant = getCurrentMerchant(session);
-            List<UserOrder> orders;
-            if (status != null && !status.isEmpty()) {
-                // 需要实现按状态获取商家订单的方法
-                orders = orderService.getMerchantOrdersByStatus(merchant, status);
-            } else {
-                orders = orderService.getMerchantOrders(merchant);
-            }
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "orders", orders
-            ));
+            CursorPage<UserOrder> page = orderService.getMerchantOrders(merchant, status, cursor, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("orders", page.getItems());
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
@@ -71,14 +75,14 @@ public class SellController {
         try {
             User merchant = getCurrentMerchant(session);
             //验证订单是否属于该商家
-            UserOrder order = orderService.getOrderById(orderId);
+            UserOrder order = orderService.getOrderWithItems(orderId);
             if (!orderService.isOrderBelongsToMerchant(order, merchant)) {
                 return ResponseEntity.status(403).body(Map.of(
                         "success", false,
                         "message", "无权访问此订单"
                 ));
             }
-            var orderDetails = orderService.getOrderDetails(orderId);
+            var orderDetails = order.getOrderItems();
             return ResponseEntity.ok(Map.of(
                     "success", true,
                     "orderDetails", orderDetails
@@ -91,6 +95,27 @@ public class SellController {
         }
     }
 
+    //批量发货：请求体为订单ID列表，返回每个订单的处理结果
+    @PostMapping("/orders/ship-batch")
+    public ResponseEntity<?> shipOrders(@RequestBody List<Long> orderIds, HttpSession session) {
+        try {
+            User merchant = getCurrentMerchant(session);
+            List<OrderService.ShipResult> results = orderService.shipOrders(merchant, orderIds);
+            long shipped = results.stream().filter(OrderService.ShipResult::getSuccess).count();
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "已发货 " + shipped + " 个订单",
+                    "shipped", shipped,
+                    "results", results
+            ));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+            ));
+        }
+    }
+
     //发货操作
     @PostMapping("/orders/{orderId}/ship")
     public ResponseEntity<?> shipOrder(@PathVariable Long orderId, HttpSession session) {
@@ -150,27 +175,14 @@ public class SellController {
         }
     }
 
-    //获取商家相关数据
+    //获取商家相关数据（并发查询，部分失败时返回其余数据）
     @GetMapping("/dashboard")
     public ResponseEntity<?> getDashboardData(HttpSession session) {
         try {
             User merchant = getCurrentMerchant(session);
-            // 获取今日销售额
-            Date today = new Date();
-            Date startOfDay = new Date(today.getYear(), today.getMonth(), today.getDate());
-            Date endOfDay = new Date(today.getYear(), today.getMonth(), today.getDate(), 23, 59, 59);
-            Double todaySales = salesService.getMerchantSalesByDateRange(merchant.getUid(), startOfDay, endOfDay);
-            // 获取待发货订单数量
-            Long pendingShipmentCount = orderService.getMerchantOrderCountByStatus(merchant, "已付款");
-            // 获取商品统计
-            var goodsStats = salesService.getMerchantGoodsStats(merchant.getUid());
             return ResponseEntity.ok(Map.of(
                     "success", true,
-                    "dashboard", Map.of(
-                            "todaySales", todaySales != null ? todaySales : 0.0,
-                            "pendingShipmentCount", pendingShipmentCount,
-                            "goodsStats", goodsStats
-                    )
+                    "dashboard", dashboardService.getDashboard(merchant)
             ));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of(
@@ -0,0 +1,33 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+
+//数据补建进度，每个补建任务一行
+//补建范围在首次部署时固定为(0, cutoff_oid]，之后创建的数据由增量更新计入；last_oid为已经处理到的ID，中断后从这里继续
+@Entity
+@Table(name = "backfill_progress")
+public class BackfillProgress {
+    //补建任务名
+    @Id
+    @Column(length = 64)
+    private String name;
+    //补建范围的最大ID（包含）
+    @Column(name = "cutoff_oid", nullable = false)
+    private Long cutoffOid;
+    //已经补建到的ID（包含）
+    @Column(name = "last_oid", nullable = false)
+    private Long lastOid;
+    //是否已经完成
+    @Column(nullable = false)
+    private Boolean completed;
+
+    //getter和setter函数
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public Long getCutoffOid() { return cutoffOid; }
+    public void setCutoffOid(Long cutoffOid) { this.cutoffOid = cutoffOid; }
+    public Long getLastOid() { return lastOid; }
+    public void setLastOid(Long lastOid) { this.lastOid = lastOid; }
+    public Boolean getCompleted() { return completed; }
+    public void setCompleted(Boolean completed) { this.completed = completed; }
+}
@@ -0,0 +1,18 @@
+package com.onlineshop.onlineshop.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//主键从id_block表按号段分配（见IdBlockAllocator），插入前就有主键，Hibernate可以按批插入
+//table和column用于第一次分配时从已有数据的最大主键开始
+@IdGeneratorType(BlockIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface BlockId {
+    String table();
+    String column();
+}
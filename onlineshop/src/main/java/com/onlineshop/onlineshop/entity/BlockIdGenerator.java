@@ -0,0 +1,31 @@
+package com.onlineshop.onlineshop.entity;
+
+import com.onlineshop.onlineshop.repository.IdBlockAllocator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.AnnotationBasedGenerator;
+import org.hibernate.generator.GeneratorCreationContext;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.reflect.Member;
+
+//@BlockId的Hibernate主键生成器，从IdBlockAllocator取主键
+//Hibernate通过Spring的Bean容器创建生成器，每个应用上下文注入自己的分配器
+public class BlockIdGenerator implements IdentifierGenerator, AnnotationBasedGenerator<BlockId> {
+    @Autowired
+    private IdBlockAllocator allocator;
+
+    private String table;
+    private String column;
+
+    @Override
+    public void initialize(BlockId config, Member member, GeneratorCreationContext context) {
+        this.table = config.table();
+        this.column = config.column();
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return allocator.next(table, column);
+    }
+}
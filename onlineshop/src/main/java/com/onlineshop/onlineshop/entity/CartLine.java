@@ -0,0 +1,52 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.*;
+
+//购物车持久化表，每行为用户购物车中的一种商品
+@Entity
+@Table(name = "cart_item")
+@IdClass(CartLine.Key.class)
+public class CartLine {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    @Id
+    @Column(name = "goods_id")
+    private Long goodsId;
+    @Column(nullable = false)
+    private Integer quantity;
+
+    //getter和setter函数
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public Long getGoodsId() { return goodsId; }
+    public void setGoodsId(Long goodsId) { this.goodsId = goodsId; }
+    public Integer getQuantity() { return quantity; }
+    public void setQuantity(Integer quantity) { this.quantity = quantity; }
+
+    //联合主键（用户ID, 商品ID）
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long goodsId;
+
+        public Key() {
+        }
+        public Key(Long userId, Long goodsId) {
+            this.userId = userId;
+            this.goodsId = goodsId;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(goodsId, key.goodsId);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, goodsId);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+
+//购物车版本表，每个用户一行，写回购物车时按版本号比较并加一，多个节点同时写回时后写的一方发现冲突
+@Entity
+@Table(name = "cart_version")
+public class CartVersion {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    //每次写回加1
+    @Column(nullable = false)
+    private Long version;
+
+    //getter和setter函数
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+}
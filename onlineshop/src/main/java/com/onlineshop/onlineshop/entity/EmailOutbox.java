@@ -0,0 +1,68 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.util.*;
+
+//邮件发件箱，业务事务中写入，由后台任务批量发送
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_due", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_email_outbox_claim", columnList = "claim_token")
+})
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    //收件人
+    @Column(name = "to_email", nullable = false)
+    private String toEmail;
+    //邮件标题
+    @Column(nullable = false)
+    private String subject;
+    //邮件正文
+    @Column(columnDefinition = "TEXT")
+    private String body;
+    //发送状态（0为待发送，1为已发送，2为重试次数用尽）
+    @Column(nullable = false)
+    private Integer status = 0;
+    //已尝试发送次数
+    @Column(nullable = false)
+    private Integer attempts = 0;
+    //下次可以发送的时间（发送中的记录为租约到期时间）
+    @Column(name = "next_attempt_at", nullable = false)
+    private Date nextAttemptAt;
+    //领取该记录的发送批次标识
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+    //最近一次失败原因
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+    @Column(name = "sent_at")
+    private Date sentAt;
+
+    //getter和setter函数
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getToEmail() { return toEmail; }
+    public void setToEmail(String toEmail) { this.toEmail = toEmail; }
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+    public Integer getStatus() { return status; }
+    public void setStatus(Integer status) { this.status = status; }
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+    public Date getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Date nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public String getClaimToken() { return claimToken; }
+    public void setClaimToken(String claimToken) { this.claimToken = claimToken; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getSentAt() { return sentAt; }
+    public void setSentAt(Date sentAt) { this.sentAt = sentAt; }
+}
@@ -1,15 +1,20 @@
 package com.onlineshop.onlineshop.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import jakarta.validation.constraints.*;
 import java.util.*;
 
 @Entity
 @Table(name="goods")
+//二级缓存（读写策略），区域配置见SecondLevelCacheConfig
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "goods")
 public class Goods {
-    //主键定义，自动生成商品id
+    //主键定义，按号段分配商品id
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @BlockId(table = "goods", column = "gid")
     private Long gid;
     //商品名
     @NotBlank
@@ -32,6 +37,10 @@ public class Goods {
     @Column(nullable = false)
     @PositiveOrZero
     private Integer sales = 0;
+    //版本号（乐观锁），每次修改加1，缓存按版本号丢弃晚到的旧变更
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
 
     //外键定义
     @ManyToOne
@@ -135,4 +144,10 @@ public class Goods {
     public void setSales(Integer sales) {
         this.sales = sales != null ? sales : 0;
     }
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+
+//主键号段表，每行记录一个表下一个未分配的主键，由IdBlockAllocator按号段领取
+@Entity
+@Table(name = "id_block")
+public class IdBlock {
+    //表名
+    @Id
+    @Column(length = 64)
+    private String name;
+    //下一个未分配的主键
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue;
+
+    //getter和setter函数
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public Long getNextValue() { return nextValue; }
+    public void setNextValue(Long nextValue) { this.nextValue = nextValue; }
+}
@@ -0,0 +1,28 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.util.*;
+
+//后台任务租约，多个节点中只有持有未过期租约的节点执行该任务
+@Entity
+@Table(name = "job_lease")
+public class JobLease {
+    //任务名
+    @Id
+    @Column(length = 64)
+    private String name;
+    //持有租约的节点
+    @Column(nullable = false, length = 64)
+    private String owner;
+    //租约到期时间，持有者需在到期前续约
+    @Column(name = "lease_until", nullable = false)
+    private Date leaseUntil;
+
+    //getter和setter函数
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+    public Date getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(Date leaseUntil) { this.leaseUntil = leaseUntil; }
+}
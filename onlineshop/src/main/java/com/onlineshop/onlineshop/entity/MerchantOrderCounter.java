@@ -0,0 +1,55 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.*;
+
+//商家各状态订单数量计数器，订单状态变化时在同一事务中增量更新
+//按状态码保存（与userorder.status_code相同）；旧版本按中文状态名保存在merchant_order_counter表，
+//新表首次启动时为空，由对账从订单表建立计数，旧表不再写入
+@Entity
+@Table(name = "merchant_order_status_counter")
+@IdClass(MerchantOrderCounter.Key.class)
+public class MerchantOrderCounter {
+    @Id
+    @Column(name = "merchant_id")
+    private Long merchantId;
+    @Id
+    @Column(name = "status_code", columnDefinition = "TINYINT")
+    private Integer statusCode;
+    //包含该商家商品、处于该状态的订单数
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    //getter和setter函数
+    public Long getMerchantId() { return merchantId; }
+    public void setMerchantId(Long merchantId) { this.merchantId = merchantId; }
+    public Integer getStatusCode() { return statusCode; }
+    public void setStatusCode(Integer statusCode) { this.statusCode = statusCode; }
+    public Long getOrderCount() { return orderCount; }
+    public void setOrderCount(Long orderCount) { this.orderCount = orderCount; }
+
+    //联合主键（商家ID, 订单状态码）
+    public static class Key implements Serializable {
+        private Long merchantId;
+        private Integer statusCode;
+
+        public Key() {
+        }
+        public Key(Long merchantId, Integer statusCode) {
+            this.merchantId = merchantId;
+            this.statusCode = statusCode;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(merchantId, key.merchantId) && Objects.equals(statusCode, key.statusCode);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(merchantId, statusCode);
+        }
+    }
+}
@@ -8,10 +8,12 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
-@Table(name="ordergoods")
+@Table(name="ordergoods", indexes = {
+        @Index(name = "idx_ordergoods_goods_order", columnList = "goodsid, orderid")
+})
 public class OrderGoods {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @BlockId(table = "ordergoods", column = "id")
     private Long id;
 
     //外键定义
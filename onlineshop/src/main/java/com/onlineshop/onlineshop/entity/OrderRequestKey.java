@@ -0,0 +1,68 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.*;
+
+//下单请求的幂等键，同一用户同一幂等键在有效期内只创建一个订单
+@Entity
+@Table(name = "order_request_key", indexes = {
+        @Index(name = "idx_order_request_key_expires", columnList = "expires_at")
+})
+@IdClass(OrderRequestKey.Key.class)
+public class OrderRequestKey {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    @Id
+    @Column(name = "request_key", length = 64)
+    private String requestKey;
+    //请求内容（合并后的购物车）的指纹，同一幂等键用于不同请求时拒绝
+    @Column(name = "request_hash", nullable = false)
+    private Long requestHash;
+    //创建的订单ID，下单事务提交前为空
+    @Column(name = "order_id")
+    private Long orderId;
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+    @Column(name = "expires_at", nullable = false)
+    private Date expiresAt;
+
+    //getter和setter函数
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getRequestKey() { return requestKey; }
+    public void setRequestKey(String requestKey) { this.requestKey = requestKey; }
+    public Long getRequestHash() { return requestHash; }
+    public void setRequestHash(Long requestHash) { this.requestHash = requestHash; }
+    public Long getOrderId() { return orderId; }
+    public void setOrderId(Long orderId) { this.orderId = orderId; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public Date getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Date expiresAt) { this.expiresAt = expiresAt; }
+
+    //联合主键（用户ID, 幂等键）
+    public static class Key implements Serializable {
+        private Long userId;
+        private String requestKey;
+
+        public Key() {
+        }
+        public Key(Long userId, String requestKey) {
+            this.userId = userId;
+            this.requestKey = requestKey;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(requestKey, key.requestKey);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, requestKey);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.onlineshop.onlineshop.entity;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+//订单状态及允许的状态转换
+//数据库中保存为一个字节的状态码（从1开始，0表示未迁移的旧数据），接口中仍然使用中文状态名
+public enum OrderStatus {
+    PENDING_PAYMENT(1, "待付款"),
+    PAID(2, "已付款"),
+    SHIPPED(3, "已发货"),
+    COMPLETED(4, "已完成"),
+    CANCELLED(5, "已取消");
+
+    private final int code;
+    private final String label;
+    private Set<OrderStatus> next;
+
+    static {
+        PENDING_PAYMENT.next = EnumSet.of(PAID, CANCELLED);
+        PAID.next = EnumSet.of(SHIPPED, CANCELLED);
+        SHIPPED.next = EnumSet.of(COMPLETED, CANCELLED);
+        COMPLETED.next = EnumSet.noneOf(OrderStatus.class);
+        CANCELLED.next = EnumSet.noneOf(OrderStatus.class);
+    }
+
+    OrderStatus(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    @JsonValue
+    public String getLabel() {
+        return label;
+    }
+
+    //是否允许转换到目标状态
+    public boolean canTransitionTo(OrderStatus target) {
+        return next.contains(target);
+    }
+
+    public static OrderStatus fromCode(int code) {
+        for (OrderStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("未知的订单状态码: " + code);
+    }
+
+    //按中文状态名查找
+    public static OrderStatus fromLabel(String label) {
+        for (OrderStatus status : values()) {
+            if (status.label.equals(label)) {
+                return status;
+            }
+        }
+        throw new RuntimeException("订单状态不合法");
+    }
+}
@@ -0,0 +1,18 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+//订单状态与数据库状态码之间的转换
+@Converter
+public class OrderStatusConverter implements AttributeConverter<OrderStatus, Integer> {
+    @Override
+    public Integer convertToDatabaseColumn(OrderStatus status) {
+        return status != null ? status.getCode() : null;
+    }
+
+    @Override
+    public OrderStatus convertToEntityAttribute(Integer code) {
+        return code != null ? OrderStatus.fromCode(code) : null;
+    }
+}
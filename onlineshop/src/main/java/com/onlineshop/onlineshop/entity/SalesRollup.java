@@ -0,0 +1,86 @@
+package com.onlineshop.onlineshop.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.*;
+
+//销售汇总表，按天和按小时预先聚合销量、销售额和订单数
+//goods_id为0的行是商家汇总，其余行是商品汇总
+@Entity
+@Table(name = "sales_rollup", indexes = {
+        @Index(name = "idx_sales_rollup_bucket", columnList = "granularity, bucket_start")
+})
+@IdClass(SalesRollup.Key.class)
+public class SalesRollup {
+    public static final String DAILY = "D";
+    public static final String HOURLY = "H";
+
+    //汇总粒度（D为按天，H为按小时）
+    @Id
+    @Column(length = 1)
+    private String granularity;
+    @Id
+    @Column(name = "merchant_id")
+    private Long merchantId;
+    //时间段开始时间（服务器时区的整天或整小时）
+    @Id
+    @Column(name = "bucket_start")
+    private Date bucketStart;
+    @Id
+    @Column(name = "goods_id")
+    private Long goodsId;
+    //销售数量
+    @Column(nullable = false)
+    private Long quantity = 0L;
+    //销售额（分）
+    @Column(name = "revenue_cents", nullable = false)
+    private Long revenueCents = 0L;
+    //订单数
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    //getter和setter函数
+    public String getGranularity() { return granularity; }
+    public void setGranularity(String granularity) { this.granularity = granularity; }
+    public Long getMerchantId() { return merchantId; }
+    public void setMerchantId(Long merchantId) { this.merchantId = merchantId; }
+    public Date getBucketStart() { return bucketStart; }
+    public void setBucketStart(Date bucketStart) { this.bucketStart = bucketStart; }
+    public Long getGoodsId() { return goodsId; }
+    public void setGoodsId(Long goodsId) { this.goodsId = goodsId; }
+    public Long getQuantity() { return quantity; }
+    public void setQuantity(Long quantity) { this.quantity = quantity; }
+    public Long getRevenueCents() { return revenueCents; }
+    public void setRevenueCents(Long revenueCents) { this.revenueCents = revenueCents; }
+    public Long getOrderCount() { return orderCount; }
+    public void setOrderCount(Long orderCount) { this.orderCount = orderCount; }
+
+    //联合主键（粒度, 商家ID, 时间段, 商品ID）
+    public static class Key implements Serializable {
+        private String granularity;
+        private Long merchantId;
+        private Date bucketStart;
+        private Long goodsId;
+
+        public Key() {
+        }
+        public Key(String granularity, Long merchantId, Date bucketStart, Long goodsId) {
+            this.granularity = granularity;
+            this.merchantId = merchantId;
+            this.bucketStart = bucketStart;
+            this.goodsId = goodsId;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(granularity, key.granularity) && Objects.equals(merchantId, key.merchantId)
+                    && Objects.equals(bucketStart, key.bucketStart) && Objects.equals(goodsId, key.goodsId);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, merchantId, bucketStart, goodsId);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.onlineshop.onlineshop.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import jakarta.validation.constraints.*;
 import java.util.*;
 import com.fasterxml.jackson.annotation.JsonBackReference;
@@ -9,6 +11,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
 @Table(name="user")
+//二级缓存（读写策略），区域配置见SecondLevelCacheConfig
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
 public class User {
     //主键定义
     @Id
@@ -2,7 +2,6 @@ package com.onlineshop.onlineshop.entity;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
-import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.PositiveOrZero;
 
 import java.util.*;
@@ -11,10 +10,13 @@ import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @Entity
-@Table(name="userorder")
+@Table(name="userorder", indexes = {
+        @Index(name = "idx_userorder_order_date", columnList = "order_date"),
+        @Index(name = "idx_userorder_status_code", columnList = "status_code")
+})
 public class UserOrder {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @BlockId(table = "userorder", column = "oid")
     private Long oid;
 
     //外键定义
@@ -44,9 +46,14 @@ public class UserOrder {
     @Column(name = "completetime")
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss", timezone = "GMT+8")
     private Date completeTime;// 完成时间
-    //订单状态
-    @Pattern(regexp = "待付款|已付款|已发货|已完成|已取消", message = "订单状态不合法")
-    private String status;
+    //订单状态（保存为状态码）
+    @Convert(converter = OrderStatusConverter.class)
+    @Column(name = "status_code", nullable = false, columnDefinition = "TINYINT")
+    private OrderStatus status;
+    //乐观锁版本号，状态转换语句同时加一
+    @Version
+    @Column(nullable = false)
+    private Long version;
     //订单总价
     @PositiveOrZero
     private Double totalAmount;
@@ -70,15 +77,18 @@ public class UserOrder {
     public Date getOrderDate() {
         return orderDate;
     }
-    public void setStatus(String status) {
+    public void setStatus(OrderStatus status) {
         this.status=status;
     }
     public void setTotalAmount(Double totalAmount) {
         this.totalAmount = totalAmount;
     }
-    public String getStatus() {
+    public OrderStatus getStatus() {
         return status;
     }
+    public Long getVersion() {
+        return version;
+    }
     public Long getOid() {
         return oid;
     }
@@ -0,0 +1,35 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.BackfillProgress;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.*;
+
+public interface BackfillProgressRepository extends JpaRepository<BackfillProgress, String> {
+    //首次部署时创建补建进度，已存在时不插入并返回0
+    @Modifying
+    //声明只影响backfill_progress表，否则Hibernate执行原生更新后会清空全部二级缓存
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "backfill_progress"))
+    @Query(value = "INSERT IGNORE INTO backfill_progress (name, cutoff_oid, last_oid, completed) " +
+            "VALUES (:name, :cutoffOid, 0, FALSE)", nativeQuery = true)
+    int create(@Param("name") String name, @Param("cutoffOid") Long cutoffOid);
+    //是否已经完成（不加锁，完成后不会再变回未完成）
+    @Query("SELECT p.completed FROM BackfillProgress p WHERE p.name = :name")
+    Optional<Boolean> findCompletedByName(@Param("name") String name);
+    //补建一批时加排他锁读取进度
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM BackfillProgress p WHERE p.name = :name")
+    Optional<BackfillProgress> lockByName(@Param("name") String name);
+    //取消订单时加共享锁读取进度，等待正在执行的补建批次提交
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT p FROM BackfillProgress p WHERE p.name = :name")
+    Optional<BackfillProgress> lockSharedByName(@Param("name") String name);
+}
@@ -0,0 +1,26 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.EmailOutbox;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.*;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long>, EmailOutboxRepositoryCustom {
+    //查找到期的待发送邮件ID
+    @Query("SELECT e.id FROM EmailOutbox e WHERE e.status = 0 AND e.nextAttemptAt <= :now ORDER BY e.id")
+    List<Long> findDueIds(@Param("now") Date now, Limit limit);
+    //领取待发送邮件：设置批次标识并把下次发送时间推迟到租约结束，已被其他节点领取的记录不会更新
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.claimToken = :token, e.nextAttemptAt = :leaseUntil " +
+            "WHERE e.id IN :ids AND e.status = 0 AND e.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token,
+              @Param("now") Date now, @Param("leaseUntil") Date leaseUntil);
+    //查找某批次领取的邮件
+    List<EmailOutbox> findByClaimToken(String claimToken);
+    //统计某状态的邮件数量
+    long countByStatus(Integer status);
+}
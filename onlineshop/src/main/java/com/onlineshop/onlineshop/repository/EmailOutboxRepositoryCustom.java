@@ -0,0 +1,11 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.EmailOutbox;
+
+import java.util.List;
+
+//发件箱的批量操作（JDBC实现）
+public interface EmailOutboxRepositoryCustom {
+    //用一个JDBC批次写入多封待发送邮件
+    void batchInsert(List<EmailOutbox> emails);
+}
@@ -0,0 +1,30 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.EmailOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+//EmailOutboxRepositoryCustom的实现，与JPA共用同一个事务连接
+public class EmailOutboxRepositoryImpl implements EmailOutboxRepositoryCustom {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void batchInsert(List<EmailOutbox> emails) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO email_outbox (to_email, subject, body, status, attempts, next_attempt_at, created_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                emails, emails.size(), (ps, email) -> {
+                    ps.setString(1, email.getToEmail());
+                    ps.setString(2, email.getSubject());
+                    ps.setString(3, email.getBody());
+                    ps.setInt(4, email.getStatus());
+                    ps.setInt(5, email.getAttempts());
+                    ps.setTimestamp(6, new Timestamp(email.getNextAttemptAt().getTime()));
+                    ps.setTimestamp(7, new Timestamp(email.getCreatedAt().getTime()));
+                });
+    }
+}
@@ -1,20 +1,27 @@
 package com.onlineshop.onlineshop.repository;
 
 import com.onlineshop.onlineshop.entity.Goods;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.*;
 
 @Repository
-public interface GoodsRepository extends JpaRepository<Goods, Long> {
+public interface GoodsRepository extends JpaRepository<Goods, Long>, GoodsRepositoryCustom {
     //所有商品
     List<Goods> findAllByOrderByName();
 
     //查找商品
     //根据商家查找商品
     List<Goods> findByMerchantUid(Long merchantId);
+    //根据商家查找商品（按商品ID游标分页）
+    List<Goods> findByMerchantUidAndGidGreaterThanOrderByGidAsc(Long merchantId, Long gid, Limit limit);
     //根据商家和商品名称查找
     List<Goods> findByMerchantUidAndNameContainingIgnoreCase(Long merchantId, String name);
     //查找商家有库存的商品
@@ -23,12 +30,12 @@ public interface GoodsRepository extends JpaRepository<Goods, Long> {
     List<Goods> findByMerchantUidAndStatus(Long merchantId, Integer status);
     //根据状态和库存查找
     List<Goods> findByStatusAndRemainingGreaterThan(Integer status, Integer remaining);
-    //按价格范围查找（只包含上架商品）
-    @Query("SELECT g FROM Goods g WHERE g.status = 1 AND g.price BETWEEN :minPrice AND :maxPrice")
-    List<Goods> findByPriceBetweenAndStatus(@Param("minPrice") Double minPrice, @Param("maxPrice") Double maxPrice);
-    //模糊查询（只包含上架商品）
-    @Query("SELECT g FROM Goods g WHERE g.status = 1 AND g.name LIKE %:name%")
-    List<Goods> findByNameContainingIgnoreCaseAndStatus(@Param("name") String name);
+    //上架商品的价格、库存和版本号，用于建立价格索引
+    @Query("SELECT g.gid, g.price, g.remaining, g.version FROM Goods g WHERE g.status = 1")
+    List<Object[]> findListedGoodsPrice();
+    //上架商品的名称、描述和版本号，用于建立搜索索引
+    @Query("SELECT g.gid, g.name, g.description, g.version FROM Goods g WHERE g.status = 1")
+    List<Object[]> findListedGoodsText();
     List<Goods> findByDescriptionContainingIgnoreCase(String description);
     //按销量排序查询
     List<Goods> findByMerchantUidOrderBySalesDesc(Long merchantId);
@@ -40,21 +47,26 @@ public interface GoodsRepository extends JpaRepository<Goods, Long> {
     List<Goods> findAvailableGoods();
 
     //统计相关函数
-    //统计商家的商品数量
-    Long countByMerchantUid(Long merchantId);
-    //获取商家的商品总库存
-    @Query("SELECT COALESCE(SUM(g.remaining), 0) FROM Goods g WHERE g.merchant.uid = :merchantId")
-    Integer getTotalStockByMerchantId(@Param("merchantId") Long merchantId);
-    //获取商家的商品总价值
-    @Query("SELECT COALESCE(SUM(g.remaining * g.price), 0) FROM Goods g WHERE g.merchant.uid = :merchantId")
-    Double getTotalInventoryValueByMerchantId(@Param("merchantId") Long merchantId);
+    //一次扫描得到商家的商品数、总库存、库存总价值、总销量和总销售额
+    @Query("SELECT COUNT(g), COALESCE(SUM(g.remaining), 0), COALESCE(SUM(g.remaining * g.price), 0), " +
+            "COALESCE(SUM(g.sales), 0), COALESCE(SUM(g.sales * g.price), 0) " +
+            "FROM Goods g WHERE g.merchant.uid = :merchantId")
+    List<Object[]> getMerchantGoodsStats(@Param("merchantId") Long merchantId);
 
-    //获取总销量
-    @Query("SELECT COALESCE(SUM(g.sales), 0) FROM Goods g WHERE g.merchant.uid = :merchantId")
-    Integer getTotalSalesByMerchantId(@Param("merchantId") Long merchantId);
-    //获取总销售额
-    @Query("SELECT COALESCE(SUM(g.sales * g.price), 0) FROM Goods g WHERE g.merchant.uid = :merchantId")
-    Double getTotalSalesValueByMerchantId(@Param("merchantId") Long merchantId);
+    //商品名称（商品ID, 名称）
+    @Query("SELECT g.gid, g.name FROM Goods g WHERE g.gid IN :ids")
+    List<Object[]> findNamesByIds(@Param("ids") Collection<Long> ids);
+    //批量操作的归属校验：商家拥有的商品（只读，不做脏检查）
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT g FROM Goods g JOIN FETCH g.merchant WHERE g.merchant.uid = :merchantId AND g.gid IN :gids")
+    List<Goods> findOwnedByIds(@Param("merchantId") Long merchantId, @Param("gids") Collection<Long> gids);
+    //按ID加载商品和商家，不读二级缓存（事务提交后修补目录缓存时，缓存中可能还是提交前的数据）
+    @QueryHints(@QueryHint(name = SpecHints.HINT_SPEC_CACHE_RETRIEVE_MODE, value = "BYPASS"))
+    @Query("SELECT g FROM Goods g LEFT JOIN FETCH g.merchant WHERE g.gid = :gid")
+    Optional<Goods> findUncachedById(@Param("gid") Long gid);
+    //有商品的商家ID
+    @Query("SELECT DISTINCT g.merchant.uid FROM Goods g")
+    List<Long> findMerchantIds();
 
     //判断函数
     //检查商家是否有该商品
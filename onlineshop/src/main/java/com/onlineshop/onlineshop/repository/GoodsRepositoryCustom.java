@@ -0,0 +1,29 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.Goods;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+//商品库存、价格、上下架状态和导入的批量操作（JDBC实现，更新后从二级缓存中移除相关商品）
+//所有更新语句都把版本号加1，与实体的乐观锁一致：加载后被这些语句修改过的商品保存时会失败，不会覆盖新值
+public interface GoodsRepositoryCustom {
+    //单条条件更新语句扣减一个商品的库存并增加销量，库存不足或商品不存在时不更新，返回受影响行数（0或1）
+    int decreaseStock(Long gid, int quantity);
+    //一条条件更新语句扣减多个商品的库存并增加销量（商品ID -> 数量）
+    //只有库存充足的行会被更新，返回受影响行数，小于商品数时调用方应回滚事务
+    int reserveStock(Map<Long, Integer> quantities);
+    //一条更新语句恢复多个商品的库存（商品ID -> 数量），不改变销量，返回受影响行数
+    int restoreStock(Map<Long, Integer> quantities);
+    //一条更新语句设置商家多个商品的价格（商品ID -> 价格），不属于该商家的商品不更新，返回受影响行数
+    int updatePrices(Long merchantId, Map<Long, Double> prices);
+    //一条更新语句设置商家多个商品的库存（商品ID -> 库存），不属于该商家的商品不更新，返回受影响行数
+    int updateRemaining(Long merchantId, Map<Long, Integer> remaining);
+    //一条更新语句设置商家多个商品的上下架状态（商品ID -> 状态），不属于该商家的商品不更新，返回受影响行数
+    int updateStatus(Long merchantId, Map<Long, Integer> statuses);
+    //商品的当前版本号（商品ID -> 版本号），用于给批量更新和库存变化的事件标记版本
+    Map<Long, Long> findVersions(Collection<Long> gids);
+    //JDBC批量插入商家的新商品（只写入基本字段，商品ID由IdBlockAllocator分配并回写）
+    void insertGoods(Long merchantId, List<Goods> goods);
+}
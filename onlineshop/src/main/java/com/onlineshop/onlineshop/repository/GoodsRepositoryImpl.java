@@ -0,0 +1,187 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//GoodsRepositoryCustom的实现，与JPA共用同一个事务连接
+public class GoodsRepositoryImpl implements GoodsRepositoryCustom {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Override
+    public int decreaseStock(Long gid, int quantity) {
+        int updated = jdbcTemplate.update("UPDATE goods SET remaining = remaining - ?, sales = sales + ?, "
+                + "version = version + 1 WHERE gid = ? AND remaining >= ?", quantity, quantity, gid, quantity);
+        evictFromSecondLevelCache(List.of(gid));
+        return updated;
+    }
+
+    @Override
+    public int reserveStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return 0;
+        }
+        //UPDATE goods SET remaining = remaining - CASE gid WHEN ? THEN ? ... END, sales = sales + CASE ... END,
+        //version = version + 1 WHERE gid IN (...) AND remaining >= CASE ... END
+        StringBuilder caseSql = new StringBuilder("CASE gid");
+        StringBuilder inSql = new StringBuilder();
+        List<Object> caseArgs = new ArrayList<>(quantities.size() * 2);
+        List<Object> inArgs = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            caseSql.append(" WHEN ? THEN ?");
+            caseArgs.add(entry.getKey());
+            caseArgs.add(entry.getValue());
+            inSql.append(inSql.length() == 0 ? "?" : ", ?");
+            inArgs.add(entry.getKey());
+        }
+        caseSql.append(" END");
+        String sql = "UPDATE goods SET remaining = remaining - " + caseSql + ", sales = sales + " + caseSql
+                + ", version = version + 1 WHERE gid IN (" + inSql + ") AND remaining >= " + caseSql;
+        List<Object> args = new ArrayList<>(caseArgs.size() * 3 + inArgs.size());
+        args.addAll(caseArgs);
+        args.addAll(caseArgs);
+        args.addAll(inArgs);
+        args.addAll(caseArgs);
+        int updated = jdbcTemplate.update(sql, args.toArray());
+        evictFromSecondLevelCache(quantities.keySet());
+        return updated;
+    }
+
+    @Override
+    public int restoreStock(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return 0;
+        }
+        //UPDATE goods SET remaining = remaining + CASE gid WHEN ? THEN ? ... END, version = version + 1 WHERE gid IN (...)
+        StringBuilder caseSql = new StringBuilder("CASE gid");
+        StringBuilder inSql = new StringBuilder();
+        List<Object> args = new ArrayList<>(quantities.size() * 3);
+        List<Object> inArgs = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+            caseSql.append(" WHEN ? THEN ?");
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+            inSql.append(inSql.length() == 0 ? "?" : ", ?");
+            inArgs.add(entry.getKey());
+        }
+        caseSql.append(" END");
+        args.addAll(inArgs);
+        int updated = jdbcTemplate.update("UPDATE goods SET remaining = remaining + " + caseSql
+                + ", version = version + 1 WHERE gid IN (" + inSql + ")", args.toArray());
+        evictFromSecondLevelCache(quantities.keySet());
+        return updated;
+    }
+
+    @Override
+    public int updatePrices(Long merchantId, Map<Long, Double> prices) {
+        return updateColumn("price", merchantId, prices);
+    }
+
+    @Override
+    public int updateRemaining(Long merchantId, Map<Long, Integer> remaining) {
+        return updateColumn("remaining", merchantId, remaining);
+    }
+
+    @Override
+    public int updateStatus(Long merchantId, Map<Long, Integer> statuses) {
+        return updateColumn("status", merchantId, statuses);
+    }
+
+    @Override
+    public void insertGoods(Long merchantId, List<Goods> goods) {
+        for (Goods item : goods) {
+            item.setGid(idBlockAllocator.next("goods", "gid"));
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO goods (gid, name, description, price, remaining, image_url, status, sales, merchant_id, version) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)",
+                goods, goods.size(), (ps, item) -> {
+                    ps.setLong(1, item.getGid());
+                    ps.setString(2, item.getName());
+                    ps.setString(3, item.getDescription());
+                    ps.setDouble(4, item.getPrice());
+                    ps.setInt(5, item.getRemaining());
+                    ps.setString(6, item.getImageUrl());
+                    ps.setInt(7, item.getStatus());
+                    ps.setInt(8, item.getSales());
+                    ps.setLong(9, merchantId);
+                });
+    }
+
+    @Override
+    public Map<Long, Long> findVersions(Collection<Long> gids) {
+        Map<Long, Long> versions = new HashMap<>();
+        if (gids.isEmpty()) {
+            return versions;
+        }
+        StringBuilder inSql = new StringBuilder();
+        for (int i = 0; i < gids.size(); i++) {
+            inSql.append(i == 0 ? "?" : ", ?");
+        }
+        jdbcTemplate.query("SELECT gid, version FROM goods WHERE gid IN (" + inSql + ")",
+                (RowCallbackHandler) rs -> versions.put(rs.getLong(1), rs.getLong(2)),
+                gids.toArray());
+        return versions;
+    }
+
+    //UPDATE goods SET column = CASE gid WHEN ? THEN ? ... END WHERE merchant_id = ? AND gid IN (...)
+    private int updateColumn(String column, Long merchantId, Map<Long, ?> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        StringBuilder caseSql = new StringBuilder("CASE gid");
+        StringBuilder inSql = new StringBuilder();
+        List<Object> args = new ArrayList<>(values.size() * 3 + 1);
+        List<Object> inArgs = new ArrayList<>(values.size());
+        for (Map.Entry<Long, ?> entry : new TreeMap<>(values).entrySet()) {
+            caseSql.append(" WHEN ? THEN ?");
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+            inSql.append(inSql.length() == 0 ? "?" : ", ?");
+            inArgs.add(entry.getKey());
+        }
+        caseSql.append(" END");
+        args.add(merchantId);
+        args.addAll(inArgs);
+        int updated = jdbcTemplate.update("UPDATE goods SET " + column + " = " + caseSql + ", version = version + 1"
+                + " WHERE merchant_id = ? AND gid IN (" + inSql + ")", args.toArray());
+        evictFromSecondLevelCache(values.keySet());
+        return updated;
+    }
+
+    //JDBC更新不经过Hibernate，需要从二级缓存中移除这些商品
+    //事务结束后再移除一次：提交前其他事务读到的仍是旧数据，可能已经重新放入缓存
+    private void evictFromSecondLevelCache(Collection<Long> gids) {
+        jakarta.persistence.Cache cache = entityManagerFactory.getCache();
+        List<Long> ids = new ArrayList<>(gids);
+        for (Long gid : ids) {
+            cache.evict(Goods.class, gid);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    for (Long gid : ids) {
+                        cache.evict(Goods.class, gid);
+                    }
+                }
+            });
+        }
+    }
+}
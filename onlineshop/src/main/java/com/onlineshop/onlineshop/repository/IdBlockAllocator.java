@@ -0,0 +1,157 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//主键号段分配器：每个表在id_block表中有一行next_value，节点每次领取blockSize个连续主键放在内存中
+//号段内的分配只有一次原子自增，号段用完时才访问数据库；节点重启时未用完的号段作废，主键会有空洞但不会重复
+//领取号段使用单独的小连接池并立即提交：调用方通常在事务中并占用着主连接池的连接，
+//如果从主连接池再取连接，连接池被占满时会互相等待
+@Component
+public class IdBlockAllocator {
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    //每次领取的主键数量和号段连接池大小
+    @Value("${id-block.size:100}")
+    private int blockSize;
+    @Value("${id-block.pool-size:2}")
+    private int poolSize;
+
+    //表名 -> 当前号段
+    private final Map<String, Range> ranges = new ConcurrentHashMap<>();
+    //表名 -> 领取号段的锁，同一个表同时只有一个线程访问数据库
+    private final Map<String, Object> refillLocks = new ConcurrentHashMap<>();
+    private volatile HikariDataSource dataSource;
+
+    //分配一个主键（column为该表的主键列，只在第一次领取号段时用于确定起始值）
+    public long next(String table, String column) {
+        while (true) {
+            Range range = ranges.get(table);
+            if (range != null) {
+                long id = range.next.getAndIncrement();
+                if (id < range.end) {
+                    return id;
+                }
+            }
+            refill(table, column, range);
+        }
+    }
+
+    //号段用完时领取新号段，其他线程已经换过号段时直接返回
+    private void refill(String table, String column, Range exhausted) {
+        synchronized (refillLocks.computeIfAbsent(table, key -> new Object())) {
+            if (ranges.get(table) != exhausted) {
+                return;
+            }
+            long start = fetchBlock(table, column);
+            ranges.put(table, new Range(start, start + blockSize));
+        }
+    }
+
+    //在单独的事务中把next_value增加blockSize，返回领到的第一个主键
+    private long fetchBlock(String table, String column) {
+        try (Connection connection = dataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (int attempt = 0; ; attempt++) {
+                    Long current = null;
+                    try (PreparedStatement select = connection.prepareStatement(
+                            "SELECT next_value FROM id_block WHERE name = ? FOR UPDATE")) {
+                        select.setString(1, table);
+                        try (ResultSet rs = select.executeQuery()) {
+                            if (rs.next()) {
+                                current = rs.getLong(1);
+                            }
+                        }
+                    }
+                    if (current != null) {
+                        try (PreparedStatement update = connection.prepareStatement(
+                                "UPDATE id_block SET next_value = ? WHERE name = ?")) {
+                            update.setLong(1, current + blockSize);
+                            update.setString(2, table);
+                            update.executeUpdate();
+                        }
+                        connection.commit();
+                        return current;
+                    }
+                    //第一次领取：从已有数据（包括之前自增主键生成的数据）的最大主键之后开始
+                    long start;
+                    try (Statement statement = connection.createStatement();
+                         ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) + 1 FROM " + table)) {
+                        rs.next();
+                        start = rs.getLong(1);
+                    }
+                    try (PreparedStatement insert = connection.prepareStatement(
+                            "INSERT INTO id_block (name, next_value) VALUES (?, ?)")) {
+                        insert.setString(1, table);
+                        insert.setLong(2, start + blockSize);
+                        insert.executeUpdate();
+                        connection.commit();
+                        return start;
+                    } catch (SQLException e) {
+                        //其他节点同时插入了这一行，重新读取
+                        connection.rollback();
+                        if (attempt >= 2) {
+                            throw e;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("领取主键号段失败: " + table + " - " + e.getMessage());
+        }
+    }
+
+    //第一次领取号段时创建连接池
+    private HikariDataSource dataSource() {
+        HikariDataSource current = dataSource;
+        if (current == null) {
+            synchronized (this) {
+                current = dataSource;
+                if (current == null) {
+                    current = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+                    current.setPoolName("id-block");
+                    current.setMaximumPoolSize(poolSize);
+                    current.setMinimumIdle(0);
+                    dataSource = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @PreDestroy
+    public void close() {
+        HikariDataSource current = dataSource;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    //内存中的号段[next, end)
+    private static class Range {
+        private final AtomicLong next;
+        private final long end;
+        Range(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.JobLease;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.*;
+
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+    //续约或接管已过期的租约，返回受影响行数
+    @Modifying
+    @Query("UPDATE JobLease l SET l.owner = :owner, l.leaseUntil = :leaseUntil " +
+            "WHERE l.name = :name AND (l.owner = :owner OR l.leaseUntil < :now)")
+    int renew(@Param("name") String name, @Param("owner") String owner,
+              @Param("now") Date now, @Param("leaseUntil") Date leaseUntil);
+    //首次创建租约，已存在时不插入并返回0
+    @Modifying
+    //声明只影响job_lease表，否则Hibernate执行原生更新后会清空全部二级缓存
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "job_lease"))
+    @Query(value = "INSERT IGNORE INTO job_lease (name, owner, lease_until) VALUES (:name, :owner, :leaseUntil)",
+            nativeQuery = true)
+    int create(@Param("name") String name, @Param("owner") String owner, @Param("leaseUntil") Date leaseUntil);
+    //主动释放租约
+    @Modifying
+    @Query("UPDATE JobLease l SET l.leaseUntil = :now WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Date now);
+}
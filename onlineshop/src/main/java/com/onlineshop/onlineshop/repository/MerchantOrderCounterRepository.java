@@ -0,0 +1,37 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.MerchantOrderCounter;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.*;
+
+public interface MerchantOrderCounterRepository extends JpaRepository<MerchantOrderCounter, MerchantOrderCounter.Key> {
+    //计数器增加delta（可为负数），记录不存在时插入
+    @Modifying
+    //声明只影响merchant_order_status_counter表，否则Hibernate执行原生更新后会清空全部二级缓存
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "merchant_order_status_counter"))
+    @Query(value = "INSERT INTO merchant_order_status_counter (merchant_id, status_code, order_count) " +
+            "VALUES (:merchantId, :statusCode, :delta) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + :delta", nativeQuery = true)
+    int addCount(@Param("merchantId") Long merchantId, @Param("statusCode") int statusCode, @Param("delta") long delta);
+    //读取商家某状态的订单数
+    @Query("SELECT c.orderCount FROM MerchantOrderCounter c WHERE c.merchantId = :merchantId AND c.statusCode = :statusCode")
+    Long findCount(@Param("merchantId") Long merchantId, @Param("statusCode") Integer statusCode);
+    //读取商家全部状态的计数器
+    List<MerchantOrderCounter> findByMerchantId(Long merchantId);
+    //锁定商家的计数器，对账期间阻塞该商家的计数更新
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM MerchantOrderCounter c WHERE c.merchantId = :merchantId")
+    List<MerchantOrderCounter> lockByMerchantId(@Param("merchantId") Long merchantId);
+    //已有计数器的商家ID
+    @Query("SELECT DISTINCT c.merchantId FROM MerchantOrderCounter c")
+    List<Long> findMerchantIds();
+}
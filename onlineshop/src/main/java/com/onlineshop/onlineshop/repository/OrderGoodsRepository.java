@@ -8,7 +8,7 @@ import org.springframework.data.repository.query.Param;
 
 import java.util.*;
 
-public interface OrderGoodsRepository extends JpaRepository<OrderGoods, Long> {
+public interface OrderGoodsRepository extends JpaRepository<OrderGoods, Long>, OrderGoodsRepositoryCustom {
     //根据订单查找订单项
     List<OrderGoods> findByUserorder(UserOrder userorder);
     //获取热销商品
@@ -40,4 +40,20 @@ public interface OrderGoodsRepository extends JpaRepository<OrderGoods, Long> {
     //根据商家ID查找订单项
     @Query("SELECT og FROM OrderGoods og WHERE og.goods.merchant.uid = :merchantId")
     List<OrderGoods> findByMerchantId(@Param("merchantId") Long merchantId);
-}
\ No newline at end of file
+    //判断订单中是否包含某商家的商品
+    boolean existsByUserorderOidAndGoodsMerchantUid(Long orderId, Long merchantId);
+    //订单涉及的商家ID
+    @Query("SELECT DISTINCT og.goods.merchant.uid FROM OrderGoods og WHERE og.userorder.oid = :orderId")
+    List<Long> findMerchantIdsByOrderId(@Param("orderId") Long orderId);
+    //订单涉及的商家（订单ID, 商家ID），用于批量校验订单归属
+    @Query("SELECT DISTINCT og.userorder.oid, og.goods.merchant.uid FROM OrderGoods og WHERE og.userorder.oid IN :orderIds")
+    List<Object[]> findOrderMerchantPairs(@Param("orderIds") Collection<Long> orderIds);
+    //订单项明细（订单ID, 下单时间, 商家ID, 商品ID, 数量, 单价），用于补建销售汇总
+    @Query("SELECT og.userorder.oid, og.userorder.orderDate, og.goods.merchant.uid, og.goods.gid, " +
+            "og.quantity, og.priceAtPurchase FROM OrderGoods og WHERE og.userorder.oid IN :orderIds")
+    List<Object[]> findLineFactsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+    //多个订单的订单项，同时加载商品、商家和订单
+    @Query("SELECT og FROM OrderGoods og JOIN FETCH og.goods g JOIN FETCH g.merchant JOIN FETCH og.userorder " +
+            "WHERE og.userorder.oid IN :orderIds")
+    List<OrderGoods> findWithGoodsByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+}
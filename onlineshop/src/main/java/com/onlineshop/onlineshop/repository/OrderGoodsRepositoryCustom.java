@@ -0,0 +1,11 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.OrderGoods;
+
+import java.util.List;
+
+//订单项的批量操作（JDBC实现）
+public interface OrderGoodsRepositoryCustom {
+    //用一个JDBC批次插入订单的所有订单项，订单需已写入数据库；订单项的主键由IdBlockAllocator分配并回写
+    void batchInsert(Long orderId, List<OrderGoods> items);
+}
@@ -0,0 +1,31 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.OrderGoods;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+//OrderGoodsRepositoryCustom的实现，与JPA共用同一个事务连接
+public class OrderGoodsRepositoryImpl implements OrderGoodsRepositoryCustom {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+
+    @Override
+    public void batchInsert(Long orderId, List<OrderGoods> items) {
+        for (OrderGoods item : items) {
+            item.setId(idBlockAllocator.next("ordergoods", "id"));
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO ordergoods (id, orderid, goodsid, quantity, price_at_purchase) VALUES (?, ?, ?, ?, ?)",
+                items, items.size(), (ps, item) -> {
+                    ps.setLong(1, item.getId());
+                    ps.setLong(2, orderId);
+                    ps.setLong(3, item.getGoods().getGid());
+                    ps.setInt(4, item.getQuantity());
+                    ps.setDouble(5, item.getPriceAtPurchase());
+                });
+    }
+}
@@ -0,0 +1,36 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.OrderRequestKey;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.*;
+
+public interface OrderRequestKeyRepository extends JpaRepository<OrderRequestKey, OrderRequestKey.Key> {
+    //占用幂等键，已存在时不插入并返回0
+    //另一个事务持有同一幂等键的未提交记录时，插入会等待该事务结束
+    @Modifying
+    //声明只影响order_request_key表，否则Hibernate执行原生更新后会清空全部二级缓存
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "order_request_key"))
+    @Query(value = "INSERT IGNORE INTO order_request_key (user_id, request_key, request_hash, created_at, expires_at) " +
+            "VALUES (:userId, :requestKey, :requestHash, :now, :expiresAt)", nativeQuery = true)
+    int claim(@Param("userId") Long userId, @Param("requestKey") String requestKey,
+              @Param("requestHash") Long requestHash, @Param("now") Date now, @Param("expiresAt") Date expiresAt);
+    //记录幂等键创建的订单
+    @Modifying
+    @Query("UPDATE OrderRequestKey k SET k.orderId = :orderId WHERE k.userId = :userId AND k.requestKey = :requestKey")
+    int setOrderId(@Param("userId") Long userId, @Param("requestKey") String requestKey, @Param("orderId") Long orderId);
+    //删除某个已过期的幂等键，使其可以重新使用
+    @Modifying
+    @Query("DELETE FROM OrderRequestKey k WHERE k.userId = :userId AND k.requestKey = :requestKey AND k.expiresAt < :now")
+    int deleteExpiredKey(@Param("userId") Long userId, @Param("requestKey") String requestKey, @Param("now") Date now);
+    //清理全部过期的幂等键
+    @Modifying
+    @Query("DELETE FROM OrderRequestKey k WHERE k.expiresAt < :now")
+    int deleteExpired(@Param("now") Date now);
+}
@@ -0,0 +1,39 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.SalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.*;
+
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, SalesRollup.Key>, SalesRollupRepositoryCustom {
+    //商家在时间段内的销量、销售额（分）和订单数
+    @Query("SELECT COALESCE(SUM(r.quantity), 0), COALESCE(SUM(r.revenueCents), 0), COALESCE(SUM(r.orderCount), 0) " +
+            "FROM SalesRollup r WHERE r.granularity = :granularity AND r.merchantId = :merchantId " +
+            "AND r.goodsId = 0 AND r.bucketStart BETWEEN :from AND :to")
+    List<Object[]> sumTotals(@Param("granularity") String granularity, @Param("merchantId") Long merchantId,
+                             @Param("from") Date from, @Param("to") Date to);
+    //全部商家在时间段内的销量、销售额（分）和订单数之和
+    @Query("SELECT COALESCE(SUM(r.quantity), 0), COALESCE(SUM(r.revenueCents), 0), COALESCE(SUM(r.orderCount), 0) " +
+            "FROM SalesRollup r WHERE r.granularity = :granularity AND r.goodsId = 0 " +
+            "AND r.bucketStart BETWEEN :from AND :to")
+    List<Object[]> sumAllTotals(@Param("granularity") String granularity,
+                                @Param("from") Date from, @Param("to") Date to);
+    //商家各商品在时间段内的销量和销售额（分）
+    @Query("SELECT r.goodsId, SUM(r.quantity), SUM(r.revenueCents) FROM SalesRollup r " +
+            "WHERE r.granularity = :granularity AND r.merchantId = :merchantId AND r.goodsId > 0 " +
+            "AND r.bucketStart BETWEEN :from AND :to GROUP BY r.goodsId")
+    List<Object[]> sumByGoods(@Param("granularity") String granularity, @Param("merchantId") Long merchantId,
+                              @Param("from") Date from, @Param("to") Date to);
+    //全平台各商品在时间段内的销量和销售额（分）
+    @Query("SELECT r.goodsId, SUM(r.quantity), SUM(r.revenueCents) FROM SalesRollup r " +
+            "WHERE r.granularity = :granularity AND r.goodsId > 0 " +
+            "AND r.bucketStart BETWEEN :from AND :to GROUP BY r.goodsId")
+    List<Object[]> sumAllByGoods(@Param("granularity") String granularity,
+                                 @Param("from") Date from, @Param("to") Date to);
+    //各商品的累计净销量（商家ID, 商品ID, 销量），由按天汇总相加得到，已取消订单不计入
+    @Query("SELECT r.merchantId, r.goodsId, SUM(r.quantity) FROM SalesRollup r " +
+            "WHERE r.granularity = 'D' AND r.goodsId > 0 GROUP BY r.merchantId, r.goodsId")
+    List<Object[]> sumQuantityByGoods();
+}
@@ -0,0 +1,11 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.SalesRollup;
+
+import java.util.Collection;
+
+//销售汇总的批量累加（JDBC实现）
+public interface SalesRollupRepositoryCustom {
+    //用一个JDBC批次把增量累加到汇总行上，行不存在时插入，增量可以为负数
+    void addAll(Collection<SalesRollup> deltas);
+}
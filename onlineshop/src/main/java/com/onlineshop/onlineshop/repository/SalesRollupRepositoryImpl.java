@@ -0,0 +1,47 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.entity.SalesRollup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+//SalesRollupRepositoryCustom的实现，与JPA共用同一个事务连接
+public class SalesRollupRepositoryImpl implements SalesRollupRepositoryCustom {
+    //按主键顺序写入，并发事务以相同顺序加锁，避免死锁
+    private static final Comparator<SalesRollup> KEY_ORDER = Comparator
+            .comparing(SalesRollup::getGranularity)
+            .thenComparing(SalesRollup::getMerchantId)
+            .thenComparing(SalesRollup::getBucketStart)
+            .thenComparing(SalesRollup::getGoodsId);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void addAll(Collection<SalesRollup> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<SalesRollup> rows = new ArrayList<>(deltas);
+        rows.sort(KEY_ORDER);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO sales_rollup (granularity, merchant_id, bucket_start, goods_id, quantity, revenue_cents, order_count) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                        "quantity = quantity + VALUES(quantity), revenue_cents = revenue_cents + VALUES(revenue_cents), " +
+                        "order_count = order_count + VALUES(order_count)",
+                rows, rows.size(), (ps, row) -> {
+                    ps.setString(1, row.getGranularity());
+                    ps.setLong(2, row.getMerchantId());
+                    ps.setTimestamp(3, new Timestamp(row.getBucketStart().getTime()));
+                    ps.setLong(4, row.getGoodsId());
+                    ps.setLong(5, row.getQuantity());
+                    ps.setLong(6, row.getRevenueCents());
+                    ps.setLong(7, row.getOrderCount());
+                });
+    }
+}
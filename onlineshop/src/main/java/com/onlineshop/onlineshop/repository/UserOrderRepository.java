@@ -1,7 +1,10 @@
 package com.onlineshop.onlineshop.repository;
 
+import com.onlineshop.onlineshop.entity.OrderStatus;
 import com.onlineshop.onlineshop.entity.UserOrder;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.util.*;
@@ -9,17 +12,29 @@ import java.util.*;
 public interface UserOrderRepository extends JpaRepository<UserOrder, Long> {
     //查找订单
     List<UserOrder> findByUserUid(Long uid);
+    //订单及其订单项、商品和商家，一条语句加载
+    @Query("SELECT o FROM UserOrder o LEFT JOIN FETCH o.user LEFT JOIN FETCH o.orderItems og " +
+            "LEFT JOIN FETCH og.goods g LEFT JOIN FETCH g.merchant WHERE o.oid = :oid ORDER BY og.id")
+    Optional<UserOrder> findDetailById(@Param("oid") Long oid);
+    //多个订单及其订单项、商品和商家，一条语句加载，按订单ID倒序
+    @Query("SELECT o FROM UserOrder o LEFT JOIN FETCH o.user LEFT JOIN FETCH o.orderItems og " +
+            "LEFT JOIN FETCH og.goods g LEFT JOIN FETCH g.merchant WHERE o.oid IN :oids ORDER BY o.oid DESC, og.id")
+    List<UserOrder> findDetailsByIds(@Param("oids") Collection<Long> oids);
+    //游标分页获取用户的订单ID，按订单ID倒序
+    @Query("SELECT o.oid FROM UserOrder o WHERE o.user.uid = :uid AND o.oid < :beforeOid ORDER BY o.oid DESC")
+    List<Long> findUserOrderIds(@Param("uid") Long uid, @Param("beforeOid") Long beforeOid, Limit limit);
     List<UserOrder> findByUserOrderByOrderDateDesc(UserOrder user);
-    List<UserOrder> findByStatusOrderByOrderDateDesc(String status);
-    List<UserOrder> findByUserAndStatus(UserOrder user, String status);
+    List<UserOrder> findByStatusOrderByOrderDateDesc(OrderStatus status);
+    List<UserOrder> findByUserAndStatus(UserOrder user, OrderStatus status);
     List<UserOrder> findByOrderDateBetween(Date start, Date end);
     //计算某时间段的订单总数，用于销售统计
     Long countByOrderDateBetween(Date start, Date end);
+    Long countByOrderDateBetweenAndStatusNot(Date start, Date end, OrderStatus status);
     //计算某时间段的销售总额，用于销售统计
     @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM UserOrder o WHERE o.orderDate BETWEEN :start AND :end")
     Double getTotalSalesByDateRange(@Param("start") Date start, @Param("end") Date end);
     //根据订单状态和日期范围查找
-    List<UserOrder> findByStatusAndOrderDateBetween(String status, Date start, Date end);
+    List<UserOrder> findByStatusAndOrderDateBetween(OrderStatus status, Date start, Date end);
     // 获取包含特定商家的商品的订单
     @Query("SELECT DISTINCT o FROM UserOrder o JOIN o.orderItems og WHERE og.goods.merchant.uid = :merchantId")
     List<UserOrder> findOrdersByMerchantId(@Param("merchantId") Long merchantId);
@@ -27,5 +42,80 @@ public interface UserOrderRepository extends JpaRepository<UserOrder, Long> {
     @Query("SELECT DISTINCT o FROM UserOrder o JOIN o.orderItems og " +
             "WHERE og.goods.merchant.uid = :merchantId AND o.status = :status")
     List<UserOrder> findOrdersByMerchantIdAndStatus(@Param("merchantId") Long merchantId,
-                                                    @Param("status") String status);
-}
\ No newline at end of file
+                                                    @Param("status") OrderStatus status);
+    //游标分页获取商家订单ID，按订单ID倒序（最新订单在前），status为null时不过滤状态
+    //从商家的商品出发，经ordergoods(goodsid, orderid)索引连接订单，代价只与该商家的订单数有关
+    @Query("SELECT DISTINCT og.userorder.oid FROM OrderGoods og " +
+            "WHERE og.goods.merchant.uid = :merchantId AND og.userorder.oid < :beforeOid " +
+            "AND (:status IS NULL OR og.userorder.status = :status) " +
+            "ORDER BY og.userorder.oid DESC")
+    List<Long> findMerchantOrderIds(@Param("merchantId") Long merchantId,
+                                    @Param("status") OrderStatus status,
+                                    @Param("beforeOid") Long beforeOid,
+                                    Limit limit);
+    //按状态精确统计商家订单数量，用于计数器对账
+    @Query("SELECT og.userorder.status, COUNT(DISTINCT og.userorder.oid) FROM OrderGoods og " +
+            "WHERE og.goods.merchant.uid = :merchantId GROUP BY og.userorder.status")
+    List<Object[]> countMerchantOrdersByStatus(@Param("merchantId") Long merchantId);
+    //未取消订单的ID，按ID分批读取，用于补建销售汇总
+    @Query("SELECT o.oid FROM UserOrder o WHERE o.oid > :afterOid AND o.oid <= :maxOid " +
+            "AND o.status <> :cancelled ORDER BY o.oid")
+    List<Long> findActiveOrderIds(@Param("afterOid") Long afterOid, @Param("maxOid") Long maxOid,
+                                  @Param("cancelled") OrderStatus cancelled, Limit limit);
+    //最大订单ID
+    @Query("SELECT COALESCE(MAX(o.oid), 0) FROM UserOrder o")
+    Long findMaxOid();
+    //某状态的订单（订单ID, 下单时间），按ID分批读取，用于重建超时取消的时间轮
+    @Query("SELECT o.oid, o.orderDate FROM UserOrder o WHERE o.status = :status AND o.oid > :afterOid ORDER BY o.oid")
+    List<Object[]> findOrdersByStatusAfter(@Param("status") OrderStatus status, @Param("afterOid") Long afterOid,
+                                           Limit limit);
+    //某时间之后创建的某状态订单（订单ID, 下单时间），用于把新订单加入时间轮
+    @Query("SELECT o.oid, o.orderDate FROM UserOrder o WHERE o.status = :status AND o.orderDate >= :since")
+    List<Object[]> findOrdersByStatusSince(@Param("status") OrderStatus status, @Param("since") Date since);
+    //锁定给定订单中下单时间不晚于cutoff且仍为某状态的订单，返回订单ID
+    @Query(value = "SELECT oid FROM userorder WHERE oid IN (:ids) AND status_code = :statusCode " +
+            "AND order_date <= :cutoff ORDER BY oid FOR UPDATE", nativeQuery = true)
+    List<Long> lockOrdersByStatusBefore(@Param("ids") Collection<Long> ids, @Param("statusCode") int statusCode,
+                                        @Param("cutoff") Date cutoff);
+    //锁定给定订单中仍为某状态的订单，返回订单ID
+    @Query(value = "SELECT oid FROM userorder WHERE oid IN (:ids) AND status_code = :statusCode " +
+            "ORDER BY oid FOR UPDATE", nativeQuery = true)
+    List<Long> lockOrdersByStatus(@Param("ids") Collection<Long> ids, @Param("statusCode") int statusCode);
+    //订单的通知信息（订单ID, 总金额, 买家邮箱）
+    @Query("SELECT o.oid, o.totalAmount, u.email FROM UserOrder o LEFT JOIN o.user u WHERE o.oid IN :ids")
+    List<Object[]> findNotificationInfo(@Param("ids") Collection<Long> ids);
+
+    //状态转换：一条条件更新语句，订单当前状态为from时才更新并增加版本号，返回受影响行数（0表示状态已变化或订单不存在）
+    //批量更新不经过持久化上下文，执行后清空上下文，避免读到旧状态
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.version = o.version + 1 WHERE o.oid = :oid AND o.status = :from")
+    int transition(@Param("oid") Long oid, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
+    //付款
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.payTime = :time, o.version = o.version + 1 " +
+            "WHERE o.oid = :oid AND o.status = :from")
+    int transitionPaid(@Param("oid") Long oid, @Param("from") OrderStatus from, @Param("to") OrderStatus to,
+                       @Param("time") Date time);
+    //发货
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.shipTime = :time, o.version = o.version + 1 " +
+            "WHERE o.oid = :oid AND o.status = :from")
+    int transitionShipped(@Param("oid") Long oid, @Param("from") OrderStatus from, @Param("to") OrderStatus to,
+                          @Param("time") Date time);
+    //完成
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.completeTime = :time, o.version = o.version + 1 " +
+            "WHERE o.oid = :oid AND o.status = :from")
+    int transitionCompleted(@Param("oid") Long oid, @Param("from") OrderStatus from, @Param("to") OrderStatus to,
+                            @Param("time") Date time);
+    //批量发货（调用方已锁定这些订单）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.shipTime = :time, o.version = o.version + 1 " +
+            "WHERE o.oid IN :ids AND o.status = :from")
+    int transitionAllShipped(@Param("ids") Collection<Long> ids, @Param("from") OrderStatus from,
+                             @Param("to") OrderStatus to, @Param("time") Date time);
+    //批量状态转换（调用方已锁定这些订单）
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE UserOrder o SET o.status = :to, o.version = o.version + 1 WHERE o.oid IN :ids AND o.status = :from")
+    int transitionAll(@Param("ids") Collection<Long> ids, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
+}
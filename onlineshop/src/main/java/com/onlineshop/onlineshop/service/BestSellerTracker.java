@@ -0,0 +1,294 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.SalesRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//热销商品榜
+//全平台和每个商家各有一个Space-Saving计数器，订单提交后按销量增量更新，查询前N名不访问数据库
+//定期从销售汇总表精确重算以消除累积误差，停机时把计数器写入快照文件，启动时读取快照快速恢复
+@Service
+public class BestSellerTracker {
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long GLOBAL = 0L;
+    private static final int NAME_BATCH = 1000;
+
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Value("${sales.top-k.global-capacity:500}")
+    private int globalCapacity;
+    @Value("${sales.top-k.merchant-capacity:100}")
+    private int merchantCapacity;
+    @Value("${sales.top-k.snapshot-file:./data/top-sellers.snapshot}")
+    private String snapshotFile;
+
+    //商家ID -> 计数器，GLOBAL为全平台；替换整个Map完成重算
+    private volatile Map<Long, SpaceSavingCounter> counters = new ConcurrentHashMap<>();
+    //重算期间到达的增量，替换前重放到重算结果上；不在重算时为null，由pendingLock保护
+    private List<OrderSalesEvent> pending;
+    private final Object pendingLock = new Object();
+
+    //全平台销量最高的limit个商品，每行为(商品ID, 商品名, 销量)
+    public List<Object[]> getTopSellers(int limit) {
+        return top(GLOBAL, limit);
+    }
+
+    //商家销量最高的limit个商品，每行为(商品ID, 商品名, 销量)
+    public List<Object[]> getMerchantTopSellers(Long merchantId, int limit) {
+        return top(merchantId, limit);
+    }
+
+    //订单提交后更新计数
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderSales(OrderSalesEvent event) {
+        Map<Long, SpaceSavingCounter> current;
+        synchronized (pendingLock) {
+            if (pending != null) {
+                pending.add(event);
+            }
+            current = counters;
+        }
+        apply(current, event);
+    }
+
+    //商品改名后更新榜单中的名称
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsChanged(GoodsChangedEvent event) {
+        if (event.getType() != GoodsChangedEvent.Type.UPSERT) {
+            return;
+        }
+        for (SpaceSavingCounter counter : counters.values()) {
+            synchronized (counter) {
+                counter.rename(event.getGid(), event.getGoods().getName());
+            }
+        }
+    }
+
+    //启动时读取快照，没有可用快照时从数据库精确计算（在销售汇总补建之后执行）
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void warmUp() {
+        try {
+            if (loadSnapshot()) {
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("读取热销榜快照失败: " + e.getMessage());
+        }
+        recompute();
+    }
+
+    @Scheduled(initialDelayString = "${sales.top-k.recompute-interval-ms:600000}",
+            fixedDelayString = "${sales.top-k.recompute-interval-ms:600000}")
+    public void scheduledRecompute() {
+        try {
+            recompute();
+        } catch (RuntimeException e) {
+            System.err.println("热销榜重算失败: " + e.getMessage());
+        }
+    }
+
+    //从销售汇总表精确重算全部计数器
+    //读取汇总表之前开始记录到达的增量，替换计数器前重放到重算结果上，重算期间的订单不会丢失；
+    //读取之前已经提交、读取之后才送达的增量会重复计入，误差由下一次重算消除
+    public synchronized void recompute() {
+        synchronized (pendingLock) {
+            pending = new ArrayList<>();
+        }
+        try {
+            Map<Long, SpaceSavingCounter> rebuilt = rebuild();
+            synchronized (pendingLock) {
+                for (OrderSalesEvent event : pending) {
+                    apply(rebuilt, event);
+                }
+                //在锁内替换，之后到达的增量直接写入新计数器
+                counters = rebuilt;
+            }
+        } finally {
+            synchronized (pendingLock) {
+                pending = null;
+            }
+        }
+    }
+
+    //从销售汇总表建立新的计数器
+    private Map<Long, SpaceSavingCounter> rebuild() {
+        Map<Long, List<long[]>> byMerchant = new HashMap<>();
+        List<long[]> all = new ArrayList<>();
+        for (Object[] row : salesRollupRepository.sumQuantityByGoods()) {
+            long quantity = ((Number) row[2]).longValue();
+            if (quantity <= 0) {
+                continue;
+            }
+            long[] item = {(Long) row[1], quantity};
+            all.add(item);
+            byMerchant.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(item);
+        }
+        Map<Long, SpaceSavingCounter> rebuilt = new ConcurrentHashMap<>();
+        Map<Long, List<long[]>> kept = new HashMap<>();
+        kept.put(GLOBAL, keepTop(all, globalCapacity));
+        for (Map.Entry<Long, List<long[]>> entry : byMerchant.entrySet()) {
+            kept.put(entry.getKey(), keepTop(entry.getValue(), merchantCapacity));
+        }
+        Map<Long, String> names = loadNames(kept);
+        for (Map.Entry<Long, List<long[]>> entry : kept.entrySet()) {
+            SpaceSavingCounter counter = new SpaceSavingCounter(entry.getKey() == GLOBAL ? globalCapacity : merchantCapacity);
+            for (long[] item : entry.getValue()) {
+                counter.put(item[0], names.get(item[0]), item[1], 0);
+            }
+            rebuilt.put(entry.getKey(), counter);
+        }
+        return rebuilt;
+    }
+
+    //停机时写入快照
+    @PreDestroy
+    public void saveSnapshot() {
+        Path path = Paths.get(snapshotFile);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                Map<Long, SpaceSavingCounter> current = counters;
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(current.size());
+                for (Map.Entry<Long, SpaceSavingCounter> entry : current.entrySet()) {
+                    List<SpaceSavingCounter.Entry> entries;
+                    synchronized (entry.getValue()) {
+                        entries = entry.getValue().top(Integer.MAX_VALUE);
+                    }
+                    out.writeLong(entry.getKey());
+                    out.writeInt(entries.size());
+                    for (SpaceSavingCounter.Entry item : entries) {
+                        out.writeLong(item.gid);
+                        out.writeUTF(item.name != null ? item.name : "");
+                        out.writeLong(item.count);
+                        out.writeLong(item.error);
+                    }
+                }
+            }
+            //写完后再替换，避免停机中断留下不完整的快照
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("保存热销榜快照失败: " + e.getMessage());
+        }
+    }
+
+    //读取快照，文件不存在或版本不符时返回false
+    boolean loadSnapshot() throws IOException {
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            Map<Long, SpaceSavingCounter> loaded = new ConcurrentHashMap<>();
+            int scopes = in.readInt();
+            for (int i = 0; i < scopes; i++) {
+                long scope = in.readLong();
+                SpaceSavingCounter counter = new SpaceSavingCounter(scope == GLOBAL ? globalCapacity : merchantCapacity);
+                int size = in.readInt();
+                for (int j = 0; j < size; j++) {
+                    long gid = in.readLong();
+                    String name = in.readUTF();
+                    counter.put(gid, name.isEmpty() ? null : name, in.readLong(), in.readLong());
+                }
+                loaded.put(scope, counter);
+            }
+            counters = loaded;
+            return true;
+        }
+    }
+
+    private List<Object[]> top(long scope, int limit) {
+        SpaceSavingCounter counter = counters.get(scope);
+        if (counter == null) {
+            return new ArrayList<>();
+        }
+        List<SpaceSavingCounter.Entry> entries;
+        synchronized (counter) {
+            entries = counter.top(limit);
+        }
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (SpaceSavingCounter.Entry entry : entries) {
+            rows.add(new Object[]{entry.gid, entry.name, entry.count});
+        }
+        return rows;
+    }
+
+    private void apply(Map<Long, SpaceSavingCounter> target, OrderSalesEvent event) {
+        for (OrderSalesEvent.Line line : event.getLines()) {
+            apply(target.computeIfAbsent(GLOBAL, id -> new SpaceSavingCounter(globalCapacity)), line, event.isCancelled());
+            apply(target.computeIfAbsent(line.getMerchantId(), id -> new SpaceSavingCounter(merchantCapacity)),
+                    line, event.isCancelled());
+        }
+    }
+
+    private void apply(SpaceSavingCounter counter, OrderSalesEvent.Line line, boolean cancelled) {
+        synchronized (counter) {
+            if (cancelled) {
+                counter.subtract(line.getGid(), line.getQuantity());
+            } else {
+                counter.add(line.getGid(), line.getName(), line.getQuantity());
+            }
+        }
+    }
+
+    //按销量降序保留前capacity个商品
+    private List<long[]> keepTop(List<long[]> items, int capacity) {
+        items.sort((a, b) -> Long.compare(b[1], a[1]));
+        return items.size() > capacity ? new ArrayList<>(items.subList(0, capacity)) : items;
+    }
+
+    //分批读取保留商品的名称
+    private Map<Long, String> loadNames(Map<Long, List<long[]>> kept) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (List<long[]> items : kept.values()) {
+            for (long[] item : items) {
+                ids.add(item[0]);
+            }
+        }
+        Map<Long, String> names = new HashMap<>();
+        List<Long> distinct = new ArrayList<>(ids);
+        for (int from = 0; from < distinct.size(); from += NAME_BATCH) {
+            List<Long> batch = distinct.subList(from, Math.min(from + NAME_BATCH, distinct.size()));
+            for (Object[] row : goodsRepository.findNamesByIds(batch)) {
+                names.put((Long) row[0], (String) row[1]);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,408 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//购物车服务
+//每个用户的购物车是一个商品ID -> 数量的开放寻址哈希表，增删改都是O(1)，并维护商品总件数
+//购物车不放在Session中；修改后标记为待写回，由后台任务批量写入CartStore（写回延迟不超过flush-interval-ms）
+//多个节点共用数据库后端时，写回按版本号检查：其他节点先写回过时重新加载，把本节点相对上次同步的修改合并上去再写回，
+//不会覆盖其他节点的修改；访问内存中的购物车时每个购物车最多每version-check-ms读取一次版本号（一次主键查询），
+//其他节点写回过时同样先重新加载并合并，不需要按用户粘性路由
+//（其他节点的修改最多延迟flush-interval-ms + version-check-ms可见；写回时仍按版本号检查，延迟只影响读取，不会丢失修改）
+@Service
+public class CartService {
+    @Autowired
+    private CartStore cartStore;
+    @Autowired
+    private GoodsService goodsService;
+
+    //超过该时间未访问的购物车从内存中淘汰
+    @Value("${cart.idle-evict-ms:1800000}")
+    private long idleEvictMillis;
+    //持久化后端下，同一个购物车两次检查版本号的最小间隔
+    @Value("${cart.version-check-ms:1000}")
+    private long versionCheckMillis;
+
+    private final Map<Long, UserCart> carts = new ConcurrentHashMap<>();
+    //有未写回修改的用户
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    //添加商品，已在购物车中时累加数量，返回该商品的新数量
+    public int add(Long userId, Long goodsId, int quantity) {
+        if (goodsId == null || goodsId <= 0) {
+            throw new RuntimeException("商品ID不合法");
+        }
+        if (quantity <= 0) {
+            throw new RuntimeException("数量无效");
+        }
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                int updated = cart.items.addTo(goodsId, quantity);
+                cart.totalQuantity += quantity;
+                touch(userId, cart);
+                return updated;
+            }
+        }
+    }
+
+    //设置商品数量，数量为0时移除；商品不在购物车中时返回false
+    public boolean update(Long userId, Long goodsId, int quantity) {
+        if (quantity < 0) {
+            throw new RuntimeException("数量无效");
+        }
+        if (quantity == 0) {
+            return remove(userId, goodsId);
+        }
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                if (goodsId == null || !cart.items.containsKey(goodsId)) {
+                    return false;
+                }
+                cart.totalQuantity += quantity - cart.items.put(goodsId, quantity);
+                touch(userId, cart);
+                return true;
+            }
+        }
+    }
+
+    //移除商品，商品不在购物车中时返回false
+    public boolean remove(Long userId, Long goodsId) {
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                if (goodsId == null || !cart.items.containsKey(goodsId)) {
+                    return false;
+                }
+                cart.totalQuantity -= cart.items.remove(goodsId);
+                touch(userId, cart);
+                return true;
+            }
+        }
+    }
+
+    //清空购物车
+    public void clear(Long userId) {
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.items.clear();
+                cart.totalQuantity = 0;
+                touch(userId, cart);
+                return;
+            }
+        }
+    }
+
+    //购物车中的商品
+    public List<CartItem> getItems(Long userId) {
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                List<CartItem> items = new ArrayList<>(cart.items.size());
+                cart.items.forEach((gid, quantity) -> items.add(new CartItem(gid, quantity)));
+                return items;
+            }
+        }
+    }
+
+    //购物车商品总件数
+    public int count(Long userId) {
+        while (true) {
+            UserCart cart = cartOf(userId);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = System.currentTimeMillis();
+                return cart.totalQuantity;
+            }
+        }
+    }
+
+    //带价格和库存的购物车：一次批量查询全部商品，金额按整数分计算
+    //只有可购买的商品计入合计，不存在、已下架或库存不足的商品单独标记
+    public PricedCart getPricedCart(Long userId) {
+        List<CartItem> items = getItems(userId);
+        List<Long> gids = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            gids.add(item.getGid());
+        }
+        Map<Long, Goods> goodsById = gids.isEmpty() ? Map.of() : goodsService.getGoodsByIds(gids);
+        List<PricedLine> lines = new ArrayList<>(items.size());
+        long totalCents = 0;
+        int totalQuantity = 0;
+        boolean allAvailable = true;
+        for (CartItem item : items) {
+            Goods goods = goodsById.get(item.getGid());
+            PricedLine line;
+            if (goods == null) {
+                line = new PricedLine(item.getGid(), null, null, null, null, item.getQuantity(), 0, PricedLine.NOT_FOUND);
+            } else {
+                long priceCents = Math.round(goods.getPrice() * 100);
+                int remaining = goods.getRemaining() != null ? goods.getRemaining() : 0;
+                String state = PricedLine.AVAILABLE;
+                if (goods.getStatus() == null || goods.getStatus() != 1) {
+                    state = PricedLine.OFF_SHELF;
+                } else if (remaining < item.getQuantity()) {
+                    state = PricedLine.INSUFFICIENT_STOCK;
+                }
+                line = new PricedLine(goods.getGid(), goods.getName(), goods.getDescription(), goods.getImageUrl(), priceCents,
+                        item.getQuantity(), remaining, state);
+            }
+            if (line.isAvailable()) {
+                totalCents += line.getSubtotalCents();
+                totalQuantity += item.getQuantity();
+            } else {
+                allAvailable = false;
+            }
+            lines.add(line);
+        }
+        return new PricedCart(lines, totalCents, totalQuantity, allAvailable);
+    }
+
+    //把待写回的购物车写入CartStore，并淘汰长时间未访问的购物车
+    @Scheduled(fixedDelayString = "${cart.flush-interval-ms:1000}")
+    public void flush() {
+        for (Long userId : dirty) {
+            dirty.remove(userId);
+            UserCart cart = carts.get(userId);
+            if (cart == null) {
+                continue;
+            }
+            LongIntHashMap snapshot;
+            long version;
+            long storeVersion;
+            synchronized (cart) {
+                snapshot = cart.items.copy();
+                version = cart.version;
+                storeVersion = cart.storeVersion;
+            }
+            try {
+                if (cartStore.save(userId, snapshot, storeVersion)) {
+                    synchronized (cart) {
+                        cart.savedVersion = Math.max(cart.savedVersion, version);
+                        if (cart.storeVersion == storeVersion) {
+                            cart.base = snapshot;
+                            cart.storeVersion = storeVersion + 1;
+                        }
+                    }
+                } else {
+                    System.out.println("购物车写回冲突，合并其他节点的修改: 用户 " + userId);
+                    mergeWithStore(userId, cart);
+                }
+            } catch (RuntimeException e) {
+                dirty.add(userId); //下次重试
+                System.err.println("购物车写回失败: 用户 " + userId + " - " + e.getMessage());
+            }
+        }
+        evictIdle(System.currentTimeMillis() - idleEvictMillis);
+    }
+
+    //停机前写回全部修改
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    //持久化后端下淘汰已写回的购物车，内存后端下只淘汰空购物车
+    private void evictIdle(long idleBefore) {
+        boolean persistent = cartStore.isPersistent();
+        for (Map.Entry<Long, UserCart> entry : carts.entrySet()) {
+            UserCart cart = entry.getValue();
+            synchronized (cart) {
+                if (cart.lastAccess < idleBefore && cart.savedVersion == cart.version
+                        && (persistent || cart.items.isEmpty())) {
+                    cart.evicted = true;
+                    carts.remove(entry.getKey(), cart);
+                }
+            }
+        }
+    }
+
+    //其他节点已修改过该用户的购物车（写回冲突或访问时发现版本号变化）：重新加载后把本节点相对上次同步的修改应用上去
+    //有本节点的修改时标记为待写回
+    private void mergeWithStore(Long userId, UserCart cart) {
+        LongIntHashMap stored = new LongIntHashMap();
+        long storedVersion = cartStore.load(userId, stored);
+        synchronized (cart) {
+            if (storedVersion <= cart.storeVersion) {
+                return; //其他线程已经合并过
+            }
+            LongIntHashMap merged = stored.copy();
+            LongIntHashMap base = cart.base;
+            LongIntHashMap items = cart.items;
+            boolean[] changed = new boolean[1];
+            items.forEach((gid, quantity) -> {
+                if (base.get(gid) != quantity) {
+                    merged.put(gid, quantity);
+                    changed[0] = true;
+                }
+            });
+            base.forEach((gid, quantity) -> {
+                if (!items.containsKey(gid)) {
+                    merged.remove(gid); //本节点删除的商品
+                    changed[0] = true;
+                }
+            });
+            cart.items = merged;
+            cart.base = stored;
+            cart.storeVersion = storedVersion;
+            cart.totalQuantity = 0;
+            merged.forEach((gid, quantity) -> cart.totalQuantity += quantity);
+            if (changed[0]) {
+                cart.version++;
+                dirty.add(userId);
+            }
+        }
+    }
+
+    //内存中的购物车，持久化后端下距上次检查超过version-check-ms时先检查版本号，其他节点写回过时重新加载并合并
+    private UserCart cartOf(Long userId) {
+        UserCart cached = carts.get(userId);
+        if (cached == null) {
+            return carts.computeIfAbsent(userId, id -> {
+                UserCart cart = new UserCart();
+                cart.storeVersion = cartStore.load(id, cart.items);
+                cart.base = cart.items.copy();
+                cart.items.forEach((gid, quantity) -> cart.totalQuantity += quantity);
+                return cart;
+            });
+        }
+        if (cartStore.isPersistent() && versionCheckDue(cached)) {
+            long storedVersion = cartStore.version(userId);
+            boolean stale;
+            synchronized (cached) {
+                stale = !cached.evicted && storedVersion > cached.storeVersion;
+            }
+            if (stale) {
+                mergeWithStore(userId, cached);
+            }
+        }
+        return cached;
+    }
+
+    //距上次检查版本号超过version-check-ms时返回true，并把本次记为最近一次检查
+    private boolean versionCheckDue(UserCart cart) {
+        long now = System.currentTimeMillis();
+        synchronized (cart) {
+            if (cart.evicted || now - cart.lastVersionCheck < versionCheckMillis) {
+                return false;
+            }
+            cart.lastVersionCheck = now;
+            return true;
+        }
+    }
+
+    //调用方需持有购物车锁
+    private void touch(Long userId, UserCart cart) {
+        cart.version++;
+        cart.lastAccess = System.currentTimeMillis();
+        dirty.add(userId);
+    }
+
+    //单个用户的购物车
+    private static class UserCart {
+        LongIntHashMap items = new LongIntHashMap();
+        //上次与CartStore同步（加载或写回成功）时的内容和版本号，写回冲突时用来找出本节点的修改
+        LongIntHashMap base;
+        long storeVersion;
+        int totalQuantity;
+        long version;
+        long savedVersion;
+        long lastAccess = System.currentTimeMillis();
+        //最近一次读取CartStore版本号的时间（加载时也算一次）
+        long lastVersionCheck = System.currentTimeMillis();
+        //已从内存淘汰，持有旧引用的调用方需要重新获取
+        boolean evicted;
+    }
+
+    //带价格的购物车
+    public static class PricedCart {
+        private List<PricedLine> lines;
+        private Long totalCents; //可购买商品合计（分）
+        private Integer totalQuantity; //可购买商品件数
+        private Boolean allAvailable; //所有商品都可购买
+        public PricedCart(List<PricedLine> lines, Long totalCents, Integer totalQuantity, Boolean allAvailable) {
+            this.lines = lines;
+            this.totalCents = totalCents;
+            this.totalQuantity = totalQuantity;
+            this.allAvailable = allAvailable;
+        }
+        //getter函数
+        public List<PricedLine> getLines() { return lines; }
+        public Long getTotalCents() { return totalCents; }
+        public Double getTotal() { return totalCents / 100.0; }
+        public Integer getTotalQuantity() { return totalQuantity; }
+        public Boolean getAllAvailable() { return allAvailable; }
+    }
+
+    //购物车中的一行商品及其价格和库存状态
+    public static class PricedLine {
+        public static final String AVAILABLE = "AVAILABLE";
+        public static final String NOT_FOUND = "NOT_FOUND"; //商品已删除
+        public static final String OFF_SHELF = "OFF_SHELF"; //商品已下架
+        public static final String INSUFFICIENT_STOCK = "INSUFFICIENT_STOCK"; //库存不足
+
+        private Long gid;
+        private String name;
+        private String description;
+        private String imageUrl;
+        private Long priceCents; //单价（分），商品不存在时为null
+        private Integer quantity;
+        private Integer remaining;
+        private String state;
+        public PricedLine(Long gid, String name, String description, String imageUrl, Long priceCents,
+                          Integer quantity, Integer remaining, String state) {
+            this.gid = gid;
+            this.name = name;
+            this.description = description;
+            this.imageUrl = imageUrl;
+            this.priceCents = priceCents;
+            this.quantity = quantity;
+            this.remaining = remaining;
+            this.state = state;
+        }
+        //getter函数
+        public Long getGid() { return gid; }
+        public String getName() { return name; }
+        public String getDescription() { return description; }
+        public String getImageUrl() { return imageUrl; }
+        public Long getPriceCents() { return priceCents; }
+        public Double getPrice() { return priceCents != null ? priceCents / 100.0 : null; }
+        public Integer getQuantity() { return quantity; }
+        public Integer getRemaining() { return remaining; }
+        public String getState() { return state; }
+        public boolean isAvailable() { return AVAILABLE.equals(state); }
+        public Long getSubtotalCents() { return priceCents != null ? priceCents * quantity : 0L; }
+        public Double getSubtotal() { return getSubtotalCents() / 100.0; }
+    }
+}
@@ -0,0 +1,14 @@
+package com.onlineshop.onlineshop.service;
+
+//购物车持久化后端，由CartService在首次访问时加载、在后台批量写回
+//写回带版本号检查：其他节点在此期间写回过同一用户的购物车时save返回false，由CartService重新加载后合并
+public interface CartStore {
+    //把用户的购物车读入into（商品ID -> 数量），返回当前版本号（从未写回过时为0）
+    long load(Long userId, LongIntHashMap into);
+    //当前版本号（从未写回过时为0），CartService用来发现其他节点的写回
+    long version(Long userId);
+    //版本号等于expectedVersion时用items整体替换用户的购物车（items为空时删除）并把版本号加1，否则不修改并返回false
+    boolean save(Long userId, LongIntHashMap items, long expectedVersion);
+    //数据是否保存在进程外，为true时CartService可以从内存中淘汰长时间未访问的购物车
+    boolean isPersistent();
+}
@@ -0,0 +1,37 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.List;
+import java.util.function.Function;
+
+//游标分页结果
+//nextCursor为本页最后一条记录的ID，下一页从该ID之后开始查询，没有下一页时为null
+public class CursorPage<T> {
+    private final List<T> items;
+    private final Long nextCursor;
+
+    public CursorPage(List<T> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    //根据多查询一条的结果构建分页（fetched最多包含size+1条记录）
+    public static <T> CursorPage<T> of(List<T> fetched, int size, Function<T, Long> idOf) {
+        if (fetched.size() <= size) {
+            return new CursorPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, size);
+        return new CursorPage<>(items, idOf.apply(items.get(size - 1)));
+    }
+
+    //将请求的分页大小限制在[1, maxSize]内，未指定时使用默认值
+    public static int clampSize(Integer size, int defaultSize, int maxSize) {
+        if (size == null || size <= 0) {
+            return defaultSize;
+        }
+        return Math.min(size, maxSize);
+    }
+
+    public List<T> getItems() { return items; }
+    public Long getNextCursor() { return nextCursor; }
+    public boolean isHasMore() { return nextCursor != null; }
+}
@@ -0,0 +1,181 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+//商家首页数据
+//今日销售额、待发货订单数和商品统计互不依赖，在有界线程池中并发查询，总耗时取决于最慢的一项
+//超时或失败的项返回null并在failedParts中列出；完整结果按商家短时间缓存，频繁刷新首页不会重复查询数据库
+//缓存只靠过期时间失效（数据最多延迟cache-ttl-ms），过期条目定期清理
+//每项在只读事务中执行，事务超时作为语句超时：超时后取消任务只能中断等待的线程，正在执行的语句由数据库按超时终止
+@Service
+public class DashboardService {
+    @Autowired
+    private SalesService salesService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${dashboard.pool-size:8}")
+    private int poolSize;
+    @Value("${dashboard.queue-capacity:200}")
+    private int queueCapacity;
+    @Value("${dashboard.query-timeout-ms:2000}")
+    private long queryTimeoutMillis;
+    @Value("${dashboard.cache-ttl-ms:5000}")
+    private long cacheTtlMillis;
+
+    private ThreadPoolExecutor executor;
+    private TransactionTemplate queryTransaction;
+    //商家ID -> 缓存的首页数据
+    private final Map<Long, CachedDashboard> cache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "dashboard-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        //事务超时精确到秒，向上取整
+        queryTransaction = new TransactionTemplate(transactionManager);
+        queryTransaction.setReadOnly(true);
+        queryTransaction.setTimeout((int) Math.max(1, (queryTimeoutMillis + 999) / 1000));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    //获取商家首页数据
+    public Map<String, Object> getDashboard(User merchant) {
+        long now = System.currentTimeMillis();
+        CachedDashboard cached = cache.get(merchant.getUid());
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                return cached.data;
+            }
+            cache.remove(merchant.getUid(), cached);
+        }
+        LocalDate today = LocalDate.now();
+        ZoneId zone = ZoneId.systemDefault();
+        Date startOfDay = Date.from(today.atStartOfDay(zone).toInstant());
+        Date endOfDay = new Date(Date.from(today.plusDays(1).atStartOfDay(zone).toInstant()).getTime() - 1000);
+
+        Map<String, Supplier<Object>> queries = new LinkedHashMap<>();
+        queries.put("todaySales", () -> {
+            Double todaySales = salesService.getMerchantSalesByDateRange(merchant.getUid(), startOfDay, endOfDay);
+            return todaySales != null ? todaySales : 0.0;
+        });
+        queries.put("pendingShipmentCount", () -> orderService.getMerchantOrderCountByStatus(merchant, "已付款"));
+        queries.put("goodsStats", () -> goodsService.getMerchantGoodsStats(merchant.getUid()));
+
+        Map<String, Object> data = runAll(queries);
+        @SuppressWarnings("unchecked")
+        List<String> failedParts = (List<String>) data.get("failedParts");
+        if (failedParts.isEmpty()) {
+            //只缓存完整结果，部分失败时下次刷新重新查询
+            cache.put(merchant.getUid(), new CachedDashboard(data, now + cacheTtlMillis));
+        }
+        return data;
+    }
+
+    //定期清理过期的缓存，不再访问首页的商家不会一直占用内存
+    @Scheduled(fixedDelayString = "${dashboard.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(cached -> cached.expiresAt <= now);
+    }
+
+    //缓存的商家数量
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    //并发执行全部查询，所有查询共用同一个截止时间
+    private Map<String, Object> runAll(Map<String, Supplier<Object>> queries) {
+        Map<String, Future<Object>> futures = new LinkedHashMap<>();
+        Map<String, Object> data = new HashMap<>();
+        List<String> failedParts = new ArrayList<>();
+        for (Map.Entry<String, Supplier<Object>> entry : queries.entrySet()) {
+            try {
+                Supplier<Object> query = entry.getValue();
+                futures.put(entry.getKey(), executor.submit(() -> queryTransaction.execute(status -> query.get())));
+            } catch (RejectedExecutionException e) {
+                failedParts.add(entry.getKey()); //线程池已满
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queryTimeoutMillis);
+        for (Map.Entry<String, Future<Object>> entry : futures.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                data.put(entry.getKey(), entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                failedParts.add(entry.getKey());
+                System.err.println("首页数据查询超时: " + entry.getKey());
+            } catch (ExecutionException e) {
+                failedParts.add(entry.getKey());
+                System.err.println("首页数据查询失败: " + entry.getKey() + " - " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.getValue().cancel(true);
+                failedParts.add(entry.getKey());
+            }
+        }
+        if (!failedParts.isEmpty()) {
+            //取消的任务仍占着队列位置，立即移出，避免后续请求被拒绝
+            executor.purge();
+        }
+        for (String key : queries.keySet()) {
+            data.putIfAbsent(key, null);
+        }
+        data.put("partial", !failedParts.isEmpty());
+        data.put("failedParts", failedParts);
+        return Collections.unmodifiableMap(data);
+    }
+
+    //缓存的首页数据
+    private static class CachedDashboard {
+        final Map<String, Object> data;
+        final long expiresAt;
+        CachedDashboard(Map<String, Object> data, long expiresAt) {
+            this.data = data;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
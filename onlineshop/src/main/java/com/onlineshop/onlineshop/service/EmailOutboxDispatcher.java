@@ -0,0 +1,153 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.EmailOutbox;
+import com.onlineshop.onlineshop.repository.EmailOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//发件箱投递任务
+//定期领取到期的待发送邮件，一批邮件复用同一个SMTP连接发送，失败的邮件按指数退避重试
+@Service
+public class EmailOutboxDispatcher {
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+    @Autowired
+    private JavaMailSender mailSender;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${spring.mail.username:}")
+    private String fromEmail;
+    @Value("${mail.outbox.batch-size:50}")
+    private int batchSize;
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${mail.outbox.initial-backoff-ms:30000}")
+    private long initialBackoffMillis;
+    @Value("${mail.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMillis;
+    //领取后未在该时间内回写结果（例如节点宕机）的邮件会被重新发送
+    @Value("${mail.outbox.lease-ms:300000}")
+    private long leaseMillis;
+
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:2000}")
+    public void scheduledDispatch() {
+        try {
+            while (dispatch() == batchSize) {
+                //本批已满，继续发送下一批
+            }
+        } catch (RuntimeException e) {
+            System.err.println("发件箱投递失败: " + e.getMessage());
+        }
+    }
+
+    //发送一批到期邮件，返回本批领取的邮件数量
+    public int dispatch() {
+        List<EmailOutbox> batch = claimBatch();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<SimpleMailMessage, EmailOutbox> byMessage = new IdentityHashMap<>();
+        SimpleMailMessage[] messages = new SimpleMailMessage[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            EmailOutbox email = batch.get(i);
+            SimpleMailMessage message = new SimpleMailMessage();
+            if (fromEmail != null && !fromEmail.isEmpty()) {
+                message.setFrom(fromEmail); //设置发件人
+            }
+            message.setTo(email.getToEmail());
+            message.setSubject(email.getSubject());
+            message.setText(email.getBody());
+            messages[i] = message;
+            byMessage.put(message, email);
+        }
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        try {
+            mailSender.send(messages);
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                //连接失败等整体错误，本批全部失败
+                for (SimpleMailMessage message : messages) {
+                    failures.put(message, e);
+                }
+            } else {
+                failures.putAll(e.getFailedMessages());
+            }
+        } catch (MailException e) {
+            for (SimpleMailMessage message : messages) {
+                failures.put(message, e);
+            }
+        }
+        recordResults(byMessage, failures);
+        return batch.size();
+    }
+
+    //领取一批到期邮件（独立事务，提交后其他节点不会再领取）
+    private List<EmailOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            Date now = new Date();
+            List<Long> dueIds = emailOutboxRepository.findDueIds(now, Limit.of(batchSize));
+            if (dueIds.isEmpty()) {
+                return List.of();
+            }
+            String token = UUID.randomUUID().toString();
+            emailOutboxRepository.claim(dueIds, token, now, new Date(now.getTime() + leaseMillis));
+            return emailOutboxRepository.findByClaimToken(token);
+        });
+    }
+
+    //回写发送结果：成功的标记为已发送，失败的按退避时间重新排队
+    private void recordResults(Map<SimpleMailMessage, EmailOutbox> byMessage, Map<Object, Exception> failures) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Date now = new Date();
+            for (Map.Entry<SimpleMailMessage, EmailOutbox> entry : byMessage.entrySet()) {
+                EmailOutbox email = entry.getValue();
+                Exception failure = failures.get(entry.getKey());
+                email.setClaimToken(null);
+                if (failure == null) {
+                    email.setStatus(1);
+                    email.setSentAt(now);
+                    email.setLastError(null);
+                } else {
+                    int attempts = email.getAttempts() + 1;
+                    email.setAttempts(attempts);
+                    email.setLastError(truncate(failure.getMessage()));
+                    if (attempts >= maxAttempts) {
+                        email.setStatus(2);
+                        System.err.println("邮件发送失败且不再重试: " + email.getToEmail() + ", 错误: " + failure.getMessage());
+                    } else {
+                        email.setNextAttemptAt(new Date(now.getTime() + backoffMillis(attempts)));
+                    }
+                }
+                emailOutboxRepository.save(email);
+            }
+        });
+    }
+
+    //第n次失败后的等待时间：初始值 * 2^(n-1)，不超过上限
+    private long backoffMillis(int attempts) {
+        long backoff = initialBackoffMillis << Math.min(attempts - 1, 30);
+        return backoff <= 0 ? maxBackoffMillis : Math.min(backoff, maxBackoffMillis);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 500 ? message : message.substring(0, 500);
+    }
+}
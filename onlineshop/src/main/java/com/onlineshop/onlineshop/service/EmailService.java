@@ -1,52 +1,79 @@
 package com.onlineshop.onlineshop.service;
 
+import com.onlineshop.onlineshop.entity.EmailOutbox;
 import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.EmailOutboxRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+//邮件服务：邮件写入发件箱，与业务数据在同一事务中提交，由EmailOutboxDispatcher在后台发送
 @Service
 public class EmailService {
     @Autowired
-    private JavaMailSender mailSender;
-
-    @Value("${spring.mail.username}")
-    private String fromEmail;
-    //发送发货确认邮件
-    public void sendShippingConfirmation(String toEmail, UserOrder order) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail); //设置发件人
-            message.setTo(toEmail);
-            message.setSubject("订单发货通知 - 订单号: " + order.getOid());
-            message.setText("尊敬的顾客，您的订单已发货。订单号: " + order.getOid() +
-                    "\n总金额: " + order.getTotalAmount() +
-                    "\n物流信息：请登录系统查看详细信息" +
-                    "\n感谢您的购买！");
-            mailSender.send(message);
-            System.out.println("发货确认邮件已发送至: " + toEmail);
-        } catch (Exception e) {
-            System.err.println("发送邮件失败: " + e.getMessage());
+    private EmailOutboxRepository emailOutboxRepository;
+
+    //发送发货确认邮件（写入发件箱）
+    public void queueShippingConfirmation(String toEmail, UserOrder order) {
+        queue(toEmail, shippingSubject(order.getOid()), shippingBody(order.getOid(), order.getTotalAmount()));
+    }
+
+    //批量发送发货确认邮件，rows为(订单ID, 总金额, 收件人)，用一个批次写入发件箱
+    public void queueShippingConfirmations(List<Object[]> rows) {
+        Date now = new Date();
+        List<EmailOutbox> emails = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Long orderId = (Long) row[0];
+            String toEmail = (String) row[2];
+            if (toEmail != null && !toEmail.isBlank()) {
+                emails.add(newEmail(toEmail, shippingSubject(orderId), shippingBody(orderId, (Double) row[1]), now));
+            }
         }
+        if (!emails.isEmpty()) {
+            emailOutboxRepository.batchInsert(emails);
+        }
+    }
+
+    //发送订单确认邮件（写入发件箱）
+    public void queueOrderConfirmation(String toEmail, UserOrder order) {
+        queue(toEmail, "订单确认 - 订单号: " + order.getOid(),
+                "您的订单已成功创建。订单号: " + order.getOid() +
+                        "\n总金额: " + order.getTotalAmount() +
+                        "\n订单状态: " + order.getStatus().getLabel() +
+                        "\n请及时完成付款。");
     }
 
-    //发送订单确认邮件
-    public void sendOrderConfirmation(String toEmail, UserOrder order) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail); //设置发件人
-            message.setTo(toEmail);
-            message.setSubject("订单确认 - 订单号: " + order.getOid());
-            message.setText("您的订单已成功创建。订单号: " + order.getOid() +
-                    "\n总金额: " + order.getTotalAmount() +
-                    "\n订单状态: " + order.getStatus() +
-                    "\n请及时完成付款。");
-            mailSender.send(message);
-            System.out.println("订单确认邮件已发送至: " + toEmail);
-        } catch (Exception e) {
-            System.err.println("发送邮件失败: " + e.getMessage());
+    //写入一封待发送邮件，没有收件人时忽略
+    public void queue(String toEmail, String subject, String body) {
+        if (toEmail == null || toEmail.isBlank()) {
+            return;
         }
+        emailOutboxRepository.save(newEmail(toEmail, subject, body, new Date()));
+    }
+
+    private EmailOutbox newEmail(String toEmail, String subject, String body, Date now) {
+        EmailOutbox email = new EmailOutbox();
+        email.setToEmail(toEmail);
+        email.setSubject(subject);
+        email.setBody(body);
+        email.setStatus(0);
+        email.setAttempts(0);
+        email.setCreatedAt(now);
+        email.setNextAttemptAt(now);
+        return email;
+    }
+
+    private String shippingSubject(Long orderId) {
+        return "订单发货通知 - 订单号: " + orderId;
+    }
+
+    private String shippingBody(Long orderId, Double totalAmount) {
+        return "尊敬的顾客，您的订单已发货。订单号: " + orderId +
+                "\n总金额: " + totalAmount +
+                "\n物流信息：请登录系统查看详细信息" +
+                "\n感谢您的购买！";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.List;
+
+//批量商品变更事件（批量上下架、改价、改库存），由GoodsService在批量写操作后发布
+//changes为每个商品的变更事件，监听方可以在一次加锁或一次复制中应用整批变更
+public class GoodsBatchChangedEvent {
+    private final List<GoodsChangedEvent> changes;
+
+    public GoodsBatchChangedEvent(List<GoodsChangedEvent> changes) {
+        this.changes = changes;
+    }
+
+    public List<GoodsChangedEvent> getChanges() { return changes; }
+}
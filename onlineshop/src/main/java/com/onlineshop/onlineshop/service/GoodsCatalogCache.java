@@ -0,0 +1,319 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//在售商品目录缓存
+//持有上架且有库存商品的不可变快照，读请求直接返回快照，商品写操作提交后增量修补快照
+@Service
+public class GoodsCatalogCache {
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    //单个商品的重新加载在提交后的监听器中执行，使用新事务和新的持久化上下文，读到已提交的数据
+    private TransactionTemplate reloadTransaction;
+
+    //当前快照，为null表示需要重建
+    //重建和修补都在lock内进行，重建期间提交的变更会在重建完成后再修补到新快照上
+    private volatile Snapshot snapshot;
+    private final Object lock = new Object();
+    //不在快照中的商品（下架、售罄、已删除，或快照不存在时）最近一次应用的版本号，在lock内读写
+    //同一商品的写事务由行锁按顺序提交，但提交后的监听器可能以任意顺序执行，版本号较旧的变更直接丢弃
+    //快照中的商品以快照里的版本号为准，不在这里记录；重建时移除快照已经覆盖的记录
+    //晚到的变更只出现在提交后很短的时间内，超过上限时移除最早的记录（包括删除留下的最大版本号）
+    private final LinkedHashMap<Long, Long> appliedVersions = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > maxTrackedVersions;
+        }
+    };
+
+    @Value("${goods.catalog.max-tracked-versions:10000}")
+    private int maxTrackedVersions;
+
+    //统计数据
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong patches = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong stalePatches = new AtomicLong();
+    private final AtomicLong totalRebuildNanos = new AtomicLong();
+    private final AtomicLong lastRebuildNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        reloadTransaction = new TransactionTemplate(transactionManager);
+        reloadTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        reloadTransaction.setReadOnly(true);
+    }
+
+    //获取在售商品（按商品ID升序）
+    public List<Goods> getAvailableGoods() {
+        return current().list;
+    }
+
+    //按商品ID游标分页获取在售商品，从afterGid之后开始，最多limit条
+    public List<Goods> getAvailableGoodsAfter(Long afterGid, int limit) {
+        Snapshot current = current();
+        Iterable<Goods> tail = afterGid == null ? current.byGid.values()
+                : current.byGid.tailMap(afterGid, false).values();
+        List<Goods> page = new ArrayList<>(Math.min(limit, current.list.size()));
+        for (Goods goods : tail) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(goods);
+        }
+        return page;
+    }
+
+    //清空快照，下次读取时重建
+    public void invalidate() {
+        synchronized (lock) {
+            snapshot = null;
+            invalidations.incrementAndGet();
+        }
+    }
+
+    //商品变更提交后修补快照（没有事务时立即执行）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsChanged(GoodsChangedEvent event) {
+        patch(List.of(event));
+    }
+
+    //批量变更提交后修补快照，整批只复制一次快照
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsBatchChanged(GoodsBatchChangedEvent event) {
+        patch(event.getChanges());
+    }
+
+    private void patch(List<GoodsChangedEvent> events) {
+        synchronized (lock) {
+            Snapshot current = snapshot;
+            //快照不存在时只记录版本号
+            TreeMap<Long, Goods> byGid = current != null ? new TreeMap<>(current.byGid) : null;
+            int applied = 0;
+            for (GoodsChangedEvent event : events) {
+                Goods cached = byGid != null ? byGid.get(event.getGid()) : null;
+                long latest = latestVersion(event.getGid(), cached);
+                if (!advanceVersion(event, latest)) {
+                    stalePatches.incrementAndGet();
+                    continue;
+                }
+                if (byGid == null) {
+                    continue;
+                }
+                Goods goods = event.getGoods();
+                if (event.getType() == GoodsChangedEvent.Type.STOCK) {
+                    //增量只能应用在前一个版本上
+                    boolean contiguous = event.getVersion() == null || event.getVersion() - latest == 1;
+                    if (cached != null && contiguous) {
+                        goods = GoodsChangedEvent.snapshotOf(cached);
+                        goods.setRemaining(cached.getRemaining() + event.getStockDelta());
+                        goods.setSales(cached.getSales() + event.getSalesDelta());
+                        goods.setVersion(event.getVersion());
+                    } else if (cached == null && contiguous && event.getStockDelta() <= 0) {
+                        //快照中没有的商品扣减库存后仍不可售，不需要处理
+                        continue;
+                    } else {
+                        //更早提交的变更还没有到达，或者恢复库存的商品不在快照中（没有完整数据）：按ID重新加载这一个商品
+                        //加载到的版本号仍低于事件的版本号时，说明中间的变更确实缺失，重新加载整个快照
+                        goods = reload(event.getGid());
+                        if (goods == null) {
+                            //已删除，删除事件到达时再记录版本号
+                            byGid.remove(event.getGid());
+                            applied++;
+                            continue;
+                        }
+                        long reloadedVersion = goods.getVersion() != null ? goods.getVersion() : -1L;
+                        if (event.getVersion() != null && reloadedVersion < event.getVersion()) {
+                            byGid = null;
+                            applied = 0;
+                            snapshot = null;
+                            invalidations.incrementAndGet();
+                            continue;
+                        }
+                        //晚到的变更以加载到的版本号为准
+                        if (!goods.isAvailable()) {
+                            appliedVersions.remove(event.getGid());
+                            appliedVersions.put(event.getGid(), reloadedVersion);
+                        }
+                    }
+                }
+                if (event.getType() != GoodsChangedEvent.Type.DELETE && goods.isAvailable()) {
+                    byGid.put(event.getGid(), goods);
+                    if (goods.getVersion() != null) {
+                        appliedVersions.remove(event.getGid());
+                    }
+                } else {
+                    byGid.remove(event.getGid());
+                }
+                applied++;
+            }
+            if (byGid != null && applied > 0) {
+                snapshot = new Snapshot(byGid);
+                patches.addAndGet(applied);
+            }
+        }
+    }
+
+    //从数据库加载一个商品的快照（不读二级缓存），已删除时返回null，调用方需持有lock
+    private Goods reload(Long gid) {
+        reloads.incrementAndGet();
+        return reloadTransaction.execute(status ->
+                goodsRepository.findUncachedById(gid).map(GoodsChangedEvent::snapshotOf).orElse(null));
+    }
+
+    //商品已应用的最新版本号（版本记录和快照中的版本取较大者），没有记录时为-1
+    private long latestVersion(Long gid, Goods cached) {
+        long latest = appliedVersions.getOrDefault(gid, -1L);
+        if (cached != null && cached.getVersion() != null) {
+            latest = Math.max(latest, cached.getVersion());
+        }
+        return latest;
+    }
+
+    //记录事件的版本号，返回false表示事件不比已应用的版本新（删除为最大版本号）
+    private boolean advanceVersion(GoodsChangedEvent event, long latest) {
+        Long version = event.getVersion();
+        if (version == null) {
+            return true;
+        }
+        if (version <= latest) {
+            return false;
+        }
+        //先移除再放入，更新过的记录排到最后
+        appliedVersions.remove(event.getGid());
+        appliedVersions.put(event.getGid(), version);
+        return true;
+    }
+
+    //获取缓存统计
+    public CatalogCacheStats getStats() {
+        Snapshot current = snapshot;
+        long rebuildCount = rebuilds.get();
+        int trackedVersions;
+        synchronized (lock) {
+            trackedVersions = appliedVersions.size();
+        }
+        return new CatalogCacheStats(hits.get(), misses.get(), rebuildCount, patches.get(), invalidations.get(),
+                reloads.get(), stalePatches.get(), current != null ? current.list.size() : 0, trackedVersions,
+                lastRebuildNanos.get() / 1_000_000.0,
+                rebuildCount > 0 ? totalRebuildNanos.get() / 1_000_000.0 / rebuildCount : 0.0);
+    }
+
+    //获取当前快照，不存在时重建
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.incrementAndGet();
+            return current;
+        }
+        synchronized (lock) {
+            current = snapshot;
+            if (current != null) {
+                hits.incrementAndGet();
+                return current;
+            }
+            misses.incrementAndGet();
+            return rebuild();
+        }
+    }
+
+    //从数据库重建快照，调用方需持有lock
+    private Snapshot rebuild() {
+        long start = System.nanoTime();
+        List<Goods> goodsList = goodsRepository.findByStatusAndRemainingGreaterThan(1, 0);
+        TreeMap<Long, Goods> byGid = new TreeMap<>();
+        for (Goods goods : goodsList) {
+            byGid.put(goods.getGid(), GoodsChangedEvent.snapshotOf(goods));
+            //快照中的版本号不低于记录的版本号时，记录不再需要
+            Long applied = appliedVersions.get(goods.getGid());
+            if (applied != null && goods.getVersion() != null && applied <= goods.getVersion()) {
+                appliedVersions.remove(goods.getGid());
+            }
+        }
+        Snapshot rebuilt = new Snapshot(byGid);
+        long elapsed = System.nanoTime() - start;
+        rebuilds.incrementAndGet();
+        lastRebuildNanos.set(elapsed);
+        totalRebuildNanos.addAndGet(elapsed);
+        snapshot = rebuilt;
+        return rebuilt;
+    }
+
+    //不可变快照
+    private static class Snapshot {
+        private final TreeMap<Long, Goods> byGid;
+        private final List<Goods> list;
+        private Snapshot(TreeMap<Long, Goods> byGid) {
+            this.byGid = byGid;
+            this.list = Collections.unmodifiableList(new ArrayList<>(byGid.values()));
+        }
+    }
+
+    //目录缓存统计类
+    public static class CatalogCacheStats {
+        private final long hits;
+        private final long misses;
+        private final long rebuilds;
+        private final long patches;
+        private final long invalidations;
+        private final long reloads;
+        private final long stalePatches;
+        private final int size;
+        private final int trackedVersions;
+        private final double lastRebuildMillis;
+        private final double avgRebuildMillis;
+        public CatalogCacheStats(long hits, long misses, long rebuilds, long patches, long invalidations,
+                                 long reloads, long stalePatches, int size, int trackedVersions,
+                                 double lastRebuildMillis, double avgRebuildMillis) {
+            this.hits = hits;
+            this.misses = misses;
+            this.rebuilds = rebuilds;
+            this.patches = patches;
+            this.invalidations = invalidations;
+            this.reloads = reloads;
+            this.stalePatches = stalePatches;
+            this.size = size;
+            this.trackedVersions = trackedVersions;
+            this.lastRebuildMillis = lastRebuildMillis;
+            this.avgRebuildMillis = avgRebuildMillis;
+        }
+        //getter函数
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getRebuilds() { return rebuilds; }
+        public long getPatches() { return patches; }
+        public long getInvalidations() { return invalidations; }
+        public long getReloads() { return reloads; }
+        public long getStalePatches() { return stalePatches; }
+        public int getSize() { return size; }
+        public int getTrackedVersions() { return trackedVersions; }
+        public double getLastRebuildMillis() { return lastRebuildMillis; }
+        public double getAvgRebuildMillis() { return avgRebuildMillis; }
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
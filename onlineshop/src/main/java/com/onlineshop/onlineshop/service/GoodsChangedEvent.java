@@ -0,0 +1,77 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+
+//商品变更事件，由GoodsService在写操作后发布，事务提交后再由缓存等组件消费
+public class GoodsChangedEvent {
+    public enum Type {
+        UPSERT,  //新增或更新，goods为变更后的快照
+        DELETE,  //删除，goods为null
+        STOCK    //库存和销量的增量变化（条件更新语句，不加载实体），goods为null，version为更新后的版本号
+    }
+
+    private final Type type;
+    private final Long gid;
+    private final Goods goods;
+    private final int stockDelta;
+    private final int salesDelta;
+    private final Long version;
+
+    private GoodsChangedEvent(Type type, Long gid, Goods goods, int stockDelta, int salesDelta, Long version) {
+        this.type = type;
+        this.gid = gid;
+        this.goods = goods;
+        this.stockDelta = stockDelta;
+        this.salesDelta = salesDelta;
+        this.version = version;
+    }
+
+    public static GoodsChangedEvent upsert(Goods goods) {
+        Goods snapshot = snapshotOf(goods);
+        return new GoodsChangedEvent(Type.UPSERT, goods.getGid(), snapshot, 0, 0, snapshot.getVersion());
+    }
+    //删除记为最大版本号，之后到达的任何变更都比它旧
+    public static GoodsChangedEvent delete(Long gid) {
+        return new GoodsChangedEvent(Type.DELETE, gid, null, 0, 0, Long.MAX_VALUE);
+    }
+    //version为更新语句执行后的版本号，增量只能应用在版本号为version - 1的数据上
+    public static GoodsChangedEvent stockChanged(Long gid, int stockDelta, int salesDelta, Long version) {
+        return new GoodsChangedEvent(Type.STOCK, gid, null, stockDelta, salesDelta, version);
+    }
+
+    //复制商品的基本字段和商家的公开信息，得到与持久化上下文无关的对象
+    //快照不含懒加载集合，可以在请求之间共享并直接序列化
+    public static Goods snapshotOf(Goods goods) {
+        Goods copy = new Goods();
+        copy.setGid(goods.getGid());
+        copy.setName(goods.getName());
+        copy.setDescription(goods.getDescription());
+        copy.setPrice(goods.getPrice());
+        copy.setRemaining(goods.getRemaining());
+        copy.setImageUrl(goods.getImageUrl());
+        copy.setStatus(goods.getStatus());
+        copy.setSales(goods.getSales());
+        copy.setVersion(goods.getVersion());
+        User merchant = goods.getMerchant();
+        if (merchant != null) {
+            User merchantCopy = new User();
+            merchantCopy.setUid(merchant.getUid());
+            merchantCopy.setNickname(merchant.getNickname());
+            merchantCopy.setEmail(merchant.getEmail());
+            merchantCopy.setAddress(merchant.getAddress());
+            merchantCopy.setAvatarUrl(merchant.getAvatarUrl());
+            merchantCopy.setRole(merchant.getRole());
+            copy.setMerchant(merchantCopy);
+        }
+        return copy;
+    }
+
+    public Type getType() { return type; }
+    public Long getGid() { return gid; }
+    public Goods getGoods() { return goods; }
+    public int getStockDelta() { return stockDelta; }
+    public int getSalesDelta() { return salesDelta; }
+    //变更后的版本号，监听方据此丢弃晚到的旧变更（为null时不做检查）
+    public Long getVersion() { return version; }
+}
@@ -0,0 +1,176 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//商品详情加载器
+//1. 同一商品的并发加载合并为一次查询，等待的请求共享加载结果（与持久化上下文无关的快照）
+//2. 查询不到的ID在短时间内记为不存在（负缓存），有效期内的重复请求不再访问数据库
+//   不保存全部商品ID：其他节点或直接写入数据库的商品最多在负缓存过期后就能读到
+//加载本身走Hibernate二级缓存，这里不再保存商品数据
+@Service
+public class GoodsDetailCache {
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    //负缓存有效期和条目上限（超过上限时整体清空）
+    @Value("${goods.detail.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+    @Value("${goods.detail.negative-max-entries:10000}")
+    private int negativeMaxEntries;
+
+    //正在进行的加载，key为商品ID，加载结束后移除
+    private final ConcurrentHashMap<Long, CompletableFuture<Goods>> loading = new ConcurrentHashMap<>();
+    //负缓存，value为过期时间（System.nanoTime）
+    private final ConcurrentHashMap<Long, Long> missing = new ConcurrentHashMap<>();
+    //新增商品的计数，加载期间有新增时不写负缓存，避免把刚提交的商品记为不存在
+    private final AtomicLong registrations = new AtomicLong();
+
+    //统计数据
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    //获取商品详情，不存在时抛出异常
+    public Goods get(Long gid) {
+        requests.incrementAndGet();
+        if (gid == null || gid <= 0) {
+            throw notFound();
+        }
+        Long expiresAt = missing.get(gid);
+        if (expiresAt != null) {
+            if (expiresAt - System.nanoTime() > 0) {
+                negativeHits.incrementAndGet();
+                throw notFound();
+            }
+            missing.remove(gid, expiresAt);
+        }
+
+        CompletableFuture<Goods> own = new CompletableFuture<>();
+        CompletableFuture<Goods> running = loading.putIfAbsent(gid, own);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        try {
+            long registered = registrations.get();
+            loads.incrementAndGet();
+            Goods goods = goodsRepository.findById(gid).map(GoodsChangedEvent::snapshotOf).orElse(null);
+            if (goods == null && registrations.get() == registered) {
+                if (missing.size() >= negativeMaxEntries) {
+                    missing.clear();
+                }
+                missing.put(gid, System.nanoTime() + negativeTtlSeconds * 1_000_000_000L);
+                //写入负缓存的同时有新商品登记，撤销这次写入
+                if (registrations.get() != registered) {
+                    missing.remove(gid);
+                }
+            }
+            own.complete(goods);
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+        } finally {
+            loading.remove(gid, own);
+        }
+        return await(own);
+    }
+
+    //登记新商品：移除负缓存（导入等不逐个发布事件的写入在提交后调用）
+    public void register(Collection<Long> gids) {
+        registrations.incrementAndGet();
+        for (Long gid : gids) {
+            missing.remove(gid);
+        }
+    }
+
+    //清空负缓存（直接修改数据库后调用）
+    public void invalidate() {
+        registrations.incrementAndGet();
+        missing.clear();
+    }
+
+    //商品变更提交后登记新增的商品（没有事务时立即执行）
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsChanged(GoodsChangedEvent event) {
+        if (event.getType() == GoodsChangedEvent.Type.UPSERT) {
+            register(List.of(event.getGid()));
+        }
+    }
+
+    //批量变更只修改已有商品，不会产生新ID，只需要清除可能过期的负缓存
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsBatchChanged(GoodsBatchChangedEvent event) {
+        for (GoodsChangedEvent change : event.getChanges()) {
+            missing.remove(change.getGid());
+        }
+    }
+
+    //获取统计
+    public DetailCacheStats getStats() {
+        return new DetailCacheStats(requests.get(), loads.get(), coalesced.get(), negativeHits.get(), notFound.get(),
+                missing.size(), loading.size());
+    }
+
+    private Goods await(CompletableFuture<Goods> future) {
+        Goods goods;
+        try {
+            goods = future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        if (goods == null) {
+            throw notFound();
+        }
+        return goods;
+    }
+
+    private RuntimeException notFound() {
+        notFound.incrementAndGet();
+        return new RuntimeException("商品不存在");
+    }
+
+    //商品详情加载统计类
+    public static class DetailCacheStats {
+        private final long requests;
+        private final long loads;
+        private final long coalesced;
+        private final long negativeHits;
+        private final long notFound;
+        private final int negativeSize;
+        private final int inFlight;
+        public DetailCacheStats(long requests, long loads, long coalesced, long negativeHits, long notFound,
+                                int negativeSize, int inFlight) {
+            this.requests = requests;
+            this.loads = loads;
+            this.coalesced = coalesced;
+            this.negativeHits = negativeHits;
+            this.notFound = notFound;
+            this.negativeSize = negativeSize;
+            this.inFlight = inFlight;
+        }
+        //getter函数
+        public long getRequests() { return requests; }
+        public long getLoads() { return loads; }
+        public long getCoalesced() { return coalesced; }
+        public long getNegativeHits() { return negativeHits; }
+        public long getNotFound() { return notFound; }
+        public int getNegativeSize() { return negativeSize; }
+        public int getInFlight() { return inFlight; }
+    }
+}
@@ -0,0 +1,501 @@
+package com.onlineshop.onlineshop.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//商品批量导入：逐行读取商家上传的CSV或JSONL文件，不把整个文件读入内存
+//每行按addGoods的规则校验，合法的行按批用JDBC插入（每批一个事务），不合法的行记录行号和原因后跳过
+//CSV首行为表头，列名为name、description、price、remaining、imageUrl（不区分大小写，顺序不限）
+//JSONL每行一个JSON对象，字段名同上
+@Service
+public class GoodsImportService {
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private GoodsCatalogCache goodsCatalogCache;
+    @Autowired
+    private GoodsSearchIndex goodsSearchIndex;
+    @Autowired
+    private GoodsPriceIndex goodsPriceIndex;
+    @Autowired
+    private GoodsDetailCache goodsDetailCache;
+
+    //每批插入的行数和返回的错误明细上限（超过上限只计数）
+    @Value("${goods.import.batch-size:1000}")
+    private int batchSize;
+    @Value("${goods.import.max-errors:100}")
+    private int maxErrors;
+
+    private static final String[] COLUMNS = {"name", "description", "price", "remaining", "imageurl"};
+    //单条记录的最大字符数，超长的行或引号未闭合时不会把后面的内容全部读入内存
+    private static final int MAX_RECORD_CHARS = 64 * 1024;
+    //与goods表的varchar列长度一致
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    //商家ID -> 最近一次导入的进度
+    private final Map<Long, ImportProgress> progressByMerchant = new ConcurrentHashMap<>();
+
+    public enum ImportFormat {
+        CSV, JSONL;
+
+        //根据文件名判断格式
+        public static ImportFormat fromFileName(String fileName) {
+            String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return JSONL;
+            }
+            throw new RuntimeException("只支持CSV或JSONL文件");
+        }
+    }
+
+    //导入商品，返回最终的导入结果；同一商家同时只能有一个导入任务
+    public ImportProgress importGoods(User merchant, InputStream input, ImportFormat format) {
+        ImportProgress progress = progressByMerchant.compute(merchant.getUid(), (id, current) -> {
+            if (current != null && current.isRunning()) {
+                throw new RuntimeException("已有导入任务正在进行");
+            }
+            return new ImportProgress(format, maxErrors);
+        });
+        List<Goods> batch = new ArrayList<>(batchSize);
+        int firstLine = 0;
+        int lastLine = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            LineReader lines = new LineReader(reader);
+            RowReader rows = format == ImportFormat.CSV ? new CsvRowReader(lines) : new JsonlRowReader(lines, objectMapper);
+            while (true) {
+                String[] row;
+                try {
+                    row = rows.next();
+                } catch (RowException e) {
+                    progress.rowFailed(e.line, e.getMessage());
+                    continue;
+                }
+                if (row == null) {
+                    break;
+                }
+                Goods goods;
+                try {
+                    goods = toGoods(row);
+                } catch (RuntimeException e) {
+                    progress.rowFailed(rows.line(), e.getMessage());
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    firstLine = rows.line();
+                }
+                lastLine = rows.line();
+                batch.add(goods);
+                if (batch.size() >= batchSize) {
+                    flush(merchant.getUid(), batch, firstLine, lastLine, progress);
+                }
+            }
+            flush(merchant.getUid(), batch, firstLine, lastLine, progress);
+        } catch (IOException e) {
+            throw new RuntimeException("读取导入文件失败: " + e.getMessage());
+        } finally {
+            progress.finish();
+            if (progress.getImported() > 0) {
+                //新商品没有逐个发布变更事件，缓存和索引在下次读取时重建
+                goodsCatalogCache.invalidate();
+                goodsSearchIndex.invalidate();
+                goodsPriceIndex.invalidate();
+            }
+            System.out.println("商品导入结束: 商家 " + merchant.getUid() + ", " + progress.getRows() + " 行, 成功 "
+                    + progress.getImported() + ", 失败 " + progress.getFailed() + ", 耗时 " + progress.getElapsedMillis() + "ms");
+        }
+        return progress;
+    }
+
+    //获取商家最近一次导入的进度，没有导入过时返回null
+    public ImportProgress getProgress(Long merchantId) {
+        return progressByMerchant.get(merchantId);
+    }
+
+    //插入一批商品，写入失败时这一批的行都记为失败，继续导入后面的行
+    private void flush(Long merchantId, List<Goods> batch, int firstLine, int lastLine, ImportProgress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> goodsRepository.insertGoods(merchantId, batch));
+            progress.batchImported(batch.size());
+            //这一批已提交，清除商品详情的负缓存，导入过程中就能查询到新商品
+            List<Long> gids = new ArrayList<>(batch.size());
+            for (Goods goods : batch) {
+                gids.add(goods.getGid());
+            }
+            goodsDetailCache.register(gids);
+        } catch (RuntimeException e) {
+            progress.batchFailed(firstLine, batch.size(), "第" + firstLine + "-" + lastLine + "行写入失败: " + e.getMessage());
+        }
+        batch.clear();
+    }
+
+    //按addGoods的规则校验一行（name, description, price, remaining, imageUrl）
+    private Goods toGoods(String[] row) {
+        String name = trimToNull(row[0]);
+        if (name == null) {
+            throw new RuntimeException("商品名称不能为空");
+        }
+        Double price;
+        try {
+            price = row[2] == null ? null : Double.valueOf(row[2].trim());
+        } catch (NumberFormatException e) {
+            price = null;
+        }
+        if (price == null || price.isNaN() || price.isInfinite() || price < 0) {
+            throw new RuntimeException("商品价格不合法");
+        }
+        Integer remaining;
+        try {
+            remaining = row[3] == null ? null : Integer.valueOf(row[3].trim());
+        } catch (NumberFormatException e) {
+            remaining = null;
+        }
+        if (remaining == null || remaining < 0) {
+            throw new RuntimeException("商品库存不合法");
+        }
+        String description = trimToNull(row[1]);
+        String imageUrl = trimToNull(row[4]);
+        if (name.length() > MAX_TEXT_LENGTH || (description != null && description.length() > MAX_TEXT_LENGTH)
+                || (imageUrl != null && imageUrl.length() > MAX_TEXT_LENGTH)) {
+            throw new RuntimeException("字段长度不能超过" + MAX_TEXT_LENGTH + "个字符");
+        }
+        Goods goods = new Goods();
+        goods.setName(name);
+        goods.setDescription(description);
+        goods.setPrice(price);
+        goods.setRemaining(remaining);
+        goods.setImageUrl(imageUrl);
+        goods.setStatus(1); //默认上架
+        goods.setSales(0); //默认销量为0
+        return goods;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    //逐条读取记录，返回按COLUMNS顺序排列的字段值，文件结束时返回null
+    private interface RowReader {
+        String[] next() throws IOException;
+        //当前记录的起始行号
+        int line();
+    }
+
+    //单条记录格式错误
+    private static class RowException extends RuntimeException {
+        private final int line;
+        RowException(int line, String message) {
+            super(message);
+            this.line = line;
+        }
+    }
+
+    //按行读取，每行最多保留limit个字符，超出的部分读过后丢弃
+    //BufferedReader.readLine会把整行读入内存，没有换行的大文件会在长度检查之前占满堆
+    private static class LineReader {
+        private final BufferedReader reader;
+        //上一行以\r结尾，下一行开头的\n属于同一个换行
+        private boolean skipLf;
+        private boolean truncated;
+
+        LineReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        //返回不含换行符的一行，文件结束时返回null
+        String readLine(int limit) throws IOException {
+            int c = reader.read();
+            if (skipLf && c == '\n') {
+                c = reader.read();
+            }
+            skipLf = false;
+            if (c < 0) {
+                return null;
+            }
+            StringBuilder line = new StringBuilder();
+            truncated = false;
+            while (c >= 0 && c != '\n' && c != '\r') {
+                if (line.length() < limit) {
+                    line.append((char) c);
+                } else {
+                    truncated = true;
+                }
+                c = reader.read();
+            }
+            skipLf = c == '\r';
+            return line.toString();
+        }
+
+        //上一次读取的行是否超过了limit
+        boolean truncated() {
+            return truncated;
+        }
+    }
+
+    //CSV读取，支持双引号包围的字段（字段内可以有逗号、换行和两个连续的双引号）
+    private static class CsvRowReader implements RowReader {
+        private final LineReader reader;
+        private int lineNumber;
+        private int recordLine;
+        //列序号 -> COLUMNS中的位置，-1表示忽略该列
+        private int[] mapping;
+
+        CsvRowReader(LineReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            if (mapping == null) {
+                readHeader();
+            }
+            List<String> fields;
+            do {
+                fields = readRecord();
+                if (fields == null) {
+                    return null;
+                }
+            } while (fields.size() == 1 && fields.get(0).isBlank());
+            String[] row = new String[COLUMNS.length];
+            for (int i = 0; i < fields.size() && i < mapping.length; i++) {
+                if (mapping[i] >= 0) {
+                    row[mapping[i]] = fields.get(i);
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        private void readHeader() throws IOException {
+            List<String> header = readRecord();
+            if (header == null) {
+                throw new RuntimeException("CSV文件为空");
+            }
+            mapping = new int[header.size()];
+            boolean[] present = new boolean[COLUMNS.length];
+            for (int i = 0; i < header.size(); i++) {
+                //去掉UTF-8 BOM
+                String name = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                mapping[i] = -1;
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    if (COLUMNS[c].equals(name)) {
+                        mapping[i] = c;
+                        present[c] = true;
+                    }
+                }
+            }
+            for (int c : new int[]{0, 2, 3}) {
+                if (!present[c]) {
+                    throw new RuntimeException("CSV表头缺少列: " + COLUMNS[c]);
+                }
+            }
+        }
+
+        private List<String> readRecord() throws IOException {
+            String line = reader.readLine(MAX_RECORD_CHARS);
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            recordLine = lineNumber;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int length = 0;
+            while (true) {
+                if (reader.truncated()) {
+                    throw new RowException(recordLine, "记录过长或引号未闭合");
+                }
+                length += line.length();
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c != '"') {
+                            field.append(c);
+                        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else if (c == '"') {
+                        quoted = true;
+                    } else if (c == ',') {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (!quoted) {
+                    break;
+                }
+                //引号内的换行属于字段内容
+                line = reader.readLine(MAX_RECORD_CHARS - length);
+                if (line == null) {
+                    throw new RowException(recordLine, "引号未闭合");
+                }
+                lineNumber++;
+                field.append('\n');
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    //JSONL读取，每行一个JSON对象，空行跳过
+    private static class JsonlRowReader implements RowReader {
+        private final LineReader reader;
+        private final ObjectMapper objectMapper;
+        private int lineNumber;
+
+        JsonlRowReader(LineReader reader, ObjectMapper objectMapper) {
+            this.reader = reader;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine(MAX_RECORD_CHARS);
+                if (line == null) {
+                    return null;
+                }
+                lineNumber++;
+                if (reader.truncated()) {
+                    throw new RowException(lineNumber, "记录过长");
+                }
+            } while (line.isBlank());
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (IOException e) {
+                throw new RowException(lineNumber, "JSON格式错误");
+            }
+            if (!node.isObject()) {
+                throw new RowException(lineNumber, "每行必须是一个JSON对象");
+            }
+            String[] row = new String[COLUMNS.length];
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                String name = field.getKey().toLowerCase(Locale.ROOT);
+                for (int c = 0; c < COLUMNS.length; c++) {
+                    if (COLUMNS[c].equals(name) && !field.getValue().isNull()) {
+                        row[c] = field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString();
+                    }
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public int line() {
+            return lineNumber;
+        }
+    }
+
+    //导入进度和结果；由导入线程更新，查询进度的请求可以同时读取
+    public static class ImportProgress {
+        private final ImportFormat format;
+        private final int maxErrors;
+        private final Date startTime = new Date();
+        private final List<RowError> errors = new ArrayList<>();
+        private volatile boolean running = true;
+        private volatile int rows;
+        private volatile int imported;
+        private volatile int failed;
+        private volatile long endMillis;
+
+        ImportProgress(ImportFormat format, int maxErrors) {
+            this.format = format;
+            this.maxErrors = maxErrors;
+        }
+
+        void rowFailed(int line, String message) {
+            rows++;
+            failed++;
+            addError(line, message);
+        }
+        void batchImported(int count) {
+            rows += count;
+            imported += count;
+        }
+        void batchFailed(int line, int count, String message) {
+            rows += count;
+            failed += count;
+            addError(line, message);
+        }
+        void finish() {
+            endMillis = System.currentTimeMillis();
+            running = false;
+        }
+        private synchronized void addError(int line, String message) {
+            if (errors.size() < maxErrors) {
+                errors.add(new RowError(line, message));
+            }
+        }
+
+        //getter函数
+        public ImportFormat getFormat() { return format; }
+        public Date getStartTime() { return startTime; }
+        public boolean isRunning() { return running; }
+        //已处理的行数（包括失败的行）
+        public int getRows() { return rows; }
+        public int getImported() { return imported; }
+        public int getFailed() { return failed; }
+        public long getElapsedMillis() {
+            return (running ? System.currentTimeMillis() : endMillis) - startTime.getTime();
+        }
+        //错误明细（最多maxErrors条）
+        public synchronized List<RowError> getErrors() { return new ArrayList<>(errors); }
+    }
+
+    //单行错误
+    public static class RowError {
+        private Integer line;
+        private String message;
+        public RowError(Integer line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+        //getter函数
+        public Integer getLine() { return line; }
+        public String getMessage() { return message; }
+    }
+}
@@ -0,0 +1,300 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//上架商品价格索引
+//用按(价格, 商品ID)排序的基本类型数组保存价格、商品ID和库存，价格区间查询为二分查找加区间扫描
+//商品写操作提交后增量维护，查询时不产生装箱对象，只分配一页大小的结果数组
+//每个条目保存商品的版本号，不在索引中的商品的版本号记在GoodsVersionLog中，晚到的旧变更直接丢弃
+@Service
+public class GoodsPriceIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BATCH_REBUILD_THRESHOLD = 256;
+
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Value("${goods.index.max-tracked-versions:10000}")
+    private int maxTrackedVersions;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private long[] gids = new long[INITIAL_CAPACITY];
+    private int[] stocks = new int[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private int size;
+    //商品ID -> 当前索引中的价格，用于定位旧条目（基本类型哈希表，查找不装箱）
+    private LongDoubleHashMap priceByGid = new LongDoubleHashMap(INITIAL_CAPACITY);
+    private boolean built;
+    //不在索引中的商品的版本号
+    private GoodsVersionLog removedVersions;
+
+    @PostConstruct
+    public void init() {
+        removedVersions = new GoodsVersionLog(maxTrackedVersions);
+    }
+
+    //查询价格在[minPrice, maxPrice]内的商品，按价格升序，相同价格按商品ID升序
+    public RangeResult range(double minPrice, double maxPrice, boolean inStockOnly, int offset, int limit) {
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            int from = lowerBound(minPrice, Long.MIN_VALUE);
+            int to = lowerBound(Math.nextUp(maxPrice), Long.MIN_VALUE);
+            if (from >= to) {
+                return new RangeResult(new long[0], 0);
+            }
+            if (!inStockOnly) {
+                int start = Math.min(from + Math.max(offset, 0), to);
+                int end = Math.min(start + limit, to);
+                return new RangeResult(Arrays.copyOfRange(gids, start, end), to - from);
+            }
+            long[] page = new long[Math.max(0, Math.min(limit, to - from))];
+            int matched = 0;
+            int filled = 0;
+            for (int i = from; i < to; i++) {
+                if (stocks[i] <= 0) {
+                    continue;
+                }
+                if (matched >= offset && filled < page.length) {
+                    page[filled++] = gids[i];
+                }
+                matched++;
+            }
+            return new RangeResult(filled == page.length ? page : Arrays.copyOf(page, filled), matched);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //商品变更提交后更新索引
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsChanged(GoodsChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            apply(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //批量变更提交后更新索引，整批只加一次写锁
+    //变更较多时逐个插入删除要反复移动数组，直接清空索引，下次查询时重建
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsBatchChanged(GoodsBatchChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.getChanges().size() > BATCH_REBUILD_THRESHOLD) {
+                //重建会读到这批变更，只需记录版本号，重建前后到达的旧变更仍然可以丢弃
+                for (GoodsChangedEvent change : event.getChanges()) {
+                    if (change.getType() != GoodsChangedEvent.Type.STOCK && change.getVersion() != null
+                            && change.getVersion() > removedVersions.get(change.getGid())) {
+                        removedVersions.put(change.getGid(), change.getVersion());
+                    }
+                }
+                reset();
+                return;
+            }
+            for (GoodsChangedEvent change : event.getChanges()) {
+                apply(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //应用一个商品的变更，调用方需持有写锁
+    private void apply(GoodsChangedEvent event) {
+        double oldPrice = priceByGid.get(event.getGid());
+        boolean indexed = !Double.isNaN(oldPrice);
+        int position = indexed ? lowerBound(oldPrice, event.getGid()) : -1;
+        long latest = Math.max(indexed ? versions[position] : -1L, removedVersions.get(event.getGid()));
+        Long version = event.getVersion();
+        if (version != null && version <= latest) {
+            return; //晚到的旧变更
+        }
+        long applied = version != null ? version : -1L;
+        if (event.getType() == GoodsChangedEvent.Type.STOCK) {
+            //库存增量不改变上下架状态，不在索引中的商品直接忽略（也不记录版本号，之前提交的上架晚到时仍然有效）
+            if (!indexed) {
+                return;
+            }
+            //增量只能应用在前一个版本上，更早提交的变更还没有到达时清空索引，下次查询时重建
+            if (version != null && version - latest != 1) {
+                reset();
+                return;
+            }
+            stocks[position] += event.getStockDelta();
+            versions[position] = applied;
+            return;
+        }
+        if (!built) {
+            //首次查询时会从数据库读取最新数据，这里只记录版本号
+            if (version != null) {
+                removedVersions.put(event.getGid(), applied);
+            }
+            return;
+        }
+        Goods goods = event.getGoods();
+        boolean listed = event.getType() == GoodsChangedEvent.Type.UPSERT
+                && goods.getStatus() != null && goods.getStatus() == 1 && goods.getPrice() != null;
+        if (!listed) {
+            if (indexed) {
+                remove(oldPrice, event.getGid());
+            }
+            if (version != null) {
+                removedVersions.put(event.getGid(), applied);
+            }
+            return;
+        }
+        int stock = goods.getRemaining() != null ? goods.getRemaining() : 0;
+        if (indexed && oldPrice == goods.getPrice()) {
+            //价格未变化，只更新库存
+            stocks[position] = stock;
+            versions[position] = applied;
+            return;
+        }
+        if (indexed) {
+            remove(oldPrice, event.getGid());
+        }
+        insert(goods.getPrice(), event.getGid(), stock, applied);
+        removedVersions.remove(event.getGid());
+    }
+
+    //清空索引，下次查询时重建
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //首次使用时从数据库建立索引
+    private void ensureBuilt() {
+        lock.readLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+            List<Object[]> rows = goodsRepository.findListedGoodsPrice();
+            rows.sort((a, b) -> {
+                int cmp = Double.compare(((Number) a[1]).doubleValue(), ((Number) b[1]).doubleValue());
+                return cmp != 0 ? cmp : Long.compare((Long) a[0], (Long) b[0]);
+            });
+            int capacity = Math.max(INITIAL_CAPACITY, rows.size() + rows.size() / 4);
+            prices = new double[capacity];
+            gids = new long[capacity];
+            stocks = new int[capacity];
+            versions = new long[capacity];
+            priceByGid = new LongDoubleHashMap(rows.size());
+            size = 0;
+            for (Object[] row : rows) {
+                double price = ((Number) row[1]).doubleValue();
+                prices[size] = price;
+                gids[size] = (Long) row[0];
+                stocks[size] = row[2] != null ? ((Number) row[2]).intValue() : 0;
+                versions[size] = row[3] != null ? ((Number) row[3]).longValue() : -1L;
+                priceByGid.put(gids[size], price);
+                removedVersions.removeIfCovered(gids[size], versions[size]);
+                size++;
+            }
+            built = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //第一个不小于(price, gid)的位置
+    private int lowerBound(double price, long gid) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Double.compare(prices[mid], price);
+            if (cmp < 0 || (cmp == 0 && gids[mid] < gid)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    //以下方法调用方需持有写锁
+    private void reset() {
+        size = 0;
+        priceByGid.clear();
+        built = false;
+    }
+
+    private void insert(double price, long gid, int stock, long version) {
+        if (size == prices.length) {
+            int capacity = prices.length * 2;
+            prices = Arrays.copyOf(prices, capacity);
+            gids = Arrays.copyOf(gids, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+        int position = lowerBound(price, gid);
+        int moved = size - position;
+        if (moved > 0) {
+            System.arraycopy(prices, position, prices, position + 1, moved);
+            System.arraycopy(gids, position, gids, position + 1, moved);
+            System.arraycopy(stocks, position, stocks, position + 1, moved);
+            System.arraycopy(versions, position, versions, position + 1, moved);
+        }
+        prices[position] = price;
+        gids[position] = gid;
+        stocks[position] = stock;
+        versions[position] = version;
+        size++;
+        priceByGid.put(gid, price);
+    }
+
+    private void remove(double price, long gid) {
+        int position = lowerBound(price, gid);
+        if (position < size && gids[position] == gid) {
+            int moved = size - position - 1;
+            if (moved > 0) {
+                System.arraycopy(prices, position + 1, prices, position, moved);
+                System.arraycopy(gids, position + 1, gids, position, moved);
+                System.arraycopy(stocks, position + 1, stocks, position, moved);
+                System.arraycopy(versions, position + 1, versions, position, moved);
+            }
+            size--;
+        }
+        priceByGid.remove(gid);
+    }
+
+    //价格区间查询结果：当前页的商品ID和区间内满足条件的商品总数
+    public static class RangeResult {
+        private final long[] gids;
+        private final int total;
+        public RangeResult(long[] gids, int total) {
+            this.gids = gids;
+            this.total = total;
+        }
+        public long[] getGids() { return gids; }
+        public int getTotal() { return total; }
+    }
+}
@@ -0,0 +1,502 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//商品搜索倒排索引
+//对上架商品的名称和描述建立索引：中文按单字和相邻二字切分，英文和数字按单词切分
+//英文和数字查询词按子串匹配索引中的单词（与原来的LIKE查询一致，phone可以找到iPhone）
+//单词表按1到3字的片段建立索引，子串匹配只检查含有查询词中最少见片段的单词，不扫描整个单词表
+//检索要求查询中的所有词都命中，按BM25F打分（名称权重高于描述），商品写操作提交后增量更新，晚到的旧版本变更直接丢弃
+@Service
+public class GoodsSearchIndex {
+    //BM25参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double NAME_WEIGHT = 3.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    //单词表片段的最大长度
+    private static final int GRAM_LENGTH = 3;
+
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Value("${goods.index.max-tracked-versions:10000}")
+    private int maxTrackedVersions;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //词 -> (商品ID -> 词频)，词频高16位为名称中的次数，低16位为描述中的次数
+    private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    //英文和数字单词的片段（长度1到3） -> 含有该片段的单词，子串匹配时只检查这些词
+    private final Map<String, Set<String>> grams = new HashMap<>();
+    private final Map<Long, Doc> docs = new HashMap<>();
+    //不在索引中的商品的版本号，索引中的商品以Doc中的版本号为准
+    private GoodsVersionLog removedVersions;
+    private long totalNameLength;
+    private long totalDescriptionLength;
+    private boolean built;
+
+    @PostConstruct
+    public void init() {
+        removedVersions = new GoodsVersionLog(maxTrackedVersions);
+    }
+
+    //搜索商品，返回按相关度排序的一页商品ID和命中总数
+    public SearchResult search(String query, int offset, int limit) {
+        List<String> terms = tokenizeQuery(query);
+        if (terms.isEmpty()) {
+            return new SearchResult(new long[0], 0);
+        }
+        ensureBuilt();
+        lock.readLock().lock();
+        try {
+            //每个查询词展开为命中的索引词（英文和数字按子串匹配）
+            List<List<Map<Long, Integer>>> termPostings = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                List<Map<Long, Integer>> expanded = expand(term);
+                if (expanded.isEmpty()) {
+                    return new SearchResult(new long[0], 0);
+                }
+                termPostings.add(expanded);
+            }
+            //从文档最少的查询词开始求交集
+            termPostings.sort((a, b) -> Integer.compare(postingSize(a), postingSize(b)));
+            Map<Long, Double> scores = new HashMap<>();
+            for (Map<Long, Integer> posting : termPostings.get(0)) {
+                for (Long gid : posting.keySet()) {
+                    scores.put(gid, 0.0);
+                }
+            }
+            double avgName = docs.isEmpty() ? 1.0 : Math.max(1.0, (double) totalNameLength / docs.size());
+            double avgDescription = docs.isEmpty() ? 1.0 : Math.max(1.0, (double) totalDescriptionLength / docs.size());
+            for (List<Map<Long, Integer>> expanded : termPostings) {
+                Map<Long, Double> next = new HashMap<>();
+                for (Map<Long, Integer> posting : expanded) {
+                    double idf = idf(posting.size());
+                    for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                        Double score = scores.get(entry.getKey());
+                        if (score == null) {
+                            continue;
+                        }
+                        Doc doc = docs.get(entry.getKey());
+                        double termScore = idf * saturate(entry.getValue(), doc, avgName, avgDescription);
+                        next.merge(entry.getKey(), score + termScore, Math::max);
+                    }
+                }
+                scores = next;
+                if (scores.isEmpty()) {
+                    return new SearchResult(new long[0], 0);
+                }
+            }
+            //相关度降序，相同时按商品ID升序
+            List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort((a, b) -> {
+                int cmp = Double.compare(b.getValue(), a.getValue());
+                return cmp != 0 ? cmp : Long.compare(a.getKey(), b.getKey());
+            });
+            int from = Math.min(Math.max(offset, 0), ranked.size());
+            int to = Math.min(from + limit, ranked.size());
+            long[] gids = new long[to - from];
+            for (int i = from; i < to; i++) {
+                gids[i - from] = ranked.get(i).getKey();
+            }
+            return new SearchResult(gids, ranked.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //商品变更提交后更新索引
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsChanged(GoodsChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            apply(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //批量变更提交后更新索引，整批只加一次写锁
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGoodsBatchChanged(GoodsBatchChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (GoodsChangedEvent change : event.getChanges()) {
+                apply(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //应用一个商品的变更，调用方需持有写锁
+    //库存增量不改变名称、描述和上下架状态，直接忽略，也不推进版本号（否则之前提交的修改晚到时会被丢弃）
+    private void apply(GoodsChangedEvent event) {
+        if (event.getType() == GoodsChangedEvent.Type.STOCK) {
+            return;
+        }
+        Doc existing = docs.get(event.getGid());
+        Long version = event.getVersion();
+        if (version != null) {
+            long latest = Math.max(existing != null ? existing.version : -1L, removedVersions.get(event.getGid()));
+            if (version <= latest) {
+                return; //晚到的旧变更
+            }
+        }
+        long applied = version != null ? version : -1L;
+        Goods goods = event.getGoods();
+        boolean listed = event.getType() == GoodsChangedEvent.Type.UPSERT
+                && goods.getStatus() != null && goods.getStatus() == 1;
+        if (!built || !listed) {
+            //尚未建立索引时只记录版本号，首次搜索时会从数据库读取最新数据
+            removeDoc(event.getGid());
+            if (version != null) {
+                removedVersions.put(event.getGid(), applied);
+            }
+            return;
+        }
+        if (existing != null && Objects.equals(existing.name, goods.getName())
+                && Objects.equals(existing.description, goods.getDescription())) {
+            existing.version = applied; //名称和描述未变化（例如只修改了库存）
+            return;
+        }
+        removeDoc(event.getGid());
+        addDoc(event.getGid(), goods.getName(), goods.getDescription(), applied);
+        removedVersions.remove(event.getGid());
+    }
+
+    //清空索引，下次搜索时重建
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            built = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //已索引的商品数量
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //文本切分：连续的中日韩字符输出单字和相邻二字，英文和数字按单词输出（转为小写）
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                for (int j = start; j < i; j++) {
+                    tokens.add(String.valueOf(text.charAt(j)));
+                    if (j + 1 < i) {
+                        tokens.add(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i).toLowerCase());
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    //查询切分：单个中文字符按单字检索，其余中文片段只用二字检索，重复的词只保留一次
+    static List<String> tokenizeQuery(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (query == null) {
+            return new ArrayList<>(terms);
+        }
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(query.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    terms.add(String.valueOf(c));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        terms.add(query.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(query.charAt(i)) && !isCjk(query.charAt(i))) {
+                    i++;
+                }
+                terms.add(query.substring(start, i).toLowerCase());
+            } else {
+                i++;
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    //首次使用时从数据库建立索引
+    private void ensureBuilt() {
+        lock.readLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            clear();
+            for (Object[] row : goodsRepository.findListedGoodsText()) {
+                long version = row[3] != null ? ((Number) row[3]).longValue() : -1L;
+                addDoc((Long) row[0], (String) row[1], (String) row[2], version);
+                removedVersions.removeIfCovered((Long) row[0], version);
+            }
+            built = true;
+            System.out.println("商品搜索索引建立完成: " + docs.size() + " 个商品, " + postings.size()
+                    + " 个词, 耗时 " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //查询词对应的倒排表，英文和数字查询词展开为包含它的所有单词
+    //不超过3字的查询词本身就是片段，片段对应的单词都包含它；更长的查询词取最少见的三字片段，再逐个确认
+    private List<Map<Long, Integer>> expand(String term) {
+        List<Map<Long, Integer>> result = new ArrayList<>();
+        if (isCjk(term.charAt(0))) {
+            Map<Long, Integer> exact = postings.get(term);
+            if (exact != null) {
+                result.add(exact);
+            }
+            return result;
+        }
+        if (term.length() <= GRAM_LENGTH) {
+            Set<String> words = grams.get(term);
+            if (words != null) {
+                for (String word : words) {
+                    result.add(postings.get(word));
+                }
+            }
+            return result;
+        }
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            Set<String> words = grams.get(term.substring(i, i + GRAM_LENGTH));
+            if (words == null) {
+                return result;
+            }
+            if (candidates == null || words.size() < candidates.size()) {
+                candidates = words;
+            }
+        }
+        for (String word : candidates) {
+            if (word.contains(term)) {
+                result.add(postings.get(word));
+            }
+        }
+        return result;
+    }
+
+    //单词加入或移出单词表时更新片段索引
+    private void addWord(String word) {
+        for (String gram : gramsOf(word)) {
+            grams.computeIfAbsent(gram, k -> new HashSet<>()).add(word);
+        }
+    }
+
+    private void removeWord(String word) {
+        for (String gram : gramsOf(word)) {
+            Set<String> words = grams.get(gram);
+            if (words != null) {
+                words.remove(word);
+                if (words.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    //单词中长度1到3的所有不同片段
+    private static Set<String> gramsOf(String word) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < word.length(); i++) {
+            for (int n = 1; n <= GRAM_LENGTH && i + n <= word.length(); n++) {
+                result.add(word.substring(i, i + n));
+            }
+        }
+        return result;
+    }
+
+
+    private static int postingSize(List<Map<Long, Integer>> expanded) {
+        int size = 0;
+        for (Map<Long, Integer> posting : expanded) {
+            size += posting.size();
+        }
+        return size;
+    }
+
+    private double idf(int documentFrequency) {
+        int n = docs.size();
+        return Math.log(1.0 + (n - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    //BM25F：按字段长度归一化并加权词频后做饱和
+    private static double saturate(int packedFrequency, Doc doc, double avgName, double avgDescription) {
+        int nameFrequency = packedFrequency >>> 16;
+        int descriptionFrequency = packedFrequency & 0xFFFF;
+        double weighted = 0.0;
+        if (nameFrequency > 0) {
+            weighted += NAME_WEIGHT * nameFrequency / (1 - B + B * doc.nameLength / avgName);
+        }
+        if (descriptionFrequency > 0) {
+            weighted += DESCRIPTION_WEIGHT * descriptionFrequency / (1 - B + B * doc.descriptionLength / avgDescription);
+        }
+        return weighted * (K1 + 1) / (weighted + K1);
+    }
+
+    //以下方法调用方需持有写锁
+    private void addDoc(Long gid, String name, String description, long version) {
+        List<String> nameTokens = tokenize(name);
+        List<String> descriptionTokens = tokenize(description);
+        Map<String, int[]> counts = new HashMap<>();
+        for (String token : nameTokens) {
+            counts.computeIfAbsent(token, k -> new int[2])[0]++;
+        }
+        for (String token : descriptionTokens) {
+            counts.computeIfAbsent(token, k -> new int[2])[1]++;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            int[] count = entry.getValue();
+            frequencies.put(entry.getKey(), Math.min(count[0], 0xFFFF) << 16 | Math.min(count[1], 0xFFFF));
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Map<Long, Integer> posting = postings.get(entry.getKey());
+            if (posting == null) {
+                posting = new HashMap<>();
+                postings.put(entry.getKey(), posting);
+                if (!isCjk(entry.getKey().charAt(0))) {
+                    addWord(entry.getKey());
+                }
+            }
+            posting.put(gid, entry.getValue());
+        }
+        Doc doc = new Doc(frequencies.keySet().toArray(new String[0]), nameTokens.size(), descriptionTokens.size(),
+                name, description, version);
+        docs.put(gid, doc);
+        totalNameLength += doc.nameLength;
+        totalDescriptionLength += doc.descriptionLength;
+    }
+
+    private void removeDoc(Long gid) {
+        Doc doc = docs.remove(gid);
+        if (doc == null) {
+            return;
+        }
+        for (String term : doc.terms) {
+            Map<Long, Integer> posting = postings.get(term);
+            if (posting != null) {
+                posting.remove(gid);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                    if (!isCjk(term.charAt(0))) {
+                        removeWord(term);
+                    }
+                }
+            }
+        }
+        totalNameLength -= doc.nameLength;
+        totalDescriptionLength -= doc.descriptionLength;
+    }
+
+    private void clear() {
+        postings.clear();
+        grams.clear();
+        docs.clear();
+        totalNameLength = 0;
+        totalDescriptionLength = 0;
+    }
+
+    //已索引商品的元数据，保留名称和描述用于判断文本是否变化，版本号用于丢弃晚到的旧变更（没有版本号时为-1）
+    private static class Doc {
+        private final String[] terms;
+        private final int nameLength;
+        private final int descriptionLength;
+        private final String name;
+        private final String description;
+        private long version;
+        private Doc(String[] terms, int nameLength, int descriptionLength, String name, String description,
+                    long version) {
+            this.terms = terms;
+            this.nameLength = nameLength;
+            this.descriptionLength = descriptionLength;
+            this.name = name;
+            this.description = description;
+            this.version = version;
+        }
+    }
+
+    //搜索结果：当前页的商品ID（按相关度排序）和命中总数
+    public static class SearchResult {
+        private final long[] gids;
+        private final int total;
+        public SearchResult(long[] gids, int total) {
+            this.gids = gids;
+            this.total = total;
+        }
+        public long[] getGids() { return gids; }
+        public int getTotal() { return total; }
+    }
+}
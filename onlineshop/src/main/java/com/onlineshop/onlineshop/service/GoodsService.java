@@ -3,17 +3,57 @@ package com.onlineshop.onlineshop.service;
 import com.onlineshop.onlineshop.entity.Goods;
 import com.onlineshop.onlineshop.entity.User;
 import com.onlineshop.onlineshop.repository.GoodsRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
 @Service
 @Transactional
 public class GoodsService {
     @Autowired
     private GoodsRepository goodsRepository;
+    @Autowired
+    private GoodsCatalogCache goodsCatalogCache;
+    @Autowired
+    private GoodsSearchIndex goodsSearchIndex;
+    @Autowired
+    private GoodsPriceIndex goodsPriceIndex;
+    @Autowired
+    private GoodsDetailCache goodsDetailCache;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    //商品列表分页大小（默认值和上限）
+    @Value("${goods.page.default-size:50}")
+    private int defaultPageSize;
+    @Value("${goods.page.max-size:200}")
+    private int maxPageSize;
+    //批量操作每批商品数和单次请求的商品数上限
+    @Value("${goods.batch.chunk-size:500}")
+    private int batchChunkSize;
+    @Value("${goods.batch.max-size:5000}")
+    private int maxBatchSize;
 
     //添加商品
     public Goods addGoods(Goods goods, User merchant) {
@@ -28,7 +68,7 @@ public class GoodsService {
         goods.setMerchant(merchant);
         goods.setStatus(1); //默认上架
         goods.setSales(0); //默认销量为0
-        return goodsRepository.save(goods);
+        return saveAndPublish(goods);
     }
 
     //更新商品信息
@@ -51,7 +91,7 @@ public class GoodsService {
         if (goods.getPrice() != null) existingGoods.setPrice(goods.getPrice());
         if (goods.getRemaining() != null) existingGoods.setRemaining(goods.getRemaining());
         if (goods.getImageUrl() != null) existingGoods.setImageUrl(goods.getImageUrl());
-        return goodsRepository.save(existingGoods);
+        return saveAndPublish(existingGoods);
     }
 
     //删除商品
@@ -62,6 +102,7 @@ public class GoodsService {
             throw new RuntimeException("无权删除此商品");
         }
         goodsRepository.deleteById(gid);
+        eventPublisher.publishEvent(GoodsChangedEvent.delete(gid));
     }
 
     //下架商品
@@ -72,7 +113,7 @@ public class GoodsService {
             throw new RuntimeException("无权操作此商品");
         }
         goods.setStatus(0); //下架
-        return goodsRepository.save(goods);
+        return saveAndPublish(goods);
     }
     //上架商品
     public Goods activateGoods(Long gid, User merchant) {
@@ -82,7 +123,45 @@ public class GoodsService {
             throw new RuntimeException("无权操作此商品");
         }
         goods.setStatus(1); //上架
-        return goodsRepository.save(goods);
+        return saveAndPublish(goods);
+    }
+
+    //批量上下架、改价和改库存：每批一条查询校验商品归属，一条更新语句修改所有商品，返回每个商品的处理结果
+    //批量上架商品
+    public List<BatchResult> activateGoodsBatch(User merchant, List<Long> goodsIds) {
+        return updateStatusBatch(merchant, goodsIds, 1, "上架成功");
+    }
+    //批量下架商品
+    public List<BatchResult> deactivateGoodsBatch(User merchant, List<Long> goodsIds) {
+        return updateStatusBatch(merchant, goodsIds, 0, "下架成功");
+    }
+    //批量修改商品价格（同一商品出现多次时以最后一次为准）
+    public List<BatchResult> updatePricesBatch(User merchant, List<PriceUpdate> updates) {
+        Map<Long, Double> prices = new LinkedHashMap<>();
+        if (updates != null) {
+            for (PriceUpdate update : updates) {
+                if (update != null && update.getGid() != null) {
+                    prices.put(update.getGid(), update.getPrice());
+                }
+            }
+        }
+        return applyInChunks(merchant, prices, price -> price != null && price >= 0, "商品价格不合法",
+                (merchantId, chunk) -> goodsRepository.updatePrices(merchantId, chunk),
+                Goods::setPrice, "价格已更新");
+    }
+    //批量设置商品库存（同一商品出现多次时以最后一次为准）
+    public List<BatchResult> updateStockBatch(User merchant, List<StockUpdate> updates) {
+        Map<Long, Integer> stocks = new LinkedHashMap<>();
+        if (updates != null) {
+            for (StockUpdate update : updates) {
+                if (update != null && update.getGid() != null) {
+                    stocks.put(update.getGid(), update.getRemaining());
+                }
+            }
+        }
+        return applyInChunks(merchant, stocks, remaining -> remaining != null && remaining >= 0, "商品库存不合法",
+                (merchantId, chunk) -> goodsRepository.updateRemaining(merchantId, chunk),
+                Goods::setRemaining, "库存已更新");
     }
 
     //库存销量管理
@@ -97,23 +176,66 @@ public class GoodsService {
             throw new RuntimeException("库存不能为负数");
         }
         goods.setRemaining(newStock);
-        goodsRepository.save(goods);
+        saveAndPublish(goods);
     }
-    //减少商品库存时同时增加销量
+    //减少商品库存时同时增加销量（单条条件更新语句，并发下不会超卖）
     public void decreaseStock(Long goodsId, Integer quantity) {
-        Goods goods = getGoodsById(goodsId);
-        if (goods.getRemaining() < quantity) {
+        if (!tryDecreaseStock(goodsId, quantity)) {
+            if (!goodsRepository.existsById(goodsId)) {
+                throw new RuntimeException("商品不存在");
+            }
             throw new RuntimeException("商品库存不足");
         }
-        goods.setRemaining(goods.getRemaining() - quantity);
-        goods.increaseSales(quantity); //增加销量
-        goodsRepository.save(goods);
     }
-    //取消订单，增加商品库存时，不减少销量，只恢复库存
-    public void increaseStock(Long goodsId, Integer quantity) {
-        Goods goods = getGoodsById(goodsId);
-        goods.setRemaining(goods.getRemaining() + quantity);
-        goodsRepository.save(goods);
+    //尝试扣减库存，库存不足或商品不存在时返回false
+    public boolean tryDecreaseStock(Long goodsId, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("购买数量不合法");
+        }
+        if (goodsRepository.decreaseStock(goodsId, quantity) == 0) {
+            return false;
+        }
+        //更新后的行由本事务锁定，读到的版本号就是提交后的版本号
+        Long version = goodsRepository.findVersions(List.of(goodsId)).get(goodsId);
+        eventPublisher.publishEvent(GoodsChangedEvent.stockChanged(goodsId, -quantity, quantity, version));
+        return true;
+    }
+    //批量预留库存（商品ID -> 数量），一条语句扣减所有商品库存，任一商品库存不足时返回false，调用方需回滚事务
+    public boolean tryReserveStock(Map<Long, Integer> quantities) {
+        for (Integer quantity : quantities.values()) {
+            if (quantity == null || quantity <= 0) {
+                throw new RuntimeException("购买数量不合法");
+            }
+        }
+        if (goodsRepository.reserveStock(quantities) != quantities.size()) {
+            return false;
+        }
+        //更新后的行由本事务锁定，读到的版本号就是提交后的版本号
+        Map<Long, Long> versions = goodsRepository.findVersions(quantities.keySet());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            eventPublisher.publishEvent(GoodsChangedEvent.stockChanged(entry.getKey(), -entry.getValue(), entry.getValue(),
+                    versions.get(entry.getKey())));
+        }
+        return true;
+    }
+    //批量恢复库存（商品ID -> 数量），一条语句更新所有商品，不减少销量；已删除的商品跳过
+    public void restoreStock(Map<Long, Integer> quantities) {
+        for (Integer quantity : quantities.values()) {
+            if (quantity == null || quantity <= 0) {
+                throw new RuntimeException("恢复数量不合法");
+            }
+        }
+        if (quantities.isEmpty()) {
+            return;
+        }
+        goodsRepository.restoreStock(quantities);
+        Map<Long, Long> versions = goodsRepository.findVersions(quantities.keySet());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Long version = versions.get(entry.getKey());
+            if (version != null) {
+                eventPublisher.publishEvent(GoodsChangedEvent.stockChanged(entry.getKey(), entry.getValue(), 0, version));
+            }
+        }
     }
 
     //商品查询
@@ -126,27 +248,83 @@ public class GoodsService {
         return goodsRepository.findById(gid)
                 .orElseThrow(() -> new RuntimeException("商品不存在"));
     }
-    //根据名称搜索商品（只返回上架商品）
-    public List<Goods> searchGoodsByName(String name) {
-        return goodsRepository.findByNameContainingIgnoreCaseAndStatus(name);
+    //根据ID获取商品详情（只读快照，并发请求合并为一次查询，不存在的ID由负缓存拦截）
+    //不开启事务，被拦截或等待其他请求加载时不占用数据库连接
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Goods getGoodsDetail(Long gid) {
+        return goodsDetailCache.get(gid);
+    }
+    //根据ID批量获取商品（一次IN查询，不存在的ID不在结果中）
+    public Map<Long, Goods> getGoodsByIds(Collection<Long> gids) {
+        Map<Long, Goods> byId = new HashMap<>();
+        for (Goods goods : goodsRepository.findAllById(gids)) {
+            byId.put(goods.getGid(), goods);
+        }
+        return byId;
+    }
+    //根据名称搜索商品（只返回上架商品，倒排索引检索名称和描述并按相关度排序，page从0开始）
+    public GoodsSearchPage searchGoodsByName(String name, Integer page, Integer size) {
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        int pageNumber = page == null || page < 0 ? 0 : page;
+        GoodsSearchIndex.SearchResult result = goodsSearchIndex.search(name, pageNumber * pageSize, pageSize);
+        return new GoodsSearchPage(loadInOrder(result.getGids()), result.getTotal(), pageNumber, pageSize);
     }
     //根据描述搜索商品
     public List<Goods> searchGoodsByDescription(String description) {
         return goodsRepository.findByDescriptionContainingIgnoreCase(description);
     }
-    //按价格范围搜索商品（只返回上架商品）
-    public List<Goods> searchGoodsByPriceRange(Double minPrice, Double maxPrice) {
-        return goodsRepository.findByPriceBetweenAndStatus(minPrice, maxPrice);
+    //按价格范围搜索商品（只返回上架商品，按价格升序，inStockOnly为true时只返回有库存商品，page从0开始）
+    public GoodsSearchPage searchGoodsByPriceRange(Double minPrice, Double maxPrice, boolean inStockOnly,
+                                                   Integer page, Integer size) {
+        if (minPrice == null || maxPrice == null || minPrice > maxPrice) {
+            throw new RuntimeException("价格范围不合法");
+        }
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        int pageNumber = page == null || page < 0 ? 0 : page;
+        GoodsPriceIndex.RangeResult result = goodsPriceIndex.range(minPrice, maxPrice, inStockOnly,
+                pageNumber * pageSize, pageSize);
+        return new GoodsSearchPage(loadInOrder(result.getGids()), result.getTotal(), pageNumber, pageSize);
     }
-    //获取有库存的商品（只返回上架商品）
+    //获取有库存的商品（只返回上架商品，读取目录缓存）
     public List<Goods> getAvailableGoods() {
-        return goodsRepository.findByStatusAndRemainingGreaterThan(1, 0);
+        return goodsCatalogCache.getAvailableGoods();
+    }
+    //游标分页获取有库存的商品（只返回上架商品）
+    public CursorPage<Goods> getAvailableGoodsPage(Long cursor, Integer size) {
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        List<Goods> fetched = goodsCatalogCache.getAvailableGoodsAfter(cursor, pageSize + 1);
+        return CursorPage.of(fetched, pageSize, Goods::getGid);
+    }
+    //获取目录缓存统计
+    public GoodsCatalogCache.CatalogCacheStats getCatalogCacheStats() {
+        return goodsCatalogCache.getStats();
+    }
+    //获取商品详情加载统计
+    public GoodsDetailCache.DetailCacheStats getDetailCacheStats() {
+        return goodsDetailCache.getStats();
+    }
+    //获取Hibernate二级缓存各区域的统计（Goods和User实体）
+    public List<RegionCacheStats> getSecondLevelCacheStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<RegionCacheStats> regions = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics stats = statistics.getDomainDataRegionStatistics(region);
+            regions.add(new RegionCacheStats(region, stats.getHitCount(), stats.getMissCount(), stats.getPutCount()));
+        }
+        return regions;
     }
 
     //获取商家的所有商品
     public List<Goods> getGoodsByMerchant(Long merchantId) {
         return goodsRepository.findByMerchantUid(merchantId);
     }
+    //游标分页获取商家的商品
+    public CursorPage<Goods> getGoodsByMerchantPage(Long merchantId, Long cursor, Integer size) {
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        List<Goods> fetched = goodsRepository.findByMerchantUidAndGidGreaterThanOrderByGidAsc(
+                merchantId, cursor != null ? cursor : 0L, Limit.of(pageSize + 1));
+        return CursorPage.of(fetched, pageSize, Goods::getGid);
+    }
     //获取商家上架商品
     public List<Goods> getActiveGoodsByMerchant(Long merchantId) {
         return goodsRepository.findByMerchantUidAndStatus(merchantId, 1);
@@ -163,14 +341,11 @@ public class GoodsService {
     public boolean hasGoodsPermission(Long merchantId, Long goodsId) {
         return goodsRepository.existsByGidAndMerchantUid(goodsId, merchantId);
     }
-    //获取商家商品统计方法
+    //获取商家商品统计方法（一条聚合查询，只扫描一次商家的商品）
     public MerchantGoodsStats getMerchantGoodsStats(Long merchantId) {
-        Integer totalStock = goodsRepository.getTotalStockByMerchantId(merchantId);
-        Double totalValue = goodsRepository.getTotalInventoryValueByMerchantId(merchantId);
-        Long goodsCount = goodsRepository.countByMerchantUid(merchantId);
-        Integer totalSales = goodsRepository.getTotalSalesByMerchantId(merchantId);
-        Double totalSalesValue = goodsRepository.getTotalSalesValueByMerchantId(merchantId);
-        return new MerchantGoodsStats(goodsCount, totalStock, totalValue, totalSales, totalSalesValue);
+        Object[] row = goodsRepository.getMerchantGoodsStats(merchantId).get(0);
+        return new MerchantGoodsStats(((Number) row[0]).longValue(), ((Number) row[1]).intValue(),
+                ((Number) row[2]).doubleValue(), ((Number) row[3]).intValue(), ((Number) row[4]).doubleValue());
     }
     //获取商家商品销量排名
     public List<Goods> getGoodsSalesRanking(Long merchantId) {
@@ -184,7 +359,115 @@ public class GoodsService {
     public void updateGoodsSales(Long goodsId, Integer quantity) {
         Goods goods = getGoodsById(goodsId);
         goods.increaseSales(quantity);
-        goodsRepository.save(goods);
+        saveAndPublish(goods);
+    }
+
+    //按给定顺序批量加载商品（一次IN查询）
+    private List<Goods> loadInOrder(long[] gids) {
+        //商品ID -> 在结果中的位置（加1，0表示不存在），按位置放回查询结果，不再建立装箱的ID映射
+        LongIntHashMap positions = new LongIntHashMap(gids.length);
+        List<Long> ids = new ArrayList<>(gids.length);
+        for (int i = 0; i < gids.length; i++) {
+            positions.put(gids[i], i + 1);
+            ids.add(gids[i]); //findAllById只接受Long集合，一页最多maxPageSize个
+        }
+        Goods[] slots = new Goods[gids.length];
+        for (Goods goods : goodsRepository.findAllById(ids)) {
+            int position = positions.get(goods.getGid());
+            if (position > 0) {
+                slots[position - 1] = goods;
+            }
+        }
+        List<Goods> ordered = new ArrayList<>(gids.length);
+        for (Goods goods : slots) {
+            if (goods != null) {
+                ordered.add(goods);
+            }
+        }
+        return ordered;
+    }
+
+    //批量修改上下架状态
+    private List<BatchResult> updateStatusBatch(User merchant, List<Long> goodsIds, Integer status, String successMessage) {
+        Map<Long, Integer> statuses = new LinkedHashMap<>();
+        if (goodsIds != null) {
+            for (Long gid : goodsIds) {
+                if (gid != null) {
+                    statuses.put(gid, status);
+                }
+            }
+        }
+        return applyInChunks(merchant, statuses, value -> true, null,
+                goodsRepository::updateStatus,
+                Goods::setStatus, successMessage);
+    }
+
+    //批量操作的公共流程（requested为商品ID -> 新值，保持请求顺序）
+    //参数不合法的商品直接失败；其余商品按批查询归属，属于该商家的商品用一条更新语句修改
+    //所有批次结束后发布一个批量变更事件，事务提交后由缓存和索引一次应用
+    private <V> List<BatchResult> applyInChunks(User merchant, Map<Long, V> requested, Predicate<V> valid,
+                                                String invalidMessage, BiConsumer<Long, Map<Long, V>> update,
+                                                BiConsumer<Goods, V> applyToSnapshot, String successMessage) {
+        if (requested.isEmpty()) {
+            throw new RuntimeException("商品列表为空");
+        }
+        if (requested.size() > maxBatchSize) {
+            throw new RuntimeException("单次最多操作 " + maxBatchSize + " 个商品");
+        }
+        List<Long> accepted = new ArrayList<>(requested.size());
+        for (Map.Entry<Long, V> entry : requested.entrySet()) {
+            if (valid.test(entry.getValue())) {
+                accepted.add(entry.getKey());
+            }
+        }
+        Set<Long> updated = new HashSet<>();
+        List<GoodsChangedEvent> changes = new ArrayList<>();
+        int chunkSize = Math.max(1, batchChunkSize);
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Long> chunkIds = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            List<Goods> owned = goodsRepository.findOwnedByIds(merchant.getUid(), chunkIds);
+            if (owned.isEmpty()) {
+                continue;
+            }
+            Map<Long, V> chunk = new HashMap<>();
+            for (Goods goods : owned) {
+                chunk.put(goods.getGid(), requested.get(goods.getGid()));
+            }
+            update.accept(merchant.getUid(), chunk);
+            //更新后的行由本事务锁定，读到的版本号就是提交后的版本号
+            Map<Long, Long> versions = goodsRepository.findVersions(chunk.keySet());
+            for (Goods goods : owned) {
+                //查询结果是只读实体，新值只写入快照
+                Goods snapshot = GoodsChangedEvent.snapshotOf(goods);
+                applyToSnapshot.accept(snapshot, chunk.get(goods.getGid()));
+                snapshot.setVersion(versions.get(goods.getGid()));
+                changes.add(GoodsChangedEvent.upsert(snapshot));
+                updated.add(goods.getGid());
+            }
+        }
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(new GoodsBatchChangedEvent(changes));
+        }
+        List<BatchResult> results = new ArrayList<>(requested.size());
+        for (Map.Entry<Long, V> entry : requested.entrySet()) {
+            Long gid = entry.getKey();
+            if (updated.contains(gid)) {
+                results.add(new BatchResult(gid, true, successMessage));
+            } else if (!valid.test(entry.getValue())) {
+                results.add(new BatchResult(gid, false, invalidMessage));
+            } else {
+                results.add(new BatchResult(gid, false, "商品不存在或无权操作"));
+            }
+        }
+        return results;
+    }
+
+    //保存商品并发布变更事件，事务提交后由目录缓存修补快照
+    //立即刷新，快照中带有更新后的版本号
+    private Goods saveAndPublish(Goods goods) {
+        Goods saved = goodsRepository.saveAndFlush(goods);
+        eventPublisher.publishEvent(GoodsChangedEvent.upsert(saved));
+        return saved;
     }
 
     //商家商品统计类，添加销量统计
@@ -209,4 +492,94 @@ public class GoodsService {
         public Integer getTotalSales() { return totalSales; }
         public Double getTotalSalesValue() { return totalSalesValue; }
     }
-}
\ No newline at end of file
+
+    //二级缓存区域统计类
+    public static class RegionCacheStats {
+        private String region;
+        private Long hits;
+        private Long misses;
+        private Long puts;
+        public RegionCacheStats(String region, Long hits, Long misses, Long puts) {
+            this.region = region;
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+        }
+        //getter函数
+        public String getRegion() { return region; }
+        public Long getHits() { return hits; }
+        public Long getMisses() { return misses; }
+        public Long getPuts() { return puts; }
+        public Double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    //商品搜索分页结果类
+    public static class GoodsSearchPage {
+        private List<Goods> goods;
+        private Integer total; //命中总数
+        private Integer page;
+        private Integer size;
+        public GoodsSearchPage(List<Goods> goods, Integer total, Integer page, Integer size) {
+            this.goods = goods;
+            this.total = total;
+            this.page = page;
+            this.size = size;
+        }
+        //getter函数
+        public List<Goods> getGoods() { return goods; }
+        public Integer getTotal() { return total; }
+        public Integer getPage() { return page; }
+        public Integer getSize() { return size; }
+    }
+
+    //批量改价请求项
+    public static class PriceUpdate {
+        private Long gid;
+        private Double price;
+        public PriceUpdate() {}
+        public PriceUpdate(Long gid, Double price) {
+            this.gid = gid;
+            this.price = price;
+        }
+        //getter和setter函数
+        public Long getGid() { return gid; }
+        public void setGid(Long gid) { this.gid = gid; }
+        public Double getPrice() { return price; }
+        public void setPrice(Double price) { this.price = price; }
+    }
+
+    //批量设置库存请求项
+    public static class StockUpdate {
+        private Long gid;
+        private Integer remaining;
+        public StockUpdate() {}
+        public StockUpdate(Long gid, Integer remaining) {
+            this.gid = gid;
+            this.remaining = remaining;
+        }
+        //getter和setter函数
+        public Long getGid() { return gid; }
+        public void setGid(Long gid) { this.gid = gid; }
+        public Integer getRemaining() { return remaining; }
+        public void setRemaining(Integer remaining) { this.remaining = remaining; }
+    }
+
+    //批量操作中单个商品的处理结果
+    public static class BatchResult {
+        private Long gid;
+        private Boolean success;
+        private String message;
+        public BatchResult(Long gid, Boolean success, String message) {
+            this.gid = gid;
+            this.success = success;
+            this.message = message;
+        }
+        //getter函数
+        public Long getGid() { return gid; }
+        public Boolean getSuccess() { return success; }
+        public String getMessage() { return message; }
+    }
+}
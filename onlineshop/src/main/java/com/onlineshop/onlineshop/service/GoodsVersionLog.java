@@ -0,0 +1,49 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//商品变更的版本记录，供按商品变更事件增量维护的索引丢弃晚到的旧变更
+//索引中的商品由索引自己保存版本号，这里只记录不在索引中的商品（下架、删除，或索引尚未建立时）最近一次应用的版本号
+//晚到的变更只出现在提交后很短的时间内，超过上限时移除最早的记录（包括删除留下的最大版本号）
+//非线程安全，由调用方加锁
+public class GoodsVersionLog {
+    private final int capacity;
+    private final LinkedHashMap<Long, Long> versions = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public GoodsVersionLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //记录的版本号，没有记录时为-1
+    public long get(Long gid) {
+        return versions.getOrDefault(gid, -1L);
+    }
+
+    //记录版本号，先移除再放入，更新过的记录排到最后
+    public void put(Long gid, long version) {
+        versions.remove(gid);
+        versions.put(gid, version);
+    }
+
+    public void remove(Long gid) {
+        versions.remove(gid);
+    }
+
+    //索引重建后，重建读到的版本号不低于记录时移除记录
+    public void removeIfCovered(Long gid, long version) {
+        Long recorded = versions.get(gid);
+        if (recorded != null && recorded <= version) {
+            versions.remove(gid);
+        }
+    }
+
+    public int size() {
+        return versions.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.onlineshop.onlineshop.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+//内存购物车后端：购物车只保存在CartService中，与Session无关，进程重启后丢失
+@Service
+@ConditionalOnProperty(name = "cart.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryCartStore implements CartStore {
+    @Override
+    public long load(Long userId, LongIntHashMap into) {
+        return 0;
+    }
+    @Override
+    public long version(Long userId) {
+        return 0;
+    }
+    @Override
+    public boolean save(Long userId, LongIntHashMap items, long expectedVersion) {
+        return true;
+    }
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+}
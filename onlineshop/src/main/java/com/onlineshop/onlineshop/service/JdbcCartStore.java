@@ -0,0 +1,81 @@
+package com.onlineshop.onlineshop.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//数据库购物车后端：cart_item表保存商品行，cart_version表保存每个用户的版本号
+//写回时在一个事务中按版本号更新版本行，成功后删除旧行并批量插入；版本号不一致时不修改任何行
+@Service
+@ConditionalOnProperty(name = "cart.store", havingValue = "jdbc")
+public class JdbcCartStore implements CartStore {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public long load(Long userId, LongIntHashMap into) {
+        //先读版本号再读商品行：期间有其他节点写回时，读到的商品行不旧于版本号，下次写回会发现冲突并重新加载
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM cart_version WHERE user_id = ?",
+                Long.class, userId);
+        jdbcTemplate.query("SELECT goods_id, quantity FROM cart_item WHERE user_id = ?",
+                rs -> {
+                    into.put(rs.getLong(1), rs.getInt(2));
+                }, userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    @Override
+    public long version(Long userId) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM cart_version WHERE user_id = ?",
+                Long.class, userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    @Override
+    public boolean save(Long userId, LongIntHashMap items, long expectedVersion) {
+        List<Object[]> rows = new ArrayList<>(items.size());
+        items.forEach((gid, quantity) -> rows.add(new Object[]{userId, gid, quantity}));
+        try {
+            Boolean saved = transactionTemplate.execute(status -> {
+                if (!advanceVersion(userId, expectedVersion)) {
+                    return false;
+                }
+                jdbcTemplate.update("DELETE FROM cart_item WHERE user_id = ?", userId);
+                if (!rows.isEmpty()) {
+                    jdbcTemplate.batchUpdate("INSERT INTO cart_item (user_id, goods_id, quantity) VALUES (?, ?, ?)", rows);
+                }
+                return true;
+            });
+            return Boolean.TRUE.equals(saved);
+        } catch (DuplicateKeyException e) {
+            return false; //其他节点同时第一次写回
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    //版本号等于expectedVersion时加1；还没有版本行时（第一次写回）插入版本1
+    private boolean advanceVersion(Long userId, long expectedVersion) {
+        int updated = jdbcTemplate.update("UPDATE cart_version SET version = version + 1 WHERE user_id = ? AND version = ?",
+                userId, expectedVersion);
+        if (updated > 0) {
+            return true;
+        }
+        if (expectedVersion != 0) {
+            return false;
+        }
+        jdbcTemplate.update("INSERT INTO cart_version (user_id, version) VALUES (?, 1)", userId);
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.repository.JobLeaseRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.UUID;
+
+//基于数据库的任务租约，保证多节点部署时同一后台任务同一时间只在一个节点上执行
+//租约时间按各节点本地时钟计算，需要明显大于节点间的时钟偏差
+@Service
+public class JobLeaseService {
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    //本节点标识
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //获取或续约租约，成功时本节点在leaseMillis内独占该任务
+    public boolean tryAcquire(String name, long leaseMillis) {
+        try {
+            Boolean acquired = transactionTemplate.execute(status -> {
+                Date now = new Date();
+                Date leaseUntil = new Date(now.getTime() + leaseMillis);
+                return jobLeaseRepository.renew(name, nodeId, now, leaseUntil) > 0
+                        || jobLeaseRepository.create(name, nodeId, leaseUntil) > 0;
+            });
+            return Boolean.TRUE.equals(acquired);
+        } catch (RuntimeException e) {
+            System.err.println("获取任务租约失败: " + name + " - " + e.getMessage());
+            return false;
+        }
+    }
+
+    //释放租约，其他节点可以立即接管
+    public void release(String name) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jobLeaseRepository.release(name, nodeId, new Date()));
+        } catch (RuntimeException e) {
+            System.err.println("释放任务租约失败: " + name + " - " + e.getMessage());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,130 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.Arrays;
+
+//long -> double 开放寻址哈希表（线性探测），结构与LongIntHashMap相同，不产生装箱对象
+//键必须大于0（0表示空槽），键不存在时get返回NaN，因此值不能是NaN
+//非线程安全，由调用方加锁
+public class LongDoubleHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private double[] values;
+    private int size;
+    private int mask;
+
+    public LongDoubleHashMap() {
+        this(8);
+    }
+
+    public LongDoubleHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    //返回键对应的值，不存在时返回NaN
+    public double get(long key) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : Double.NaN;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    public void put(long key, double value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("键必须大于0: " + key);
+        }
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("值不能是NaN");
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+    }
+
+    //删除键，返回旧值（不存在时为NaN）
+    public double remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return Double.NaN;
+        }
+        double old = values[slot];
+        //把同一探测链上的后续元素前移，填补空槽
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = 0;
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(long key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
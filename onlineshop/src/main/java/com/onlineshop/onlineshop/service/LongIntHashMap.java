@@ -0,0 +1,175 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.Arrays;
+
+//long -> int 开放寻址哈希表（线性探测），键和值保存在基本类型数组中，不产生装箱对象
+//键必须大于0（0表示空槽），删除时向前移动后续元素，不留删除标记
+//非线程安全，由调用方加锁
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap() {
+        this(8);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    //返回键对应的值，不存在时返回0
+    public int get(long key) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : 0;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    //设置键的值，返回旧值（不存在时为0）
+    public int put(long key, int value) {
+        checkKey(key);
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+        return 0;
+    }
+
+    //键的值加上delta，返回新值
+    public int addTo(long key, int delta) {
+        checkKey(key);
+        int slot = find(key);
+        if (slot >= 0) {
+            values[slot] += delta;
+            return values[slot];
+        }
+        put(key, delta);
+        return delta;
+    }
+
+    //删除键，返回旧值（不存在时为0）
+    public int remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return 0;
+        }
+        int old = values[slot];
+        //把同一探测链上的后续元素前移，填补空槽
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slotOf(keys[next]);
+            //home不在(gap, next]区间内时，元素可以移动到gap
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = 0;
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    //按槽位顺序遍历
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    //复制一份，用于在锁外读取
+    public LongIntHashMap copy() {
+        LongIntHashMap copy = new LongIntHashMap(1);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        return copy;
+    }
+
+    private int find(long key) {
+        if (key <= 0) {
+            return -1;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slotOf(long key) {
+        //64位混合，避免连续ID集中在相邻槽位
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void checkKey(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("键必须大于0: " + key);
+        }
+    }
+
+    public interface Visitor {
+        void visit(long key, int value);
+    }
+}
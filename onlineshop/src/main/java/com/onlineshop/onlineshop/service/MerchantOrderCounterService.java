@@ -0,0 +1,162 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.MerchantOrderCounter;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.MerchantOrderCounterRepository;
+import com.onlineshop.onlineshop.repository.OrderGoodsRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//商家订单状态计数器
+//订单创建和每次状态变化时，在订单所在事务中更新(商家, 状态)计数，读取计数只需一次主键查询
+//定时对账任务从订单表重新统计，修正计数偏差
+@Service
+public class MerchantOrderCounterService {
+    @Autowired
+    private MerchantOrderCounterRepository counterRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private OrderGoodsRepository orderGoodsRepository;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    //新订单：订单涉及的每个商家在该状态下计数加一
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrderCreated(Collection<Long> merchantIds, OrderStatus status) {
+        //按商家ID顺序更新，并发事务以相同顺序加锁，避免死锁
+        for (Long merchantId : new TreeSet<>(merchantIds)) {
+            counterRepository.addCount(merchantId, status.getCode(), 1);
+        }
+    }
+
+    //订单状态变化：旧状态计数减一，新状态计数加一
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onStatusChanged(Long orderId, OrderStatus from, OrderStatus to) {
+        if (from == to) {
+            return;
+        }
+        //计数器表按状态码保存；同一商家的两行按状态码顺序更新，加锁顺序固定
+        int fromStatus = from.getCode();
+        int toStatus = to.getCode();
+        boolean fromFirst = fromStatus < toStatus;
+        for (Long merchantId : new TreeSet<>(orderGoodsRepository.findMerchantIdsByOrderId(orderId))) {
+            counterRepository.addCount(merchantId, fromFirst ? fromStatus : toStatus, fromFirst ? -1 : 1);
+            counterRepository.addCount(merchantId, fromFirst ? toStatus : fromStatus, fromFirst ? 1 : -1);
+        }
+    }
+
+    //一批订单从同一状态变为另一状态（商家ID -> 订单数），每个商家两次更新
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrdersMoved(Map<Long, Integer> ordersByMerchant, OrderStatus from, OrderStatus to) {
+        if (from == to) {
+            return;
+        }
+        int fromStatus = from.getCode();
+        int toStatus = to.getCode();
+        boolean fromFirst = fromStatus < toStatus;
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(ordersByMerchant).entrySet()) {
+            int count = entry.getValue();
+            counterRepository.addCount(entry.getKey(), fromFirst ? fromStatus : toStatus, fromFirst ? -count : count);
+            counterRepository.addCount(entry.getKey(), fromFirst ? toStatus : fromStatus, fromFirst ? count : -count);
+        }
+    }
+
+    //读取商家某状态的订单数
+    public long getCount(Long merchantId, OrderStatus status) {
+        Long count = counterRepository.findCount(merchantId, status.getCode());
+        return count != null ? count : 0L;
+    }
+
+    //读取商家各状态的订单数
+    public Map<String, Long> getCounts(Long merchantId) {
+        Map<String, Long> counts = new HashMap<>();
+        for (MerchantOrderCounter counter : counterRepository.findByMerchantId(merchantId)) {
+            counts.put(OrderStatus.fromCode(counter.getStatusCode()).getLabel(), counter.getOrderCount());
+        }
+        return counts;
+    }
+
+    //计数器表为空（首次部署）时，启动后从订单表建立计数
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeIfEmpty() {
+        if (counterRepository.count() == 0) {
+            reconcileAll();
+        }
+    }
+
+    @Scheduled(cron = "${order.counter.reconcile-cron:0 30 3 * * *}")
+    public void scheduledReconcile() {
+        try {
+            int corrected = reconcileAll();
+            System.out.println("订单计数对账完成，修正 " + corrected + " 个计数器");
+        } catch (RuntimeException e) {
+            System.err.println("订单计数对账失败: " + e.getMessage());
+        }
+    }
+
+    //对所有商家重新统计，返回被修正的计数器数量
+    public int reconcileAll() {
+        TreeSet<Long> merchantIds = new TreeSet<>(goodsRepository.findMerchantIds());
+        merchantIds.addAll(counterRepository.findMerchantIds());
+        int corrected = 0;
+        for (Long merchantId : merchantIds) {
+            corrected += reconcile(merchantId);
+        }
+        return corrected;
+    }
+
+    //重新统计单个商家，返回被修正的计数器数量
+    //先锁定该商家的计数器再统计订单表：持有计数器锁的事务提交后才能读到其订单状态，
+    //尚未更新计数器的事务会在对账结束后再应用自己的增量，两种情况计数都不会丢失
+    public int reconcile(Long merchantId) {
+        Integer corrected = transactionTemplate.execute(status -> {
+            Map<Integer, MerchantOrderCounter> counters = new HashMap<>();
+            for (MerchantOrderCounter counter : counterRepository.lockByMerchantId(merchantId)) {
+                counters.put(counter.getStatusCode(), counter);
+            }
+            Map<Integer, Long> exact = new HashMap<>();
+            List<Object[]> rows = userOrderRepository.countMerchantOrdersByStatus(merchantId);
+            for (Object[] row : rows) {
+                exact.put(((OrderStatus) row[0]).getCode(), ((Number) row[1]).longValue());
+            }
+            int changed = 0;
+            for (Map.Entry<Integer, Long> entry : exact.entrySet()) {
+                MerchantOrderCounter counter = counters.remove(entry.getKey());
+                if (counter == null) {
+                    counterRepository.addCount(merchantId, entry.getKey(), entry.getValue());
+                    changed++;
+                } else if (!entry.getValue().equals(counter.getOrderCount())) {
+                    counter.setOrderCount(entry.getValue());
+                    changed++;
+                }
+            }
+            //订单表中已没有该状态的订单
+            for (MerchantOrderCounter counter : counters.values()) {
+                if (counter.getOrderCount() != 0L) {
+                    counter.setOrderCount(0L);
+                    changed++;
+                }
+            }
+            return changed;
+        });
+        return corrected != null ? corrected : 0;
+    }
+}
@@ -0,0 +1,199 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.OrderRequestKey;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.OrderRequestKeyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//幂等下单
+//客户端在请求头Idempotency-Key中携带幂等键，重试时直接返回第一次创建的订单，不会重复扣减库存
+//幂等键在下单事务中写入order_request_key表（多实例共享），最近使用的结果缓存在本地LRU中；
+//同一实例上的并发重复请求等待第一个请求完成，不同实例之间由幂等键的主键约束串行化
+@Service
+public class OrderIdempotencyService {
+    private static final int MAX_KEY_LENGTH = 64;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderRequestKeyRepository orderRequestKeyRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${order.idempotency.ttl-ms:86400000}")
+    private long ttlMillis;
+    @Value("${order.idempotency.wait-ms:10000}")
+    private long waitMillis;
+    @Value("${order.idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    //"用户ID:幂等键" -> 已完成的结果，按访问顺序淘汰
+    private final Map<String, Completed> completed = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Completed> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    //"用户ID:幂等键" -> 正在处理的请求
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    //按幂等键创建订单，幂等键已使用过时返回原订单
+    public UserOrder createOrder(User user, String requestKey, List<CartItem> cartItems) {
+        if (requestKey == null || requestKey.isBlank() || requestKey.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("幂等键不合法");
+        }
+        long requestHash = fingerprint(cartItems);
+        String cacheKey = user.getUid() + ":" + requestKey;
+
+        Completed done = getCompleted(cacheKey);
+        if (done != null) {
+            checkSameRequest(done.requestHash, requestHash);
+            return orderService.getOrderById(done.orderId);
+        }
+
+        InFlight mine = new InFlight(requestHash);
+        InFlight running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            checkSameRequest(running.requestHash, requestHash);
+            return orderService.getOrderById(await(running));
+        }
+        try {
+            UserOrder order = transactionTemplate.execute(status -> claimAndCreate(user, requestKey, requestHash, cartItems));
+            putCompleted(cacheKey, new Completed(order.getOid(), requestHash, System.currentTimeMillis() + ttlMillis));
+            mine.result.complete(order.getOid());
+            return order;
+        } catch (RuntimeException e) {
+            //下单失败时幂等键随事务回滚，等待中的请求得到同样的错误，之后的重试会重新下单
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    //定期清理过期的幂等键
+    @Scheduled(fixedDelayString = "${order.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        try {
+            Integer deleted = transactionTemplate.execute(status -> orderRequestKeyRepository.deleteExpired(new Date()));
+            if (deleted != null && deleted > 0) {
+                System.out.println("清理过期幂等键: " + deleted);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("清理过期幂等键失败: " + e.getMessage());
+        }
+    }
+
+    //在同一事务中占用幂等键并下单；幂等键已被占用时返回其订单
+    private UserOrder claimAndCreate(User user, String requestKey, long requestHash, List<CartItem> cartItems) {
+        Date now = new Date();
+        orderRequestKeyRepository.deleteExpiredKey(user.getUid(), requestKey, now);
+        int claimed = orderRequestKeyRepository.claim(user.getUid(), requestKey, requestHash,
+                now, new Date(now.getTime() + ttlMillis));
+        if (claimed == 0) {
+            OrderRequestKey existing = orderRequestKeyRepository.findById(new OrderRequestKey.Key(user.getUid(), requestKey))
+                    .orElse(null);
+            if (existing == null || existing.getOrderId() == null) {
+                throw new RuntimeException("相同的下单请求正在处理中，请稍后重试");
+            }
+            checkSameRequest(existing.getRequestHash(), requestHash);
+            return orderService.getOrderById(existing.getOrderId());
+        }
+        UserOrder order = orderService.createOrder(user, cartItems);
+        orderRequestKeyRepository.setOrderId(user.getUid(), requestKey, order.getOid());
+        return order;
+    }
+
+    //等待同一实例上正在处理的相同请求
+    private Long await(InFlight running) {
+        try {
+            return running.result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause.getMessage());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("相同的下单请求正在处理中，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("下单请求被中断");
+        }
+    }
+
+    private void checkSameRequest(long expectedHash, long requestHash) {
+        if (expectedHash != requestHash) {
+            throw new RuntimeException("幂等键已用于其他下单请求");
+        }
+    }
+
+    private Completed getCompleted(String cacheKey) {
+        synchronized (completed) {
+            Completed done = completed.get(cacheKey);
+            if (done != null && done.expiresAt <= System.currentTimeMillis()) {
+                completed.remove(cacheKey);
+                return null;
+            }
+            return done;
+        }
+    }
+
+    private void putCompleted(String cacheKey, Completed done) {
+        synchronized (completed) {
+            completed.put(cacheKey, done);
+        }
+    }
+
+    //购物车指纹：按商品ID合并数量后计算，商品顺序和拆分方式不影响结果
+    private long fingerprint(List<CartItem> cartItems) {
+        Map<Long, Integer> merged = new TreeMap<>();
+        if (cartItems != null) {
+            for (CartItem item : cartItems) {
+                if (item.getGid() != null && item.getQuantity() != null) {
+                    merged.merge(item.getGid(), item.getQuantity(), Integer::sum);
+                }
+            }
+        }
+        long hash = 1125899906842597L;
+        for (Map.Entry<Long, Integer> entry : merged.entrySet()) {
+            hash = 31 * hash + entry.getKey();
+            hash = 31 * hash + entry.getValue();
+        }
+        return hash;
+    }
+
+    //已完成的请求
+    private static class Completed {
+        final long orderId;
+        final long requestHash;
+        final long expiresAt;
+        Completed(long orderId, long requestHash, long expiresAt) {
+            this.orderId = orderId;
+            this.requestHash = requestHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    //正在处理的请求，完成后得到订单ID
+    private static class InFlight {
+        final long requestHash;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        InFlight(long requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.OrderGoods;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//订单销量变化事件，由OrderService在下单和取消订单时发布，事务提交后由热销榜等组件消费
+public class OrderSalesEvent {
+    private final List<Line> lines;
+    private final boolean cancelled;
+
+    private OrderSalesEvent(List<Line> lines, boolean cancelled) {
+        this.lines = lines;
+        this.cancelled = cancelled;
+    }
+
+    public static OrderSalesEvent created(List<OrderGoods> items) {
+        return new OrderSalesEvent(toLines(items), false);
+    }
+    public static OrderSalesEvent cancelled(List<OrderGoods> items) {
+        return new OrderSalesEvent(toLines(items), true);
+    }
+
+    private static List<Line> toLines(List<OrderGoods> items) {
+        List<Line> lines = new ArrayList<>(items.size());
+        for (OrderGoods item : items) {
+            lines.add(new Line(item.getGoods().getGid(), item.getGoods().getMerchant().getUid(),
+                    item.getGoods().getName(), item.getQuantity()));
+        }
+        return lines;
+    }
+
+    public List<Line> getLines() { return lines; }
+    public boolean isCancelled() { return cancelled; }
+
+    //一条订单项的销量
+    public static class Line {
+        private final long gid;
+        private final long merchantId;
+        private final String name;
+        private final int quantity;
+        public Line(long gid, long merchantId, String name, int quantity) {
+            this.gid = gid;
+            this.merchantId = merchantId;
+            this.name = name;
+            this.quantity = quantity;
+        }
+        public long getGid() { return gid; }
+        public long getMerchantId() { return merchantId; }
+        public String getName() { return name; }
+        public int getQuantity() { return quantity; }
+    }
+}
@@ -4,12 +4,22 @@ import com.onlineshop.onlineshop.entity.*;
 import com.onlineshop.onlineshop.repository.OrderGoodsRepository;
 import com.onlineshop.onlineshop.repository.UserOrderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -22,114 +32,273 @@ public class OrderService {
     private GoodsService goodsService;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private MerchantOrderCounterService merchantOrderCounterService;
+    @Autowired
+    private SalesRollupService salesRollupService;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${order.page.default-size:20}")
+    private int defaultPageSize;
+    @Value("${order.page.max-size:100}")
+    private int maxPageSize;
+    @Value("${order.ship-batch.max-size:500}")
+    private int maxShipBatchSize;
 
     //订单生命周期（创建，付款，发货，完成，取消）
     //创建订单（直接使用商品ID，商品已关联商家）
+    //批量流程：一次IN查询加载商品，一条条件更新语句预留全部库存，订单写入一次，订单项用一个JDBC批次插入
     public UserOrder createOrder(User user, List<CartItem> cartItems) {
-        //验证库存并计算总金额
-        double totalAmount = 0.0;
+        if (cartItems == null || cartItems.isEmpty()) {
+            throw new RuntimeException("购物车为空");
+        }
+        //合并同一商品的数量
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
         for (CartItem item : cartItems) {
-            Goods goods = goodsService.getGoodsById(item.getGid());
-            if (goods.getRemaining() < item.getQuantity()) {
+            if (item.getGid() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new RuntimeException("购买数量不合法");
+            }
+            quantities.merge(item.getGid(), item.getQuantity(), Integer::sum);
+        }
+        Map<Long, Goods> goodsById = goodsService.getGoodsByIds(quantities.keySet());
+        //验证库存并计算总金额（库存以预留时的条件更新为准，这里只做快速失败）
+        double totalAmount = 0.0;
+        List<OrderGoods> orderItems = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Goods goods = goodsById.get(entry.getKey());
+            if (goods == null) {
+                throw new RuntimeException("商品不存在");
+            }
+            if (goods.getRemaining() < entry.getValue()) {
                 throw new RuntimeException("商品 " + goods.getName() + " 库存不足");
             }
-            totalAmount += goods.getPrice() * item.getQuantity();
+            totalAmount += goods.getPrice() * entry.getValue();
+            OrderGoods orderGoods = new OrderGoods();
+            orderGoods.setGoods(goods);
+            orderGoods.setQuantity(entry.getValue());
+            orderGoods.setPriceAtPurchase(goods.getPrice());
+            orderItems.add(orderGoods);
+        }
+        //预留库存，任一商品库存不足时整个订单回滚
+        if (!goodsService.tryReserveStock(quantities)) {
+            throw new RuntimeException("部分商品库存不足，请刷新后重试");
         }
         // 创建订单
         UserOrder order = new UserOrder();
         order.setUser(user);
         order.setOrderDate(new Date());
-        order.setStatus("待付款");
+        order.setStatus(OrderStatus.PENDING_PAYMENT);
         order.setTotalAmount(totalAmount);
-        UserOrder savedOrder = userOrderRepository.save(order);
-        //创建订单项并减少库存
-        for (CartItem item : cartItems) {
-            Goods goods = goodsService.getGoodsById(item.getGid());
-            OrderGoods orderGoods = new OrderGoods();
-            orderGoods.setUserorder(savedOrder);
-            orderGoods.setGoods(goods);
-            orderGoods.setQuantity(item.getQuantity());
-            orderGoods.setPriceAtPurchase(goods.getPrice());
-            orderGoodsRepository.save(orderGoods);
-            goodsService.decreaseStock(item.getGid(), item.getQuantity());
+        UserOrder savedOrder = userOrderRepository.saveAndFlush(order);
+        //批量插入订单项
+        orderGoodsRepository.batchInsert(savedOrder.getOid(), orderItems);
+        //更新商家订单计数
+        Set<Long> merchantIds = new HashSet<>();
+        for (Goods goods : goodsById.values()) {
+            merchantIds.add(goods.getMerchant().getUid());
         }
-        // 发送订单确认邮件
-        emailService.sendOrderConfirmation(user.getEmail(), savedOrder);
+        merchantOrderCounterService.onOrderCreated(merchantIds, savedOrder.getStatus());
+        //累加销售汇总
+        salesRollupService.onOrderCreated(savedOrder.getOrderDate(), orderItems);
+        eventPublisher.publishEvent(OrderSalesEvent.created(orderItems));
+        // 发送订单确认邮件（写入发件箱，提交后由后台任务发送）
+        emailService.queueOrderConfirmation(user.getEmail(), savedOrder);
         return savedOrder;
     }
     //订单付款
+    //状态转换都是一条条件更新语句（当前状态符合时才更新），并发的转换中只有一个生效，不需要先读取订单
     public UserOrder pay(Long orderId) {
-        UserOrder order = userOrderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
-        if (!"待付款".equals(order.getStatus())) {
-            throw new RuntimeException("当前无需付款");
-        }
-        order.setStatus("已付款");
-        order.setPayTime(new Date());
-        return userOrderRepository.save(order);
+        int updated = userOrderRepository.transitionPaid(orderId, OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, new Date());
+        onTransition(orderId, updated, OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, "当前无需付款");
+        return getOrderById(orderId);
     }
     //发货
     public UserOrder fahuo(Long orderId, User merchant) {
-        UserOrder order = userOrderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
-        if (!"已付款".equals(order.getStatus())) {
-            throw new RuntimeException("订单状态不允许发货");
-        }
-        order.setStatus("已发货");
-        order.setShipTime(new Date());
-        UserOrder savedOrder = userOrderRepository.save(order);
-        // 发送邮件通知
-        emailService.sendShippingConfirmation(order.getUser().getEmail(), order);
-        return savedOrder;
+        int updated = userOrderRepository.transitionShipped(orderId, OrderStatus.PAID, OrderStatus.SHIPPED, new Date());
+        onTransition(orderId, updated, OrderStatus.PAID, OrderStatus.SHIPPED, "订单状态不允许发货");
+        UserOrder order = getOrderById(orderId);
+        // 发送邮件通知（写入发件箱，提交后由后台任务发送）
+        emailService.queueShippingConfirmation(order.getUser().getEmail(), order);
+        return order;
+    }
+    //批量发货
+    //一次查询得到订单涉及的商家并校验归属，锁定仍为已付款的订单后用一条更新语句改为已发货，
+    //商家计数按商家合并更新，发货邮件用一个批次写入发件箱；返回每个订单的处理结果（按请求顺序，重复的ID只处理一次）
+    public List<ShipResult> shipOrders(User merchant, List<Long> orderIds) {
+        Set<Long> requested = new LinkedHashSet<>();
+        if (orderIds != null) {
+            for (Long orderId : orderIds) {
+                if (orderId != null) {
+                    requested.add(orderId);
+                }
+            }
+        }
+        if (requested.isEmpty()) {
+            throw new RuntimeException("订单列表为空");
+        }
+        if (requested.size() > maxShipBatchSize) {
+            throw new RuntimeException("单次最多发货 " + maxShipBatchSize + " 个订单");
+        }
+        //订单ID -> 订单涉及的商家ID
+        Map<Long, Set<Long>> merchantsByOrder = new HashMap<>();
+        for (Object[] row : orderGoodsRepository.findOrderMerchantPairs(requested)) {
+            merchantsByOrder.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((Long) row[1]);
+        }
+        List<Long> owned = new ArrayList<>();
+        for (Long orderId : requested) {
+            Set<Long> merchantIds = merchantsByOrder.get(orderId);
+            if (merchantIds != null && merchantIds.contains(merchant.getUid())) {
+                owned.add(orderId);
+            }
+        }
+        List<Long> shipped = owned.isEmpty()
+                ? List.of() : userOrderRepository.lockOrdersByStatus(owned, OrderStatus.PAID.getCode());
+        if (!shipped.isEmpty()) {
+            userOrderRepository.transitionAllShipped(shipped, OrderStatus.PAID, OrderStatus.SHIPPED, new Date());
+            Map<Long, Integer> counts = new HashMap<>();
+            for (Long orderId : shipped) {
+                for (Long merchantId : merchantsByOrder.get(orderId)) {
+                    counts.merge(merchantId, 1, Integer::sum);
+                }
+            }
+            merchantOrderCounterService.onOrdersMoved(counts, OrderStatus.PAID, OrderStatus.SHIPPED);
+            emailService.queueShippingConfirmations(userOrderRepository.findNotificationInfo(shipped));
+        }
+        Set<Long> shippedIds = new HashSet<>(shipped);
+        Set<Long> ownedIds = new HashSet<>(owned);
+        List<ShipResult> results = new ArrayList<>(requested.size());
+        for (Long orderId : requested) {
+            if (shippedIds.contains(orderId)) {
+                results.add(new ShipResult(orderId, true, "发货成功"));
+            } else if (ownedIds.contains(orderId)) {
+                results.add(new ShipResult(orderId, false, "订单状态不允许发货"));
+            } else {
+                results.add(new ShipResult(orderId, false, "订单不存在或不属于当前商家"));
+            }
+        }
+        return results;
     }
     //完成订单
     public UserOrder completeOrder(Long orderId) {
-        UserOrder order = userOrderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
-        if (!"已发货".equals(order.getStatus())) {
-            throw new RuntimeException("订单状态不允许完成");
-        }
-        order.setStatus("已完成");
-        order.setCompleteTime(new Date());
-        return userOrderRepository.save(order);
+        int updated = userOrderRepository.transitionCompleted(orderId, OrderStatus.SHIPPED, OrderStatus.COMPLETED, new Date());
+        onTransition(orderId, updated, OrderStatus.SHIPPED, OrderStatus.COMPLETED, "订单状态不允许完成");
+        return getOrderById(orderId);
     }
     //取消订单
+    //取消前的状态决定计数器的变化，需要先读取；更新语句以读到的状态为条件，期间状态被其他请求改变时取消失败
     public UserOrder cancelOrder(Long orderId) {
-        UserOrder order = userOrderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
-        if ("已完成".equals(order.getStatus()) || "已取消".equals(order.getStatus())) {
+        UserOrder order = getOrderById(orderId);
+        OrderStatus from = order.getStatus();
+        if (!from.canTransitionTo(OrderStatus.CANCELLED)) {
             throw new RuntimeException("订单状态不允许取消");
         }
-        //恢复库存
         List<OrderGoods> orderItems = orderGoodsRepository.findByUserorder(order);
+        if (userOrderRepository.transition(orderId, from, OrderStatus.CANCELLED) == 0) {
+            throw new RuntimeException("订单状态已变化，请刷新后重试");
+        }
+        //恢复库存（一条语句更新全部商品）
+        goodsService.restoreStock(stockQuantities(orderItems));
+        salesRollupService.onOrderCancelled(orderId, order.getOrderDate(), orderItems);
+        eventPublisher.publishEvent(OrderSalesEvent.cancelled(orderItems));
+        merchantOrderCounterService.onStatusChanged(orderId, from, OrderStatus.CANCELLED);
+        return getOrderById(orderId);
+    }
+
+    //条件更新的结果：成功时更新商家计数，未更新时区分订单不存在和状态不允许
+    private void onTransition(Long orderId, int updated, OrderStatus from, OrderStatus to, String message) {
+        if (updated == 0) {
+            if (!userOrderRepository.existsById(orderId)) {
+                throw new RuntimeException("订单不存在");
+            }
+            throw new RuntimeException(message);
+        }
+        merchantOrderCounterService.onStatusChanged(orderId, from, to);
+    }
+
+    //批量取消超过付款期限的待付款订单，返回实际取消的订单数
+    //先按ID顺序锁定仍待付款且下单时间不晚于cutoff的订单，已付款或已取消的订单跳过；
+    //库存、商家计数和销售汇总都按整批合并更新
+    public int cancelExpiredOrders(Collection<Long> orderIds, Date cutoff) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> locked = userOrderRepository.lockOrdersByStatusBefore(orderIds,
+                OrderStatus.PENDING_PAYMENT.getCode(), cutoff);
+        if (locked.isEmpty()) {
+            return 0;
+        }
+        List<OrderGoods> orderItems = orderGoodsRepository.findWithGoodsByOrderIds(locked);
+        userOrderRepository.transitionAll(locked, OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED);
+        goodsService.restoreStock(stockQuantities(orderItems));
+        //每个商家涉及的订单数
+        Map<Long, Set<Long>> ordersByMerchant = new HashMap<>();
         for (OrderGoods item : orderItems) {
-            Goods goods = item.getGoods();
-            goodsService.increaseStock(goods.getGid(), item.getQuantity());
+            ordersByMerchant.computeIfAbsent(item.getGoods().getMerchant().getUid(), id -> new HashSet<>())
+                    .add(item.getUserorder().getOid());
         }
-        order.setStatus("已取消");
-        return userOrderRepository.save(order);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : ordersByMerchant.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        merchantOrderCounterService.onOrdersMoved(counts, OrderStatus.PENDING_PAYMENT, OrderStatus.CANCELLED);
+        salesRollupService.onOrdersCancelled(orderItems);
+        eventPublisher.publishEvent(OrderSalesEvent.cancelled(orderItems));
+        return locked.size();
     }
 
-    //订单查询相关功能
-    //获取用户订单历史
-    public List<UserOrder> getUserOrderHistory(Long userId) {
-        return userOrderRepository.findByUserUid(userId);
+    //订单项按商品合并数量
+    private Map<Long, Integer> stockQuantities(List<OrderGoods> orderItems) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (OrderGoods item : orderItems) {
+            quantities.merge(item.getGoods().getGid(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
     }
-    //获取商家的订单（订单只包含该商家的商品）
-    public List<UserOrder> getMerchantOrders(User merchant) {
-        List<UserOrder> allOrders = userOrderRepository.findAll();
-        return allOrders.stream().filter(order -> isOrderBelongsToMerchant(order, merchant))
-                .collect(Collectors.toList());
+
+    //订单查询相关功能
+    //游标分页获取用户订单历史，按订单ID倒序
+    //一条语句查出本页订单ID，再用一条语句连同订单项、商品加载，语句数与分页大小无关
+    public CursorPage<UserOrder> getUserOrderHistory(Long userId, Long cursor, Integer size) {
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        List<Long> fetched = userOrderRepository.findUserOrderIds(userId, cursor != null ? cursor : Long.MAX_VALUE,
+                Limit.of(pageSize + 1));
+        CursorPage<Long> ids = CursorPage.of(fetched, pageSize, id -> id);
+        List<UserOrder> orders = ids.getItems().isEmpty()
+                ? List.of() : userOrderRepository.findDetailsByIds(ids.getItems());
+        return new CursorPage<>(orders, ids.getNextCursor());
     }
-    //根据状态获取商家的订单
-    public List<UserOrder> getMerchantOrdersByStatus(User merchant, String status) {
-        return getMerchantOrders(merchant).stream().filter(order -> status.equals(order.getStatus()))
-                .collect(Collectors.toList());
+    //游标分页获取商家的订单（订单包含该商家的商品），按订单ID倒序，status为空时返回全部状态
+    //先通过索引连接查出本页订单ID，再按主键批量加载订单
+    public CursorPage<UserOrder> getMerchantOrders(User merchant, String status, Long cursor, Integer size) {
+        int pageSize = CursorPage.clampSize(size, defaultPageSize, maxPageSize);
+        OrderStatus statusFilter = status != null && !status.isEmpty() ? OrderStatus.fromLabel(status) : null;
+        List<Long> ids = userOrderRepository.findMerchantOrderIds(merchant.getUid(), statusFilter,
+                cursor != null ? cursor : Long.MAX_VALUE, Limit.of(pageSize + 1));
+        Map<Long, UserOrder> ordersById = new HashMap<>();
+        for (UserOrder order : userOrderRepository.findAllById(ids)) {
+            ordersById.put(order.getOid(), order);
+        }
+        List<UserOrder> orders = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            UserOrder order = ordersById.get(id);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return CursorPage.of(orders, pageSize, UserOrder::getOid);
     }
     //根据状态获取订单
     public List<UserOrder> getOrdersByStatus(String status) {
-        return userOrderRepository.findByStatusOrderByOrderDateDesc(status);
+        return userOrderRepository.findByStatusOrderByOrderDateDesc(OrderStatus.fromLabel(status));
     }
     //获取订单详情
     public List<OrderGoods> getOrderDetails(Long orderId) {
-        UserOrder order = userOrderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
-        return orderGoodsRepository.findByUserorder(order);
+        return getOrderWithItems(orderId).getOrderItems();
+    }
+    //获取订单及其订单项和商品（一条语句）
+    public UserOrder getOrderWithItems(Long orderId) {
+        return userOrderRepository.findDetailById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
     }
     //根据ID获取订单
     public UserOrder getOrderById(Long orderId) {
@@ -137,16 +306,26 @@ public class OrderService {
     }
     //验证订单是否属于商家
     public boolean isOrderBelongsToMerchant(UserOrder order, User merchant) {
-        List<OrderGoods> orderItems = orderGoodsRepository.findByUserorder(order);
-        for (OrderGoods item : orderItems) {
-            if (item.getGoods().getMerchant().getUid().equals(merchant.getUid())) {
-                return true;
-            }
-        }
-        return false;
+        return orderGoodsRepository.existsByUserorderOidAndGoodsMerchantUid(order.getOid(), merchant.getUid());
     }
-    //获取商家指定状态的订单数量
+    //获取商家指定状态的订单数量（读取增量维护的计数器）
     public Long getMerchantOrderCountByStatus(User merchant, String status) {
-        return getMerchantOrders(merchant).stream().filter(order -> status.equals(order.getStatus())).count();
+        return merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.fromLabel(status));
+    }
+
+    //批量发货中单个订单的结果
+    public static class ShipResult {
+        private Long oid;
+        private Boolean success;
+        private String message;
+        public ShipResult(Long oid, Boolean success, String message) {
+            this.oid = oid;
+            this.success = success;
+            this.message = message;
+        }
+        //getter函数
+        public Long getOid() { return oid; }
+        public Boolean getSuccess() { return success; }
+        public String getMessage() { return message; }
     }
 }
\ No newline at end of file
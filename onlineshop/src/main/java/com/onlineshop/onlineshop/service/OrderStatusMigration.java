@@ -0,0 +1,61 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+//订单状态迁移：旧版本把中文状态名保存在userorder.status列，现在保存在status_code列
+//表结构由Hibernate更新后新增的status_code列为0，启动时按旧状态名填入状态码（后台任务和启动对账都在此之后运行）
+//旧列保留不删除，新订单不再写入
+@Component
+public class OrderStatusMigration {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    //依赖EntityManagerFactory，保证表结构已经更新
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void migrate() {
+        if (!hasLegacyColumn()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE userorder SET status_code = CASE status");
+        StringBuilder labels = new StringBuilder();
+        for (OrderStatus status : OrderStatus.values()) {
+            sql.append(" WHEN '").append(status.getLabel()).append("' THEN ").append(status.getCode());
+            labels.append(labels.length() > 0 ? ", '" : "'").append(status.getLabel()).append("'");
+        }
+        sql.append(" END WHERE (status_code IS NULL OR status_code = 0) AND status IN (").append(labels).append(")");
+        int migrated = jdbcTemplate.update(sql.toString());
+        if (migrated > 0) {
+            System.out.println("订单状态迁移完成: " + migrated);
+        }
+    }
+
+    //userorder表是否还有旧的status列
+    private boolean hasLegacyColumn() {
+        Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            //MySQL保留小写表名，H2转为大写
+            for (String table : new String[]{"userorder", "USERORDER"}) {
+                for (String column : new String[]{"status", "STATUS"}) {
+                    try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+                        if (rs.next()) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+}
@@ -0,0 +1,348 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.BackfillProgress;
+import com.onlineshop.onlineshop.entity.OrderGoods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.SalesRollup;
+import com.onlineshop.onlineshop.repository.BackfillProgressRepository;
+import com.onlineshop.onlineshop.repository.OrderGoodsRepository;
+import com.onlineshop.onlineshop.repository.SalesRollupRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+//销售汇总
+//下单和取消订单时在同一事务中累加按天、按小时的汇总行（商品和商家两个层级），
+//全平台数据由商家汇总行相加得到，不设全平台汇总行，避免所有下单事务争用同一行
+//报表按时间段读取汇总行：整天部分读按天汇总，首尾不足一天的部分读按小时汇总
+//首次部署前已有的订单由补建计入，补建进度保存在backfill_progress表，中断后继续
+@Service
+public class SalesRollupService {
+    private static final long ALL_MERCHANTS = 0L;
+    private static final long ALL_GOODS = 0L;
+    private static final int BACKFILL_BATCH = 500;
+    private static final String BACKFILL = "sales-rollup";
+    private static final String BACKFILL_LEASE = "sales-rollup-backfill";
+
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private OrderGoodsRepository orderGoodsRepository;
+    @Autowired
+    private BackfillProgressRepository backfillProgressRepository;
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${sales.rollup.backfill-lease-ms:60000}")
+    private long backfillLeaseMillis;
+
+    //本节点已确认补建完成
+    private volatile boolean backfillCompleted;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    //首次部署时固定补建范围：在开始接收请求之前记录当时的最大订单ID
+    //之后的订单ID来自启动后新领取的号段，都大于该值，由下单事务计入汇总
+    @PostConstruct
+    public void initBackfill() {
+        transactionTemplate.executeWithoutResult(status ->
+                backfillProgressRepository.create(BACKFILL, userOrderRepository.findMaxOid()));
+    }
+
+    //订单创建时累加汇总
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrderCreated(Date orderDate, List<OrderGoods> items) {
+        Map<SalesRollup.Key, SalesRollup> deltas = new HashMap<>();
+        accumulate(deltas, orderDate, toLines(items), 1);
+        salesRollupRepository.addAll(deltas.values());
+    }
+
+    //订单取消时从下单时间所在的时间段中扣除
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrderCancelled(Long oid, Date orderDate, List<OrderGoods> items) {
+        if (notYetBackfilled().test(oid)) {
+            return;
+        }
+        Map<SalesRollup.Key, SalesRollup> deltas = new HashMap<>();
+        accumulate(deltas, orderDate, toLines(items), -1);
+        salesRollupRepository.addAll(deltas.values());
+    }
+
+    //一批订单取消，订单项需已加载所属订单，全部增量合并后一次写入
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onOrdersCancelled(List<OrderGoods> items) {
+        LongPredicate notYetBackfilled = notYetBackfilled();
+        Map<Long, List<OrderGoods>> byOrder = new LinkedHashMap<>();
+        for (OrderGoods item : items) {
+            if (notYetBackfilled.test(item.getUserorder().getOid())) {
+                continue;
+            }
+            byOrder.computeIfAbsent(item.getUserorder().getOid(), oid -> new ArrayList<>()).add(item);
+        }
+        Map<SalesRollup.Key, SalesRollup> deltas = new HashMap<>();
+        for (List<OrderGoods> orderItems : byOrder.values()) {
+            accumulate(deltas, orderItems.get(0).getUserorder().getOrderDate(), toLines(orderItems), -1);
+        }
+        salesRollupRepository.addAll(deltas.values());
+    }
+
+    //时间段内的汇总：销量、销售额（分）、订单数
+    //merchantId为0时为全平台的销量和销售额，此时订单数为各商家订单数之和（包含多个商家商品的订单会重复计算）
+    public long[] getTotals(long merchantId, Date startDate, Date endDate) {
+        long[] totals = new long[3];
+        for (Segment segment : segments(startDate, endDate)) {
+            List<Object[]> rows = merchantId == ALL_MERCHANTS
+                    ? salesRollupRepository.sumAllTotals(segment.granularity, segment.from, segment.to)
+                    : salesRollupRepository.sumTotals(segment.granularity, merchantId, segment.from, segment.to);
+            for (Object[] row : rows) {
+                totals[0] += ((Number) row[0]).longValue();
+                totals[1] += ((Number) row[1]).longValue();
+                totals[2] += ((Number) row[2]).longValue();
+            }
+        }
+        return totals;
+    }
+
+    //时间段内各商品的销量和销售额（分），merchantId为0时统计全平台
+    public Map<Long, long[]> getGoodsTotals(long merchantId, Date startDate, Date endDate) {
+        Map<Long, long[]> byGoods = new LinkedHashMap<>();
+        for (Segment segment : segments(startDate, endDate)) {
+            List<Object[]> rows = merchantId == ALL_MERCHANTS
+                    ? salesRollupRepository.sumAllByGoods(segment.granularity, segment.from, segment.to)
+                    : salesRollupRepository.sumByGoods(segment.granularity, merchantId, segment.from, segment.to);
+            for (Object[] row : rows) {
+                long[] sums = byGoods.computeIfAbsent((Long) row[0], gid -> new long[2]);
+                sums[0] += ((Number) row[1]).longValue();
+                sums[1] += ((Number) row[2]).longValue();
+            }
+        }
+        return byGoods;
+    }
+
+    //启动后补建未完成时执行补建；持有租约的节点中断后由其他节点或重启后的节点接着执行
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void backfillOnStartup() {
+        backfillIfPending();
+    }
+
+    @Scheduled(initialDelayString = "${sales.rollup.backfill-retry-ms:60000}",
+            fixedDelayString = "${sales.rollup.backfill-retry-ms:60000}")
+    public void scheduledBackfill() {
+        backfillIfPending();
+    }
+
+    private synchronized void backfillIfPending() {
+        if (backfillCompleted) {
+            return;
+        }
+        if (backfillProgressRepository.findCompletedByName(BACKFILL).orElse(true)) {
+            backfillCompleted = true;
+            return;
+        }
+        try {
+            int orders = backfill();
+            if (backfillCompleted) {
+                System.out.println("销售汇总补建完成，本次处理 " + orders + " 个订单");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("销售汇总补建失败: " + e.getMessage());
+        }
+    }
+
+    //在持有任务租约时按订单ID分批把补建范围内的未取消订单计入汇总，每批提交时记录进度，返回本次处理的订单数
+    //每批开始前续约，租约被其他节点接管时停止；进度行加排他锁，即使两个节点同时执行也不会重复计入
+    public int backfill() {
+        int total = 0;
+        try {
+            while (jobLeaseService.tryAcquire(BACKFILL_LEASE, backfillLeaseMillis)) {
+                Integer orders = transactionTemplate.execute(status -> backfillBatch());
+                if (orders == null || orders == 0) {
+                    break;
+                }
+                total += orders;
+            }
+        } finally {
+            jobLeaseService.release(BACKFILL_LEASE);
+        }
+        return total;
+    }
+
+    //补建一批订单，返回处理的订单数，补建完成时返回0
+    private int backfillBatch() {
+        BackfillProgress progress = backfillProgressRepository.lockByName(BACKFILL).orElse(null);
+        if (progress == null || progress.getCompleted()) {
+            backfillCompleted = true;
+            return 0;
+        }
+        List<Long> orderIds = userOrderRepository.findActiveOrderIds(progress.getLastOid(), progress.getCutoffOid(),
+                OrderStatus.CANCELLED, Limit.of(BACKFILL_BATCH));
+        if (orderIds.isEmpty()) {
+            progress.setLastOid(progress.getCutoffOid());
+            progress.setCompleted(true);
+            backfillCompleted = true;
+            return 0;
+        }
+        //同一订单的订单项都在同一批中，订单数不会重复计算
+        Map<Long, List<Line>> linesByOrder = new LinkedHashMap<>();
+        Map<Long, Date> orderDates = new HashMap<>();
+        for (Object[] row : orderGoodsRepository.findLineFactsByOrderIds(orderIds)) {
+            Long oid = (Long) row[0];
+            orderDates.put(oid, (Date) row[1]);
+            linesByOrder.computeIfAbsent(oid, k -> new ArrayList<>()).add(new Line((Long) row[2], (Long) row[3],
+                    ((Number) row[4]).intValue(), ((Number) row[5]).doubleValue()));
+        }
+        Map<SalesRollup.Key, SalesRollup> deltas = new HashMap<>();
+        for (Map.Entry<Long, List<Line>> entry : linesByOrder.entrySet()) {
+            accumulate(deltas, orderDates.get(entry.getKey()), entry.getValue(), 1);
+        }
+        salesRollupRepository.addAll(deltas.values());
+        progress.setLastOid(orderIds.get(orderIds.size() - 1));
+        return orderIds.size();
+    }
+
+    //尚未补建的订单：在补建范围内且还没有处理到，这些订单取消时不扣除（补建会跳过已取消的订单）
+    //返回判断条件；补建完成后所有订单都已计入
+    private LongPredicate notYetBackfilled() {
+        if (backfillProgressRepository.findCompletedByName(BACKFILL).orElse(true)) {
+            return oid -> false;
+        }
+        //加共享锁读取，等待正在执行的补建批次提交，读到该批次之后的进度
+        BackfillProgress progress = backfillProgressRepository.lockSharedByName(BACKFILL).orElse(null);
+        if (progress == null || progress.getCompleted()) {
+            return oid -> false;
+        }
+        long lastOid = progress.getLastOid();
+        long cutoffOid = progress.getCutoffOid();
+        return oid -> oid > lastOid && oid <= cutoffOid;
+    }
+
+    //把一个订单的订单项计入增量：商品行和商家行各有按天、按小时两条
+    private void accumulate(Map<SalesRollup.Key, SalesRollup> deltas, Date orderDate, List<Line> lines, int sign) {
+        LocalDateTime time = LocalDateTime.ofInstant(orderDate.toInstant(), zone);
+        Date day = toDate(time.truncatedTo(ChronoUnit.DAYS));
+        Date hour = toDate(time.truncatedTo(ChronoUnit.HOURS));
+        Set<Long> merchants = new HashSet<>();
+        Set<Long> goods = new HashSet<>();
+        for (Line line : lines) {
+            long quantity = (long) sign * line.quantity;
+            long cents = sign * Math.round(line.price * 100) * line.quantity;
+            //同一订单中的同一商品、同一商家只计一个订单
+            int goodsOrders = goods.add(line.gid) ? sign : 0;
+            int merchantOrders = merchants.add(line.merchantId) ? sign : 0;
+            add(deltas, SalesRollup.DAILY, line.merchantId, day, line.gid, quantity, cents, goodsOrders);
+            add(deltas, SalesRollup.HOURLY, line.merchantId, hour, line.gid, quantity, cents, goodsOrders);
+            add(deltas, SalesRollup.DAILY, line.merchantId, day, ALL_GOODS, quantity, cents, merchantOrders);
+            add(deltas, SalesRollup.HOURLY, line.merchantId, hour, ALL_GOODS, quantity, cents, merchantOrders);
+        }
+    }
+
+    private void add(Map<SalesRollup.Key, SalesRollup> deltas, String granularity, long merchantId, Date bucket,
+                     long gid, long quantity, long cents, long orders) {
+        SalesRollup row = deltas.computeIfAbsent(new SalesRollup.Key(granularity, merchantId, bucket, gid), key -> {
+            SalesRollup created = new SalesRollup();
+            created.setGranularity(granularity);
+            created.setMerchantId(merchantId);
+            created.setBucketStart(bucket);
+            created.setGoodsId(gid);
+            return created;
+        });
+        row.setQuantity(row.getQuantity() + quantity);
+        row.setRevenueCents(row.getRevenueCents() + cents);
+        row.setOrderCount(row.getOrderCount() + orders);
+    }
+
+    //把[startDate, endDate]拆成按小时和按天读取的时间段，统计精度为小时（endDate所在小时计入）
+    private List<Segment> segments(Date startDate, Date endDate) {
+        LocalDateTime firstHour = LocalDateTime.ofInstant(startDate.toInstant(), zone).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime lastHour = LocalDateTime.ofInstant(endDate.toInstant(), zone).truncatedTo(ChronoUnit.HOURS);
+        List<Segment> segments = new ArrayList<>(3);
+        if (lastHour.isBefore(firstHour)) {
+            return segments;
+        }
+        //完整覆盖的天：[firstDay, endDay)
+        LocalDateTime firstDay = firstHour.truncatedTo(ChronoUnit.DAYS);
+        if (firstDay.isBefore(firstHour)) {
+            firstDay = firstDay.plusDays(1);
+        }
+        LocalDateTime endDay = lastHour.plusHours(1).truncatedTo(ChronoUnit.DAYS);
+        if (!firstDay.isBefore(endDay)) {
+            segments.add(new Segment(SalesRollup.HOURLY, firstHour, lastHour));
+            return segments;
+        }
+        if (firstHour.isBefore(firstDay)) {
+            segments.add(new Segment(SalesRollup.HOURLY, firstHour, firstDay.minusHours(1)));
+        }
+        segments.add(new Segment(SalesRollup.DAILY, firstDay, endDay.minusDays(1)));
+        if (!endDay.isAfter(lastHour)) {
+            segments.add(new Segment(SalesRollup.HOURLY, endDay, lastHour));
+        }
+        return segments;
+    }
+
+    private List<Line> toLines(List<OrderGoods> items) {
+        List<Line> lines = new ArrayList<>(items.size());
+        for (OrderGoods item : items) {
+            lines.add(new Line(item.getGoods().getMerchant().getUid(), item.getGoods().getGid(),
+                    item.getQuantity(), item.getPriceAtPurchase()));
+        }
+        return lines;
+    }
+
+    private Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(zone).toInstant());
+    }
+
+    //一条订单项
+    private static class Line {
+        final long merchantId;
+        final long gid;
+        final int quantity;
+        final double price;
+        Line(long merchantId, long gid, int quantity, double price) {
+            this.merchantId = merchantId;
+            this.gid = gid;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    //按同一粒度读取的时间段，from和to都是时间段开始时间（包含）
+    private class Segment {
+        final String granularity;
+        final Date from;
+        final Date to;
+        Segment(String granularity, LocalDateTime from, LocalDateTime to) {
+            this.granularity = granularity;
+            this.from = toDate(from);
+            this.to = toDate(to);
+        }
+    }
+}
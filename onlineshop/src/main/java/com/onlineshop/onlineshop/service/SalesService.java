@@ -1,13 +1,17 @@
 package com.onlineshop.onlineshop.service;
 
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
 import com.onlineshop.onlineshop.repository.OrderGoodsRepository;
 import com.onlineshop.onlineshop.repository.UserOrderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 public class SalesService {
@@ -20,58 +24,58 @@ public class SalesService {
     private OrderService orderService;
     @Autowired
     private GoodsService goodsService;
+    @Autowired
+    private SalesRollupService salesRollupService;
+    @Autowired
+    private BestSellerTracker bestSellerTracker;
+
+    @Value("${sales.top-k.default-size:10}")
+    private int topSellerSize;
 
-    //获取销售统计报表
+    //获取销售统计报表（读取销售汇总表，已取消的订单不计入）
     public SalesReport getSalesReport(Date startDate, Date endDate) {
         SalesReport report = new SalesReport();
         //订单数量统计
-        Long orderCount = userOrderRepository.countByOrderDateBetween(startDate, endDate);
+        Long orderCount = userOrderRepository.countByOrderDateBetweenAndStatusNot(startDate, endDate, OrderStatus.CANCELLED);
         report.setOrderCount(orderCount);
         //销售总额
-        Double totalSales = userOrderRepository.getTotalSalesByDateRange(startDate, endDate);
-        report.setTotalSales(totalSales != null ? totalSales : 0.0);
+        long[] totals = salesRollupService.getTotals(0L, startDate, endDate);
+        report.setTotalSales(totals[1] / 100.0);
         //商品销售统计
-        List<Object[]> goodsSales = orderGoodsRepository.getGoodsSalesByDateRange(startDate, endDate);
-        report.setGoodsSales(goodsSales);
+        report.setGoodsSales(toGoodsSales(salesRollupService.getGoodsTotals(0L, startDate, endDate)));
         //热销商品
-        List<Object[]> bestSellers = orderGoodsRepository.findBestSellingGoods();
-        report.setBestSellingGoods(bestSellers);
+        report.setBestSellingGoods(bestSellerTracker.getTopSellers(topSellerSize));
         return report;
     }
 
-    //获取商家销售统计报表
+    //获取商家销售统计报表（读取销售汇总表，已取消的订单不计入）
     public MerchantSalesReport getMerchantSalesReport(Long merchantId, Date startDate, Date endDate) {
         MerchantSalesReport report = new MerchantSalesReport();
-        //获取商家相关订单
-        List<Object[]> merchantSales = orderGoodsRepository.getMerchantSalesByDateRange(merchantId, startDate, endDate);
-        //计算商家订单数量和销售额
-        Long orderCount = merchantSales.stream().map(arr -> (Long) arr[0]).distinct().count();
-        Double totalSales = merchantSales.stream().mapToDouble(arr -> (Double) arr[3]).sum();
-        report.setOrderCount(orderCount);
-        report.setTotalSales(totalSales);
-        report.setGoodsSales(merchantSales);
+        long[] totals = salesRollupService.getTotals(merchantId, startDate, endDate);
+        report.setOrderCount(totals[2]);
+        report.setTotalSales(totals[1] / 100.0);
+        report.setGoodsSales(toGoodsSales(salesRollupService.getGoodsTotals(merchantId, startDate, endDate)));
         return report;
     }
 
-    //获取热销商品
+    //获取热销商品（内存中的热销榜，不扫描订单项）
     public List<Object[]> getBestSellingGoods() {
-        return orderGoodsRepository.findBestSellingGoods();
+        return bestSellerTracker.getTopSellers(topSellerSize);
     }
 
     //获取商家的热销商品
     public List<Object[]> getMerchantBestSellingGoods(Long merchantId) {
-        return orderGoodsRepository.findMerchantBestSellingGoods(merchantId);
+        return bestSellerTracker.getMerchantTopSellers(merchantId, topSellerSize);
     }
 
     //获取商品销售统计
     public List<Object[]> getGoodsSalesByDateRange(Date startDate, Date endDate) {
-        return orderGoodsRepository.getGoodsSalesByDateRange(startDate, endDate);
+        return toGoodsSales(salesRollupService.getGoodsTotals(0L, startDate, endDate));
     }
 
     //获取商家在指定时间段的销售额
     public Double getMerchantSalesByDateRange(Long merchantId, Date startDate, Date endDate) {
-        List<Object[]> salesData = orderGoodsRepository.getMerchantSalesByDateRange(merchantId, startDate, endDate);
-        return salesData.stream().mapToDouble(arr -> (Double) arr[3]).sum();
+        return salesRollupService.getTotals(merchantId, startDate, endDate)[1] / 100.0;
     }
 
     //获取商家商品统计
@@ -79,6 +83,22 @@ public class SalesService {
         return goodsService.getMerchantGoodsStats(merchantId);
     }
 
+    //把各商品的汇总转换为(商品ID, 商品名, 销量, 销售额)，按销售额降序
+    private List<Object[]> toGoodsSales(Map<Long, long[]> goodsTotals) {
+        Map<Long, Goods> goodsById = goodsService.getGoodsByIds(goodsTotals.keySet());
+        List<Object[]> goodsSales = new ArrayList<>(goodsTotals.size());
+        for (Map.Entry<Long, long[]> entry : goodsTotals.entrySet()) {
+            if (entry.getValue()[0] == 0 && entry.getValue()[1] == 0) {
+                continue; //订单都已取消
+            }
+            Goods goods = goodsById.get(entry.getKey());
+            goodsSales.add(new Object[]{entry.getKey(), goods != null ? goods.getName() : null,
+                    entry.getValue()[0], entry.getValue()[1] / 100.0});
+        }
+        goodsSales.sort((a, b) -> Double.compare((Double) b[3], (Double) a[3]));
+        return goodsSales;
+    }
+
     //销售统计报表类
     public static class SalesReport {
         private Long orderCount;
@@ -100,6 +120,7 @@ public class SalesService {
     public static class MerchantSalesReport {
         private Long orderCount;
         private Double totalSales;
+        //每个商品一行(商品ID, 商品名, 销量, 销售额)，与SalesReport相同；汇总表不保留订单号，不再按订单项逐行返回(订单ID, 商品ID, 商品名, 小计)
         private List<Object[]> goodsSales;
         //getter和setter函数
         public Long getOrderCount() { return orderCount; }
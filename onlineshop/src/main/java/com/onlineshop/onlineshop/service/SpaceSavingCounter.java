@@ -0,0 +1,117 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+//Space-Saving热门元素计数器
+//最多监控capacity个商品，计数器已满时新商品替换计数最小的商品并继承其计数作为误差上界，
+//任何真实销量大于最小计数的商品都一定在监控中，计数的高估量不超过error
+//非线程安全，由调用方加锁
+class SpaceSavingCounter {
+    private final int capacity;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    //按(计数, 商品ID)排序，首元素为计数最小的商品
+    private final TreeSet<Entry> ordered = new TreeSet<>((a, b) -> {
+        int cmp = Long.compare(a.count, b.count);
+        return cmp != 0 ? cmp : Long.compare(a.gid, b.gid);
+    });
+
+    SpaceSavingCounter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //增加商品销量
+    void add(long gid, String name, long quantity) {
+        Entry entry = entries.get(gid);
+        if (entry != null) {
+            ordered.remove(entry);
+            entry.count += quantity;
+            if (name != null) {
+                entry.name = name;
+            }
+            ordered.add(entry);
+            return;
+        }
+        long error = 0;
+        if (entries.size() >= capacity) {
+            Entry min = ordered.pollFirst();
+            entries.remove(min.gid);
+            error = min.count;
+        }
+        entry = new Entry(gid, name, error + quantity, error);
+        entries.put(gid, entry);
+        ordered.add(entry);
+    }
+
+    //减少商品销量（订单取消），未监控的商品销量本来就不超过最小计数，忽略
+    void subtract(long gid, long quantity) {
+        Entry entry = entries.get(gid);
+        if (entry == null) {
+            return;
+        }
+        ordered.remove(entry);
+        entry.count = Math.max(0, entry.count - quantity);
+        entry.error = Math.min(entry.error, entry.count);
+        ordered.add(entry);
+    }
+
+    //直接设置精确计数，用于从数据库重算或快照恢复
+    void put(long gid, String name, long count, long error) {
+        Entry entry = entries.remove(gid);
+        if (entry != null) {
+            ordered.remove(entry);
+        }
+        entry = new Entry(gid, name, count, error);
+        entries.put(gid, entry);
+        ordered.add(entry);
+        while (entries.size() > capacity) {
+            entries.remove(ordered.pollFirst().gid);
+        }
+    }
+
+    //更新商品名称
+    void rename(long gid, String name) {
+        Entry entry = entries.get(gid);
+        if (entry != null) {
+            entry.name = name;
+        }
+    }
+
+    //销量最高的limit个商品，按计数降序
+    List<Entry> top(int limit) {
+        List<Entry> top = new ArrayList<>(Math.min(limit, entries.size()));
+        Iterator<Entry> iterator = ordered.descendingIterator();
+        while (iterator.hasNext() && top.size() < limit) {
+            Entry entry = iterator.next();
+            if (entry.count > 0) {
+                top.add(entry.copy());
+            }
+        }
+        return top;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    //监控中的商品
+    static class Entry {
+        final long gid;
+        String name;
+        long count;
+        long error;
+        Entry(long gid, String name, long count, long error) {
+            this.gid = gid;
+            this.name = name;
+            this.count = count;
+            this.error = error;
+        }
+        Entry copy() {
+            return new Entry(gid, name, count, error);
+        }
+    }
+}
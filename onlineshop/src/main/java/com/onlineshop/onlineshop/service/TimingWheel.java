@@ -0,0 +1,141 @@
+package com.onlineshop.onlineshop.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//分层时间轮，按到期时间管理大量定时任务（这里是订单ID），添加和到期处理都是O(1)
+//每层64个槽，第0层每槽一个tick，第n层每槽64^n个tick；时间推进到高层槽的起点时，把该槽的任务重新分配到低层
+//超出最高层范围的任务先放在最高层，到达时再重新分配
+//同一ID重复添加时以最后一次的到期时间为准，旧位置上的记录在处理时跳过
+//非线程安全，由调用方加锁
+class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    //各层的槽依次排列，第level层第slot个槽的下标为level * SLOTS + slot，空槽为null
+    private final List<List<Timer>> buckets = new ArrayList<>(Collections.nCopies(LEVELS * SLOTS, null));
+    //ID -> 到期时间
+    private final Map<Long, Long> deadlines = new HashMap<>();
+    //添加时已经到期的任务，下次推进时返回
+    private List<Long> overdue = new ArrayList<>();
+    private long currentTick;
+
+    TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    //添加或更新任务的到期时间
+    void add(long id, long deadlineMillis) {
+        Long existing = deadlines.put(id, deadlineMillis);
+        if (existing != null && existing == deadlineMillis) {
+            return;
+        }
+        place(new Timer(id, deadlineMillis));
+    }
+
+    //取消任务
+    void remove(long id) {
+        deadlines.remove(id);
+    }
+
+    boolean contains(long id) {
+        return deadlines.containsKey(id);
+    }
+
+    int size() {
+        return deadlines.size();
+    }
+
+    void clear() {
+        deadlines.clear();
+        overdue = new ArrayList<>();
+        Collections.fill(buckets, null);
+    }
+
+    //推进到nowMillis，返回期间到期的任务ID（已从时间轮中移除）
+    List<Long> advance(long nowMillis) {
+        List<Long> expired = overdue;
+        overdue = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            //从高层到低层，把到达起点的高层槽重新分配
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int slot = (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+                    List<Timer> bucket = buckets.set(level * SLOTS + slot, null);
+                    if (bucket != null) {
+                        for (Timer timer : bucket) {
+                            if (isLive(timer)) {
+                                place(timer);
+                            }
+                        }
+                    }
+                }
+            }
+            int slot = (int) currentTick & (SLOTS - 1);
+            List<Timer> bucket = buckets.set(slot, null);
+            if (bucket != null) {
+                for (Timer timer : bucket) {
+                    if (isLive(timer)) {
+                        deadlines.remove(timer.id);
+                        expired.add(timer.id);
+                    }
+                }
+            }
+            //place可能把刚到期的任务放入overdue
+            if (!overdue.isEmpty()) {
+                expired.addAll(overdue);
+                overdue = new ArrayList<>();
+            }
+        }
+        return expired;
+    }
+
+    private void place(Timer timer) {
+        long tick = Math.floorDiv(timer.deadlineMillis + tickMillis - 1, tickMillis);
+        long delta = tick - currentTick;
+        if (delta <= 0) {
+            deadlines.remove(timer.id);
+            overdue.add(timer.id);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && (delta >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        if ((delta >>> (SLOT_BITS * LEVELS)) != 0) {
+            //超出范围，放到最高层最远的槽
+            tick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        List<Timer> bucket = buckets.get(level * SLOTS + slot);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.set(level * SLOTS + slot, bucket);
+        }
+        bucket.add(timer);
+    }
+
+    //任务未被取消，且没有被更新为其他到期时间
+    private boolean isLive(Timer timer) {
+        Long deadline = deadlines.get(timer.id);
+        return deadline != null && deadline == timer.deadlineMillis;
+    }
+
+    //时间轮中的一条记录
+    private static class Timer {
+        final long id;
+        final long deadlineMillis;
+        Timer(long id, long deadlineMillis) {
+            this.id = id;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
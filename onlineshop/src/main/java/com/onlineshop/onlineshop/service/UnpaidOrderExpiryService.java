@@ -0,0 +1,144 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+
+//超时未付款订单自动取消
+//待付款订单按付款期限放入时间轮，到期的订单分批取消并恢复库存；已付款的订单在取消时按状态跳过，不需要从时间轮中删除
+//多节点部署时只有持有任务租约的节点执行：取得租约时从userorder表重建时间轮，
+//之后每次执行读取最近创建的待付款订单加入时间轮，并定期全量重建以补上遗漏
+@Service
+public class UnpaidOrderExpiryService {
+    private static final String LEASE_NAME = "unpaid-order-expiry";
+    private static final int REBUILD_PAGE = 1000;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    //付款期限
+    @Value("${order.expiry.payment-timeout-ms:1800000}")
+    private long paymentTimeoutMillis;
+    @Value("${order.expiry.tick-ms:1000}")
+    private long tickMillis;
+    @Value("${order.expiry.batch-size:200}")
+    private int batchSize;
+    @Value("${order.expiry.lease-ms:30000}")
+    private long leaseMillis;
+    //读取新订单时向前多读的时间，覆盖下单事务提交的延迟
+    @Value("${order.expiry.sync-lookback-ms:10000}")
+    private long syncLookbackMillis;
+    @Value("${order.expiry.rebuild-interval-ms:600000}")
+    private long rebuildIntervalMillis;
+
+    private TimingWheel wheel;
+    private boolean leader;
+    private long lastSyncMillis;
+    private long lastRebuildMillis;
+
+    //定期执行：续约，加入新订单，取消到期订单
+    @Scheduled(fixedDelayString = "${order.expiry.tick-ms:1000}")
+    public synchronized void tick() {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseMillis)) {
+            if (leader) {
+                System.out.println("超时取消任务租约已转移到其他节点");
+            }
+            leader = false;
+            wheel = null;
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (!leader || now - lastRebuildMillis >= rebuildIntervalMillis) {
+                rebuild(now);
+                leader = true;
+            } else {
+                syncNewOrders(now);
+            }
+            cancelExpired(wheel.advance(now), now);
+        } catch (RuntimeException e) {
+            //下次执行时重建
+            leader = false;
+            System.err.println("超时订单取消失败: " + e.getMessage());
+        }
+    }
+
+    //停机时释放租约，其他节点可以立即接管
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (leader) {
+            jobLeaseService.release(LEASE_NAME);
+            leader = false;
+        }
+    }
+
+    //时间轮中的订单数，本节点不是执行节点时为0
+    public synchronized int getTrackedCount() {
+        return wheel != null ? wheel.size() : 0;
+    }
+
+    //从userorder表读取全部待付款订单重建时间轮
+    private void rebuild(long now) {
+        TimingWheel rebuilt = new TimingWheel(tickMillis, now);
+        long afterOid = 0;
+        while (true) {
+            List<Object[]> rows = userOrderRepository.findOrdersByStatusAfter(OrderStatus.PENDING_PAYMENT, afterOid,
+                    Limit.of(REBUILD_PAGE));
+            for (Object[] row : rows) {
+                rebuilt.add((Long) row[0], deadlineOf((Date) row[1]));
+            }
+            if (rows.size() < REBUILD_PAGE) {
+                break;
+            }
+            afterOid = (Long) rows.get(rows.size() - 1)[0];
+        }
+        wheel = rebuilt;
+        lastRebuildMillis = now;
+        lastSyncMillis = now;
+    }
+
+    //把上次读取之后创建的待付款订单加入时间轮
+    private void syncNewOrders(long now) {
+        Date since = new Date(lastSyncMillis - syncLookbackMillis);
+        for (Object[] row : userOrderRepository.findOrdersByStatusSince(OrderStatus.PENDING_PAYMENT, since)) {
+            Long oid = (Long) row[0];
+            if (!wheel.contains(oid)) {
+                wheel.add(oid, deadlineOf((Date) row[1]));
+            }
+        }
+        lastSyncMillis = now;
+    }
+
+    //分批取消，每批一个事务
+    private void cancelExpired(List<Long> expired, long now) {
+        Date cutoff = new Date(now - paymentTimeoutMillis);
+        int cancelled = 0;
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            List<Long> batch = expired.subList(from, Math.min(from + batchSize, expired.size()));
+            Integer count = transactionTemplate.execute(status -> orderService.cancelExpiredOrders(batch, cutoff));
+            cancelled += count != null ? count : 0;
+        }
+        if (cancelled > 0) {
+            System.out.println("自动取消超时未付款订单: " + cancelled);
+        }
+    }
+
+    private long deadlineOf(Date orderDate) {
+        return orderDate.getTime() + paymentTimeoutMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package com.onlineshop.onlineshop;
+
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+//测试数据：各测试共用的用户和商品创建方法（在测试类路径上，由组件扫描注册）
+@Component
+public class TestFixtures {
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    //保存用户，邮箱由昵称生成，昵称需各测试唯一
+    public User saveUser(String nickname, User.UserRole role) {
+        User user = new User();
+        user.setNickname(nickname);
+        user.setPassword("Test@123");
+        user.setEmail(nickname + "@example.com");
+        user.setAddress("测试地址");
+        user.setRole(role);
+        return userRepository.save(user);
+    }
+
+    public User saveMerchant(String nickname) {
+        return saveUser(nickname, User.UserRole.MERCHANT);
+    }
+
+    //直接保存上架商品，不经过GoodsService，不发布商品变更事件
+    public Goods saveGoods(User merchant, String name, double price, int remaining) {
+        Goods goods = newGoods(name, price, remaining);
+        goods.setMerchant(merchant);
+        return goodsRepository.save(goods);
+    }
+
+    //未保存的上架商品，用于通过GoodsService新增
+    public static Goods newGoods(String name, double price, int remaining) {
+        Goods goods = new Goods();
+        goods.setName(name);
+        goods.setPrice(price);
+        goods.setRemaining(remaining);
+        return goods;
+    }
+}
@@ -0,0 +1,132 @@
+package com.onlineshop.onlineshop.controller;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.service.CartItem;
+import com.onlineshop.onlineshop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//订单查询语句数测试：订单详情一条语句，订单历史每页两条语句，与订单项数和分页大小无关
+//响应在事务外序列化，遗漏的延迟加载会直接报错
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderQueryStatementCountTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderController orderController;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void orderDetailsUseOneStatement() throws Exception {
+        String suffix = String.valueOf(System.nanoTime());
+        User firstMerchant = fixtures.saveUser("count_merchant_a_" + suffix, User.UserRole.MERCHANT);
+        User secondMerchant = fixtures.saveUser("count_merchant_b_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("count_customer_" + suffix, User.UserRole.CUSTOMER);
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Goods goods = saveGoods(i % 2 == 0 ? firstMerchant : secondMerchant, "详情商品" + i);
+            items.add(new CartItem(goods.getGid(), 1));
+        }
+        Long oid = orderService.createOrder(customer, items).getOid();
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("currentUser", customer);
+
+        SqlStatementCounter.reset();
+        ResponseEntity<?> response = orderController.getOrderDetails(oid, session);
+        String json = objectMapper.writeValueAsString(response.getBody());
+        int statements = SqlStatementCounter.count();
+
+        assertEquals(200, response.getStatusCode().value(), json);
+        assertEquals(1, statements);
+        List<?> details = (List<?>) ((Map<?, ?>) response.getBody()).get("orderDetails");
+        assertEquals(6, details.size());
+        assertTrue(json.contains("详情商品5"));
+        assertFalse(json.contains("Test@123"));
+    }
+
+    @Test
+    void orderHistoryPageUsesTwoStatementsRegardlessOfSize() throws Exception {
+        String suffix = String.valueOf(System.nanoTime());
+        User firstMerchant = fixtures.saveUser("history_merchant_a_" + suffix, User.UserRole.MERCHANT);
+        User secondMerchant = fixtures.saveUser("history_merchant_b_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("history_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods first = saveGoods(firstMerchant, "历史商品A");
+        Goods second = saveGoods(secondMerchant, "历史商品B");
+        int orders = 12;
+        for (int i = 0; i < orders; i++) {
+            orderService.createOrder(customer, List.of(new CartItem(first.getGid(), 1), new CartItem(second.getGid(), 1)));
+        }
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("currentUser", customer);
+
+        for (int size : new int[]{1, 5, orders}) {
+            SqlStatementCounter.reset();
+            ResponseEntity<?> response = orderController.getMyOrders(null, size, session);
+            String json = objectMapper.writeValueAsString(response.getBody());
+            int statements = SqlStatementCounter.count();
+            assertEquals(200, response.getStatusCode().value(), json);
+            assertEquals(2, statements, "分页大小 " + size);
+            List<?> page = (List<?>) ((Map<?, ?>) response.getBody()).get("orders");
+            assertEquals(size, page.size());
+            for (Object order : page) {
+                assertEquals(2, ((UserOrder) order).getOrderItems().size());
+            }
+            assertTrue(json.contains("历史商品B"));
+        }
+
+        //按游标翻页，订单ID倒序且不重复
+        Set<Long> seen = new HashSet<>();
+        Long cursor = null;
+        long previous = Long.MAX_VALUE;
+        int pages = 0;
+        do {
+            Map<?, ?> body = (Map<?, ?>) orderController.getMyOrders(cursor, 5, session).getBody();
+            for (Object item : (List<?>) body.get("orders")) {
+                Long oid = ((UserOrder) item).getOid();
+                assertTrue(oid < previous);
+                assertTrue(seen.add(oid));
+                previous = oid;
+            }
+            cursor = (Long) body.get("nextCursor");
+            pages++;
+        } while (cursor != null);
+        assertEquals(orders, seen.size());
+        assertEquals(3, pages);
+
+        //没有订单的用户
+        User empty = fixtures.saveUser("history_empty_" + suffix, User.UserRole.CUSTOMER);
+        MockHttpSession emptySession = new MockHttpSession();
+        emptySession.setAttribute("currentUser", empty);
+        Map<?, ?> body = (Map<?, ?>) orderController.getMyOrders(null, null, emptySession).getBody();
+        assertTrue(((List<?>) body.get("orders")).isEmpty());
+        assertNull(body.get("nextCursor"));
+    }
+
+    private Goods saveGoods(User merchant, String name) {
+        return fixtures.saveGoods(merchant, name, 12.5, 100);
+    }
+}
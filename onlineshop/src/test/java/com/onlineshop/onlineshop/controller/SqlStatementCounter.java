@@ -0,0 +1,35 @@
+package com.onlineshop.onlineshop.controller;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+//测试用SQL语句计数：Hibernate执行的每条语句都经过这里，按线程计数，不受后台任务影响
+public class SqlStatementCounter implements StatementInspector {
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+    //每条语句执行前的等待时间，用于模拟慢查询
+    private static volatile long delayMillis;
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int count() {
+        return COUNT.get()[0];
+    }
+
+    public static void setDelayMillis(long millis) {
+        delayMillis = millis;
+    }
+}
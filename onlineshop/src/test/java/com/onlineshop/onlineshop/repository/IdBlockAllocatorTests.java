@@ -0,0 +1,151 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderGoods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.service.CartItem;
+import com.onlineshop.onlineshop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//主键号段测试：并发分配不重复且不小于已有主键，订单项插入按批发送
+@SpringBootTest
+@ActiveProfiles("test")
+class IdBlockAllocatorTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private OrderGoodsRepository orderGoodsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void concurrentAllocationIsUnique() throws Exception {
+        int threads = 16;
+        int perThread = 5_000;
+        Long existing = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(gid), 0) FROM goods", Long.class);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(idBlockAllocator.next("goods", "gid"));
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double millis = (System.nanoTime() - begin) / 1_000_000.0;
+        pool.shutdown();
+        System.out.printf("主键分配: %d 个线程, %d 个主键, 耗时 %.1fms%n", threads, threads * perThread, millis);
+
+        assertEquals(threads * perThread, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id > existing));
+        Long nextValue = jdbcTemplate.queryForObject("SELECT next_value FROM id_block WHERE name = 'goods'", Long.class);
+        assertTrue(ids.stream().allMatch(id -> id < nextValue));
+    }
+
+    @Test
+    void orderLineInsertsAreBatched() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("id_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("id_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods goods = fixtures.saveGoods(merchant, "主键测试商品", 3.0, 100);
+        UserOrder order = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 1)));
+        int rows = 2_000;
+
+        //预热
+        insertLines(order, goods, 200, true);
+        insertLines(order, goods, 200, false);
+
+        //之前：自增主键要求每行插入后立即执行以取回主键，每行一条语句
+        SqlStatementCounter.reset();
+        double rowByRowMillis = insertLines(order, goods, rows, true);
+        int rowByRowStatements = SqlStatementCounter.count();
+        //之后：主键预先分配，刷新时按jdbc.batch_size分批发送
+        SqlStatementCounter.reset();
+        double batchedMillis = insertLines(order, goods, rows, false);
+        int batchedStatements = SqlStatementCounter.count();
+        //下单时使用的JDBC批量插入
+        List<OrderGoods> items = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            items.add(newLine(order, goods));
+        }
+        long begin = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> orderGoodsRepository.batchInsert(order.getOid(), items));
+        double jdbcMillis = (System.nanoTime() - begin) / 1_000_000.0;
+        System.out.printf("订单项插入 %d 行: 逐行 %.1fms (%d 条语句, %.0f 行/秒), 按批 %.1fms (%d 条语句, %.0f 行/秒), JDBC批量 %.1fms (%.0f 行/秒)%n",
+                rows, rowByRowMillis, rowByRowStatements, rows / (rowByRowMillis / 1000),
+                batchedMillis, batchedStatements, rows / (batchedMillis / 1000), jdbcMillis, rows / (jdbcMillis / 1000));
+
+        assertEquals(rows, rowByRowStatements);
+        assertTrue(batchedStatements <= rows / 50 + 1, "按批插入的语句数 " + batchedStatements);
+        Set<Long> ids = new HashSet<>();
+        for (OrderGoods item : items) {
+            assertTrue(ids.add(item.getId()));
+        }
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ordergoods WHERE orderid = ?", Long.class, order.getOid());
+        assertEquals(1 + 400 + 3L * rows, count);
+    }
+
+    //在一个事务中插入订单项，flushEach为true时每行插入后立即刷新
+    private double insertLines(UserOrder order, Goods goods, int rows, boolean flushEach) {
+        long begin = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<OrderGoods> batch = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                OrderGoods line = newLine(order, goods);
+                if (flushEach) {
+                    orderGoodsRepository.saveAndFlush(line);
+                } else {
+                    batch.add(line);
+                }
+            }
+            orderGoodsRepository.saveAllAndFlush(batch);
+        });
+        return (System.nanoTime() - begin) / 1_000_000.0;
+    }
+
+    private OrderGoods newLine(UserOrder order, Goods goods) {
+        OrderGoods line = new OrderGoods();
+        line.setUserorder(order);
+        line.setGoods(goods);
+        line.setQuantity(1);
+        line.setPriceAtPurchase(goods.getPrice());
+        return line;
+    }
+}
@@ -0,0 +1,97 @@
+package com.onlineshop.onlineshop.repository;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.service.CartItem;
+import com.onlineshop.onlineshop.service.CursorPage;
+import com.onlineshop.onlineshop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商家订单分页测试：一个订单包含商家多个商品时只返回一次，按状态过滤，按游标倒序翻页
+@SpringBootTest
+@ActiveProfiles("test")
+class MerchantOrderIdsTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private OrderService orderService;
+
+    @Test
+    void merchantOrderIdsAreDistinctFilteredAndPaged() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("mo_merchant_" + suffix, User.UserRole.MERCHANT);
+        User other = fixtures.saveUser("mo_other_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("mo_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods first = saveGoods(merchant);
+        Goods second = saveGoods(merchant);
+        Goods foreign = saveGoods(other);
+
+        Long both = order(customer, first, second).getOid();
+        Long otherOnly = order(customer, foreign).getOid();
+        Long mixed = order(customer, first, foreign).getOid();
+        Long paid = order(customer, second).getOid();
+        orderService.pay(paid);
+
+        //两个商品都属于该商家的订单只出现一次，其他商家的订单不出现
+        assertEquals(List.of(paid, mixed, both), ids(merchant, null, Long.MAX_VALUE, 10));
+        assertEquals(List.of(mixed, otherOnly), ids(other, null, Long.MAX_VALUE, 10));
+        assertEquals(List.of(paid), ids(merchant, OrderStatus.PAID, Long.MAX_VALUE, 10));
+        assertEquals(List.of(mixed, both), ids(merchant, OrderStatus.PENDING_PAYMENT, Long.MAX_VALUE, 10));
+        assertTrue(ids(merchant, OrderStatus.SHIPPED, Long.MAX_VALUE, 10).isEmpty());
+
+        //游标为上一页最后一个订单ID，只返回更早的订单
+        assertEquals(List.of(paid, mixed), ids(merchant, null, Long.MAX_VALUE, 2));
+        assertEquals(List.of(both), ids(merchant, null, mixed, 2));
+        assertTrue(ids(merchant, null, both, 2).isEmpty());
+        assertEquals(List.of(both), ids(merchant, OrderStatus.PENDING_PAYMENT, mixed, 2));
+
+        //服务层按游标翻页得到同样的顺序，最后一页没有游标
+        List<Long> walked = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        Long cursor = null;
+        do {
+            CursorPage<UserOrder> page = orderService.getMerchantOrders(merchant, null, cursor, 2);
+            pageSizes.add(page.getItems().size());
+            page.getItems().forEach(order -> walked.add(order.getOid()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(List.of(paid, mixed, both), walked);
+        assertEquals(List.of(2, 1), pageSizes);
+        CursorPage<UserOrder> paidPage = orderService.getMerchantOrders(merchant, "已付款", null, 2);
+        assertEquals(1, paidPage.getItems().size());
+        assertFalse(paidPage.isHasMore());
+    }
+
+    private List<Long> ids(User merchant, OrderStatus status, Long beforeOid, int limit) {
+        return userOrderRepository.findMerchantOrderIds(merchant.getUid(), status, beforeOid, Limit.of(limit));
+    }
+
+    private UserOrder order(User customer, Goods... goods) {
+        List<CartItem> items = new ArrayList<>();
+        for (Goods item : goods) {
+            items.add(new CartItem(item.getGid(), 1));
+        }
+        return orderService.createOrder(customer, items);
+    }
+
+    private Goods saveGoods(User merchant) {
+        return fixtures.saveGoods(merchant, "商家订单测试商品", 8.0, 50);
+    }
+}
@@ -0,0 +1,103 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderGoods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//热销榜测试：下单和取消后的增量更新、精确重算（重算期间到达的增量不丢失）以及快照恢复
+@SpringBootTest
+@ActiveProfiles("test")
+class BestSellerTrackerTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private BestSellerTracker bestSellerTracker;
+
+    private User merchant;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        merchant = fixtures.saveUser("top_merchant_" + suffix, User.UserRole.MERCHANT);
+        customer = fixtures.saveUser("top_customer_" + suffix, User.UserRole.CUSTOMER);
+    }
+
+    @Test
+    void merchantTopSellersFollowOrdersRecomputeAndSnapshot() throws Exception {
+        Goods first = saveGoods("热销商品A");
+        Goods second = saveGoods("热销商品B");
+        orderService.createOrder(customer, List.of(new CartItem(first.getGid(), 3), new CartItem(second.getGid(), 5)));
+        UserOrder cancelled = orderService.createOrder(customer, List.of(new CartItem(second.getGid(), 4)));
+        orderService.createOrder(customer, List.of(new CartItem(first.getGid(), 4)));
+        orderService.cancelOrder(cancelled.getOid());
+
+        assertTop(first, 7L, second, 5L);
+
+        bestSellerTracker.recompute();
+        assertTop(first, 7L, second, 5L);
+
+        bestSellerTracker.saveSnapshot();
+        orderService.createOrder(customer, List.of(new CartItem(second.getGid(), 10)));
+        bestSellerTracker.loadSnapshot();
+        assertTop(first, 7L, second, 5L);
+    }
+
+    @Test
+    void ordersDuringRecomputeAreKept() throws Exception {
+        Goods goods = saveGoods("重算期间商品");
+        orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 2)));
+        OrderGoods item = new OrderGoods();
+        item.setGoods(goods);
+        item.setQuantity(3);
+
+        //重算读取汇总表和读取商品名称的语句各延迟1秒，增量在两次读取之间送达
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        SqlStatementCounter.setDelayMillis(1000);
+        try {
+            Future<?> recompute = pool.submit(() -> bestSellerTracker.recompute());
+            Thread.sleep(1500);
+            bestSellerTracker.onOrderSales(OrderSalesEvent.created(List.of(item)));
+            recompute.get();
+        } finally {
+            SqlStatementCounter.setDelayMillis(0);
+            pool.shutdown();
+        }
+
+        List<Object[]> top = bestSellerTracker.getMerchantTopSellers(merchant.getUid(), 10);
+        assertEquals(1, top.size());
+        assertEquals(5L, top.get(0)[2]);
+    }
+
+    private void assertTop(Goods first, long firstSold, Goods second, long secondSold) {
+        List<Object[]> top = bestSellerTracker.getMerchantTopSellers(merchant.getUid(), 10);
+        assertEquals(2, top.size());
+        assertEquals(first.getGid(), top.get(0)[0]);
+        assertEquals(first.getName(), top.get(0)[1]);
+        assertEquals(firstSold, top.get(0)[2]);
+        assertEquals(second.getGid(), top.get(1)[0]);
+        assertEquals(secondSold, top.get(1)[2]);
+    }
+
+    private Goods saveGoods(String name) {
+        return fixtures.saveGoods(merchant, name, 10.0, 100);
+    }
+}
@@ -0,0 +1,69 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+//购物车计价测试：按分计算合计，并标记下架、库存不足和已删除的商品
+@SpringBootTest
+@ActiveProfiles("test")
+class CartServicePricingTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private CartService cartService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Test
+    void pricedCartSumsAvailableLinesInCents() {
+        User merchant = fixtures.saveMerchant("cart_merchant_" + System.nanoTime());
+        Goods cheap = saveGoods(merchant, 0.1, 10, 1);
+        Goods normal = saveGoods(merchant, 19.99, 10, 1);
+        Goods offShelf = saveGoods(merchant, 5.0, 10, 0);
+        Goods scarce = saveGoods(merchant, 3.0, 1, 1);
+
+        Long userId = System.nanoTime();
+        cartService.add(userId, cheap.getGid(), 3);
+        cartService.add(userId, normal.getGid(), 2);
+        cartService.add(userId, offShelf.getGid(), 1);
+        cartService.add(userId, scarce.getGid(), 2);
+        cartService.add(userId, Long.MAX_VALUE, 1);
+
+        CartService.PricedCart cart = cartService.getPricedCart(userId);
+
+        Map<Long, String> states = new HashMap<>();
+        for (CartService.PricedLine line : cart.getLines()) {
+            states.put(line.getGid(), line.getState());
+        }
+        assertEquals(CartService.PricedLine.AVAILABLE, states.get(cheap.getGid()));
+        assertEquals(CartService.PricedLine.AVAILABLE, states.get(normal.getGid()));
+        assertEquals(CartService.PricedLine.OFF_SHELF, states.get(offShelf.getGid()));
+        assertEquals(CartService.PricedLine.INSUFFICIENT_STOCK, states.get(scarce.getGid()));
+        assertEquals(CartService.PricedLine.NOT_FOUND, states.get(Long.MAX_VALUE));
+        //3 * 0.10 + 2 * 19.99，浮点累加会得到40.279999...
+        assertEquals(30 + 3998, cart.getTotalCents());
+        assertEquals(5, cart.getTotalQuantity());
+        assertFalse(cart.getAllAvailable());
+        cartService.clear(userId);
+    }
+
+    private Goods saveGoods(User merchant, double price, int stock, int status) {
+        Goods goods = TestFixtures.newGoods("计价测试商品" + price, price, stock);
+        goods.setStatus(status);
+        goods.setMerchant(merchant);
+        return goodsRepository.save(goods);
+    }
+}
@@ -0,0 +1,161 @@
+package com.onlineshop.onlineshop.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//购物车测试：修改后台写回数据库，淘汰后重新加载，总件数随增删改维护，多个节点同时写回时合并而不覆盖，
+//其他节点的写回在版本号检查间隔之后的下次访问时可见
+//后台写回任务间隔设为1小时，由测试手动调用flush
+@SpringBootTest(properties = {
+        "cart.store=jdbc",
+        "cart.flush-interval-ms=3600000",
+        "cart.version-check-ms=200",
+        "cart.idle-evict-ms=500"
+})
+@ActiveProfiles("test")
+class CartServiceTests {
+
+    @Autowired
+    private CartService cartService;
+    @Autowired
+    private CartStore cartStore;
+
+    @Test
+    void changesAreWrittenBehindAndReloadedAfterEviction() throws Exception {
+        Long userId = System.nanoTime();
+        cartService.add(userId, 1L, 2);
+        cartService.add(userId, 2L, 1);
+        //写回之前数据库中还没有
+        assertTrue(stored(userId).isEmpty());
+
+        cartService.flush();
+        assertEquals(Map.of(1L, 2, 2L, 1), stored(userId));
+        cartService.update(userId, 1L, 5);
+        cartService.flush();
+        assertEquals(Map.of(1L, 5, 2L, 1), stored(userId));
+
+        //长时间未访问的购物车写回后从内存淘汰，再次访问时从数据库重新加载，总件数重新计算
+        Thread.sleep(600);
+        cartService.flush();
+        LongIntHashMap changed = new LongIntHashMap();
+        long version = cartStore.load(userId, changed);
+        changed.put(4L, 1);
+        assertTrue(cartStore.save(userId, changed, version));
+        assertEquals(7, cartService.count(userId));
+        assertEquals(Map.of(1L, 5, 2L, 1, 4L, 1), items(userId));
+
+        cartService.clear(userId);
+        cartService.flush();
+        assertTrue(stored(userId).isEmpty());
+    }
+
+    @Test
+    void countTracksEveryChange() {
+        Long userId = System.nanoTime();
+        assertEquals(0, cartService.count(userId));
+        assertEquals(3, cartService.add(userId, 7L, 3));
+        assertEquals(5, cartService.add(userId, 7L, 2));
+        cartService.add(userId, 8L, 4);
+        assertEquals(9, cartService.count(userId));
+        assertTrue(cartService.update(userId, 8L, 1));
+        assertEquals(6, cartService.count(userId));
+        assertFalse(cartService.update(userId, 9L, 1));
+        assertTrue(cartService.update(userId, 7L, 0));
+        assertEquals(1, cartService.count(userId));
+        assertFalse(cartService.remove(userId, 7L));
+        assertTrue(cartService.remove(userId, 8L));
+        assertEquals(0, cartService.count(userId));
+        cartService.add(userId, 9L, 2);
+        cartService.clear(userId);
+        assertEquals(0, cartService.count(userId));
+        assertTrue(items(userId).isEmpty());
+    }
+
+    @Test
+    void concurrentWritesFromAnotherNodeAreMerged() {
+        Long userId = System.nanoTime();
+        cartService.add(userId, 1L, 1);
+        cartService.add(userId, 2L, 1);
+        cartService.flush();
+
+        //另一个节点加载同一个购物车，加入商品3并写回
+        LongIntHashMap other = new LongIntHashMap();
+        long version = cartStore.load(userId, other);
+        other.put(3L, 5);
+        assertTrue(cartStore.save(userId, other, version));
+        //版本号已过期的写回被拒绝
+        assertFalse(cartStore.save(userId, other, version));
+
+        //本节点不知道商品3，修改商品1、删除商品2后写回：发现冲突，合并后再写回
+        cartService.update(userId, 1L, 4);
+        cartService.remove(userId, 2L);
+        cartService.flush();
+        assertEquals(Map.of(1L, 4, 3L, 5), items(userId));
+        assertEquals(9, cartService.count(userId));
+        cartService.flush();
+        assertEquals(Map.of(1L, 4, 3L, 5), stored(userId));
+
+        //另一个节点删除商品3，本节点只修改商品1，写回后商品3仍然是删除状态
+        other.clear();
+        version = cartStore.load(userId, other);
+        other.remove(3L);
+        assertTrue(cartStore.save(userId, other, version));
+        cartService.add(userId, 1L, 1);
+        cartService.flush();
+        cartService.flush();
+        assertEquals(Map.of(1L, 5), stored(userId));
+        assertEquals(5, cartService.count(userId));
+    }
+
+    @Test
+    void writesFromAnotherNodeAreSeenAfterVersionCheckInterval() throws Exception {
+        Long userId = System.nanoTime();
+        cartService.add(userId, 1L, 2);
+        cartService.flush();
+
+        //另一个节点写回后，本节点内存中的购物车在超过检查间隔后的下次访问时重新加载，不需要等到淘汰或写回冲突
+        LongIntHashMap other = new LongIntHashMap();
+        long version = cartStore.load(userId, other);
+        other.put(2L, 3);
+        assertTrue(cartStore.save(userId, other, version));
+        Thread.sleep(300);
+        assertEquals(Map.of(1L, 2, 2L, 3), items(userId));
+        assertEquals(5, cartService.count(userId));
+
+        //本节点未写回的修改在重新加载后保留
+        cartService.add(userId, 1L, 1);
+        other.clear();
+        version = cartStore.load(userId, other);
+        other.remove(2L);
+        assertTrue(cartStore.save(userId, other, version));
+        Thread.sleep(300);
+        assertEquals(Map.of(1L, 3), items(userId));
+        cartService.flush();
+        assertEquals(Map.of(1L, 3), stored(userId));
+    }
+
+    private Map<Long, Integer> items(Long userId) {
+        Map<Long, Integer> items = new HashMap<>();
+        for (CartItem item : cartService.getItems(userId)) {
+            items.put(item.getGid(), item.getQuantity());
+        }
+        return items;
+    }
+
+    private Map<Long, Integer> stored(Long userId) {
+        LongIntHashMap loaded = new LongIntHashMap();
+        cartStore.load(userId, loaded);
+        Map<Long, Integer> items = new HashMap<>();
+        loaded.forEach(items::put);
+        return items;
+    }
+}
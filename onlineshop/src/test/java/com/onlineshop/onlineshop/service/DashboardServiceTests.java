@@ -0,0 +1,103 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商家首页数据测试：查询超时时返回部分结果且不缓存，完整结果短时间缓存，过期缓存被清理
+//线程池只有一个线程，三项查询依次执行（今日销售额、待发货订单数、商品统计各一条语句），用语句延迟控制哪些项超时
+@SpringBootTest(properties = {
+        "dashboard.pool-size=1",
+        "dashboard.queue-capacity=3",
+        "dashboard.query-timeout-ms=1500",
+        "dashboard.cache-ttl-ms=300",
+        "dashboard.purge-interval-ms=3600000"
+})
+@ActiveProfiles("test")
+class DashboardServiceTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private DashboardService dashboardService;
+
+    @AfterEach
+    void resetDelay() {
+        SqlStatementCounter.setDelayMillis(0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void slowQueriesTimeOutAndAreNotCached() throws Exception {
+        User merchant = fixtures.saveMerchant("dash_timeout_" + System.nanoTime());
+        SqlStatementCounter.setDelayMillis(3000);
+        long begin = System.currentTimeMillis();
+        Map<String, Object> data = dashboardService.getDashboard(merchant);
+        long elapsed = System.currentTimeMillis() - begin;
+        SqlStatementCounter.setDelayMillis(0);
+
+        //所有项共用一个截止时间，不会逐项累加等待
+        assertTrue(elapsed < 2500, "耗时 " + elapsed + "ms");
+        assertEquals(true, data.get("partial"));
+        assertEquals(Set.of("todaySales", "pendingShipmentCount", "goodsStats"),
+                new HashSet<>((List<String>) data.get("failedParts")));
+        assertNull(data.get("todaySales"));
+        assertNull(data.get("pendingShipmentCount"));
+        assertNull(data.get("goodsStats"));
+
+        //被中断的查询结束后，下次请求重新查询并得到完整结果
+        Thread.sleep(200);
+        Map<String, Object> retried = dashboardService.getDashboard(merchant);
+        assertEquals(false, retried.get("partial"));
+        assertTrue(((List<String>) retried.get("failedParts")).isEmpty());
+    }
+
+    @Test
+    void lateQueriesGivePartialResult() {
+        User merchant = fixtures.saveMerchant("dash_partial_" + System.nanoTime());
+        //前两项在600ms和1200ms完成，第三项要到1800ms，超过1500ms的截止时间
+        SqlStatementCounter.setDelayMillis(600);
+        Map<String, Object> data = dashboardService.getDashboard(merchant);
+        SqlStatementCounter.setDelayMillis(0);
+
+        assertEquals(true, data.get("partial"));
+        assertEquals(List.of("goodsStats"), data.get("failedParts"));
+        assertEquals(0.0, data.get("todaySales"));
+        assertEquals(0L, data.get("pendingShipmentCount"));
+        assertNull(data.get("goodsStats"));
+        assertNotSame(data, dashboardService.getDashboard(merchant));
+    }
+
+    @Test
+    void completeResultsAreCachedAndPurged() throws Exception {
+        User merchant = fixtures.saveMerchant("dash_cache_" + System.nanoTime());
+        dashboardService.purgeExpired();
+        Map<String, Object> data = dashboardService.getDashboard(merchant);
+        assertEquals(false, data.get("partial"));
+        assertNotNull(data.get("goodsStats"));
+        assertSame(data, dashboardService.getDashboard(merchant));
+        assertTrue(dashboardService.getCachedCount() >= 1);
+
+        Thread.sleep(350);
+        dashboardService.purgeExpired();
+        assertEquals(0, dashboardService.getCachedCount());
+        assertNotSame(data, dashboardService.getDashboard(merchant));
+    }
+}
@@ -0,0 +1,81 @@
+package com.onlineshop.onlineshop.service;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.onlineshop.onlineshop.entity.EmailOutbox;
+import com.onlineshop.onlineshop.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//发件箱投递测试，使用进程内SMTP服务器
+@SpringBootTest(properties = {
+        "spring.mail.port=3025",
+        "mail.outbox.poll-interval-ms=3600000",
+        "mail.outbox.initial-backoff-ms=60000"
+})
+@ActiveProfiles("test")
+class EmailOutboxDispatcherTests {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+
+    @Autowired
+    private EmailService emailService;
+    @Autowired
+    private EmailOutboxDispatcher dispatcher;
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        emailOutboxRepository.deleteAll();
+    }
+
+    @Test
+    void dispatchSendsQueuedEmails() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 3; i++) {
+                emailService.queue("buyer" + i + "@example.com", "订单确认 - 订单号: " + i, "测试正文");
+            }
+        });
+
+        assertEquals(3, dispatcher.dispatch());
+
+        assertEquals(3, greenMail.getReceivedMessages().length);
+        assertEquals(3, emailOutboxRepository.countByStatus(1));
+        assertEquals(0, dispatcher.dispatch());
+    }
+
+    @Test
+    void failedDeliveryIsRescheduledWithBackoff() {
+        greenMail.stop();
+        transactionTemplate.executeWithoutResult(status ->
+                emailService.queue("buyer@example.com", "订单发货通知", "测试正文"));
+
+        long before = System.currentTimeMillis();
+        assertEquals(1, dispatcher.dispatch());
+
+        List<EmailOutbox> emails = emailOutboxRepository.findAll();
+        assertEquals(1, emails.size());
+        EmailOutbox email = emails.get(0);
+        assertEquals(0, email.getStatus());
+        assertEquals(1, email.getAttempts());
+        assertTrue(email.getNextAttemptAt().getTime() >= before + 60000);
+        //退避时间未到，不会再次发送
+        assertEquals(0, dispatcher.dispatch());
+    }
+}
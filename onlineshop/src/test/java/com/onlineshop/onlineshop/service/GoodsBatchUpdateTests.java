@@ -0,0 +1,156 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商品批量操作测试：只修改当前商家的商品，缓存和索引随之更新，语句数只与批数有关
+@SpringBootTest(properties = "goods.batch.chunk-size=16")
+@ActiveProfiles("test")
+class GoodsBatchUpdateTests {
+
+    private static final int CHUNK_SIZE = 16;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private GoodsCatalogCache goodsCatalogCache;
+    @Autowired
+    private GoodsPriceIndex goodsPriceIndex;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void batchOperationsOnlyTouchOwnedGoods() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveMerchant("batch_merchant_" + suffix);
+        User other = fixtures.saveMerchant("batch_other_" + suffix);
+        Long first = saveGoods(merchant).getGid();
+        Long second = saveGoods(merchant).getGid();
+        Long third = saveGoods(merchant).getGid();
+        Long theirs = saveGoods(other).getGid();
+        //先建立目录快照和价格索引，之后的变化靠批量事件修补
+        assertTrue(catalogContains(third));
+        goodsPriceIndex.range(0, 1000, false, 0, 10);
+
+        List<GoodsService.BatchResult> results = goodsService.deactivateGoodsBatch(merchant,
+                List.of(first, second, theirs, Long.MAX_VALUE, first));
+        assertEquals(4, results.size());
+        assertResult(results.get(0), first, true);
+        assertResult(results.get(1), second, true);
+        assertResult(results.get(2), theirs, false);
+        assertEquals("商品不存在或无权操作", results.get(2).getMessage());
+        assertResult(results.get(3), Long.MAX_VALUE, false);
+        assertEquals(0, status(first));
+        assertEquals(0, status(second));
+        assertEquals(1, status(theirs));
+        assertFalse(catalogContains(first));
+        assertFalse(catalogContains(second));
+        assertTrue(catalogContains(theirs));
+
+        assertResult(goodsService.activateGoodsBatch(merchant, List.of(first)).get(0), first, true);
+        assertEquals(1, status(first));
+        assertTrue(catalogContains(first));
+
+        results = goodsService.updatePricesBatch(merchant, List.of(new GoodsService.PriceUpdate(third, 777.5),
+                new GoodsService.PriceUpdate(first, -1.0), new GoodsService.PriceUpdate(theirs, 1.0)));
+        assertResult(results.get(0), third, true);
+        assertResult(results.get(1), first, false);
+        assertEquals("商品价格不合法", results.get(1).getMessage());
+        assertResult(results.get(2), theirs, false);
+        assertEquals(777.5, goodsRepository.findById(third).orElseThrow().getPrice());
+        assertEquals(20.0, goodsRepository.findById(first).orElseThrow().getPrice());
+        assertEquals(20.0, goodsRepository.findById(theirs).orElseThrow().getPrice());
+        assertTrue(priceIndexContains(777, 778, third));
+        assertFalse(priceIndexContains(0, 100, third));
+
+        results = goodsService.updateStockBatch(merchant, List.of(new GoodsService.StockUpdate(third, 0),
+                new GoodsService.StockUpdate(first, null)));
+        assertResult(results.get(0), third, true);
+        assertResult(results.get(1), first, false);
+        assertEquals("商品库存不合法", results.get(1).getMessage());
+        assertEquals(0, goodsRepository.findById(third).orElseThrow().getRemaining());
+        assertFalse(catalogContains(third));
+
+        assertThrows(RuntimeException.class, () -> goodsService.deactivateGoodsBatch(merchant, List.of()));
+    }
+
+    @Test
+    void statementCountGrowsWithChunksNotGoods() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveMerchant("batch_bulk_merchant_" + suffix);
+        List<Long> gids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            gids.add(saveGoods(merchant).getGid());
+        }
+        //其他商家的商品留在二级缓存中，批量更新只移除被修改的商品
+        Long other = saveGoods(fixtures.saveMerchant("batch_bulk_other_" + suffix)).getGid();
+        goodsRepository.findById(other);
+        assertTrue(entityManagerFactory.getCache().contains(Goods.class, other));
+
+        for (int size : new int[]{10, CHUNK_SIZE, 40}) {
+            List<Long> batch = gids.subList(0, size);
+            SqlStatementCounter.reset();
+            long begin = System.nanoTime();
+            List<GoodsService.BatchResult> results = goodsService.deactivateGoodsBatch(merchant, batch);
+            double millis = (System.nanoTime() - begin) / 1_000_000.0;
+            int statements = SqlStatementCounter.count();
+            int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            System.out.printf("批量下架: %d 个商品, %d 批, %d 条语句, 耗时 %.1fms%n", size, chunks, statements, millis);
+            //每批一条归属查询；更新语句和版本查询用JDBC执行，不经过Hibernate
+            assertEquals(chunks, statements, "商品数 " + size);
+            for (GoodsService.BatchResult result : results) {
+                assertTrue(result.getSuccess());
+            }
+        }
+        for (Goods goods : goodsRepository.findByMerchantUid(merchant.getUid())) {
+            assertEquals(0, goods.getStatus());
+        }
+        assertTrue(entityManagerFactory.getCache().contains(Goods.class, other));
+    }
+
+    private boolean catalogContains(Long gid) {
+        return goodsCatalogCache.getAvailableGoods().stream().anyMatch(goods -> goods.getGid().equals(gid));
+    }
+
+    private boolean priceIndexContains(double minPrice, double maxPrice, Long gid) {
+        for (long found : goodsPriceIndex.range(minPrice, maxPrice, false, 0, 10_000).getGids()) {
+            if (found == gid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Integer status(Long gid) {
+        return goodsRepository.findById(gid).orElseThrow().getStatus();
+    }
+
+    private void assertResult(GoodsService.BatchResult result, Long gid, boolean success) {
+        assertEquals(gid, result.getGid());
+        assertEquals(success, result.getSuccess());
+    }
+
+    private Goods saveGoods(User merchant) {
+        return fixtures.saveGoods(merchant, "批量测试商品", 20.0, 50);
+    }
+}
@@ -0,0 +1,244 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.GoodsController;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//目录缓存测试：新增、修改、库存变化和删除提交后修补快照，不重建；晚到的旧版本变更（包括库存增量）被丢弃
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsCatalogCacheTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsCatalogCache goodsCatalogCache;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private GoodsController goodsController;
+
+    @Test
+    void writesArePatchedIntoSnapshot() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("catalog_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("catalog_customer_" + suffix, User.UserRole.CUSTOMER);
+        goodsCatalogCache.getAvailableGoods();
+        long rebuilds = goodsCatalogCache.getStats().getRebuilds();
+        long patches = goodsCatalogCache.getStats().getPatches();
+
+        Goods added = goodsService.addGoods(newGoods("目录商品", 3), merchant);
+        assertEquals("目录商品", cached(added.getGid()).getName());
+        Goods update = new Goods();
+        update.setGid(added.getGid());
+        update.setName("改名后的目录商品");
+        goodsService.updateGoods(update, merchant);
+        assertEquals("改名后的目录商品", cached(added.getGid()).getName());
+
+        //下单扣减库存：快照按增量修改，售罄后移出快照
+        orderService.createOrder(customer, List.of(new CartItem(added.getGid(), 2)));
+        Goods afterOrder = cached(added.getGid());
+        assertEquals(1, afterOrder.getRemaining());
+        assertEquals(2, afterOrder.getSales());
+        orderService.createOrder(customer, List.of(new CartItem(added.getGid(), 1)));
+        assertNull(cached(added.getGid()));
+
+        Goods removed = goodsService.addGoods(newGoods("将被删除的商品", 5), merchant);
+        assertNotNull(cached(removed.getGid()));
+        goodsService.deleteGoods(removed.getGid(), merchant);
+        assertNull(cached(removed.getGid()));
+
+        GoodsCatalogCache.CatalogCacheStats stats = goodsCatalogCache.getStats();
+        assertEquals(rebuilds, stats.getRebuilds());
+        assertTrue(stats.getPatches() - patches >= 6);
+    }
+
+    @Test
+    void staleEventsAreDropped() {
+        User merchant = fixtures.saveUser("catalog_stale_" + System.nanoTime(), User.UserRole.MERCHANT);
+        Goods added = goodsService.addGoods(newGoods("版本1", 5), merchant);
+        goodsCatalogCache.getAvailableGoods();
+        Goods older = GoodsChangedEvent.snapshotOf(cached(added.getGid()));
+        Goods update = new Goods();
+        update.setGid(added.getGid());
+        update.setName("版本2");
+        Goods newer = goodsService.updateGoods(update, merchant);
+        assertTrue(newer.getVersion() > older.getVersion());
+        long stale = goodsCatalogCache.getStats().getStalePatches();
+
+        //先提交的修改在后提交的修改之后才到达
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.upsert(older));
+        assertEquals("版本2", cached(added.getGid()).getName());
+        goodsCatalogCache.onGoodsBatchChanged(new GoodsBatchChangedEvent(List.of(GoodsChangedEvent.upsert(older))));
+        assertEquals("版本2", cached(added.getGid()).getName());
+
+        //删除之后到达的旧修改不会让商品重新出现，快照重建后版本记录仍然有效
+        goodsService.deleteGoods(added.getGid(), merchant);
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.upsert(newer));
+        assertNull(cached(added.getGid()));
+        goodsCatalogCache.invalidate();
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.upsert(newer));
+        assertNull(cached(added.getGid()));
+        assertEquals(4, goodsCatalogCache.getStats().getStalePatches() - stale);
+    }
+
+    @Test
+    void stockEventsAreVersioned() {
+        User merchant = fixtures.saveUser("catalog_stock_" + System.nanoTime(), User.UserRole.MERCHANT);
+        Goods added = goodsService.addGoods(newGoods("库存版本", 10), merchant);
+        goodsCatalogCache.getAvailableGoods();
+        long before = cached(added.getGid()).getVersion();
+
+        assertTrue(goodsService.tryReserveStock(Map.of(added.getGid(), 2)));
+        Goods afterReserve = cached(added.getGid());
+        assertEquals(8, afterReserve.getRemaining());
+        assertEquals(before + 1, afterReserve.getVersion());
+
+        //重建后才到达的库存事件已经包含在快照中，不再重复扣减
+        goodsCatalogCache.invalidate();
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.stockChanged(added.getGid(), -2, 2, before + 1));
+        assertEquals(8, cached(added.getGid()).getRemaining());
+
+        //更早的版本数据库中也没有（变更确实缺失），库存增量不能应用在旧快照上，快照重新加载
+        long rebuilds = goodsCatalogCache.getStats().getRebuilds();
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.stockChanged(added.getGid(), -1, 1, before + 3));
+        assertEquals(8, cached(added.getGid()).getRemaining());
+        assertEquals(rebuilds + 1, goodsCatalogCache.getStats().getRebuilds());
+
+        //快照中没有的商品，扣减先于更早提交的补货到达，且数据库中的版本更旧：不能只记录版本号（补货会被当作旧变更丢弃），重新加载快照
+        Goods soldOut = goodsService.addGoods(newGoods("补货", 1), merchant);
+        assertTrue(goodsService.tryReserveStock(Map.of(soldOut.getGid(), 1)));
+        assertNull(cached(soldOut.getGid()));
+        long soldOutVersion = goodsRepository.findById(soldOut.getGid()).orElseThrow().getVersion();
+        long invalidations = goodsCatalogCache.getStats().getInvalidations();
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.stockChanged(soldOut.getGid(), -2, 2, soldOutVersion + 2));
+        assertEquals(invalidations + 1, goodsCatalogCache.getStats().getInvalidations());
+    }
+
+    @Test
+    void outOfOrderStockEventsReloadOneGoods() {
+        User merchant = fixtures.saveUser("catalog_reload_" + System.nanoTime(), User.UserRole.MERCHANT);
+        Goods added = goodsService.addGoods(newGoods("单条加载", 10), merchant);
+        goodsCatalogCache.getAvailableGoods();
+        GoodsCatalogCache.CatalogCacheStats before = goodsCatalogCache.getStats();
+        long version = cached(added.getGid()).getVersion();
+
+        //第一次扣减的事件还没有到达（直接调用仓库，不发布事件），第二次扣减的事件先到达：只重新加载这一个商品
+        assertEquals(1, goodsRepository.decreaseStock(added.getGid(), 1));
+        assertTrue(goodsService.tryDecreaseStock(added.getGid(), 2));
+        Goods reloaded = cached(added.getGid());
+        assertEquals(7, reloaded.getRemaining());
+        assertEquals(3, reloaded.getSales());
+        assertEquals(version + 2, reloaded.getVersion());
+        //第一次扣减的事件晚到，已经包含在加载的数据中
+        goodsCatalogCache.onGoodsChanged(GoodsChangedEvent.stockChanged(added.getGid(), -1, 1, version + 1));
+        assertEquals(7, cached(added.getGid()).getRemaining());
+
+        //售罄后不在快照中的商品恢复库存：加载这一个商品放回快照
+        assertTrue(goodsService.tryReserveStock(Map.of(added.getGid(), 7)));
+        assertNull(cached(added.getGid()));
+        goodsService.restoreStock(Map.of(added.getGid(), 4));
+        assertEquals(4, cached(added.getGid()).getRemaining());
+        assertEquals("单条加载", cached(added.getGid()).getName());
+
+        GoodsCatalogCache.CatalogCacheStats after = goodsCatalogCache.getStats();
+        assertEquals(before.getRebuilds(), after.getRebuilds());
+        assertEquals(before.getInvalidations(), after.getInvalidations());
+        assertEquals(2, after.getReloads() - before.getReloads());
+        assertEquals(1, after.getStalePatches() - before.getStalePatches());
+    }
+
+    @Test
+    void trackedVersionsArePrunedAndBounded() {
+        User merchant = fixtures.saveUser("catalog_tracked_" + System.nanoTime(), User.UserRole.MERCHANT);
+        Goods added = goodsService.addGoods(newGoods("版本记录", 5), merchant);
+        goodsCatalogCache.invalidate();
+        //快照不存在时记录版本号，重建后快照中的版本号覆盖了这条记录
+        goodsService.deactivateGoods(added.getGid(), merchant);
+        goodsService.activateGoods(added.getGid(), merchant);
+        int tracked = goodsCatalogCache.getStats().getTrackedVersions();
+        assertNotNull(cached(added.getGid()));
+        assertEquals(tracked - 1, goodsCatalogCache.getStats().getTrackedVersions());
+
+        //删除留下的记录有上限，超过时移除最早的记录
+        List<GoodsChangedEvent> deletes = new ArrayList<>();
+        for (int i = 0; i < 10_100; i++) {
+            deletes.add(GoodsChangedEvent.delete(Long.MAX_VALUE - i));
+        }
+        goodsCatalogCache.onGoodsBatchChanged(new GoodsBatchChangedEvent(deletes));
+        assertEquals(10_000, goodsCatalogCache.getStats().getTrackedVersions());
+    }
+
+    @Test
+    void reservedStockIsNotOverwrittenByStaleSave() {
+        User merchant = fixtures.saveUser("catalog_lost_update_" + System.nanoTime(), User.UserRole.MERCHANT);
+        Goods added = goodsService.addGoods(newGoods("库存覆盖", 10), merchant);
+        //商家读取商品之后有订单扣减了库存
+        Goods loaded = goodsRepository.findById(added.getGid()).orElseThrow();
+        assertTrue(goodsService.tryReserveStock(Map.of(added.getGid(), 3)));
+        loaded.setName("改名");
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> goodsRepository.saveAndFlush(loaded));
+        assertEquals(7, goodsRepository.findById(added.getGid()).orElseThrow().getRemaining());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void statsEndpointReportsAllCaches() {
+        //未登录和顾客无权查看
+        assertEquals(403, goodsController.getCatalogCacheStats(new MockHttpSession()).getStatusCode().value());
+        MockHttpSession customerSession = new MockHttpSession();
+        customerSession.setAttribute("currentUser",
+                fixtures.saveUser("catalog_stats_customer_" + System.nanoTime(), User.UserRole.CUSTOMER));
+        assertEquals(403, goodsController.getCatalogCacheStats(customerSession).getStatusCode().value());
+
+        MockHttpSession merchantSession = new MockHttpSession();
+        merchantSession.setAttribute("currentUser", fixtures.saveMerchant("catalog_stats_" + System.nanoTime()));
+        goodsCatalogCache.getAvailableGoods();
+        goodsCatalogCache.getAvailableGoods();
+        ResponseEntity<?> response = goodsController.getCatalogCacheStats(merchantSession);
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertEquals(true, body.get("success"));
+        GoodsCatalogCache.CatalogCacheStats stats = (GoodsCatalogCache.CatalogCacheStats) body.get("stats");
+        assertTrue(stats.getHits() >= 1);
+        assertTrue(stats.getHitRatio() > 0);
+        assertEquals(goodsCatalogCache.getAvailableGoods().size(), stats.getSize());
+        assertNotNull(body.get("secondLevelCache"));
+        assertNotNull(body.get("detailCache"));
+    }
+
+    private Goods cached(Long gid) {
+        for (Goods goods : goodsCatalogCache.getAvailableGoods()) {
+            if (goods.getGid().equals(gid)) {
+                return goods;
+            }
+        }
+        return null;
+    }
+
+    private Goods newGoods(String name, int remaining) {
+        return TestFixtures.newGoods(name, 15.0, remaining);
+    }
+}
@@ -0,0 +1,184 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.IdBlockAllocator;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商品详情加载测试：并发请求合并为一次查询，不存在的ID查询一次后由负缓存拦截，新增、删除和直接写入数据库的商品立即生效
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsDetailCacheTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private GoodsDetailCache goodsDetailCache;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentMissesAreCoalesced() throws Exception {
+        User merchant = fixtures.saveMerchant("detail_merchant_" + System.nanoTime());
+        Long gid = goodsService.addGoods(newGoods(), merchant).getGid();
+        int threads = 32;
+
+        //之前：二级缓存过期后每个请求都查询数据库
+        int directStatements = concurrently(threads, gid, () -> {
+            goodsRepository.findById(gid).orElseThrow();
+            return null;
+        });
+        //之后：同一商品的并发加载只有一个请求查询数据库
+        long loadsBefore = goodsDetailCache.getStats().getLoads();
+        long coalescedBefore = goodsDetailCache.getStats().getCoalesced();
+        List<Goods> results = new ArrayList<>();
+        int coalescedStatements = concurrently(threads, gid, () -> {
+            Goods goods = goodsService.getGoodsDetail(gid);
+            synchronized (results) {
+                results.add(goods);
+            }
+            return null;
+        });
+        System.out.printf("商品详情并发加载: %d 个请求, 直接查询 %d 条语句, 合并后 %d 条语句%n",
+                threads, directStatements, coalescedStatements);
+
+        //直接查询的语句数受连接池大小限制，拿到连接前二级缓存可能已经被其他请求填充
+        assertTrue(directStatements > 1);
+        assertEquals(1, coalescedStatements);
+        assertEquals(1, goodsDetailCache.getStats().getLoads() - loadsBefore);
+        assertEquals(threads - 1, goodsDetailCache.getStats().getCoalesced() - coalescedBefore);
+        assertEquals(threads, results.size());
+        for (Goods goods : results) {
+            assertEquals(gid, goods.getGid());
+            assertEquals(merchant.getUid(), goods.getMerchant().getUid());
+        }
+    }
+
+    @Test
+    void unknownIdsAreQueriedOnce() {
+        User merchant = fixtures.saveMerchant("detail_unknown_" + System.nanoTime());
+        //分配后不使用的ID
+        List<Long> unknown = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            unknown.add(idBlockAllocator.next("goods", "gid"));
+        }
+        goodsService.addGoods(newGoods(), merchant);
+
+        SqlStatementCounter.reset();
+        for (Long gid : unknown) {
+            assertThrows(RuntimeException.class, () -> goodsService.getGoodsDetail(gid));
+        }
+        int firstPass = SqlStatementCounter.count();
+        //查询一次后进入负缓存
+        long negativeBefore = goodsDetailCache.getStats().getNegativeHits();
+        SqlStatementCounter.reset();
+        for (Long gid : unknown) {
+            assertThrows(RuntimeException.class, () -> goodsService.getGoodsDetail(gid));
+        }
+        int secondPass = SqlStatementCounter.count();
+        System.out.printf("不存在的商品ID: %d 个, 第一遍 %d 条语句, 第二遍 %d 条语句%n",
+                unknown.size(), firstPass, secondPass);
+
+        assertEquals(unknown.size(), firstPass);
+        assertEquals(0, secondPass);
+        assertEquals(unknown.size(), goodsDetailCache.getStats().getNegativeHits() - negativeBefore);
+        assertThrows(RuntimeException.class, () -> goodsService.getGoodsDetail(-1L));
+    }
+
+    @Test
+    void directlyWrittenGoodsAreFound() {
+        User merchant = fixtures.saveMerchant("detail_direct_" + System.nanoTime());
+        Long gid = idBlockAllocator.next("goods", "gid");
+
+        //直接写入数据库，不发布变更事件也不登记
+        jdbcTemplate.update("INSERT INTO goods (gid, name, description, price, remaining, image_url, status, sales, merchant_id, version) "
+                + "VALUES (?, '直接写入的商品', NULL, 9.5, 3, NULL, 1, 0, ?, 0)", gid, merchant.getUid());
+        assertEquals("直接写入的商品", goodsService.getGoodsDetail(gid).getName());
+    }
+
+    @Test
+    void addedAndDeletedGoodsTakeEffectImmediately() {
+        User merchant = fixtures.saveMerchant("detail_change_" + System.nanoTime());
+        Long first = goodsService.addGoods(newGoods(), merchant).getGid();
+        goodsService.getGoodsDetail(first);
+
+        //新增的商品由变更事件清除负缓存，立即可以读到
+        Long second = goodsService.addGoods(newGoods(), merchant).getGid();
+        assertEquals(second, goodsService.getGoodsDetail(second).getGid());
+
+        goodsService.deleteGoods(first, merchant);
+        assertThrows(RuntimeException.class, () -> goodsService.getGoodsDetail(first));
+        SqlStatementCounter.reset();
+        assertThrows(RuntimeException.class, () -> goodsService.getGoodsDetail(first));
+        assertEquals(0, SqlStatementCounter.count());
+
+        //返回的是快照，修改它不影响之后的读取
+        goodsService.getGoodsDetail(second).setName("被修改的名称");
+        assertEquals("详情测试商品", goodsService.getGoodsDetail(second).getName());
+        Goods update = new Goods();
+        update.setGid(second);
+        update.setName("新名称");
+        goodsService.updateGoods(update, merchant);
+        assertEquals("新名称", goodsService.getGoodsDetail(second).getName());
+    }
+
+    //在多个线程中同时执行task，每条语句前等待一段时间使请求重叠，返回各线程执行的语句总数
+    private int concurrently(int threads, Long gid, Callable<Void> task) throws Exception {
+        entityManagerFactory.getCache().evict(Goods.class, gid);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                SqlStatementCounter.reset();
+                task.call();
+                return SqlStatementCounter.count();
+            }));
+        }
+        SqlStatementCounter.setDelayMillis(200);
+        int statements = 0;
+        try {
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                statements += future.get();
+            }
+        } finally {
+            SqlStatementCounter.setDelayMillis(0);
+            pool.shutdown();
+        }
+        return statements;
+    }
+
+    private Goods newGoods() {
+        return TestFixtures.newGoods("详情测试商品", 12.0, 10);
+    }
+}
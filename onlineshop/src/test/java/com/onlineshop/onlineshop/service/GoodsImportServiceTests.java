@@ -0,0 +1,176 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商品导入测试：CSV和JSONL逐行校验，错误行带行号，合法行写入当前商家并出现在目录缓存中
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsImportServiceTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsImportService goodsImportService;
+    @Autowired
+    private GoodsCatalogCache goodsCatalogCache;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Test
+    void importsCsvAndReportsBadRows() {
+        User merchant = fixtures.saveMerchant("import_csv_" + System.nanoTime());
+        //第一次读取目录，导入后应该重建
+        goodsCatalogCache.getAvailableGoods();
+        String csv = "\uFEFFName,Price,Remaining,Description,Extra\n"
+                + "苹果,3.5,100,新鲜水果,x\n"
+                + "\"香蕉, 进口\",2,50,\"描述里有\"\"引号\"\"\n和换行\",x\n"
+                + ",1,1,缺少名称,x\n"
+                + "梨,-1,10,负价格,x\n"
+                + "桃,abc,10,价格不是数字,x\n"
+                + "\n"
+                + "橙子,4,,缺少库存,x\n"
+                + "葡萄,8.8,0,,x\n";
+
+        GoodsImportService.ImportProgress result = goodsImportService.importGoods(merchant, stream(csv),
+                GoodsImportService.ImportFormat.CSV);
+
+        assertFalse(result.isRunning());
+        assertEquals(7, result.getRows());
+        assertEquals(3, result.getImported());
+        assertEquals(4, result.getFailed());
+        List<GoodsImportService.RowError> errors = result.getErrors();
+        assertEquals(4, errors.size());
+        assertEquals(5, errors.get(0).getLine());
+        assertEquals("商品名称不能为空", errors.get(0).getMessage());
+        assertEquals(6, errors.get(1).getLine());
+        assertEquals("商品价格不合法", errors.get(1).getMessage());
+        assertEquals(7, errors.get(2).getLine());
+        assertEquals(9, errors.get(3).getLine());
+        assertEquals("商品库存不合法", errors.get(3).getMessage());
+
+        List<Goods> goods = goodsRepository.findByMerchantUid(merchant.getUid());
+        goods.sort(Comparator.comparing(Goods::getGid));
+        assertEquals(3, goods.size());
+        assertEquals("苹果", goods.get(0).getName());
+        assertEquals(3.5, goods.get(0).getPrice());
+        assertEquals(100, goods.get(0).getRemaining());
+        assertEquals("香蕉, 进口", goods.get(1).getName());
+        assertEquals("描述里有\"引号\"\n和换行", goods.get(1).getDescription());
+        assertEquals("葡萄", goods.get(2).getName());
+        assertNull(goods.get(2).getDescription());
+        for (Goods item : goods) {
+            assertEquals(1, item.getStatus());
+            assertEquals(0, item.getSales());
+        }
+        //有库存的两个商品出现在目录中
+        assertTrue(catalogContains(goods.get(0).getGid()));
+        assertTrue(catalogContains(goods.get(1).getGid()));
+        assertFalse(catalogContains(goods.get(2).getGid()));
+        assertEquals(3, goodsImportService.getProgress(merchant.getUid()).getImported());
+
+        assertThrows(RuntimeException.class, () -> goodsImportService.importGoods(merchant,
+                stream("title,price\n"), GoodsImportService.ImportFormat.CSV));
+        assertThrows(RuntimeException.class, () -> GoodsImportService.ImportFormat.fromFileName("goods.xlsx"));
+    }
+
+    @Test
+    void importsLargeJsonlInBatches() {
+        User merchant = fixtures.saveMerchant("import_jsonl_" + System.nanoTime());
+        int rows = 20_000;
+        //按需生成内容的输入流，文件本身不在内存中
+        InputStream input = new InputStream() {
+            private int row;
+            private byte[] current = new byte[0];
+            private int position;
+
+            @Override
+            public int read() {
+                if (position == current.length) {
+                    if (row == rows) {
+                        return -1;
+                    }
+                    String line = row % 1000 == 999
+                            ? "{\"name\": \"坏行" + row + "\", \"price\": 1, \"remaining\": 1.5}\n"
+                            : "{\"name\": \"批量商品" + row + "\", \"price\": " + (row % 500) + ".25, \"remaining\": 7, "
+                            + "\"description\": \"第" + row + "行\"}\n";
+                    current = line.getBytes(StandardCharsets.UTF_8);
+                    position = 0;
+                    row++;
+                }
+                return current[position++] & 0xff;
+            }
+        };
+
+        long begin = System.nanoTime();
+        GoodsImportService.ImportProgress result = goodsImportService.importGoods(merchant, input,
+                GoodsImportService.ImportFormat.JSONL);
+        double millis = (System.nanoTime() - begin) / 1_000_000.0;
+        System.out.printf("商品导入: %d 行, 成功 %d, 失败 %d, 耗时 %.0fms, %.0f 行/秒%n",
+                rows, result.getImported(), result.getFailed(), millis, rows / (millis / 1000));
+
+        int bad = rows / 1000;
+        assertEquals(rows, result.getRows());
+        assertEquals(rows - bad, result.getImported());
+        assertEquals(bad, result.getFailed());
+        assertEquals(1000, result.getErrors().get(0).getLine());
+        assertEquals(rows - bad, goodsService.getMerchantGoodsStats(merchant.getUid()).getGoodsCount());
+    }
+
+    @Test
+    void overlongLinesAreSkipped() {
+        User merchant = fixtures.saveMerchant("import_long_" + System.nanoTime());
+        String longName = "长".repeat(200_000);
+        String csv = "name,price,remaining\r\n"
+                + longName + ",1,1\r\n"
+                + "短名称,2,3\r\n"
+                + "\"" + longName + ",1,1\r\n"
+                + "最后一行,4,5";
+        GoodsImportService.ImportProgress result = goodsImportService.importGoods(merchant, stream(csv),
+                GoodsImportService.ImportFormat.CSV);
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        assertEquals(4, result.getErrors().get(1).getLine());
+
+        String jsonl = "{\"name\": \"" + longName + "\", \"price\": 1, \"remaining\": 1}\r\n"
+                + "{\"name\": \"JSONL短名称\", \"price\": 2, \"remaining\": 3}\r\n";
+        result = goodsImportService.importGoods(merchant, stream(jsonl), GoodsImportService.ImportFormat.JSONL);
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(1, result.getErrors().get(0).getLine());
+        assertEquals("记录过长", result.getErrors().get(0).getMessage());
+
+        List<Goods> goods = goodsRepository.findByMerchantUid(merchant.getUid());
+        goods.sort(Comparator.comparing(Goods::getGid));
+        assertEquals(List.of("短名称", "最后一行", "JSONL短名称"), goods.stream().map(Goods::getName).toList());
+    }
+
+    private boolean catalogContains(Long gid) {
+        return goodsCatalogCache.getAvailableGoods().stream().anyMatch(goods -> goods.getGid().equals(gid));
+    }
+
+    private InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
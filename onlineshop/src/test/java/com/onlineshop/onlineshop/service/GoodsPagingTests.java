@@ -0,0 +1,132 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//商品分页测试：按游标翻页不重复不遗漏，最后一页没有游标，分页大小限制在默认值和上限之间；搜索按页码翻页
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsPagingTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsService goodsService;
+
+    @Test
+    void merchantGoodsPagesFollowCursor() {
+        User merchant = fixtures.saveMerchant("paging_merchant_" + System.nanoTime());
+        List<Long> gids = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            gids.add(goodsService.addGoods(newGoods("分页商品" + i, 10.0 + i), merchant).getGid());
+        }
+
+        List<Integer> pageSizes = new ArrayList<>();
+        List<Long> walked = walkMerchant(merchant.getUid(), 10, pageSizes);
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        assertEquals(gids, walked);
+
+        //商品数正好是分页大小的整数倍时，最后一页不返回游标
+        pageSizes.clear();
+        walked = walkMerchant(merchant.getUid(), 5, pageSizes);
+        assertEquals(List.of(5, 5, 5, 5, 5), pageSizes);
+        assertEquals(gids, walked);
+
+        assertEquals(25, goodsService.getGoodsByMerchantPage(merchant.getUid(), null, null).getItems().size());
+        assertEquals(1, goodsService.getGoodsByMerchantPage(merchant.getUid(), null, 1).getItems().size());
+        CursorPage<Goods> last = goodsService.getGoodsByMerchantPage(merchant.getUid(), gids.get(24), 10);
+        assertTrue(last.getItems().isEmpty());
+        assertFalse(last.isHasMore());
+    }
+
+    @Test
+    void availableGoodsPagesCoverCatalog() {
+        User merchant = fixtures.saveMerchant("paging_catalog_" + System.nanoTime());
+        for (int i = 0; i < 12; i++) {
+            goodsService.addGoods(newGoods("目录分页商品" + i, 5.0), merchant);
+        }
+        List<Goods> catalog = goodsService.getAvailableGoods();
+
+        List<Long> walked = new ArrayList<>();
+        Long cursor = null;
+        do {
+            CursorPage<Goods> page = goodsService.getAvailableGoodsPage(cursor, 7);
+            assertTrue(page.getItems().size() <= 7);
+            for (Goods goods : page.getItems()) {
+                walked.add(goods.getGid());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(catalog.size(), walked.size());
+        assertEquals(catalog.size(), new HashSet<>(walked).size());
+        for (int i = 1; i < walked.size(); i++) {
+            assertTrue(walked.get(i - 1) < walked.get(i));
+        }
+        //未指定大小时使用默认值，超过上限时截断
+        assertEquals(Math.min(50, catalog.size()), goodsService.getAvailableGoodsPage(null, null).getItems().size());
+        assertEquals(Math.min(200, catalog.size()), goodsService.getAvailableGoodsPage(null, 100_000).getItems().size());
+    }
+
+    @Test
+    void searchPagesByPageNumber() {
+        User merchant = fixtures.saveMerchant("paging_search_" + System.nanoTime());
+        //只含字母的唯一名称，避免与其他测试的商品混在一起
+        String word = "pg" + Long.toString(System.nanoTime(), 36).replaceAll("[0-9]", "q");
+        double price = 80_000 + System.nanoTime() % 10_000;
+        for (int i = 0; i < 12; i++) {
+            goodsService.addGoods(newGoods(word + " 商品", price + i / 100.0), merchant);
+        }
+
+        Set<Long> byName = new HashSet<>();
+        Set<Long> byPrice = new HashSet<>();
+        for (int page = 0; page < 3; page++) {
+            GoodsService.GoodsSearchPage names = goodsService.searchGoodsByName(word, page, 5);
+            assertEquals(12, names.getTotal());
+            assertEquals(page < 2 ? 5 : 2, names.getGoods().size());
+            names.getGoods().forEach(goods -> byName.add(goods.getGid()));
+
+            GoodsService.GoodsSearchPage prices = goodsService.searchGoodsByPriceRange(price, price + 0.5, false, page, 5);
+            assertEquals(12, prices.getTotal());
+            assertEquals(page < 2 ? 5 : 2, prices.getGoods().size());
+            prices.getGoods().forEach(goods -> byPrice.add(goods.getGid()));
+        }
+        assertEquals(12, byName.size());
+        assertEquals(byName, byPrice);
+        assertTrue(goodsService.searchGoodsByName(word, 3, 5).getGoods().isEmpty());
+        assertNull(goodsService.getAvailableGoodsPage(Long.MAX_VALUE, 5).getNextCursor());
+    }
+
+    private List<Long> walkMerchant(Long merchantId, int size, List<Integer> pageSizes) {
+        List<Long> walked = new ArrayList<>();
+        Long cursor = null;
+        do {
+            CursorPage<Goods> page = goodsService.getGoodsByMerchantPage(merchantId, cursor, size);
+            pageSizes.add(page.getItems().size());
+            for (Goods goods : page.getItems()) {
+                walked.add(goods.getGid());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return walked;
+    }
+
+    private Goods newGoods(String name, double price) {
+        return TestFixtures.newGoods(name, price, 3);
+    }
+}
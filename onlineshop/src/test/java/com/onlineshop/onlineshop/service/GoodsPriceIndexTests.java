@@ -0,0 +1,167 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//价格索引测试：区间查询的边界、排序、库存过滤和分页，写操作后的增量插入删除，大批量变更后重建，晚到的旧变更被丢弃
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsPriceIndexTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsPriceIndex goodsPriceIndex;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void rangeQueriesAreOrderedAndFiltered() {
+        User merchant = fixtures.saveMerchant("price_range_" + System.nanoTime());
+        double base = uniqueBase();
+        Goods cheap = goodsService.addGoods(newGoods(base + 1, 5), merchant);
+        Goods soldOut = goodsService.addGoods(newGoods(base + 2, 0), merchant);
+        Goods tieA = goodsService.addGoods(newGoods(base + 3, 5), merchant);
+        Goods tieB = goodsService.addGoods(newGoods(base + 3, 5), merchant);
+        goodsService.addGoods(newGoods(base + 9, 5), merchant);
+
+        //区间两端都包含，价格相同时按商品ID升序
+        assertEquals(List.of(cheap.getGid(), soldOut.getGid(), tieA.getGid(), tieB.getGid()),
+                range(base + 1, base + 3, false, 0, 10));
+        assertEquals(List.of(cheap.getGid(), tieA.getGid(), tieB.getGid()), range(base + 1, base + 3, true, 0, 10));
+        assertEquals(List.of(soldOut.getGid(), tieA.getGid()), range(base + 1, base + 3, false, 1, 2));
+        assertEquals(List.of(tieA.getGid()), range(base + 1, base + 3, true, 1, 1));
+        assertEquals(4, goodsPriceIndex.range(base + 1, base + 3, false, 1, 2).getTotal());
+        assertEquals(3, goodsPriceIndex.range(base + 1, base + 3, true, 1, 1).getTotal());
+        assertTrue(range(base + 3.5, base + 8.5, false, 0, 10).isEmpty());
+        assertTrue(range(base + 3, base + 1, false, 0, 10).isEmpty());
+    }
+
+    @Test
+    void writesInsertAndRemoveEntries() {
+        User merchant = fixtures.saveMerchant("price_update_" + System.nanoTime());
+        double base = uniqueBase();
+        goodsPriceIndex.range(base, base, false, 0, 1);
+        Goods goods = goodsService.addGoods(newGoods(base + 1, 5), merchant);
+        assertEquals(List.of(goods.getGid()), range(base, base + 10, false, 0, 10));
+
+        //改价后移动到新位置
+        Goods update = new Goods();
+        update.setGid(goods.getGid());
+        update.setPrice(base + 5);
+        goodsService.updateGoods(update, merchant);
+        assertTrue(range(base, base + 2, false, 0, 10).isEmpty());
+        assertEquals(List.of(goods.getGid()), range(base + 4, base + 6, false, 0, 10));
+
+        //库存变化只影响有货过滤
+        goodsService.updateStock(goods.getGid(), 0, merchant);
+        assertTrue(range(base, base + 10, true, 0, 10).isEmpty());
+        assertEquals(List.of(goods.getGid()), range(base, base + 10, false, 0, 10));
+        goodsService.updateStock(goods.getGid(), 3, merchant);
+        assertEquals(List.of(goods.getGid()), range(base, base + 10, true, 0, 10));
+
+        goodsService.deactivateGoods(goods.getGid(), merchant);
+        assertTrue(range(base, base + 10, false, 0, 10).isEmpty());
+        goodsService.activateGoods(goods.getGid(), merchant);
+        assertEquals(List.of(goods.getGid()), range(base, base + 10, false, 0, 10));
+        goodsService.deleteGoods(goods.getGid(), merchant);
+        assertTrue(range(base, base + 10, false, 0, 10).isEmpty());
+    }
+
+    @Test
+    void largeBatchRebuildsFromDatabase() {
+        User merchant = fixtures.saveMerchant("price_rebuild_" + System.nanoTime());
+        double base = uniqueBase();
+        Goods goods = goodsService.addGoods(newGoods(base + 1, 5), merchant);
+        assertEquals(List.of(goods.getGid()), range(base, base + 10, false, 0, 10));
+        //绕过事件直接改价，索引看不到这次修改
+        jdbcTemplate.update("UPDATE goods SET price = ? WHERE gid = ?", base + 7, goods.getGid());
+
+        //少量变更逐条应用，索引保持原样
+        goodsPriceIndex.onGoodsBatchChanged(new GoodsBatchChangedEvent(stockEvents(3)));
+        assertEquals(List.of(goods.getGid()), range(base, base + 2, false, 0, 10));
+
+        //超过阈值的批量变更清空索引，下次查询从数据库重建
+        goodsPriceIndex.onGoodsBatchChanged(new GoodsBatchChangedEvent(stockEvents(257)));
+        assertTrue(range(base, base + 2, false, 0, 10).isEmpty());
+        assertEquals(List.of(goods.getGid()), range(base + 6, base + 8, false, 0, 10));
+    }
+
+    @Test
+    void staleEventsAreDropped() {
+        User merchant = fixtures.saveMerchant("price_stale_" + System.nanoTime());
+        double base = uniqueBase();
+        Goods added = goodsService.addGoods(newGoods(base + 1, 1), merchant);
+        Goods older = GoodsChangedEvent.snapshotOf(added);
+        Goods update = new Goods();
+        update.setGid(added.getGid());
+        update.setPrice(base + 5);
+        goodsService.updateGoods(update, merchant);
+
+        //先提交的改价在后提交的改价之后才到达
+        goodsPriceIndex.onGoodsChanged(GoodsChangedEvent.upsert(older));
+        assertTrue(range(base, base + 2, false, 0, 10).isEmpty());
+        assertEquals(List.of(added.getGid()), range(base + 4, base + 6, false, 0, 10));
+
+        //重建已经读到的库存变化再次到达时不重复应用
+        assertTrue(goodsService.tryReserveStock(Map.of(added.getGid(), 1)));
+        long reservedVersion = goodsRepository.findById(added.getGid()).orElseThrow().getVersion();
+        goodsPriceIndex.invalidate();
+        assertTrue(range(base + 4, base + 6, true, 0, 10).isEmpty());
+        goodsPriceIndex.onGoodsChanged(GoodsChangedEvent.stockChanged(added.getGid(), 1, 0, reservedVersion));
+        assertTrue(range(base + 4, base + 6, true, 0, 10).isEmpty());
+
+        //删除之后到达的旧修改不会让商品重新上架，索引重建后版本记录仍然有效
+        Goods beforeDelete = GoodsChangedEvent.snapshotOf(goodsRepository.findById(added.getGid()).orElseThrow());
+        goodsService.deleteGoods(added.getGid(), merchant);
+        goodsPriceIndex.onGoodsChanged(GoodsChangedEvent.upsert(beforeDelete));
+        assertTrue(range(base, base + 10, false, 0, 10).isEmpty());
+        goodsPriceIndex.invalidate();
+        goodsPriceIndex.onGoodsChanged(GoodsChangedEvent.upsert(beforeDelete));
+        assertTrue(range(base, base + 10, false, 0, 10).isEmpty());
+    }
+
+    //不存在的商品ID的库存变更，只用来凑批量大小
+    private List<GoodsChangedEvent> stockEvents(int count) {
+        List<GoodsChangedEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(GoodsChangedEvent.stockChanged(Long.MAX_VALUE - i, 0, 0, 1L));
+        }
+        return events;
+    }
+
+    private List<Long> range(double min, double max, boolean inStockOnly, int offset, int limit) {
+        List<Long> gids = new ArrayList<>();
+        for (long gid : goodsPriceIndex.range(min, max, inStockOnly, offset, limit).getGids()) {
+            gids.add(gid);
+        }
+        return gids;
+    }
+
+    //每个测试使用互不重叠的价格区间
+    private static double uniqueBase() {
+        return 1_000_000 + (System.nanoTime() % 1_000_000) * 100.0;
+    }
+
+    private Goods newGoods(double price, int remaining) {
+        return TestFixtures.newGoods("价格索引商品", price, remaining);
+    }
+}
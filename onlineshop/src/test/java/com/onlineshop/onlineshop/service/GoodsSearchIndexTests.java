@@ -0,0 +1,148 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//搜索索引测试：切分规则、英文子串匹配、BM25F排序、商品写操作后的增量更新和晚到旧变更的丢弃
+@SpringBootTest
+@ActiveProfiles("test")
+class GoodsSearchIndexTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsSearchIndex goodsSearchIndex;
+    @Autowired
+    private GoodsService goodsService;
+
+    @Test
+    void tokenizerSplitsCjkAndWords() {
+        assertEquals(List.of("苹", "苹果", "果", "iphone", "15", "pro"), GoodsSearchIndex.tokenize("苹果 iPhone-15 Pro"));
+        assertEquals(List.of("手", "手机", "机", "abc123"), GoodsSearchIndex.tokenize("手机abc123"));
+        assertTrue(GoodsSearchIndex.tokenize(null).isEmpty());
+        assertTrue(GoodsSearchIndex.tokenize(" ,.!").isEmpty());
+        //查询中多字的中文片段只用二字检索，单字按单字检索，重复的词只保留一次
+        assertEquals(List.of("智能", "能手", "手机"), GoodsSearchIndex.tokenizeQuery("智能手机"));
+        assertEquals(List.of("书", "pen"), GoodsSearchIndex.tokenizeQuery("书 PEN pen"));
+    }
+
+    @Test
+    void latinTermsMatchSubstrings() {
+        User merchant = fixtures.saveMerchant("search_substring_" + System.nanoTime());
+        String word = uniqueWord();
+        Goods phone = goodsService.addGoods(newGoods(word + " iPhone 15", null), merchant);
+        Goods headphone = goodsService.addGoods(newGoods(word + " Headphones", null), merchant);
+        goodsService.addGoods(newGoods(word + " Tablet", null), merchant);
+
+        assertEquals(List.of(phone.getGid(), headphone.getGid()), sorted(search(word + " phone")));
+        assertEquals(List.of(phone.getGid()), search(word + " iphone"));
+        assertEquals(List.of(phone.getGid()), search(word + " 15"));
+        assertEquals(3, search(word.substring(2)).size());
+        assertTrue(search(word + " laptop").isEmpty());
+    }
+
+    @Test
+    void nameMatchesRankAboveDescriptionMatches() {
+        User merchant = fixtures.saveMerchant("search_rank_" + System.nanoTime());
+        String word = uniqueWord();
+        Goods inDescription = goodsService.addGoods(newGoods("普通商品", "介绍里提到 " + word), merchant);
+        Goods inName = goodsService.addGoods(newGoods(word + " 商品", "没有关键词的介绍"), merchant);
+        Goods inBoth = goodsService.addGoods(newGoods(word, word + " " + word), merchant);
+
+        assertEquals(List.of(inBoth.getGid(), inName.getGid(), inDescription.getGid()), search(word));
+        GoodsSearchIndex.SearchResult page = goodsSearchIndex.search(word, 1, 1);
+        assertEquals(3, page.getTotal());
+        assertEquals(inName.getGid(), page.getGids()[0]);
+    }
+
+    @Test
+    void writesUpdateIndexIncrementally() {
+        User merchant = fixtures.saveMerchant("search_update_" + System.nanoTime());
+        String word = uniqueWord();
+        //"Aa"和"BB"的哈希值相同，改名前后文本哈希一致，仍然要重新建立索引
+        Goods goods = goodsService.addGoods(newGoods(word + "Aa", "描述"), merchant);
+        assertEquals(List.of(goods.getGid()), search(word + "aa"));
+        int size = goodsSearchIndex.size();
+
+        Goods rename = new Goods();
+        rename.setGid(goods.getGid());
+        rename.setName(word + "BB");
+        goodsService.updateGoods(rename, merchant);
+        assertTrue(search(word + "aa").isEmpty());
+        assertEquals(List.of(goods.getGid()), search(word + "bb"));
+        assertEquals(size, goodsSearchIndex.size());
+
+        //下架后不再出现在搜索结果中，重新上架后恢复
+        goodsService.deactivateGoods(goods.getGid(), merchant);
+        assertTrue(search(word + "bb").isEmpty());
+        assertEquals(size - 1, goodsSearchIndex.size());
+        goodsService.activateGoods(goods.getGid(), merchant);
+        assertEquals(List.of(goods.getGid()), search(word + "bb"));
+
+        goodsService.deleteGoods(goods.getGid(), merchant);
+        assertTrue(search(word).isEmpty());
+        assertEquals(size - 1, goodsSearchIndex.size());
+    }
+
+    @Test
+    void staleEventsAreDropped() {
+        User merchant = fixtures.saveMerchant("search_stale_" + System.nanoTime());
+        String word = uniqueWord();
+        Goods added = goodsService.addGoods(newGoods(word + "old", null), merchant);
+        Goods older = GoodsChangedEvent.snapshotOf(added);
+        assertEquals(List.of(added.getGid()), search(word + "old"));
+        Goods rename = new Goods();
+        rename.setGid(added.getGid());
+        rename.setName(word + "new");
+        Goods newer = goodsService.updateGoods(rename, merchant);
+
+        //先提交的修改在后提交的修改之后才到达
+        goodsSearchIndex.onGoodsChanged(GoodsChangedEvent.upsert(older));
+        assertTrue(search(word + "old").isEmpty());
+        assertEquals(List.of(added.getGid()), search(word + "new"));
+
+        //删除之后到达的旧修改不会让商品重新出现，索引重建后版本记录仍然有效
+        goodsService.deleteGoods(added.getGid(), merchant);
+        goodsSearchIndex.onGoodsChanged(GoodsChangedEvent.upsert(newer));
+        assertTrue(search(word + "new").isEmpty());
+        goodsSearchIndex.invalidate();
+        goodsSearchIndex.onGoodsChanged(GoodsChangedEvent.upsert(newer));
+        assertTrue(search(word + "new").isEmpty());
+    }
+
+    private List<Long> search(String query) {
+        List<Long> gids = new ArrayList<>();
+        for (long gid : goodsSearchIndex.search(query, 0, 100).getGids()) {
+            gids.add(gid);
+        }
+        return gids;
+    }
+
+    private static List<Long> sorted(List<Long> gids) {
+        List<Long> copy = new ArrayList<>(gids);
+        copy.sort(null);
+        return copy;
+    }
+
+    //只含字母的唯一单词，避免匹配到其他测试的商品
+    private static String uniqueWord() {
+        return "sx" + Long.toString(System.nanoTime(), 36).replaceAll("[0-9]", "k");
+    }
+
+    private Goods newGoods(String name, String description) {
+        Goods goods = TestFixtures.newGoods(name, 20.0, 5);
+        goods.setDescription(description);
+        return goods;
+    }
+}
@@ -0,0 +1,45 @@
+package com.onlineshop.onlineshop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//long -> double 哈希表测试：随机增删改与HashMap结果一致，不存在的键返回NaN
+class LongDoubleHashMapTests {
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(11);
+        LongDoubleHashMap map = new LongDoubleHashMap();
+        Map<Long, Double> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = 1 + random.nextInt(300);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    double value = random.nextInt(10_000) / 100.0;
+                    map.put(key, value);
+                    expected.put(key, value);
+                }
+                case 1 -> {
+                    Double old = expected.remove(key);
+                    assertEquals(old == null ? Double.NaN : old, map.remove(key));
+                }
+                default -> assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            Double value = expected.get(key);
+            assertEquals(value == null ? Double.NaN : value, map.get(key));
+        }
+        assertEquals(expected.size(), map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(Double.isNaN(map.get(1)));
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, Double.NaN));
+    }
+}
@@ -0,0 +1,51 @@
+package com.onlineshop.onlineshop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//开放寻址哈希表测试：随机增删改与HashMap结果一致
+class LongIntHashMapTests {
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        Random random = new Random(7);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            //键范围较小，使删除和探测链移动频繁发生
+            long key = 1 + random.nextInt(300);
+            int old = expected.getOrDefault(key, 0);
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    assertEquals(old, map.put(key, i));
+                    expected.put(key, i);
+                }
+                case 1 -> {
+                    assertEquals(old + 3, map.addTo(key, 3));
+                    expected.put(key, old + 3);
+                }
+                case 2 -> {
+                    assertEquals(old, map.remove(key));
+                    expected.remove(key);
+                }
+                default -> assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            assertEquals(expected.getOrDefault(key, 0).intValue(), map.get(key));
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+
+        LongIntHashMap copy = map.copy();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(expected.size(), copy.size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.repository.IdBlockAllocator;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//商家商品统计测试：单条聚合查询的结果与原来的五条聚合查询一致
+@SpringBootTest
+@ActiveProfiles("test")
+class MerchantGoodsStatsTests {
+    private static final int GOODS_COUNT = 2_000;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+
+    @Test
+    void singleQueryMatchesFiveQueries() {
+        Long merchantId = fixtures.saveMerchant("stats_merchant_" + System.nanoTime()).getUid();
+        //下架状态，不进入商品目录和搜索索引
+        List<Object[]> rows = new ArrayList<>(GOODS_COUNT);
+        for (int i = 0; i < GOODS_COUNT; i++) {
+            rows.add(new Object[]{idBlockAllocator.next("goods", "gid"), "统计商品" + i, 1.5 + i % 100, i % 50, 0, i % 7, merchantId});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO goods (gid, name, price, remaining, status, sales, merchant_id) VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+
+        GoodsService.MerchantGoodsStats stats = goodsService.getMerchantGoodsStats(merchantId);
+        Number[] expected = fiveQueries(merchantId);
+        assertEquals(GOODS_COUNT, stats.getGoodsCount());
+        assertEquals(expected[0].longValue(), stats.getGoodsCount());
+        assertEquals(expected[1].intValue(), stats.getTotalStock());
+        assertEquals(expected[2].doubleValue(), stats.getTotalValue(), 1e-6);
+        assertEquals(expected[3].intValue(), stats.getTotalSales());
+        assertEquals(expected[4].doubleValue(), stats.getTotalSalesValue(), 1e-6);
+    }
+
+    //原来的统计方式：五条聚合查询分别扫描商家的商品，返回商品数、总库存、库存总价值、总销量和总销售额
+    private Number[] fiveQueries(Long merchantId) {
+        return new Number[]{
+                aggregate("COUNT(g)", merchantId),
+                aggregate("COALESCE(SUM(g.remaining), 0)", merchantId),
+                aggregate("COALESCE(SUM(g.remaining * g.price), 0)", merchantId),
+                aggregate("COALESCE(SUM(g.sales), 0)", merchantId),
+                aggregate("COALESCE(SUM(g.sales * g.price), 0)", merchantId)
+        };
+    }
+
+    private Number aggregate(String expression, Long merchantId) {
+        return entityManager.createQuery("SELECT " + expression + " FROM Goods g WHERE g.merchant.uid = :merchantId", Number.class)
+                .setParameter("merchantId", merchantId)
+                .getSingleResult();
+    }
+}
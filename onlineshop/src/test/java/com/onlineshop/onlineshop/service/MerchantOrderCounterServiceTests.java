@@ -0,0 +1,97 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.MerchantOrderCounterRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//商家订单计数器测试：状态变化时的增量更新，以及对账修正偏差
+@SpringBootTest
+@ActiveProfiles("test")
+class MerchantOrderCounterServiceTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private MerchantOrderCounterService counterService;
+    @Autowired
+    private MerchantOrderCounterRepository counterRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User merchantA;
+    private User merchantB;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        merchantA = fixtures.saveUser("counter_merchant_a_" + suffix, User.UserRole.MERCHANT);
+        merchantB = fixtures.saveUser("counter_merchant_b_" + suffix, User.UserRole.MERCHANT);
+        customer = fixtures.saveUser("counter_customer_" + suffix, User.UserRole.CUSTOMER);
+    }
+
+    @Test
+    void countersFollowOrderLifecycle() {
+        Goods goodsA = saveGoods(merchantA);
+        Goods goodsB = saveGoods(merchantB);
+        //同时包含两个商家商品的订单，两个商家各计一次
+        UserOrder mixed = orderService.createOrder(customer,
+                List.of(new CartItem(goodsA.getGid(), 1), new CartItem(goodsB.getGid(), 2)));
+        UserOrder onlyA = orderService.createOrder(customer, List.of(new CartItem(goodsA.getGid(), 1)));
+        assertEquals(2, counterService.getCount(merchantA.getUid(), OrderStatus.PENDING_PAYMENT));
+        assertEquals(1, counterService.getCount(merchantB.getUid(), OrderStatus.PENDING_PAYMENT));
+
+        orderService.pay(mixed.getOid());
+        orderService.fahuo(mixed.getOid(), merchantA);
+        orderService.cancelOrder(onlyA.getOid());
+
+        assertEquals(0, counterService.getCount(merchantA.getUid(), OrderStatus.PENDING_PAYMENT));
+        assertEquals(0, counterService.getCount(merchantA.getUid(), OrderStatus.PAID));
+        assertEquals(1, counterService.getCount(merchantA.getUid(), OrderStatus.SHIPPED));
+        assertEquals(1, counterService.getCount(merchantA.getUid(), OrderStatus.CANCELLED));
+        assertEquals(1, counterService.getCount(merchantB.getUid(), OrderStatus.SHIPPED));
+
+        orderService.completeOrder(mixed.getOid());
+        assertEquals(0, counterService.getCount(merchantB.getUid(), OrderStatus.SHIPPED));
+        assertEquals(1, counterService.getCount(merchantB.getUid(), OrderStatus.COMPLETED));
+    }
+
+    @Test
+    void reconcileRepairsDrift() {
+        Goods goodsA = saveGoods(merchantA);
+        UserOrder order = orderService.createOrder(customer, List.of(new CartItem(goodsA.getGid(), 1)));
+        orderService.createOrder(customer, List.of(new CartItem(goodsA.getGid(), 1)));
+        orderService.pay(order.getOid());
+        //人为制造偏差
+        transactionTemplate.executeWithoutResult(status -> {
+            counterRepository.addCount(merchantA.getUid(), OrderStatus.PENDING_PAYMENT.getCode(), 5);
+            counterRepository.addCount(merchantA.getUid(), OrderStatus.COMPLETED.getCode(), 3);
+        });
+
+        assertEquals(2, counterService.reconcile(merchantA.getUid()));
+
+        assertEquals(1, counterService.getCount(merchantA.getUid(), OrderStatus.PENDING_PAYMENT));
+        assertEquals(1, counterService.getCount(merchantA.getUid(), OrderStatus.PAID));
+        assertEquals(0, counterService.getCount(merchantA.getUid(), OrderStatus.COMPLETED));
+        assertEquals(0, counterService.reconcile(merchantA.getUid()));
+    }
+
+    private Goods saveGoods(User merchant) {
+        return fixtures.saveGoods(merchant, "计数测试商品", 10.0, 100);
+    }
+}
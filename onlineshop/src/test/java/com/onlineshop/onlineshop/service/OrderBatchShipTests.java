@@ -0,0 +1,137 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.EmailOutboxRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//批量发货测试：只发货属于当前商家且已付款的订单，计数器和发件箱按批更新，语句数与订单数无关
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderBatchShipTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private MerchantOrderCounterService merchantOrderCounterService;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Test
+    void shipsOnlyOwnedPaidOrders() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("ship_merchant_" + suffix, User.UserRole.MERCHANT);
+        User other = fixtures.saveUser("ship_other_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("ship_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods mine = saveGoods(merchant);
+        Goods theirs = saveGoods(other);
+
+        Long paid = paidOrder(customer, mine);
+        //同时包含两个商家商品的订单，两个商家的计数都变化
+        Long mixed = orderService.createOrder(customer, List.of(new CartItem(mine.getGid(), 1),
+                new CartItem(theirs.getGid(), 1))).getOid();
+        orderService.pay(mixed);
+        Long unpaid = orderService.createOrder(customer, List.of(new CartItem(mine.getGid(), 1))).getOid();
+        Long notMine = paidOrder(customer, theirs);
+        long emailsBefore = emailOutboxRepository.count();
+
+        List<OrderService.ShipResult> results = orderService.shipOrders(merchant,
+                List.of(paid, mixed, unpaid, notMine, Long.MAX_VALUE, paid));
+
+        assertEquals(5, results.size());
+        assertResult(results.get(0), paid, true);
+        assertResult(results.get(1), mixed, true);
+        assertResult(results.get(2), unpaid, false);
+        assertEquals("订单状态不允许发货", results.get(2).getMessage());
+        assertResult(results.get(3), notMine, false);
+        assertResult(results.get(4), Long.MAX_VALUE, false);
+        assertEquals("订单不存在或不属于当前商家", results.get(4).getMessage());
+
+        UserOrder shipped = userOrderRepository.findById(paid).orElseThrow();
+        assertEquals(OrderStatus.SHIPPED, shipped.getStatus());
+        assertNotNull(shipped.getShipTime());
+        assertEquals(2L, shipped.getVersion());
+        assertEquals(OrderStatus.PENDING_PAYMENT, userOrderRepository.findById(unpaid).orElseThrow().getStatus());
+        assertEquals(OrderStatus.PAID, userOrderRepository.findById(notMine).orElseThrow().getStatus());
+        assertEquals(emailsBefore + 2, emailOutboxRepository.count());
+
+        assertEquals(2, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.SHIPPED));
+        assertEquals(0, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.PAID));
+        assertEquals(1, merchantOrderCounterService.getCount(other.getUid(), OrderStatus.SHIPPED));
+        assertEquals(1, merchantOrderCounterService.getCount(other.getUid(), OrderStatus.PAID));
+
+        //再次发货全部失败
+        for (OrderService.ShipResult result : orderService.shipOrders(merchant, List.of(paid, mixed))) {
+            assertFalse(result.getSuccess());
+        }
+        assertThrows(RuntimeException.class, () -> orderService.shipOrders(merchant, List.of()));
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithBatchSize() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("ship_bulk_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("ship_bulk_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods goods = saveGoods(merchant);
+        List<Long> small = new ArrayList<>();
+        List<Long> large = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            small.add(paidOrder(customer, goods));
+        }
+        for (int i = 0; i < 40; i++) {
+            large.add(paidOrder(customer, goods));
+        }
+
+        SqlStatementCounter.reset();
+        orderService.shipOrders(merchant, small);
+        int smallStatements = SqlStatementCounter.count();
+        SqlStatementCounter.reset();
+        long begin = System.nanoTime();
+        List<OrderService.ShipResult> results = orderService.shipOrders(merchant, large);
+        double millis = (System.nanoTime() - begin) / 1_000_000.0;
+        int largeStatements = SqlStatementCounter.count();
+        System.out.printf("批量发货: %d 个订单, %d 条语句, 耗时 %.1fms%n", large.size(), largeStatements, millis);
+
+        assertEquals(smallStatements, largeStatements);
+        for (OrderService.ShipResult result : results) {
+            assertTrue(result.getSuccess());
+        }
+        assertEquals(43, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.SHIPPED));
+    }
+
+    private void assertResult(OrderService.ShipResult result, Long oid, boolean success) {
+        assertEquals(oid, result.getOid());
+        assertEquals(success, result.getSuccess());
+    }
+
+    private Long paidOrder(User customer, Goods goods) {
+        Long oid = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 1))).getOid();
+        orderService.pay(oid);
+        return oid;
+    }
+
+    private Goods saveGoods(User merchant) {
+        return fixtures.saveGoods(merchant, "发货测试商品", 20.0, 1000);
+    }
+}
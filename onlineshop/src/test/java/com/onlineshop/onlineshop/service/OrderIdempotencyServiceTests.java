@@ -0,0 +1,96 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderRequestKey;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.OrderRequestKeyRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//幂等下单测试：重试和并发重复请求只创建一个订单、只扣一次库存
+//关闭本地缓存，使重试请求走幂等键表（相当于重试落到另一个实例上）
+@SpringBootTest(properties = "order.idempotency.cache-size=0")
+@ActiveProfiles("test")
+class OrderIdempotencyServiceTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderIdempotencyService orderIdempotencyService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private OrderRequestKeyRepository orderRequestKeyRepository;
+
+    private User customer;
+    private Goods goods;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("idem_merchant_" + suffix, User.UserRole.MERCHANT);
+        customer = fixtures.saveUser("idem_customer_" + suffix, User.UserRole.CUSTOMER);
+        goods = fixtures.saveGoods(merchant, "幂等测试商品", 8.0, 100);
+    }
+
+    @Test
+    void retryReturnsOriginalOrder() {
+        List<CartItem> cart = List.of(new CartItem(goods.getGid(), 2));
+        UserOrder first = orderIdempotencyService.createOrder(customer, "retry-key", cart);
+        UserOrder retried = orderIdempotencyService.createOrder(customer, "retry-key", cart);
+
+        assertEquals(first.getOid(), retried.getOid());
+        assertEquals(first.getOid(), orderRequestKeyRepository.findById(
+                new OrderRequestKey.Key(customer.getUid(), "retry-key")).orElseThrow().getOrderId());
+        assertEquals(98, goodsRepository.findById(goods.getGid()).orElseThrow().getRemaining());
+        assertThrows(RuntimeException.class, () -> orderIdempotencyService.createOrder(customer, "retry-key",
+                List.of(new CartItem(goods.getGid(), 3))));
+    }
+
+    @Test
+    void concurrentDuplicatesCreateOneOrder() throws Exception {
+        int threads = 8;
+        List<CartItem> cart = List.of(new CartItem(goods.getGid(), 1));
+        long ordersBefore = userOrderRepository.count();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserOrder>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return orderIdempotencyService.createOrder(customer, "double-click", cart);
+            }));
+        }
+        start.countDown();
+        Set<Long> orderIds = new HashSet<>();
+        for (Future<UserOrder> future : futures) {
+            orderIds.add(future.get().getOid());
+        }
+        pool.shutdown();
+
+        assertEquals(1, orderIds.size());
+        assertEquals(ordersBefore + 1, userOrderRepository.count());
+        assertEquals(99, goodsRepository.findById(goods.getGid()).orElseThrow().getRemaining());
+    }
+}
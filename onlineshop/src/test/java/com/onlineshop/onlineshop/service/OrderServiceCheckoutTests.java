@@ -0,0 +1,109 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderGoods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.OrderGoodsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//下单流程测试：批量下单的正确性，以及不同购物车大小的下单耗时
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderServiceCheckoutTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private OrderGoodsRepository orderGoodsRepository;
+
+    private User merchant;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        merchant = fixtures.saveUser("checkout_merchant_" + suffix, User.UserRole.MERCHANT);
+        customer = fixtures.saveUser("checkout_customer_" + suffix, User.UserRole.CUSTOMER);
+    }
+
+    @Test
+    void createOrderReservesStockAndInsertsAllLines() {
+        List<Goods> goodsList = saveGoods(3, 10);
+        List<CartItem> cart = new ArrayList<>();
+        cart.add(new CartItem(goodsList.get(0).getGid(), 2));
+        cart.add(new CartItem(goodsList.get(1).getGid(), 3));
+        cart.add(new CartItem(goodsList.get(2).getGid(), 1));
+        cart.add(new CartItem(goodsList.get(0).getGid(), 1)); //同一商品合并为一行
+
+        UserOrder order = orderService.createOrder(customer, cart);
+
+        List<OrderGoods> lines = orderGoodsRepository.findByUserorder(order);
+        assertEquals(3, lines.size());
+        assertEquals(7 * 10.0, order.getTotalAmount(), 1e-9);
+        assertEquals(7, goodsRepository.findById(goodsList.get(0).getGid()).orElseThrow().getRemaining());
+        assertEquals(3, goodsRepository.findById(goodsList.get(0).getGid()).orElseThrow().getSales());
+        assertEquals(7, goodsRepository.findById(goodsList.get(1).getGid()).orElseThrow().getRemaining());
+        assertEquals(9, goodsRepository.findById(goodsList.get(2).getGid()).orElseThrow().getRemaining());
+    }
+
+    @Test
+    void createOrderRollsBackWhenAnyLineIsShort() {
+        List<Goods> goodsList = saveGoods(2, 5);
+        List<CartItem> cart = List.of(new CartItem(goodsList.get(0).getGid(), 1),
+                new CartItem(goodsList.get(1).getGid(), 6));
+
+        assertThrows(RuntimeException.class, () -> orderService.createOrder(customer, cart));
+
+        assertEquals(5, goodsRepository.findById(goodsList.get(0).getGid()).orElseThrow().getRemaining());
+        assertEquals(5, goodsRepository.findById(goodsList.get(1).getGid()).orElseThrow().getRemaining());
+    }
+
+    @Test
+    void checkoutLatencyByCartSize() {
+        int iterations = 30;
+        for (int cartSize : new int[]{1, 5, 20, 50}) {
+            int stock = iterations * 2;
+            List<Goods> goodsList = saveGoods(cartSize, stock);
+            List<CartItem> cart = new ArrayList<>();
+            for (Goods goods : goodsList) {
+                cart.add(new CartItem(goods.getGid(), 1));
+            }
+            //预热
+            for (int i = 0; i < 5; i++) {
+                orderService.createOrder(customer, cart);
+            }
+            long begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                orderService.createOrder(customer, cart);
+            }
+            double avgMillis = (System.nanoTime() - begin) / 1_000_000.0 / iterations;
+            System.out.printf("下单耗时: 购物车 %d 件商品, 平均 %.2f ms%n", cartSize, avgMillis);
+            assertEquals(stock - iterations - 5, goodsRepository.findById(goodsList.get(0).getGid()).orElseThrow().getRemaining());
+        }
+    }
+
+    private List<Goods> saveGoods(int count, int stock) {
+        List<Goods> goodsList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            goodsList.add(fixtures.saveGoods(merchant, "下单测试商品" + i, 10.0, stock));
+        }
+        return goodsList;
+    }
+}
@@ -0,0 +1,123 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//高并发下单测试：库存扣减必须不超卖
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderServiceConcurrencyTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+
+    @Test
+    void concurrentCheckoutsNeverOversell() throws Exception {
+        int stock = 100;
+        int threads = 32;
+        int attempts = 400;
+        User merchant = fixtures.saveUser("stress_merchant", User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("stress_customer", User.UserRole.CUSTOMER);
+        Long gid = fixtures.saveGoods(merchant, "压力测试商品", 9.9, stock).getGid();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < attempts; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    orderService.createOrder(customer, List.of(new CartItem(gid, 1)));
+                    succeeded.incrementAndGet();
+                } catch (RuntimeException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1_000_000_000.0;
+        pool.shutdown();
+        System.out.printf("并发下单: %d 个线程, %d 次请求, 成功 %d, 库存不足 %d, 耗时 %.2fs, 吞吐 %.0f 次/秒%n",
+                threads, attempts, succeeded.get(), rejected.get(), seconds, attempts / seconds);
+
+        Goods reloaded = goodsRepository.findById(gid).orElseThrow();
+        assertEquals(stock, succeeded.get());
+        assertEquals(attempts - stock, rejected.get());
+        assertEquals(0, reloaded.getRemaining());
+        assertEquals(stock, reloaded.getSales());
+    }
+
+    @Test
+    void concurrentSingleGoodsDecrementsNeverOversell() throws Exception {
+        int stock = 50;
+        int attempts = 200;
+        User merchant = fixtures.saveUser("decrement_merchant", User.UserRole.MERCHANT);
+        Goods saved = fixtures.saveGoods(merchant, "单条扣减商品", 5.0, stock);
+        Long gid = saved.getGid();
+        long versionBefore = saved.getVersion();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < attempts; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    goodsService.decreaseStock(gid, 1);
+                    succeeded.incrementAndGet();
+                } catch (RuntimeException e) {
+                    assertEquals("商品库存不足", e.getMessage());
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        Goods reloaded = goodsRepository.findById(gid).orElseThrow();
+        assertEquals(stock, succeeded.get());
+        assertEquals(attempts - stock, rejected.get());
+        assertEquals(0, reloaded.getRemaining());
+        assertEquals(stock, reloaded.getSales());
+        //每次成功扣减把版本号加1，失败的不改变
+        assertEquals(versionBefore + stock, reloaded.getVersion());
+        RuntimeException missing = assertThrows(RuntimeException.class, () -> goodsService.decreaseStock(-1L, 1));
+        assertEquals("商品不存在", missing.getMessage());
+    }
+}
@@ -0,0 +1,154 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//订单状态机测试：并发的确认收货和取消只有一个生效，库存和商家计数与最终状态一致
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderStateMachineTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private MerchantOrderCounterService merchantOrderCounterService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+
+    @Test
+    void completeRacingCancelHasExactlyOneWinner() throws Exception {
+        int orders = 50;
+        int racersPerSide = 2;
+        int threads = 16;
+        int stock = 1000;
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("state_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("state_customer_" + suffix, User.UserRole.CUSTOMER);
+        Long gid = fixtures.saveGoods(merchant, "状态机测试商品", 5.0, stock).getGid();
+
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            Long oid = orderService.createOrder(customer, List.of(new CartItem(gid, 1))).getOid();
+            orderService.pay(oid);
+            orderService.fahuo(oid, merchant);
+            orderIds.add(oid);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicIntegerArray winners = new AtomicIntegerArray(orders);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            int index = i;
+            Long oid = orderIds.get(i);
+            for (int r = 0; r < racersPerSide; r++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        orderService.completeOrder(oid);
+                        winners.incrementAndGet(index);
+                        completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        orderService.cancelOrder(oid);
+                        winners.incrementAndGet(index);
+                        cancelled.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1_000_000_000.0;
+        pool.shutdown();
+        int attempts = futures.size();
+        System.out.printf("并发状态转换: %d 个线程, %d 个订单, %d 次请求, 完成 %d, 取消 %d, 拒绝 %d, 耗时 %.2fs, 吞吐 %.0f 次/秒%n",
+                threads, orders, attempts, completed.get(), cancelled.get(), rejected.get(), seconds, attempts / seconds);
+
+        for (int i = 0; i < orders; i++) {
+            assertEquals(1, winners.get(i), "订单 " + orderIds.get(i) + " 的转换次数");
+        }
+        assertEquals(orders, completed.get() + cancelled.get());
+        assertEquals(attempts - orders, rejected.get());
+
+        int completedInDb = 0;
+        int cancelledInDb = 0;
+        for (Long oid : orderIds) {
+            UserOrder order = userOrderRepository.findById(oid).orElseThrow();
+            assertTrue(order.getStatus() == OrderStatus.COMPLETED || order.getStatus() == OrderStatus.CANCELLED);
+            //创建为0，付款、发货和一次成功的转换各加一
+            assertEquals(3L, order.getVersion());
+            if (order.getStatus() == OrderStatus.COMPLETED) {
+                completedInDb++;
+            } else {
+                cancelledInDb++;
+            }
+        }
+        assertEquals(completed.get(), completedInDb);
+        assertEquals(cancelled.get(), cancelledInDb);
+        //只有取消的订单恢复库存
+        assertEquals(stock - orders + cancelledInDb, goodsRepository.findById(gid).orElseThrow().getRemaining());
+        assertEquals(0, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.SHIPPED));
+        assertEquals(completedInDb, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.COMPLETED));
+        assertEquals(cancelledInDb, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.CANCELLED));
+    }
+
+    @Test
+    void invalidTransitionsAreRejected() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("state_merchant2_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("state_customer2_" + suffix, User.UserRole.CUSTOMER);
+        Long gid = fixtures.saveGoods(merchant, "状态机测试商品", 5.0, 10).getGid();
+        Long oid = orderService.createOrder(customer, List.of(new CartItem(gid, 1))).getOid();
+
+        assertThrows(RuntimeException.class, () -> orderService.fahuo(oid, merchant));
+        assertThrows(RuntimeException.class, () -> orderService.completeOrder(oid));
+        assertEquals(OrderStatus.PAID, orderService.pay(oid).getStatus());
+        assertThrows(RuntimeException.class, () -> orderService.pay(oid));
+        assertEquals(OrderStatus.SHIPPED, orderService.fahuo(oid, merchant).getStatus());
+        assertEquals(OrderStatus.COMPLETED, orderService.completeOrder(oid).getStatus());
+        assertThrows(RuntimeException.class, () -> orderService.cancelOrder(oid));
+        assertThrows(RuntimeException.class, () -> orderService.pay(Long.MAX_VALUE));
+        assertEquals(OrderStatus.COMPLETED, userOrderRepository.findById(oid).orElseThrow().getStatus());
+    }
+}
@@ -0,0 +1,173 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.BackfillProgress;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.BackfillProgressRepository;
+import com.onlineshop.onlineshop.repository.SalesRollupRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//销售汇总测试：下单、取消时的增量更新，补建结果与增量结果一致，补建中断后继续，以及补建期间取消尚未补建的订单
+@SpringBootTest
+@ActiveProfiles("test")
+class SalesRollupServiceTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private SalesService salesService;
+    @Autowired
+    private SalesRollupService salesRollupService;
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private BackfillProgressRepository backfillProgressRepository;
+
+    private User merchant;
+    private User customer;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        merchant = fixtures.saveUser("rollup_merchant_" + suffix, User.UserRole.MERCHANT);
+        customer = fixtures.saveUser("rollup_customer_" + suffix, User.UserRole.CUSTOMER);
+    }
+
+    @Test
+    void reportReadsRollupsAndExcludesCancelledOrders() {
+        Goods cheap = saveGoods("汇总商品A", 9.99);
+        Goods expensive = saveGoods("汇总商品B", 120.5);
+        Date start = new Date(System.currentTimeMillis() - 3 * 86_400_000L);
+        orderService.createOrder(customer, List.of(new CartItem(cheap.getGid(), 3), new CartItem(expensive.getGid(), 1)));
+        orderService.createOrder(customer, List.of(new CartItem(cheap.getGid(), 1)));
+        UserOrder cancelled = orderService.createOrder(customer, List.of(new CartItem(expensive.getGid(), 2)));
+        orderService.cancelOrder(cancelled.getOid());
+        Date end = new Date(System.currentTimeMillis() + 3_600_000L);
+
+        SalesService.MerchantSalesReport report = salesService.getMerchantSalesReport(merchant.getUid(), start, end);
+
+        assertEquals(2L, report.getOrderCount());
+        assertEquals(4 * 9.99 + 120.5, report.getTotalSales(), 1e-9);
+        assertEquals(2, report.getGoodsSales().size());
+        Object[] top = report.getGoodsSales().get(0);
+        //每个商品一行：商品ID、商品名、销量、销售额
+        assertEquals(4, top.length);
+        assertEquals(expensive.getGid(), top[0]);
+        assertEquals("汇总商品B", top[1]);
+        assertEquals(1L, top[2]);
+        assertEquals(120.5, (Double) top[3], 1e-9);
+        Object[] second = report.getGoodsSales().get(1);
+        assertEquals(cheap.getGid(), second[0]);
+        assertEquals(4L, second[2]);
+        assertEquals(4 * 9.99, (Double) second[3], 1e-9);
+        assertEquals(4 * 9.99 + 120.5, salesService.getMerchantSalesByDateRange(merchant.getUid(), start, end), 1e-9);
+        //时间段不包含下单时间
+        assertEquals(0.0, salesService.getMerchantSalesByDateRange(merchant.getUid(), start,
+                new Date(start.getTime() + 3_600_000L)), 1e-9);
+    }
+
+    @Test
+    void backfillMatchesIncrementalRollups() {
+        Goods goods = saveGoods("补建商品", 15.0);
+        orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 2)));
+        UserOrder cancelled = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 1)));
+        orderService.cancelOrder(cancelled.getOid());
+        Date start = new Date(System.currentTimeMillis() - 86_400_000L);
+        Date end = new Date(System.currentTimeMillis() + 86_400_000L);
+        long[] incremental = salesRollupService.getTotals(merchant.getUid(), start, end);
+
+        salesRollupRepository.deleteAllInBatch();
+        restartBackfill(0L);
+        salesRollupService.backfill();
+
+        long[] rebuilt = salesRollupService.getTotals(merchant.getUid(), start, end);
+        assertEquals(2L, rebuilt[0]);
+        assertEquals(3000L, rebuilt[1]);
+        assertEquals(1L, rebuilt[2]);
+        assertEquals(incremental[0], rebuilt[0]);
+        assertEquals(incremental[1], rebuilt[1]);
+        assertEquals(incremental[2], rebuilt[2]);
+    }
+
+    @Test
+    void backfillResumesFromRecordedProgress() {
+        Goods goods = saveGoods("续补商品", 10.0);
+        UserOrder first = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 1)));
+        orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 2)));
+        Date start = new Date(System.currentTimeMillis() - 86_400_000L);
+        Date end = new Date(System.currentTimeMillis() + 86_400_000L);
+
+        //上次补建处理完第一个订单后中断：清空汇总表后继续补建，只计入第二个订单
+        salesRollupRepository.deleteAllInBatch();
+        restartBackfill(first.getOid());
+        salesRollupService.backfill();
+        long[] totals = salesRollupService.getTotals(merchant.getUid(), start, end);
+        assertEquals(2L, totals[0]);
+        assertEquals(2000L, totals[1]);
+        assertEquals(1L, totals[2]);
+        assertTrue(backfillProgressRepository.findById("sales-rollup").orElseThrow().getCompleted());
+        //已完成的补建不会重复计入
+        assertEquals(0, salesRollupService.backfill());
+        assertEquals(2L, salesRollupService.getTotals(merchant.getUid(), start, end)[0]);
+    }
+
+    @Test
+    void cancellingOrdersNotYetBackfilledKeepsTotals() {
+        Goods goods = saveGoods("补建中取消商品", 15.0);
+        UserOrder kept = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 2)));
+        UserOrder cancelled = orderService.createOrder(customer, List.of(new CartItem(goods.getGid(), 1)));
+        Date start = new Date(System.currentTimeMillis() - 86_400_000L);
+        Date end = new Date(System.currentTimeMillis() + 86_400_000L);
+
+        //两个订单都在补建范围内且尚未补建，取消时不扣除，汇总不会变成负数
+        salesRollupRepository.deleteAllInBatch();
+        restartBackfill(0L);
+        orderService.cancelOrder(cancelled.getOid());
+        long[] totals = salesRollupService.getTotals(merchant.getUid(), start, end);
+        assertEquals(0L, totals[0]);
+        assertEquals(0L, totals[1]);
+
+        salesRollupService.backfill();
+        totals = salesRollupService.getTotals(merchant.getUid(), start, end);
+        assertEquals(2L, totals[0]);
+        assertEquals(3000L, totals[1]);
+        assertEquals(1L, totals[2]);
+        //补建完成后取消照常扣除
+        orderService.cancelOrder(kept.getOid());
+        totals = salesRollupService.getTotals(merchant.getUid(), start, end);
+        assertEquals(0L, totals[0]);
+        assertEquals(0L, totals[1]);
+        assertEquals(0L, totals[2]);
+    }
+
+    //补建进度重置为从lastOid之后补建到当前最大订单ID
+    private void restartBackfill(Long lastOid) {
+        BackfillProgress progress = new BackfillProgress();
+        progress.setName("sales-rollup");
+        progress.setCutoffOid(userOrderRepository.findMaxOid());
+        progress.setLastOid(lastOid);
+        progress.setCompleted(false);
+        backfillProgressRepository.save(progress);
+    }
+
+    private Goods saveGoods(String name, double price) {
+        return fixtures.saveGoods(merchant, name, price, 100);
+    }
+}
@@ -0,0 +1,99 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.controller.SqlStatementCounter;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//二级缓存测试：重复读取商品和商家不访问数据库，JDBC更新库存和价格后读到新值，原生更新语句不清空缓存
+@SpringBootTest
+@ActiveProfiles("test")
+class SecondLevelCacheTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private GoodsService goodsService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void repeatedReadsAreServedFromCache() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("l2_merchant_" + suffix, User.UserRole.MERCHANT);
+        Long gid = saveGoods(merchant).getGid();
+        goodsService.getGoodsById(gid);
+        long hitsBefore = hits("goods");
+
+        int rounds = 1000;
+        SqlStatementCounter.reset();
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            Goods goods = goodsService.getGoodsById(gid);
+            assertEquals(merchant.getUid(), goods.getMerchant().getUid());
+        }
+        double micros = (System.nanoTime() - begin) / 1000.0 / rounds;
+        System.out.printf("二级缓存读取商品: %d 次, 平均 %.1fus, %d 条语句%n", rounds, micros, SqlStatementCounter.count());
+
+        assertEquals(0, SqlStatementCounter.count());
+        assertTrue(hits("goods") - hitsBefore >= rounds);
+        assertTrue(hits("user") > 0);
+    }
+
+    @Test
+    void jdbcUpdatesEvictCachedGoods() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("l2_evict_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("l2_evict_customer_" + suffix, User.UserRole.CUSTOMER);
+        Long gid = saveGoods(merchant).getGid();
+        assertEquals(100, goodsService.getGoodsById(gid).getRemaining());
+
+        //下单用JDBC语句预留库存，同时执行商家计数器的原生更新
+        Long oid = orderService.createOrder(customer, List.of(new CartItem(gid, 3))).getOid();
+        Goods afterOrder = goodsService.getGoodsById(gid);
+        assertEquals(97, afterOrder.getRemaining());
+        assertEquals(3, afterOrder.getSales());
+        //原生更新只影响计数器表，商家仍在缓存中
+        SqlStatementCounter.reset();
+        userRepository.findById(merchant.getUid()).orElseThrow();
+        assertEquals(0, SqlStatementCounter.count());
+
+        orderService.cancelOrder(oid);
+        assertEquals(100, goodsService.getGoodsById(gid).getRemaining());
+
+        goodsService.updatePricesBatch(merchant, List.of(new GoodsService.PriceUpdate(gid, 9.9)));
+        goodsService.updateStockBatch(merchant, List.of(new GoodsService.StockUpdate(gid, 5)));
+        Goods updated = goodsService.getGoodsById(gid);
+        assertEquals(9.9, updated.getPrice());
+        assertEquals(5, updated.getRemaining());
+        goodsService.deactivateGoodsBatch(merchant, List.of(gid));
+        assertEquals(0, goodsService.getGoodsById(gid).getStatus());
+
+        List<GoodsService.RegionCacheStats> stats = goodsService.getSecondLevelCacheStats();
+        assertTrue(stats.stream().anyMatch(region -> region.getRegion().equals("goods") && region.getHitRatio() > 0));
+        assertTrue(stats.stream().anyMatch(region -> region.getRegion().equals("user")));
+    }
+
+    private long hits(String region) {
+        return goodsService.getSecondLevelCacheStats().stream()
+                .filter(stats -> stats.getRegion().equals(region))
+                .mapToLong(GoodsService.RegionCacheStats::getHits)
+                .sum();
+    }
+
+    private Goods saveGoods(User merchant) {
+        return fixtures.saveGoods(merchant, "二级缓存测试商品", 20.0, 100);
+    }
+}
@@ -0,0 +1,76 @@
+package com.onlineshop.onlineshop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Space-Saving计数器测试：长尾分布下前N名的准确性和查询耗时
+class SpaceSavingCounterTests {
+
+    @Test
+    void topSellersMatchExactCountsOnSkewedStream() {
+        int goodsCount = 20_000;
+        //Zipf分布的累积概率
+        double[] cumulative = new double[goodsCount];
+        double sum = 0;
+        for (int i = 0; i < goodsCount; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        SpaceSavingCounter counter = new SpaceSavingCounter(500);
+        Map<Long, Long> exact = new HashMap<>();
+        for (int i = 0; i < 500_000; i++) {
+            double r = random.nextDouble() * sum;
+            int low = 0;
+            int high = goodsCount - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < r) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            long gid = low + 1;
+            int quantity = 1 + random.nextInt(3);
+            counter.add(gid, "商品" + gid, quantity);
+            exact.merge(gid, (long) quantity, Long::sum);
+        }
+
+        List<SpaceSavingCounter.Entry> top = counter.top(10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            SpaceSavingCounter.Entry entry = top.get(i);
+            assertEquals(i + 1, entry.gid);
+            long trueCount = exact.get(entry.gid);
+            assertTrue(entry.count >= trueCount && entry.count - entry.error <= trueCount);
+        }
+
+        int rounds = 100_000;
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            counter.top(10);
+        }
+        System.out.printf("热销榜查询耗时: 前10名 平均 %.2f µs%n", (System.nanoTime() - begin) / 1000.0 / rounds);
+    }
+
+    @Test
+    void subtractLowersCountAndKeepsOrder() {
+        SpaceSavingCounter counter = new SpaceSavingCounter(3);
+        counter.add(1, "A", 10);
+        counter.add(2, "B", 8);
+        counter.subtract(1, 5);
+        counter.subtract(99, 5); //未监控的商品忽略
+
+        List<SpaceSavingCounter.Entry> top = counter.top(3);
+        assertEquals(2L, top.get(0).gid);
+        assertEquals(5L, top.get(1).count);
+    }
+}
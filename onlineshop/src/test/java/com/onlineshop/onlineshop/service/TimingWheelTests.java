@@ -0,0 +1,72 @@
+package com.onlineshop.onlineshop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//时间轮测试：每个任务不早于到期时间、且在到期所在的tick内恰好返回一次，跨层重新分配和更新、取消都正确
+class TimingWheelTests {
+
+    @Test
+    void everyTimerFiresOnceWithinOneTickOfDeadline() {
+        long tick = 1000;
+        long start = 1_700_000_000_000L;
+        TimingWheel wheel = new TimingWheel(tick, start);
+        Random random = new Random(3);
+        Map<Long, Long> deadlines = new HashMap<>();
+        for (long id = 1; id <= 50_000; id++) {
+            //覆盖各层：几秒到几十天
+            long delay = (long) Math.pow(10, 3 + random.nextDouble() * 6.5);
+            deadlines.put(id, start + delay);
+            wheel.add(id, start + delay);
+        }
+        //部分任务更新到期时间，部分取消
+        for (long id = 1; id <= 5_000; id++) {
+            long deadline = start + 1 + random.nextInt(10_000_000);
+            deadlines.put(id, deadline);
+            wheel.add(id, deadline);
+        }
+        for (long id = 5_001; id <= 6_000; id++) {
+            deadlines.remove(id);
+            wheel.remove(id);
+        }
+
+        long now = start;
+        long end = start + 4_000_000_000L;
+        int fired = 0;
+        while (now < end) {
+            //不均匀地推进，模拟调度延迟
+            now += tick * (1 + random.nextInt(600));
+            for (Long id : wheel.advance(now)) {
+                Long deadline = deadlines.remove(id);
+                assertTrue(deadline != null, "重复或已取消的任务: " + id);
+                assertTrue(deadline <= now, "提前到期: " + id);
+                fired++;
+            }
+            //now是tick的整数倍，到期时间不晚于now的任务都应已返回
+            for (Map.Entry<Long, Long> entry : deadlines.entrySet()) {
+                assertTrue(entry.getValue() > now, "到期未返回: " + entry.getKey());
+            }
+        }
+        assertTrue(deadlines.isEmpty(), "剩余任务: " + deadlines.size());
+        assertEquals(49_000, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overdueTimerFiresOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(1000, 10_000);
+        wheel.add(1, 5_000);
+        wheel.add(2, 10_500);
+        assertFalse(wheel.contains(1));
+        assertEquals(List.of(1L), wheel.advance(10_000));
+        assertEquals(List.of(2L), wheel.advance(11_000));
+    }
+}
@@ -0,0 +1,100 @@
+package com.onlineshop.onlineshop.service;
+
+import com.onlineshop.onlineshop.TestFixtures;
+import com.onlineshop.onlineshop.entity.Goods;
+import com.onlineshop.onlineshop.entity.OrderStatus;
+import com.onlineshop.onlineshop.entity.User;
+import com.onlineshop.onlineshop.entity.UserOrder;
+import com.onlineshop.onlineshop.repository.GoodsRepository;
+import com.onlineshop.onlineshop.repository.JobLeaseRepository;
+import com.onlineshop.onlineshop.repository.UserOrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//超时取消测试：只取消仍待付款的订单，批量恢复库存并更新商家计数；任务租约同一时间只属于一个节点
+@SpringBootTest
+@ActiveProfiles("test")
+class UnpaidOrderExpiryTests {
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private MerchantOrderCounterService merchantOrderCounterService;
+    @Autowired
+    private JobLeaseService jobLeaseService;
+    @Autowired
+    private GoodsRepository goodsRepository;
+    @Autowired
+    private UserOrderRepository userOrderRepository;
+    @Autowired
+    private JobLeaseRepository jobLeaseRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void cancelExpiredOrdersSkipsPaidOrdersAndRestoresStock() {
+        String suffix = String.valueOf(System.nanoTime());
+        User merchant = fixtures.saveUser("expiry_merchant_" + suffix, User.UserRole.MERCHANT);
+        User customer = fixtures.saveUser("expiry_customer_" + suffix, User.UserRole.CUSTOMER);
+        Goods first = saveGoods(merchant, 10);
+        Goods second = saveGoods(merchant, 10);
+
+        UserOrder unpaid = orderService.createOrder(customer, List.of(new CartItem(first.getGid(), 2),
+                new CartItem(second.getGid(), 3)));
+        UserOrder alsoUnpaid = orderService.createOrder(customer, List.of(new CartItem(first.getGid(), 1)));
+        UserOrder paid = orderService.createOrder(customer, List.of(new CartItem(second.getGid(), 4)));
+        orderService.pay(paid.getOid());
+
+        //下单时间都早于cutoff
+        int cancelled = orderService.cancelExpiredOrders(List.of(unpaid.getOid(), alsoUnpaid.getOid(), paid.getOid()),
+                new Date(System.currentTimeMillis() + 60_000));
+
+        assertEquals(2, cancelled);
+        assertEquals(OrderStatus.CANCELLED, userOrderRepository.findById(unpaid.getOid()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.CANCELLED, userOrderRepository.findById(alsoUnpaid.getOid()).orElseThrow().getStatus());
+        assertEquals(OrderStatus.PAID, userOrderRepository.findById(paid.getOid()).orElseThrow().getStatus());
+        assertEquals(10, goodsRepository.findById(first.getGid()).orElseThrow().getRemaining());
+        assertEquals(6, goodsRepository.findById(second.getGid()).orElseThrow().getRemaining());
+        assertEquals(0, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.PENDING_PAYMENT));
+        assertEquals(2, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.CANCELLED));
+        assertEquals(1, merchantOrderCounterService.getCount(merchant.getUid(), OrderStatus.PAID));
+
+        //再次执行不会重复取消
+        assertEquals(0, orderService.cancelExpiredOrders(List.of(unpaid.getOid()),
+                new Date(System.currentTimeMillis() + 60_000)));
+    }
+
+    @Test
+    void leaseIsHeldByOneNodeUntilReleased() {
+        String name = "test-lease-" + System.nanoTime();
+        assertTrue(jobLeaseService.tryAcquire(name, 60_000));
+        assertTrue(jobLeaseService.tryAcquire(name, 60_000)); //同一节点续约
+        //其他节点在租约有效期内无法接管
+        assertEquals(0, renewAs(name, "other-node"));
+        jobLeaseService.release(name);
+        assertEquals(1, renewAs(name, "other-node"));
+        assertFalse(jobLeaseService.tryAcquire(name, 60_000));
+    }
+
+    private int renewAs(String name, String owner) {
+        Date now = new Date(System.currentTimeMillis() + 1);
+        return transactionTemplate.execute(status ->
+                jobLeaseRepository.renew(name, owner, now, new Date(now.getTime() + 60_000)));
+    }
+
+    private Goods saveGoods(User merchant, int stock) {
+        return fixtures.saveGoods(merchant, "超时取消测试商品", 5.0, stock);
+    }
+}
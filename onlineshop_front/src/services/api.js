@@ -262,21 +262,32 @@ export const authAPI = {
     deleteAccount: () => api.post('/auth/delete-account')
 };
 
+//分页列表每页请求的条数，超过后端上限时由后端截断
+const PAGE_SIZE = 20;
+
+//按游标请求一页，返回中的nextCursor/hasMore用于请求下一页（不传cursor为第一页）
+const getCursorPage = (url, params = {}, cursor) =>
+    api.get(url, { params: { ...params, cursor, size: PAGE_SIZE } });
+
+//按页码请求一页（搜索接口），返回中的page/total用于判断是否还有下一页
+const getNumberedPage = (url, params = {}, page = 0) =>
+    api.get(url, { params: { ...params, page, size: PAGE_SIZE } });
+
 //商品相关API
 export const goodsAPI = {
-    getAll: () => api.get('/goods'),
+    getAll: (cursor) => getCursorPage('/goods', {}, cursor),
     getById: (id) => api.get(`/goods/${id}`),
     getMerchantByGoodsId: (id) => api.get(`/goods/${id}/merchant`),
-    searchByName: (name) => api.get('/goods/search/name', { params: { name } }),
-    searchByPrice: (minPrice, maxPrice) => api.get('/goods/search/price',{params:{minPrice, maxPrice}}),
-    getAvailable: () => api.get('/goods/available'),
+    searchByName: (name, page) => getNumberedPage('/goods/search/name', { name }, page),
+    searchByPrice: (minPrice, maxPrice, page) => getNumberedPage('/goods/search/price', { minPrice, maxPrice }, page),
+    getAvailable: (cursor) => getCursorPage('/goods/available', {}, cursor),
     addGoods: (goods) => api.post('/goods', goods),
     updateGoods: (id, goods) => api.put(`/goods/${id}`, goods),
     deleteGoods: (id) => api.delete(`/goods/${id}`),
-    getMyGoods: () => api.get('/goods/my-goods'),
+    getMyGoods: (cursor) => getCursorPage('/goods/my-goods', {}, cursor),
     searchMyGoods: (name) => api.get('/goods/my-goods/search', { params: { name } }),
     getMyGoodsStats: () => api.get('/goods/my-goods/stats'),
-    getByMerchant: (merchantId) => api.get(`/goods/merchant/${merchantId}`),
+    getByMerchant: (merchantId, cursor) => getCursorPage(`/goods/merchant/${merchantId}`, {}, cursor),
     deactivateGoods: (gid) => api.post(`/goods/${gid}/deactivate`),
     activateGoods: (gid) => api.post(`/goods/${gid}/activate`),
     batchDeactivate: (goodsIds) => api.post('/goods/batch-deactivate', goodsIds),
@@ -287,6 +298,7 @@ export const goodsAPI = {
 //购物车相关API
 export const cartAPI = {
     getCart: () => api.get('/cart'),
+    getPricedCart: () => api.get('/cart/priced'),
     addToCart: (item) => api.post('/cart/add', item),
     updateCartItem: (goodsId, quantity) => api.put(`/cart/update/${goodsId}`, { quantity }),
     removeFromCart: (goodsId) => api.delete(`/cart/remove/${goodsId}`),
@@ -294,11 +306,34 @@ export const cartAPI = {
     getCartCount: () => api.get('/cart/count'),
 };
 
+//生成下单幂等键，不支持crypto.randomUUID的环境（非HTTPS）用时间戳加随机数
+const newIdempotencyKey = () => {
+    if (window.crypto && typeof window.crypto.randomUUID === 'function') {
+        return window.crypto.randomUUID();
+    }
+    return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}-${Math.random().toString(36).slice(2)}`;
+};
+
+//未成功的结算使用的幂等键（请求内容 -> 键）：超时重试或重复点击时沿用同一个键，后端只创建一个订单；下单成功后删除
+const pendingCheckoutKeys = new Map();
+
 //订单相关API
 export const orderAPI = {
-    createOrder: (orderData) => api.post('/orders/create', orderData),
+    createOrder: async (orderData) => {
+        const signature = JSON.stringify(orderData);
+        if (!pendingCheckoutKeys.has(signature)) {
+            pendingCheckoutKeys.set(signature, newIdempotencyKey());
+        }
+        const response = await api.post('/orders/create', orderData, {
+            headers: { 'Idempotency-Key': pendingCheckoutKeys.get(signature) }
+        });
+        if (response && response.success) {
+            pendingCheckoutKeys.delete(signature);
+        }
+        return response;
+    },
     payOrder: (orderId) => api.post(`/orders/${orderId}/pay`),
-    getMyOrders: () => api.get('/orders/my-orders'),
+    getMyOrders: (cursor) => getCursorPage('/orders/my-orders', {}, cursor),
     getAllOrders: () => api.get('/orders/all'),
     getOrderDetails: (orderId) => api.get(`/orders/${orderId}/details`),
     cancelOrder: (orderId) => api.post(`/orders/${orderId}/cancel`),
@@ -309,14 +344,15 @@ export const orderAPI = {
 
 //商家相关API
 export const merchantAPI = {
-    getAllOrders: (status) => api.get('/merchant/orders', { params: { status } }),
+    getAllOrders: (status, cursor) => getCursorPage('/merchant/orders', { status }, cursor),
     shipOrder: (orderId) => api.post(`/merchant/orders/${orderId}/ship`),
+    //report.goodsSales每个商品一行：[商品ID, 商品名, 销量, 销售额]，按销售额降序
     getSalesReport: (startDate, endDate) => api.get('/merchant/sales/report', {
         params: { startDate, endDate }
     }),
     getBestSellers: () => api.get('/merchant/sales/best-sellers'),
     getMerchantStats: () => api.get('/merchant/stats'),
-    getMerchantGoods: () => api.get('/goods/my-goods'),
+    getMerchantGoods: (cursor) => getCursorPage('/goods/my-goods', {}, cursor),
     addMerchantGoods: (goods) => api.post('/goods', goods),
     updateMerchantGoods: (id, goods) => api.put(`/goods/${id}`, goods),
     deleteMerchantGoods: (id) => api.delete(`/goods/${id}`),